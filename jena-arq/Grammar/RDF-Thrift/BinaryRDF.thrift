@@ -79,6 +79,9 @@ union RDF_Term {
 10: i64             valInteger
 11: double          valDouble
 12: RDF_Decimal     valDecimal
+# sim:vector in canonical form, packed big-endian doubles.
+# Written only when enabled (ARQ.binaryVectorTerms).
+13: binary          valVector
 }
 
 // === Stream RDF items 
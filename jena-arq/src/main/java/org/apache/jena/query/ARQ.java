@@ -34,6 +34,7 @@ import org.apache.jena.sparql.ARQConstants;
 import org.apache.jena.sparql.SystemARQ;
 import org.apache.jena.sparql.algebra.optimize.TransformOrderByDistinctApplication;
 import org.apache.jena.sparql.core.assembler.AssemblerUtils;
+import org.apache.jena.sparql.util.VectorDatatype;
 import org.apache.jena.sparql.exec.http.QuerySendMode;
 import org.apache.jena.sparql.expr.aggregate.AggregateRegistry;
 import org.apache.jena.sparql.function.FunctionRegistry;
@@ -198,6 +199,15 @@ public class ARQ
      */
     public static final Symbol queryTimeout = SystemARQ.allocSymbol("queryTimeout");
 
+    /**
+     * Context key to record, for each operator of a query, the rows it produces and the
+     * time and memory spent producing them.
+     * After the results have been read, {@link org.apache.jena.sparql.engine.main.ExplainAnalyze#get(org.apache.jena.sparql.exec.QueryExec)}
+     * gives the operator tree annotated with them.
+     * Default is false.
+     */
+    public static final Symbol explainAnalyze = SystemARQ.allocSymbol("explainAnalyze");
+
     // This can't be a context constant because NodeValues don't look in the context.
 //    /**
 //     * Context symbol controlling Roman Numerals in Filters.
@@ -330,7 +340,7 @@ public class ARQ
      * choosing the value.
      * <p>
      * Operations currently affected by this symbol: <br>
-     * ORDER BY, SPARQL Update, CONSTRUCT (optionally)
+     * ORDER BY, SPARQL Update, CONSTRUCT (optionally), hash joins
      * <p>
      * A reasonable value here is 10000.
      * </p>
@@ -338,9 +348,143 @@ public class ARQ
      */
     // Some possible additions to the list:
     // Sort: DISTINCT, merge joins<br>
-    // Hash table: GROUP BY, MINUS, SERVICE, VALUES, and hash joins <br>
+    // Hash table: GROUP BY, MINUS, SERVICE, VALUES, and hash left joins <br>
     public static final Symbol spillToDiskThreshold = SystemARQ.allocSymbol("spillToDiskThreshold");
 
+    // Similarity joins.
+
+    /**
+     * Context key forcing the solver used for similarity joins.
+     * One of "auto", "nestedloop", "vptree", "kdtree" or "hnsw" (case insensitive).
+     * The "kdtree" and "hnsw" solvers are approximate and never chosen by "auto".
+     * Default is "auto" - the solver is chosen by a cost model from the input
+     * cardinalities, the number of attributes and the distance function.
+     */
+    public static final Symbol simJoinSolver = SystemARQ.allocSymbol("simJoinSolver");
+
+    /**
+     * Context key for the number of threads probing the right side of a similarity join.
+     * Left bindings are probed in batches on a dedicated fork/join pool of that size,
+     * and results are returned in the same order as a sequential probe.
+     * Default is 1 - probe on the query thread.
+     */
+    public static final Symbol simJoinParallelism = SystemARQ.allocSymbol("simJoinParallelism");
+
+    /**
+     * Context key to evaluate range similarity joins in bounded memory.
+     * Both sides are copied to data bags that spill to disk above {@link #spillToDiskThreshold},
+     * the right side is indexed one block of that many bindings at a time, and the left side
+     * is streamed past each block. Results are produced lazily, block by block.
+     * Default is false - both sides are held in memory.
+     */
+    public static final Symbol simJoinStreaming = SystemARQ.allocSymbol("simJoinStreaming");
+
+    /**
+     * Context key for the number of links per node of the HNSW graph built by the "hnsw"
+     * similarity join solver (twice as many on the bottom layer).
+     * Larger values improve recall on high-dimensional data at the cost of memory and build time.
+     * Default is 16.
+     */
+    public static final Symbol simJoinHnswM = SystemARQ.allocSymbol("simJoinHnswM");
+
+    /**
+     * Context key for the size of the candidate list used while building the HNSW graph.
+     * Larger values build a better graph, more slowly.
+     * Default is 100.
+     */
+    public static final Symbol simJoinHnswEfConstruction = SystemARQ.allocSymbol("simJoinHnswEfConstruction");
+
+    /**
+     * Context key for the size of the candidate list used when probing the HNSW graph
+     * (at least k). This is the main recall/speed trade-off of the "hnsw" solver.
+     * Default is 50.
+     */
+    public static final Symbol simJoinHnswEfSearch = SystemARQ.allocSymbol("simJoinHnswEfSearch");
+
+    /**
+     * Context key for the number of similarity join indexes kept between query executions.
+     * An index of the right side is reused when the same operator is evaluated over the
+     * same version of a dataset, in a read transaction of a dataset that records its
+     * version (see {@link org.apache.jena.sparql.core.DataVersion}).
+     * Default is 16; 0 disables the cache.
+     */
+    public static final Symbol simJoinIndexCacheSize = SystemARQ.allocSymbol("simJoinIndexCacheSize");
+
+    /**
+     * Context key for the estimated memory, in bytes, of the similarity join indexes
+     * kept between query executions. Least recently used indexes are dropped first.
+     * Default is 128MB.
+     */
+    public static final Symbol simJoinIndexCacheMemory = SystemARQ.allocSymbol("simJoinIndexCacheMemory");
+
+    /**
+     * Global context key to write {@code sim:vector} literals in RDF Thrift and RDF Protobuf,
+     * and so in TDB2 node tables, by value as packed doubles (field {@code valVector}).
+     * Only literals in the canonical lexical form are written by value.
+     * <p>
+     * Readers that predate the field can not read such data.
+     * Default is false: vector literals are written by lexical form.
+     */
+    public static final Symbol binaryVectorTerms = SystemARQ.allocSymbol("binaryVectorTerms");
+
+    /**
+     * Context key for the {@link org.apache.jena.sparql.engine.join.AttributeStatistics}
+     * of a dataset, set in the dataset context by storage that maintains them (TDB2).
+     */
+    public static final Symbol simJoinStatistics = SystemARQ.allocSymbol("simJoinStatistics");
+
+    /**
+     * Context key to normalise and plan similarity joins from the {@link #simJoinStatistics}
+     * of the dataset, rather than from a pass over both inputs.
+     * Attributes are then normalised with the range of their predicate over the whole dataset,
+     * which may differ from the range over the join inputs, so distances may differ.
+     * Joins whose attributes are not objects of triple patterns with constant predicates
+     * are evaluated as usual.
+     * Default is false.
+     */
+    public static final Symbol simJoinUseStatistics = SystemARQ.allocSymbol("simJoinUseStatistics");
+
+    /**
+     * Context key to evaluate the two sides of a similarity join once when they are the
+     * same basic graph pattern up to variable names, or when one pattern contains the other.
+     * Self pairs are then skipped by comparing row keys rather than attribute nodes.
+     * Default is true.
+     */
+    public static final Symbol simJoinSharedScan = SystemARQ.allocSymbol("simJoinSharedScan");
+
+    // Clustering.
+
+    /**
+     * Context key for how the k-medoids solvers keep pairwise distances:
+     * "auto", "double", "float" (packed triangular matrices) or "lazy" (computed when needed).
+     * The default, "auto", uses the most precise matrix within {@link #clusterDistanceMatrixMemory}
+     * and computes distances when needed if none fits.
+     */
+    public static final Symbol clusterDistanceMatrix = SystemARQ.allocSymbol("clusterDistanceMatrix");
+
+    /**
+     * Context key for the memory, in bytes, a k-medoids distance matrix may use in "auto" mode.
+     * Default is 512MB.
+     */
+    public static final Symbol clusterDistanceMatrixMemory = SystemARQ.allocSymbol("clusterDistanceMatrixMemory");
+
+    /**
+     * Context key for the number of threads assigning points to their nearest centroid
+     * or medoid in k-means and k-medoids clustering.
+     * Rows are split in the same ranges whatever the number of threads, so the clusters
+     * do not depend on it.
+     * Default is 1 - assign on the query thread.
+     */
+    public static final Symbol clusterParallelism = SystemARQ.allocSymbol("clusterParallelism");
+
+    /**
+     * Context key for the fraction of rows that may be added or removed since the last full
+     * clustering of a {@link org.apache.jena.query.cluster.MaterializedClustering} before it
+     * clusters all the rows again. Until then new rows go to the cluster of their nearest centre.
+     * Default is 0.1.
+     */
+    public static final Symbol clusterRecomputeRatio = SystemARQ.allocSymbol("clusterRecomputeRatio");
+
     // Optimizer controls.
 
     /**
@@ -670,6 +814,8 @@ public class ARQ
             // Register the datatypes for the CDT literals
             TypeMapper.getInstance().registerDatatype(CompositeDatatypeList.type) ;
             TypeMapper.getInstance().registerDatatype(CompositeDatatypeMap.type) ;
+            // Register the datatype of vector literals for similarity joins
+            TypeMapper.getInstance().registerDatatype(VectorDatatype.type) ;
 
             JenaSystem.logLifecycle("ARQ.init - finish");
         }
@@ -2,6 +2,8 @@ package org.apache.jena.query.cluster;
 
 import java.util.List;
 
+import org.apache.jena.query.QueryBuildException;
+import org.apache.jena.sparql.engine.cluster.ClusterDistances;
 import org.apache.jena.sparql.engine.cluster.ClusteringSolver;
 import org.apache.jena.sparql.expr.Expr;
 
@@ -12,5 +14,21 @@ public interface ClusterConfiguration {
 	void setParameters(List<Expr> args);
 
 	ClusteringSolver getSolver();
+
+	/**
+	 * The distance named by the last argument if it is an IRI, as {@code sim:euclidean} in
+	 * {@code sim:kmeans(3, 10, sim:euclidean)}; null if it is not an IRI.
+	 */
+	static String distanceArgument(List<Expr> args) {
+		if (args.isEmpty())
+			return null;
+		Expr last = args.get(args.size() - 1);
+		if (!last.isConstant() || !last.getConstant().isIRI())
+			return null;
+		String iri = last.getConstant().asNode().getURI();
+		if (ClusterDistances.get(iri) == null)
+			throw new QueryBuildException("Distance not recognised for clustering. Given: " + iri);
+		return iri;
+	}
 	
 }
@@ -3,9 +3,10 @@ package org.apache.jena.query.cluster;
 import java.util.List;
 
 import org.apache.jena.query.QueryBuildException;
+import org.apache.jena.sparql.engine.cluster.ClusterDistances;
 import org.apache.jena.sparql.engine.cluster.ClusteringSolver;
 import org.apache.jena.sparql.engine.cluster.DBSCANSolver;
-import org.apache.jena.sparql.engine.cluster.DBSCANSolver2;
+import org.apache.jena.sparql.engine.cluster.GridDBSCANSolver;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.vocabulary.SIM;
 
@@ -13,6 +14,8 @@ public class DBSCANConfiguration implements ClusterConfiguration {
 
 	protected double epsilon = 0.0;
 	protected int minElements = 1;
+	// IRI of the distance, resolved by ClusterDistances.
+	protected String distance = ClusterDistances.DEFAULT;
 	
 	public DBSCANConfiguration() {}
 	
@@ -34,8 +37,18 @@ public class DBSCANConfiguration implements ClusterConfiguration {
 		return minElements;
 	}
 
+	public String getDistance() {
+		return distance;
+	}
+
+	/** {@code sim:dbscan(epsilon, minElements)}, optionally followed by a distance IRI. */
 	@Override
 	public void setParameters(List<Expr> args) {
+		String iri = ClusterConfiguration.distanceArgument(args);
+		if (iri != null) {
+			this.distance = iri;
+			args = args.subList(0, args.size() - 1);
+		}
 		if (args.size() == 0) {
 			return;
 		} else if(args.size() >= 1) {
@@ -50,7 +63,7 @@ public class DBSCANConfiguration implements ClusterConfiguration {
 
 	@Override
 	public ClusteringSolver getSolver() {
-		return new DBSCANSolver2(epsilon, minElements);
+		return new GridDBSCANSolver(epsilon, minElements, ClusterDistances.get(distance));
 	}
 
 }
@@ -5,8 +5,10 @@ import java.util.List;
 import org.apache.jena.query.QueryBuildException;
 import org.apache.jena.sparql.core.PathBlock;
 import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.engine.cluster.ClusterDistances;
 import org.apache.jena.sparql.engine.cluster.ClusteringSolver;
 import org.apache.jena.sparql.engine.cluster.KMeansSolver;
+import org.apache.jena.sparql.engine.cluster.MiniBatchKMeansSolver;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.vocabulary.SIM;
 
@@ -14,11 +16,21 @@ public class KMeansConfiguration implements ClusterConfiguration {
 
 	protected int nbOfClusters = 3;
 	protected int maxIterations = 10;
+	// Rows per mini-batch; 0 for k-means over all the rows.
+	protected int batchSize = 0;
+	// IRI of the distance, resolved by ClusterDistances.
+	protected String distance = ClusterDistances.DEFAULT;
 	
 	public KMeansConfiguration(int nbOfClusters, int minIterations) {
 		this.nbOfClusters = nbOfClusters;
 		this.maxIterations = minIterations;
 	}
+
+	public KMeansConfiguration(int nbOfClusters, int maxIterations, int batchSize) {
+		this.nbOfClusters = nbOfClusters;
+		this.maxIterations = maxIterations;
+		this.batchSize = batchSize;
+	}
 	
 	public KMeansConfiguration() {}
 
@@ -35,22 +47,46 @@ public class KMeansConfiguration implements ClusterConfiguration {
 		return maxIterations;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public String getDistance() {
+		return distance;
+	}
+
+	/**
+	 * {@code sim:kmeans(K, maxIterations, batchSize)}: with a batch size, mini-batch k-means.
+	 * A distance IRI can follow the numbers, as in {@code sim:kmeans(3, 10, sim:euclidean)}.
+	 */
 	@Override
 	public void setParameters(List<Expr> args) {
-		if(args.size() == 0) {
-			return;
-		} else if (args.size() > 0) {
+		String iri = ClusterConfiguration.distanceArgument(args);
+		if (iri != null) {
+			this.distance = iri;
+			args = args.subList(0, args.size() - 1);
+		}
+		if (args.size() > 3) {
+			throw new QueryBuildException("Too many arguments provided for k-means");
+		}
+		if (args.size() > 0) {
 			this.nbOfClusters = args.get(0).getConstant().getInteger().intValue();
-		} if (args.size()==2) { 
+		}
+		if (args.size() > 1) { 
 			this.maxIterations = args.get(1).getConstant().getInteger().intValue();
-		} else if (args.size() > 2) {
-			throw new QueryBuildException("Too many arguments provided for k-means");
+		}
+		if (args.size() > 2) {
+			this.batchSize = args.get(2).getConstant().getInteger().intValue();
+			if (batchSize < 0)
+				throw new QueryBuildException("Negative k-means batch size: " + batchSize);
 		}
 	}
 
 	@Override
 	public ClusteringSolver getSolver() {
-		return new KMeansSolver(nbOfClusters, maxIterations);
+		if (batchSize > 0)
+			return new MiniBatchKMeansSolver(nbOfClusters, maxIterations, batchSize, ClusterDistances.get(distance));
+		return new KMeansSolver(nbOfClusters, maxIterations, ClusterDistances.get(distance));
 	}
 
 }
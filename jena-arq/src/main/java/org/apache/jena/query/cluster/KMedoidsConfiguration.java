@@ -3,6 +3,7 @@ package org.apache.jena.query.cluster;
 import java.util.List;
 
 import org.apache.jena.query.QueryBuildException;
+import org.apache.jena.sparql.engine.cluster.ClusterDistances;
 import org.apache.jena.sparql.engine.cluster.ClusteringSolver;
 import org.apache.jena.sparql.engine.cluster.FASTPAMSolver;
 import org.apache.jena.sparql.engine.cluster.KMedoidsSolver;
@@ -12,6 +13,8 @@ import org.apache.jena.vocabulary.SIM;
 public class KMedoidsConfiguration implements ClusterConfiguration {
 
 	protected int nbOfClusters;
+	// IRI of the distance, resolved by ClusterDistances.
+	protected String distance = ClusterDistances.DEFAULT;
 	
 	public KMedoidsConfiguration(int nbOfClusters) {
 		this.nbOfClusters = nbOfClusters;
@@ -30,8 +33,18 @@ public class KMedoidsConfiguration implements ClusterConfiguration {
 		return nbOfClusters;
 	}
 
+	public String getDistance() {
+		return distance;
+	}
+
+	/** {@code sim:kmedoids(K)}, optionally followed by a distance IRI. */
 	@Override
 	public void setParameters(List<Expr> args) {
+		String iri = ClusterConfiguration.distanceArgument(args);
+		if (iri != null) {
+			this.distance = iri;
+			args = args.subList(0, args.size() - 1);
+		}
 		if(args.size()==0) {
 			this.nbOfClusters = 3;
 		} else if (args.size() == 1) {
@@ -44,7 +57,7 @@ public class KMedoidsConfiguration implements ClusterConfiguration {
 	@Override
 	public ClusteringSolver getSolver() {
 		//return new KMedoidsSolver(nbOfClusters);
-		return new FASTPAMSolver(nbOfClusters);
+		return new FASTPAMSolver(nbOfClusters, ClusterDistances.get(distance));
 	}
 
 }
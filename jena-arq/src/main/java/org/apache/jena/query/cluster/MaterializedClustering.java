@@ -0,0 +1,563 @@
+package org.apache.jena.query.cluster;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.atlas.logging.Log;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpPath;
+import org.apache.jena.sparql.algebra.op.OpPropFunc;
+import org.apache.jena.sparql.algebra.op.OpQuad;
+import org.apache.jena.sparql.algebra.op.OpQuadBlock;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.op.OpTriple;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.cluster.ClusterModel;
+import org.apache.jena.sparql.engine.cluster.ClusteringSolver;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.VectorDatatype;
+import org.apache.jena.system.Txn;
+import org.apache.jena.vocabulary.SIM;
+
+/**
+ * The result of a {@code CLUSTER BY} query, kept up to date as the dataset changes.
+ * <p>
+ * The rows of the query pattern are clustered once when the view is created. Changes
+ * made through {@link #getDatasetGraph()} are noted, and when their transaction commits
+ * the view is marked stale; the committing thread does no more. The pattern is then
+ * evaluated again, in the background or on the next read of the view if that comes
+ * first, and compared with the rows clustered so far: removed rows
+ * leave their cluster, and added rows join the cluster of their nearest centre, as kept by
+ * the solver's {@link ClusteringSolver#model() model}. The centres stay where the last full
+ * clustering put them. All the rows are clustered again once more than
+ * {@link ARQ#clusterRecomputeRatio} of them were added or removed since, on {@link #recluster()},
+ * and after every change for methods without centres (DBSCAN).
+ * <p>
+ * Changes to predicates that do not appear in the pattern are ignored; a pattern with
+ * a variable predicate, a property path or an {@code EXISTS} is evaluated after any change.
+ * Changes made directly to the underlying dataset are seen on the next {@link #refresh()}.
+ * Only the clustered rows are kept: the modifiers of the query, such as its projection
+ * and order, are not applied.
+ * <p>
+ * The centres can be kept in a file, written after each full clustering, so that a view
+ * created again, after a restart, assigns the rows to the stored centres instead of
+ * clustering them all ({@link #create(DatasetGraph, Query, Path)}). The file is an RDF
+ * graph in Turtle: for each centre, its cluster number ({@code sim:cluster}) and its
+ * coordinates ({@code sim:centre}, a {@code sim:vector} literal).
+ */
+public class MaterializedClustering {
+
+	public static final double DEFAULT_RECOMPUTE_RATIO = 0.1;
+
+	// Brings views up to date after a commit, off the thread of the writer.
+	private static final ExecutorService refresher = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "MaterializedClustering");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final DatasetGraph dsg;
+	private final DatasetGraph monitor;
+	private final Query pattern;
+	private final VarExprList clusterVars;
+	private final Var clusterVar;
+	private final ClusterConfiguration conf;
+	private final Context context;
+	// Predicates of the pattern; null if a change to any predicate may change its rows.
+	private final Set<Node> predicates;
+	// Where the centres are kept; null if they are not.
+	private final Path centresFile;
+
+	private ClusterModel model = null;
+	// Multiplicity and cluster of each row of the pattern, when there is a model.
+	private Map<Binding, Integer> counts = new LinkedHashMap<>();
+	private Map<Binding, Node> clusters = new HashMap<>();
+	private List<Binding> results = null;
+	private long changed = 0;
+	private long reclusterings = 0;
+	private volatile boolean stale = false;
+	// Whether a background refresh is scheduled and has not started yet.
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private MaterializedClustering(DatasetGraph dsg, Query query, Path centresFile) {
+		this.dsg = dsg;
+		this.centresFile = centresFile;
+		this.monitor = new Monitor(dsg);
+		this.pattern = patternQuery(query);
+		this.clusterVars = query.getClusterBy();
+		this.clusterVar = query.getClusterVar();
+		this.conf = query.getClusterConf();
+		this.context = Context.mergeCopy(ARQ.getContext(), dsg.getContext());
+		this.predicates = predicates(Algebra.compile(query.getQueryPattern()));
+	}
+
+	/** Cluster the rows of the {@code CLUSTER BY} query over the dataset, and keep them up to date. */
+	public static MaterializedClustering create(DatasetGraph dsg, Query query) {
+		if (!query.hasClusterBy())
+			throw new IllegalArgumentException("Not a CLUSTER BY query: " + query);
+		MaterializedClustering clustering = new MaterializedClustering(dsg, query, null);
+		clustering.recluster();
+		return clustering;
+	}
+
+	/**
+	 * Cluster the rows of the {@code CLUSTER BY} query over the dataset, and keep them up to
+	 * date, with the centres kept in a file. If the file exists, the rows are assigned to
+	 * the centres in it; otherwise, or if they do not fit the rows, the rows are clustered.
+	 */
+	public static MaterializedClustering create(DatasetGraph dsg, Query query, Path centresFile) {
+		if (!query.hasClusterBy())
+			throw new IllegalArgumentException("Not a CLUSTER BY query: " + query);
+		MaterializedClustering clustering = new MaterializedClustering(dsg, query, centresFile);
+		synchronized (clustering) {
+			if (!clustering.restore())
+				clustering.recluster();
+		}
+		return clustering;
+	}
+
+	/** The dataset to change so that the clustering follows. */
+	public DatasetGraph getDatasetGraph() {
+		return monitor;
+	}
+
+	/** The rows of the pattern with their clusters, as of the last committed change. */
+	public synchronized List<Binding> getBindings() {
+		if (stale)
+			update();
+		if (results == null) {
+			List<Binding> rows = new ArrayList<>();
+			counts.forEach((row, count) -> {
+				Binding b = Binding.builder(row).add(clusterVar, clusters.get(row)).build();
+				for (int i = 0; i < count; i++)
+					rows.add(b);
+			});
+			results = rows;
+		}
+		return Collections.unmodifiableList(results);
+	}
+
+	/** The centres of the clusters; null for methods without centres, or no rows. */
+	public synchronized ClusterModel getModel() {
+		if (stale)
+			update();
+		return model;
+	}
+
+	/** Number of times all the rows were clustered, including when the view was created. */
+	public synchronized long getReclusterings() {
+		if (stale)
+			update();
+		return reclusterings;
+	}
+
+	/** Evaluate the pattern again, and update the clusters with the rows added or removed since. */
+	public synchronized void refresh() {
+		update();
+	}
+
+	/** Evaluate the pattern again, and cluster all its rows. */
+	public synchronized void recluster() {
+		stale = false;
+		recluster(evaluate());
+	}
+
+	private void recluster(List<Binding> rows) {
+		List<Binding> output = new ArrayList<>();
+		model = null;
+		if (!rows.isEmpty()) {
+			ClusteringSolver solver = conf.getSolver();
+			solver.solve(QueryIterPlainWrapper.create(rows.iterator()), clusterVars, clusterVar, context);
+			solver.iterator().forEachRemaining(output::add);
+			model = solver.model();
+		}
+		counts = count(rows);
+		clusters = new HashMap<>();
+		if (model != null) {
+			for (Binding b : output)
+				clusters.put(withoutClusterVar(b), b.get(clusterVar));
+		}
+		results = output;
+		changed = 0;
+		reclusterings++;
+		if (centresFile != null)
+			writeCentres(centresFile, model);
+	}
+
+	/** Assign the rows to the stored centres; false if there are none that fit the rows. */
+	private boolean restore() {
+		if (centresFile == null || !Files.exists(centresFile))
+			return false;
+		ClusterModel stored = readCentres(centresFile, conf.getSolver());
+		if (stored == null)
+			return false;
+		List<Binding> rows = evaluate();
+		Map<Binding, Integer> newCounts = count(rows);
+		Map<Binding, Node> newClusters = new HashMap<>();
+		List<Var> vars = clusterVars.getVars();
+		try {
+			for (Binding row : newCounts.keySet())
+				newClusters.put(row, stored.cluster(PointStore.extract(row, vars, null, null)));
+		} catch (IllegalArgumentException ex) {
+			// Not the same number of coordinates.
+			return false;
+		}
+		model = stored;
+		counts = newCounts;
+		clusters = newClusters;
+		results = null;
+		changed = 0;
+		return true;
+	}
+
+	// Write to a new file then move it, so that the file is always complete.
+	private static void writeCentres(Path file, ClusterModel model) {
+		try {
+			if (model == null) {
+				Files.deleteIfExists(file);
+				return;
+			}
+			Graph graph = GraphFactory.createDefaultGraph();
+			for (int j = 0; j < model.size(); j++) {
+				Node centre = NodeFactory.createBlankNode();
+				graph.add(centre, SIM.cluster.asNode(), NodeFactory.createLiteralByValue(model.first() + j, XSDDatatype.XSDinteger));
+				graph.add(centre, SIM.centre.asNode(), NodeFactory.createLiteralByValue(model.centre(j), VectorDatatype.type));
+			}
+			Path dir = file.toAbsolutePath().getParent();
+			Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				RDFDataMgr.write(out, graph, Lang.TURTLE);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/** The centres in the file, as a model of the solver; null if there are none. */
+	private static ClusterModel readCentres(Path file, ClusteringSolver solver) {
+		Graph graph = RDFDataMgr.loadGraph(file.toString());
+		TreeMap<Integer, double[]> centres = new TreeMap<>();
+		graph.find(Node.ANY, SIM.cluster.asNode(), Node.ANY).forEachRemaining(t -> {
+			Triple c = graph.find(t.getSubject(), SIM.centre.asNode(), Node.ANY).nextOptional().orElse(null);
+			if (c != null && VectorDatatype.isVector(c.getObject()) && t.getObject().getLiteralValue() instanceof Number n)
+				centres.put(n.intValue(), VectorDatatype.vector(c.getObject()));
+		});
+		if (centres.isEmpty())
+			return null;
+		int first = centres.firstKey();
+		int dims = centres.firstEntry().getValue().length;
+		double[] data = new double[centres.size() * dims];
+		int j = 0;
+		for (Map.Entry<Integer, double[]> e : centres.entrySet()) {
+			if (e.getKey() != first + j || e.getValue().length != dims)
+				return null;
+			System.arraycopy(e.getValue(), 0, data, j * dims, dims);
+			j++;
+		}
+		return solver.model(data, dims, first);
+	}
+
+	/** Mark the view stale, and bring it up to date in the background. */
+	private void markStale() {
+		stale = true;
+		if (scheduled.compareAndSet(false, true))
+			refresher.execute(this::background);
+	}
+
+	private void background() {
+		// Cleared first: a commit from now on schedules another refresh.
+		scheduled.set(false);
+		synchronized (this) {
+			if (!stale)
+				return;
+			try {
+				update();
+			} catch (RuntimeException ex) {
+				// Tried again on the next read.
+				stale = true;
+				Log.warn(this, "Failed to refresh the clustering", ex);
+			}
+		}
+	}
+
+	private void update() {
+		stale = false;
+		List<Binding> rows = evaluate();
+		Map<Binding, Integer> newCounts = count(rows);
+		long diff = 0;
+		for (Map.Entry<Binding, Integer> e : newCounts.entrySet())
+			diff += Math.abs(e.getValue() - counts.getOrDefault(e.getKey(), 0));
+		for (Map.Entry<Binding, Integer> e : counts.entrySet()) {
+			if (!newCounts.containsKey(e.getKey()))
+				diff += e.getValue();
+		}
+		if (diff == 0)
+			return;
+		changed += diff;
+		if (model == null || changed > recomputeRatio(context) * rows.size()) {
+			recluster(rows);
+			return;
+		}
+		List<Var> vars = clusterVars.getVars();
+		clusters.keySet().retainAll(newCounts.keySet());
+		for (Binding row : newCounts.keySet()) {
+			if (!clusters.containsKey(row))
+				clusters.put(row, model.cluster(PointStore.extract(row, vars, null, null)));
+		}
+		counts = newCounts;
+		results = null;
+	}
+
+	private List<Binding> evaluate() {
+		return Txn.calculateRead(dsg, () -> {
+			List<Binding> rows = new ArrayList<>();
+			try (QueryExec qExec = QueryExec.dataset(dsg).query(pattern).build()) {
+				RowSet rowSet = qExec.select();
+				rowSet.forEachRemaining(rows::add);
+			}
+			return rows;
+		});
+	}
+
+	private static double recomputeRatio(Context context) {
+		Object x = context.get(ARQ.clusterRecomputeRatio);
+		if (x == null)
+			return DEFAULT_RECOMPUTE_RATIO;
+		if (x instanceof Number)
+			return ((Number) x).doubleValue();
+		return Double.parseDouble(x.toString());
+	}
+
+	private static Map<Binding, Integer> count(List<Binding> rows) {
+		Map<Binding, Integer> counts = new LinkedHashMap<>();
+		for (Binding row : rows)
+			counts.merge(row, 1, Integer::sum);
+		return counts;
+	}
+
+	private Binding withoutClusterVar(Binding b) {
+		BindingBuilder builder = Binding.builder();
+		b.forEach((v, n) -> {
+			if (!v.equals(clusterVar))
+				builder.add(v, n);
+		});
+		return builder.build();
+	}
+
+	/** {@code SELECT *} over the pattern of the query. */
+	private static Query patternQuery(Query query) {
+		Query q = new Query();
+		q.setSyntax(query.getSyntax());
+		q.setPrefixMapping(query.getPrefixMapping());
+		q.setQuerySelectType();
+		q.setQueryResultStar(true);
+		q.setQueryPattern(query.getQueryPattern());
+		return q;
+	}
+
+	private static Set<Node> predicates(Op op) {
+		Set<Node> predicates = new HashSet<>();
+		boolean[] any = { false };
+		OpVisitorBase opVisitor = new OpVisitorBase() {
+			@Override
+			public void visit(OpBGP opBGP) {
+				opBGP.getPattern().forEach(t -> add(t.getPredicate()));
+			}
+
+			@Override
+			public void visit(OpTriple opTriple) {
+				add(opTriple.getTriple().getPredicate());
+			}
+
+			@Override
+			public void visit(OpQuadPattern quadPattern) {
+				quadPattern.getPattern().forEach(q -> add(q.getPredicate()));
+			}
+
+			@Override
+			public void visit(OpQuadBlock quadBlock) {
+				quadBlock.getPattern().forEach(q -> add(q.getPredicate()));
+			}
+
+			@Override
+			public void visit(OpQuad opQuad) {
+				add(opQuad.getQuad().getPredicate());
+			}
+
+			@Override
+			public void visit(OpPath opPath) {
+				any[0] = true;
+			}
+
+			@Override
+			public void visit(OpPropFunc opPropFunc) {
+				any[0] = true;
+			}
+
+			private void add(Node p) {
+				if (p.isConcrete())
+					predicates.add(p);
+				else
+					any[0] = true;
+			}
+		};
+		ExprVisitorBase exprVisitor = new ExprVisitorBase() {
+			@Override
+			public void visit(ExprFunctionOp op) {
+				any[0] = true;
+			}
+		};
+		Walker.walk(op, opVisitor, exprVisitor);
+		return any[0] ? null : predicates;
+	}
+
+	/** Whether a change to a quad with this predicate may change the rows of the pattern. */
+	private boolean matters(Node p) {
+		return p == null || !p.isConcrete() || predicates == null || predicates.contains(p);
+	}
+
+	/** Notes the changes, and updates the clustering when they commit. */
+	private class Monitor extends DatasetGraphWrapper {
+		// Per thread: whether its transaction made changes that matter, and whether they committed.
+		private final ThreadLocal<Boolean> changes = ThreadLocal.withInitial(() -> false);
+		private final ThreadLocal<Boolean> committed = ThreadLocal.withInitial(() -> false);
+
+		Monitor(DatasetGraph dsg) {
+			super(dsg);
+		}
+
+		@Override
+		public Graph getDefaultGraph() {
+			return GraphView.createDefaultGraph(this);
+		}
+
+		@Override
+		public Graph getGraph(Node graphNode) {
+			return GraphView.createNamedGraph(this, graphNode);
+		}
+
+		@Override
+		public void add(Quad quad) {
+			add(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+		}
+
+		@Override
+		public void delete(Quad quad) {
+			delete(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+		}
+
+		@Override
+		public void add(Node g, Node s, Node p, Node o) {
+			super.add(g, s, p, o);
+			note(p);
+		}
+
+		@Override
+		public void delete(Node g, Node s, Node p, Node o) {
+			super.delete(g, s, p, o);
+			note(p);
+		}
+
+		@Override
+		public void deleteAny(Node g, Node s, Node p, Node o) {
+			super.deleteAny(g, s, p, o);
+			note(p);
+		}
+
+		@Override
+		public void addGraph(Node graphName, Graph graph) {
+			super.addGraph(graphName, graph);
+			note(Node.ANY);
+		}
+
+		@Override
+		public void removeGraph(Node graphName) {
+			super.removeGraph(graphName);
+			note(Node.ANY);
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			note(Node.ANY);
+		}
+
+		private void note(Node p) {
+			if (!matters(p))
+				return;
+			// Changes in a transaction are pending until it commits.
+			if (isInTransaction())
+				changes.set(true);
+			else
+				stale = true;
+		}
+
+		@Override
+		public void commit() {
+			super.commit();
+			committed.set(changes.get());
+			changes.remove();
+		}
+
+		@Override
+		public void abort() {
+			super.abort();
+			changes.remove();
+		}
+
+		@Override
+		public void end() {
+			boolean update = committed.get();
+			changes.remove();
+			committed.remove();
+			super.end();
+			if (update)
+				markStale();
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.apache.jena.datatypes.xsd.impl.RDFLangString ;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.NodeFactory ;
 import org.apache.jena.graph.Triple ;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.riot.protobuf.wire.PB_RDF.*;
 import org.apache.jena.riot.system.PrefixMap ;
 import org.apache.jena.riot.system.PrefixMapFactory ;
@@ -37,6 +38,9 @@ import org.apache.jena.riot.system.RiotLib;
 import org.apache.jena.sparql.core.Quad;
 //port org.apache.jena.sparql.core.Quad ;
 import org.apache.jena.sparql.core.Var ;
+import org.apache.jena.sparql.util.VectorDatatype ;
+
+import com.google.protobuf.ByteString ;
 
 /** Convert to and from Protobuf wire objects.
  * <p>
@@ -64,7 +68,7 @@ public class ProtobufConvert
         if ( ! node.isLiteral() )
             return null ;
         term.clear();
-        // Value cases : Integer, Double, Decimal
+        // Value cases : Integer, Double, Decimal, Vector
         String lex = node.getLiteralLexicalForm() ;
         RDFDatatype rdt = node.getLiteralDatatype() ;
 
@@ -115,6 +119,13 @@ public class ProtobufConvert
                 // Out of range for the type, ...
                 catch (Throwable ex) { }
             }
+        } else if ( rdt.equals(VectorDatatype.type) ) {
+            // Only if enabled, and if the value gives back the same term.
+            if ( ARQ.getContext().isTrue(ARQ.binaryVectorTerms) && VectorDatatype.isCanonical(node) ) {
+                double[] v = (double[])node.getLiteralValue() ;
+                term.setValVector(ByteString.copyFrom(VectorDatatype.toBytes(v))) ;
+                return term.build() ;
+            }
         }
         return null ;
     }
@@ -234,6 +245,10 @@ public class ProtobufConvert
                 RDFDatatype dt = XSDDatatype.XSDdecimal ;
                 return NodeFactory.createLiteralDT(lex, dt) ;
             }
+            case VALVECTOR : {
+                double[] v = VectorDatatype.fromBytes(term.getValVector().asReadOnlyByteBuffer()) ;
+                return NodeFactory.createLiteralByValue(v, VectorDatatype.type) ;
+            }
             case TERM_NOT_SET :
                 throw new RiotProtobufException("RDF_Term not set") ;
             default:
@@ -309,7 +324,7 @@ public class ProtobufConvert
         }
 
         if ( node.isLiteral() ) {
-            // Value cases : Integer, Double, Decimal
+            // Value cases : Integer, Double, Decimal, Vector
             if ( allowValues) {
                 RDF_Term term = toProtobufValue(node, termBuilder) ;
                 if ( term != null )
@@ -5325,6 +5325,25 @@ public final class PB_RDF {
      */
     org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_DecimalOrBuilder getValDecimalOrBuilder();
 
+    /**
+     * <pre>
+     * sim:vector, packed big-endian doubles.
+     * </pre>
+     *
+     * <code>bytes valVector = 23;</code>
+     * @return Whether the valVector field is set.
+     */
+    boolean hasValVector();
+    /**
+     * <pre>
+     * sim:vector, packed big-endian doubles.
+     * </pre>
+     *
+     * <code>bytes valVector = 23;</code>
+     * @return The valVector.
+     */
+    com.google.protobuf.ByteString getValVector();
+
     org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_Term.TermCase getTermCase();
   }
   /**
@@ -5382,6 +5401,7 @@ public final class PB_RDF {
       VALINTEGER(20),
       VALDOUBLE(21),
       VALDECIMAL(22),
+      VALVECTOR(23),
       TERM_NOT_SET(0);
       private final int value;
       private TermCase(int value) {
@@ -5411,6 +5431,7 @@ public final class PB_RDF {
           case 20: return VALINTEGER;
           case 21: return VALDOUBLE;
           case 22: return VALDECIMAL;
+          case 23: return VALVECTOR;
           case 0: return TERM_NOT_SET;
           default: return null;
         }
@@ -5786,6 +5807,35 @@ public final class PB_RDF {
       return org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_Decimal.getDefaultInstance();
     }
 
+    public static final int VALVECTOR_FIELD_NUMBER = 23;
+    /**
+     * <pre>
+     * sim:vector, packed big-endian doubles.
+     * </pre>
+     *
+     * <code>bytes valVector = 23;</code>
+     * @return Whether the valVector field is set.
+     */
+    @java.lang.Override
+    public boolean hasValVector() {
+      return termCase_ == 23;
+    }
+    /**
+     * <pre>
+     * sim:vector, packed big-endian doubles.
+     * </pre>
+     *
+     * <code>bytes valVector = 23;</code>
+     * @return The valVector.
+     */
+    @java.lang.Override
+    public com.google.protobuf.ByteString getValVector() {
+      if (termCase_ == 23) {
+        return (com.google.protobuf.ByteString) term_;
+      }
+      return com.google.protobuf.ByteString.EMPTY;
+    }
+
     private byte memoizedIsInitialized = -1;
     @java.lang.Override
     public final boolean isInitialized() {
@@ -5838,6 +5888,10 @@ public final class PB_RDF {
       if (termCase_ == 22) {
         output.writeMessage(22, (org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_Decimal) term_);
       }
+      if (termCase_ == 23) {
+        output.writeBytes(
+            23, (com.google.protobuf.ByteString) term_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -5897,6 +5951,11 @@ public final class PB_RDF {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(22, (org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_Decimal) term_);
       }
+      if (termCase_ == 23) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(
+              23, (com.google.protobuf.ByteString) term_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSize = size;
       return size;
@@ -5963,6 +6022,10 @@ public final class PB_RDF {
           if (!getValDecimal()
               .equals(other.getValDecimal())) return false;
           break;
+        case 23:
+          if (!getValVector()
+              .equals(other.getValVector())) return false;
+          break;
         case 0:
         default:
       }
@@ -6028,6 +6091,10 @@ public final class PB_RDF {
           hash = (37 * hash) + VALDECIMAL_FIELD_NUMBER;
           hash = (53 * hash) + getValDecimal().hashCode();
           break;
+        case 23:
+          hash = (37 * hash) + VALVECTOR_FIELD_NUMBER;
+          hash = (53 * hash) + getValVector().hashCode();
+          break;
         case 0:
         default:
       }
@@ -6336,6 +6403,10 @@ public final class PB_RDF {
             mergeValDecimal(other.getValDecimal());
             break;
           }
+          case VALVECTOR: {
+            setValVector(other.getValVector());
+            break;
+          }
           case TERM_NOT_SET: {
             break;
           }
@@ -6446,6 +6517,11 @@ public final class PB_RDF {
                 termCase_ = 22;
                 break;
               } // case 178
+              case 186: {
+                term_ = input.readBytes();
+                termCase_ = 23;
+                break;
+              } // case 186
               default: {
                 if (!super.parseUnknownField(input, extensionRegistry, tag)) {
                   done = true; // was an endgroup tag
@@ -7998,6 +8074,64 @@ public final class PB_RDF {
         return valDecimalBuilder_;
       }
 
+      /**
+       * <pre>
+       * sim:vector, packed big-endian doubles.
+       * </pre>
+       *
+       * <code>bytes valVector = 23;</code>
+       * @return Whether the valVector field is set.
+       */
+      public boolean hasValVector() {
+        return termCase_ == 23;
+      }
+      /**
+       * <pre>
+       * sim:vector, packed big-endian doubles.
+       * </pre>
+       *
+       * <code>bytes valVector = 23;</code>
+       * @return The valVector.
+       */
+      public com.google.protobuf.ByteString getValVector() {
+        if (termCase_ == 23) {
+          return (com.google.protobuf.ByteString) term_;
+        }
+        return com.google.protobuf.ByteString.EMPTY;
+      }
+      /**
+       * <pre>
+       * sim:vector, packed big-endian doubles.
+       * </pre>
+       *
+       * <code>bytes valVector = 23;</code>
+       * @param value The valVector to set.
+       * @return This builder for chaining.
+       */
+      public Builder setValVector(com.google.protobuf.ByteString value) {
+        if (value == null) { throw new NullPointerException(); }
+        termCase_ = 23;
+        term_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <pre>
+       * sim:vector, packed big-endian doubles.
+       * </pre>
+       *
+       * <code>bytes valVector = 23;</code>
+       * @return This builder for chaining.
+       */
+      public Builder clearValVector() {
+        if (termCase_ == 23) {
+          termCase_ = 0;
+          term_ = null;
+          onChanged();
+        }
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:RDF_Term)
     }
 
@@ -15262,7 +15396,7 @@ public final class PB_RDF {
       "NameH\000B\r\n\013literalKind\"+\n\013RDF_Decimal\022\r\n\005" +
       "value\030\001 \001(\022\022\r\n\005scale\030\002 \001(\021\"\027\n\007RDF_Var\022\014\n" +
       "\004name\030\001 \001(\t\"\t\n\007RDF_ANY\"\013\n\tRDF_UNDEF\"\014\n\nR" +
-      "DF_REPEAT\"\371\002\n\010RDF_Term\022\027\n\003iri\030\001 \001(\0132\010.RD" +
+      "DF_REPEAT\"\216\003\n\010RDF_Term\022\027\n\003iri\030\001 \001(\0132\010.RD" +
       "F_IRIH\000\022\033\n\005bnode\030\002 \001(\0132\n.RDF_BNodeH\000\022\037\n\007" +
       "literal\030\003 \001(\0132\014.RDF_LiteralH\000\022%\n\nprefixN" +
       "ame\030\004 \001(\0132\017.RDF_PrefixNameH\000\022\034\n\010variable" +
@@ -15271,22 +15405,23 @@ public final class PB_RDF {
       "\n\tundefined\030\010 \001(\0132\n.RDF_UNDEFH\000\022\035\n\006repea" +
       "t\030\t \001(\0132\013.RDF_REPEATH\000\022\024\n\nvalInteger\030\024 \001" +
       "(\022H\000\022\023\n\tvalDouble\030\025 \001(\001H\000\022\"\n\nvalDecimal\030" +
-      "\026 \001(\0132\014.RDF_DecimalH\000B\006\n\004term\"N\n\nRDF_Tri" +
-      "ple\022\024\n\001S\030\001 \001(\0132\t.RDF_Term\022\024\n\001P\030\002 \001(\0132\t.R" +
-      "DF_Term\022\024\n\001O\030\003 \001(\0132\t.RDF_Term\"b\n\010RDF_Qua" +
-      "d\022\024\n\001S\030\001 \001(\0132\t.RDF_Term\022\024\n\001P\030\002 \001(\0132\t.RDF" +
-      "_Term\022\024\n\001O\030\003 \001(\0132\t.RDF_Term\022\024\n\001G\030\004 \001(\0132\t" +
-      ".RDF_Term\"-\n\016RDF_PrefixDecl\022\016\n\006prefix\030\001 " +
-      "\001(\t\022\013\n\003uri\030\002 \001(\t\"\221\001\n\rRDF_StreamRow\022%\n\npr" +
-      "efixDecl\030\001 \001(\0132\017.RDF_PrefixDeclH\000\022\035\n\006tri" +
-      "ple\030\002 \001(\0132\013.RDF_TripleH\000\022\031\n\004quad\030\003 \001(\0132\t" +
-      ".RDF_QuadH\000\022\030\n\004base\030\004 \001(\0132\010.RDF_IRIH\000B\005\n" +
-      "\003row\")\n\nRDF_Stream\022\033\n\003row\030\001 \003(\0132\016.RDF_St" +
-      "reamRow\"&\n\014RDF_VarTuple\022\026\n\004vars\030\001 \003(\0132\010." +
-      "RDF_Var\"\'\n\rRDF_DataTuple\022\026\n\003row\030\001 \003(\0132\t." +
-      "RDF_Term\"(\n\tRDF_Graph\022\033\n\006triple\030\001 \003(\0132\013." +
-      "RDF_TripleB.\n\"org.apache.jena.riot.proto" +
-      "buf.wireB\006PB_RDFH\001b\006proto3"
+      "\026 \001(\0132\014.RDF_DecimalH\000\022\023\n\tvalVector\030\027 \001(\014" +
+      "H\000B\006\n\004term\"N\n\nRDF_Triple\022\024\n\001S\030\001 \001(\0132\t.RD" +
+      "F_Term\022\024\n\001P\030\002 \001(\0132\t.RDF_Term\022\024\n\001O\030\003 \001(\0132" +
+      "\t.RDF_Term\"b\n\010RDF_Quad\022\024\n\001S\030\001 \001(\0132\t.RDF_" +
+      "Term\022\024\n\001P\030\002 \001(\0132\t.RDF_Term\022\024\n\001O\030\003 \001(\0132\t." +
+      "RDF_Term\022\024\n\001G\030\004 \001(\0132\t.RDF_Term\"-\n\016RDF_Pr" +
+      "efixDecl\022\016\n\006prefix\030\001 \001(\t\022\013\n\003uri\030\002 \001(\t\"\221\001" +
+      "\n\rRDF_StreamRow\022%\n\nprefixDecl\030\001 \001(\0132\017.RD" +
+      "F_PrefixDeclH\000\022\035\n\006triple\030\002 \001(\0132\013.RDF_Tri" +
+      "pleH\000\022\031\n\004quad\030\003 \001(\0132\t.RDF_QuadH\000\022\030\n\004base" +
+      "\030\004 \001(\0132\010.RDF_IRIH\000B\005\n\003row\")\n\nRDF_Stream\022" +
+      "\033\n\003row\030\001 \003(\0132\016.RDF_StreamRow\"&\n\014RDF_VarT" +
+      "uple\022\026\n\004vars\030\001 \003(\0132\010.RDF_Var\"\'\n\rRDF_Data" +
+      "Tuple\022\026\n\003row\030\001 \003(\0132\t.RDF_Term\"(\n\tRDF_Gra" +
+      "ph\022\033\n\006triple\030\001 \003(\0132\013.RDF_TripleB.\n\"org.a" +
+      "pache.jena.riot.protobuf.wireB\006PB_RDFH\001b" +
+      "\006proto3"
     };
     descriptor = com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
@@ -15351,7 +15486,7 @@ public final class PB_RDF {
     internal_static_RDF_Term_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_RDF_Term_descriptor,
-        new java.lang.String[] { "Iri", "Bnode", "Literal", "PrefixName", "Variable", "TripleTerm", "Any", "Undefined", "Repeat", "ValInteger", "ValDouble", "ValDecimal", "Term", });
+        new java.lang.String[] { "Iri", "Bnode", "Literal", "PrefixName", "Variable", "TripleTerm", "Any", "Undefined", "Repeat", "ValInteger", "ValDouble", "ValDecimal", "ValVector", "Term", });
     internal_static_RDF_Triple_descriptor =
       getDescriptor().getMessageTypes().get(10);
     internal_static_RDF_Triple_fieldAccessorTable = new
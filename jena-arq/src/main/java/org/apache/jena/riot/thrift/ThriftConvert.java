@@ -31,12 +31,14 @@ import org.apache.jena.datatypes.xsd.impl.RDFLangString;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapFactory;
 import org.apache.jena.riot.system.RiotLib;
 import org.apache.jena.riot.thrift.wire.*;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.util.VectorDatatype;
 import org.apache.thrift.TDeserializer;
 import org.apache.thrift.TException;
 import org.apache.thrift.TSerializer;
@@ -55,7 +57,7 @@ import org.apache.thrift.protocol.TCompactProtocol;
  */
 public class ThriftConvert
 {
-    /** Attempt to encode a node by value (integer, decimal, double) into an RDF_term.
+    /** Attempt to encode a node by value (integer, decimal, double, sim:vector) into an RDF_term.
      * @param node
      * @param term
      * @return true if the term was set, else false.
@@ -65,7 +67,7 @@ public class ThriftConvert
         if ( ! node.isLiteral() )
             return false;
 
-        // Value cases : Integer, Double, Decimal
+        // Value cases : Integer, Double, Decimal, Vector
         String lex = node.getLiteralLexicalForm();
         RDFDatatype rdt = node.getLiteralDatatype();
 
@@ -116,6 +118,13 @@ public class ThriftConvert
                 // Out of range for the type, ...
                 catch (Throwable ex) { }
             }
+        } else if ( rdt.equals(VectorDatatype.type) ) {
+            // Only if enabled, and if the value gives back the same term.
+            if ( ARQ.getContext().isTrue(ARQ.binaryVectorTerms) && VectorDatatype.isCanonical(node) ) {
+                double[] v = (double[])node.getLiteralValue();
+                term.setValVector(VectorDatatype.toBytes(v));
+                return true;
+            }
         }
         return false;
     }
@@ -164,7 +173,7 @@ public class ThriftConvert
         }
 
         if ( node.isLiteral() ) {
-            // Value cases : Integer, Double, Decimal
+            // Value cases : Integer, Double, Decimal, Vector
             if ( allowValues) {
                 boolean b = toThriftValue(node, term);
                 if ( b /* term.isSet() */ )
@@ -303,6 +312,11 @@ public class ThriftConvert
             return NodeFactory.createLiteralDT(lex, dt);
         }
 
+        if ( term.isSetValVector() ) {
+            double[] v = VectorDatatype.fromBytes(term.bufferForValVector());
+            return NodeFactory.createLiteralByValue(v, VectorDatatype.type);
+        }
+
         if ( term.isSetTripleTerm() ) {
             RDF_Triple rt = term.getTripleTerm();
             Triple t = convert(rt, pmap);
@@ -21,6 +21,7 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
   private static final org.apache.thrift.protocol.TField VAL_INTEGER_FIELD_DESC = new org.apache.thrift.protocol.TField("valInteger", org.apache.thrift.protocol.TType.I64, (short)10);
   private static final org.apache.thrift.protocol.TField VAL_DOUBLE_FIELD_DESC = new org.apache.thrift.protocol.TField("valDouble", org.apache.thrift.protocol.TType.DOUBLE, (short)11);
   private static final org.apache.thrift.protocol.TField VAL_DECIMAL_FIELD_DESC = new org.apache.thrift.protocol.TField("valDecimal", org.apache.thrift.protocol.TType.STRUCT, (short)12);
+  private static final org.apache.thrift.protocol.TField VAL_VECTOR_FIELD_DESC = new org.apache.thrift.protocol.TField("valVector", org.apache.thrift.protocol.TType.STRING, (short)13);
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -35,7 +36,8 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
     TRIPLE_TERM((short)9, "tripleTerm"),
     VAL_INTEGER((short)10, "valInteger"),
     VAL_DOUBLE((short)11, "valDouble"),
-    VAL_DECIMAL((short)12, "valDecimal");
+    VAL_DECIMAL((short)12, "valDecimal"),
+    VAL_VECTOR((short)13, "valVector");
 
     private static final java.util.Map<java.lang.String, _Fields> byName = new java.util.HashMap<java.lang.String, _Fields>();
 
@@ -75,6 +77,8 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
           return VAL_DOUBLE;
         case 12: // VAL_DECIMAL
           return VAL_DECIMAL;
+        case 13: // VAL_VECTOR
+          return VAL_VECTOR;
         default:
           return null;
       }
@@ -144,6 +148,8 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.DOUBLE)));
     tmpMap.put(_Fields.VAL_DECIMAL, new org.apache.thrift.meta_data.FieldMetaData("valDecimal", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, RDF_Decimal.class)));
+    tmpMap.put(_Fields.VAL_VECTOR, new org.apache.thrift.meta_data.FieldMetaData("valVector", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)));
     metaDataMap = java.util.Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(RDF_Term.class, metaDataMap);
   }
@@ -236,6 +242,18 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
     return x;
   }
 
+  public static RDF_Term valVector(java.nio.ByteBuffer value) {
+    RDF_Term x = new RDF_Term();
+    x.setValVector(value);
+    return x;
+  }
+
+  public static RDF_Term valVector(byte[] value) {
+    RDF_Term x = new RDF_Term();
+    x.setValVector  (java.nio.ByteBuffer.wrap(value.clone()));
+    return x;
+  }
+
 
   @Override
   protected void checkType(_Fields setField, java.lang.Object value) throws java.lang.ClassCastException {
@@ -300,6 +318,11 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
           break;
         }
         throw new java.lang.ClassCastException("Was expecting value of type RDF_Decimal for field 'valDecimal', but got " + value.getClass().getSimpleName());
+      case VAL_VECTOR:
+        if (value instanceof java.nio.ByteBuffer) {
+          break;
+        }
+        throw new java.lang.ClassCastException("Was expecting value of type java.nio.ByteBuffer for field 'valVector', but got " + value.getClass().getSimpleName());
       default:
         throw new java.lang.IllegalArgumentException("Unknown field id " + setField);
     }
@@ -428,6 +451,15 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, field.type);
             return null;
           }
+        case VAL_VECTOR:
+          if (field.type == VAL_VECTOR_FIELD_DESC.type) {
+            java.nio.ByteBuffer valVector;
+            valVector = iprot.readBinary();
+            return valVector;
+          } else {
+            org.apache.thrift.protocol.TProtocolUtil.skip(iprot, field.type);
+            return null;
+          }
         default:
           throw new java.lang.IllegalStateException("setField wasn't null, but didn't match any of the case statements!");
       }
@@ -488,6 +520,10 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
         RDF_Decimal valDecimal = (RDF_Decimal)value_;
         valDecimal.write(oprot);
         return;
+      case VAL_VECTOR:
+        java.nio.ByteBuffer valVector = (java.nio.ByteBuffer)value_;
+        oprot.writeBinary(valVector);
+        return;
       default:
         throw new java.lang.IllegalStateException("Cannot write union with unknown field " + setField_);
     }
@@ -556,6 +592,10 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
           valDecimal = new RDF_Decimal();
           valDecimal.read(iprot);
           return valDecimal;
+        case VAL_VECTOR:
+          java.nio.ByteBuffer valVector;
+          valVector = iprot.readBinary();
+          return valVector;
         default:
           throw new java.lang.IllegalStateException("setField wasn't null, but didn't match any of the case statements!");
       }
@@ -615,6 +655,10 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
         RDF_Decimal valDecimal = (RDF_Decimal)value_;
         valDecimal.write(oprot);
         return;
+      case VAL_VECTOR:
+        java.nio.ByteBuffer valVector = (java.nio.ByteBuffer)value_;
+        oprot.writeBinary(valVector);
+        return;
       default:
         throw new java.lang.IllegalStateException("Cannot write union with unknown field " + setField_);
     }
@@ -647,6 +691,8 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
         return VAL_DOUBLE_FIELD_DESC;
       case VAL_DECIMAL:
         return VAL_DECIMAL_FIELD_DESC;
+      case VAL_VECTOR:
+        return VAL_VECTOR_FIELD_DESC;
       default:
         throw new java.lang.IllegalArgumentException("Unknown field id " + setField);
     }
@@ -825,6 +871,29 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
     value_ = java.util.Objects.requireNonNull(value,"_Fields.VAL_DECIMAL");
   }
 
+  public byte[] getValVector() {
+    setValVector(org.apache.thrift.TBaseHelper.rightSize(bufferForValVector()));
+    java.nio.ByteBuffer b = bufferForValVector();
+    return b == null ? null : b.array();
+  }
+
+  public java.nio.ByteBuffer bufferForValVector() {
+    if (getSetField() == _Fields.VAL_VECTOR) {
+      return org.apache.thrift.TBaseHelper.copyBinary((java.nio.ByteBuffer)getFieldValue());
+    } else {
+      throw new java.lang.RuntimeException("Cannot get field 'valVector' because union is currently set to " + getFieldDesc(getSetField()).name);
+    }
+  }
+
+  public void setValVector(byte[] value) {
+    setValVector  (java.nio.ByteBuffer.wrap(value.clone()));
+  }
+
+  public void setValVector(java.nio.ByteBuffer value) {
+    setField_ = _Fields.VAL_VECTOR;
+    value_ = java.util.Objects.requireNonNull(value,"_Fields.VAL_VECTOR");
+  }
+
   public boolean isSetIri() {
     return setField_ == _Fields.IRI;
   }
@@ -885,6 +954,11 @@ public class RDF_Term extends org.apache.thrift.TUnion<RDF_Term, RDF_Term._Field
   }
 
 
+  public boolean isSetValVector() {
+    return setField_ == _Fields.VAL_VECTOR;
+  }
+
+
   public boolean equals(java.lang.Object other) {
     if (other instanceof RDF_Term) {
       return equals((RDF_Term)other);
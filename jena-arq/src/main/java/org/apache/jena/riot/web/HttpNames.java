@@ -86,6 +86,7 @@ public class HttpNames
     public static final String paramCallback        = "callback" ;
     public static final String paramForceAccept     = "force-accept" ;  // Force the accept header at the last moment
     public static final String paramTimeout         = "timeout" ;
+    public static final String paramExplain         = "explain" ;         // "analyze": execution statistics rather than results
 
     public static final String METHOD_DELETE        = "DELETE";
     public static final String METHOD_HEAD          = "HEAD";
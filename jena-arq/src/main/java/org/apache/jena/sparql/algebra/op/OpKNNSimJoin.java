@@ -5,6 +5,8 @@ import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.join.QueryIterKNNSimJoin;
+import org.apache.jena.sparql.engine.join.SharedScan;
+import org.apache.jena.sparql.engine.join.SimJoinInputs;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.sse.Tags;
 
@@ -42,8 +44,9 @@ public class OpKNNSimJoin extends OpSimJoin {
 	}
 
 	@Override
-	public QueryIterator createIterator(QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
-		return QueryIterKNNSimJoin.createknn(left, right, this, execCxt);
+	public QueryIterator createIterator(QueryIterator left, QueryIterator right, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt) {
+		return QueryIterKNNSimJoin.createknn(left, right, this, shared, inputs, execCxt);
 	}
 
 }
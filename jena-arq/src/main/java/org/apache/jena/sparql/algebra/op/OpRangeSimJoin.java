@@ -5,6 +5,8 @@ import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.join.QueryIterRangeSimJoin;
+import org.apache.jena.sparql.engine.join.SharedScan;
+import org.apache.jena.sparql.engine.join.SimJoinInputs;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.sse.Tags;
 
@@ -38,8 +40,9 @@ public class OpRangeSimJoin extends OpSimJoin implements Op {
 	}
 
 	@Override
-	public QueryIterator createIterator(QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
-		return QueryIterRangeSimJoin.createRange(left, right, this, execCxt);
+	public QueryIterator createIterator(QueryIterator left, QueryIterator right, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt) {
+		return QueryIterRangeSimJoin.createRange(left, right, this, shared, inputs, execCxt);
 	}
 
 }
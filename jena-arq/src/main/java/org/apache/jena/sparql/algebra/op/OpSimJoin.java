@@ -1,15 +1,13 @@
 package org.apache.jena.sparql.algebra.op;
 
-import java.util.Map;
-
-import org.apache.jena.atlas.lib.PairOfSameType;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpVisitor;
 import org.apache.jena.sparql.algebra.Transform;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
-import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.engine.join.SharedScan;
+import org.apache.jena.sparql.engine.join.SimJoinInputs;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.util.NodeIsomorphismMap;
 
@@ -18,7 +16,6 @@ public abstract class OpSimJoin extends Op2 {
 	protected String distance;
 	protected ExprList leftAttributes;
 	protected ExprList rightAttributes;
-	protected Map<Expr, PairOfSameType<Number>> minMax;
 	protected Var v;
 
 	protected OpSimJoin(Op left, Op right) {
@@ -87,16 +84,17 @@ public abstract class OpSimJoin extends Op2 {
 	public abstract int getTop();
 	public abstract double getWithin();
 
-	public abstract QueryIterator createIterator(QueryIterator left, QueryIterator right, ExecutionContext execCxt);
-
-	public void setNormMap(Map<Expr, PairOfSameType<Number>> condensedMinMax) {
-		this.minMax = condensedMinMax;
+	public QueryIterator createIterator(QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
+		return createIterator(left, right, null, SimJoinInputs.UNKNOWN, execCxt);
 	}
-	
 
-	public Map<Expr, PairOfSameType<Number>> getMinMax() {
-		return minMax;
-	}
+	/**
+	 * The iterator of one evaluation of the join, given what is known of its inputs. When
+	 * both inputs are the rows of one evaluation of the same pattern, {@code shared} holds
+	 * those rows; otherwise it is null.
+	 */
+	public abstract QueryIterator createIterator(QueryIterator left, QueryIterator right, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt);
 
 	public Var getAsVar() {
 		return v;
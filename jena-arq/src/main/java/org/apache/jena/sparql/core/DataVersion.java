@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.core;
+
+/**
+ * A {@link DatasetGraph} that can tell which committed version of its data the
+ * current transaction sees.
+ * <p>
+ * Two read transactions that see the same version see the same data, so results
+ * computed from the data in one (for example, the index of a similarity join) can be
+ * reused in the other.
+ */
+public interface DataVersion {
+
+    /** No version: the data may differ from any committed version. */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * The version of the data seen by the current thread's transaction.
+     * Returns {@link #UNKNOWN} if not in a transaction, or in a transaction
+     * that may have changed the data.
+     */
+    public long getDataVersion();
+
+    /**
+     * The version of the data of a dataset seen by the current thread, looking through
+     * {@link DatasetGraphWrapper}s that do not change the view of the data.
+     * Returns {@link #UNKNOWN} if the dataset does not record versions.
+     */
+    public static long dataVersion(DatasetGraph dsg) {
+        while ( dsg instanceof DatasetGraphWrapper && ! (dsg instanceof DataVersion) ) {
+            if ( dsg instanceof DatasetGraphWrapperView )
+                return UNKNOWN;
+            dsg = ((DatasetGraphWrapper)dsg).getWrapped();
+        }
+        if ( dsg instanceof DataVersion )
+            return ((DataVersion)dsg).getDataVersion();
+        return UNKNOWN;
+    }
+}
@@ -50,7 +50,7 @@ import org.slf4j.Logger;
  * A {@link DatasetGraph} backed by an {@link QuadTable}. By default, this is a
  * {@link HexTable} designed for high-speed in-memory operation.
  */
-public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Transactional {
+public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Transactional, DataVersion {
 
     private static final Logger log = getLogger(DatasetGraphInMemory.class);
 
@@ -106,6 +106,14 @@ public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Tr
         return transactionType.get();
     }
 
+    /** The generation read by the current transaction, if it is a read transaction. */
+    @Override
+    public long getDataVersion() {
+        if ( ! isInTransaction() || transactionMode() == WRITE )
+            return UNKNOWN;
+        return version.get();
+    }
+
     private void transactionMode(final ReadWrite readWrite) {
         transactionMode.set(readWrite);
     }
@@ -0,0 +1,277 @@
+package org.apache.jena.sparql.engine.cluster;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Seeding and assignment steps shared by the k-means and k-medoids solvers, and
+ * the parallel loop over rows of the DBSCAN solver.
+ * <p>
+ * Rows are assigned in ranges of {@link #THRESHOLD} rows, split in halves. With
+ * {@link ARQ#clusterParallelism} threads the halves run on a fork/join pool; otherwise
+ * one after the other. Partial sums are added in the same order either way, so the
+ * result does not depend on the number of threads.
+ */
+final class Assignment implements AutoCloseable {
+
+	static final long SEED = 42;
+	static final int THRESHOLD = 1024;
+
+	private final ForkJoinPool pool;
+
+	Assignment(Context context) {
+		int parallelism = context.getInt(ARQ.clusterParallelism, 1);
+		this.pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+	}
+
+	@Override
+	public void close() {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+	/**
+	 * k-means++ seeding: the first seed is a random row, and each next seed is a row drawn
+	 * with probability proportional to its distance to the nearest seed so far.
+	 * If fewer than k rows are distinct, the remaining seeds are the first rows not yet chosen.
+	 */
+	static int[] seeds(PointStore store, int k, Random random) {
+		return seeds(store, ClusterDistances.MANHATTAN, k, random);
+	}
+
+	static int[] seeds(PointStore store, DistFunc distance, int k, Random random) {
+		int n = store.size();
+		int[] seeds = new int[k];
+		boolean[] chosen = new boolean[n];
+		double[] nearest = new double[n];
+		seeds[0] = random.nextInt(n);
+		chosen[seeds[0]] = true;
+		for (int r = 0; r < n; r++)
+			nearest[r] = ClusterDistances.distance(distance, store, r, seeds[0]);
+		for (int i = 1; i < k; i++) {
+			double total = 0;
+			for (int r = 0; r < n; r++)
+				total += nearest[r];
+			int next = -1;
+			if (total > 0) {
+				double x = random.nextDouble() * total;
+				for (int r = 0; r < n; r++) {
+					if (nearest[r] == 0)
+						continue;
+					next = r;
+					x -= nearest[r];
+					if (x < 0)
+						break;
+				}
+			} else {
+				for (int r = 0; next < 0; r++) {
+					if (!chosen[r])
+						next = r;
+				}
+			}
+			seeds[i] = next;
+			chosen[next] = true;
+			for (int r = 0; r < n; r++)
+				nearest[r] = Math.min(nearest[r], ClusterDistances.distance(distance, store, r, next));
+		}
+		return seeds;
+	}
+
+	/** Sums of the coordinates and sizes of the clusters; coordinates missing ({@code NaN}) are not added. */
+	static class Sums {
+		final double[] sums;
+		final int[] sizes;
+
+		Sums(int k, int dims) {
+			sums = new double[k * dims];
+			sizes = new int[k];
+		}
+
+		void add(Sums other) {
+			for (int i = 0; i < sums.length; i++)
+				sums[i] += other.sums[i];
+			for (int i = 0; i < sizes.length; i++)
+				sizes[i] += other.sizes[i];
+		}
+	}
+
+	/** Assign each row to its nearest centroid (k centroids, row-major) and sum the clusters. */
+	Sums assignToCentroids(PointStore store, double[] centroids, int k, int[] assignment) {
+		return assignToCentroids(store, ClusterDistances.MANHATTAN, centroids, k, assignment);
+	}
+
+	Sums assignToCentroids(PointStore store, DistFunc distance, double[] centroids, int k, int[] assignment) {
+		CentroidTask task = new CentroidTask(store, distance, centroids, k, assignment, 0, store.size());
+		return (pool != null) ? pool.invoke(task) : task.compute();
+	}
+
+	/** Assign each row to its nearest medoid; the distance to it is set in {@code cost}. */
+	void assignToMedoids(DistanceMatrix distances, int[] medoids, int[] assignment, double[] cost) {
+		MedoidTask task = new MedoidTask(distances, medoids, assignment, cost, 0, distances.size());
+		if (pool != null)
+			pool.invoke(task);
+		else
+			task.compute();
+	}
+
+	/** Apply the action to the rows {@code [0, n)}, in parallel if there is a pool: rows must be independent. */
+	void forEachRow(int n, IntConsumer action) {
+		RowTask task = new RowTask(action, 0, n);
+		if (pool != null)
+			pool.invoke(task);
+		else
+			task.compute();
+	}
+
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntConsumer action;
+		private final int start;
+		private final int end;
+
+		RowTask(IntConsumer action, int start, int end) {
+			this.action = action;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > THRESHOLD) {
+				int mid = (start + end) >>> 1;
+				RowTask left = new RowTask(action, start, mid);
+				RowTask right = new RowTask(action, mid, end);
+				if (pool != null) {
+					invokeAll(left, right);
+				} else {
+					left.compute();
+					right.compute();
+				}
+				return;
+			}
+			for (int r = start; r < end; r++)
+				action.accept(r);
+		}
+	}
+
+	private class CentroidTask extends RecursiveTask<Sums> {
+		private static final long serialVersionUID = 1L;
+		private final PointStore store;
+		private final DistFunc distance;
+		private final double[] centroids;
+		private final int k;
+		private final int[] assignment;
+		private final int start;
+		private final int end;
+
+		CentroidTask(PointStore store, DistFunc distance, double[] centroids, int k, int[] assignment, int start, int end) {
+			this.store = store;
+			this.distance = distance;
+			this.centroids = centroids;
+			this.k = k;
+			this.assignment = assignment;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Sums compute() {
+			if (end - start > THRESHOLD) {
+				int mid = (start + end) >>> 1;
+				CentroidTask left = new CentroidTask(store, distance, centroids, k, assignment, start, mid);
+				CentroidTask right = new CentroidTask(store, distance, centroids, k, assignment, mid, end);
+				Sums sums;
+				if (pool != null) {
+					invokeAll(left, right);
+					sums = left.join();
+					sums.add(right.join());
+				} else {
+					sums = left.compute();
+					sums.add(right.compute());
+				}
+				return sums;
+			}
+			int dims = store.dims();
+			double[] data = store.data();
+			Sums sums = new Sums(k, dims);
+			for (int r = start; r < end; r++) {
+				int offset = store.offset(r);
+				double minDist = Double.MAX_VALUE;
+				int cluster = 0;
+				for (int j = 0; j < k; j++) {
+					double dist = distance.distance(data, offset, centroids, j * dims, dims);
+					if (dist < minDist) {
+						minDist = dist;
+						cluster = j;
+					}
+				}
+				assignment[r] = cluster;
+				sums.sizes[cluster]++;
+				for (int d = 0; d < dims; d++) {
+					double x = data[offset + d];
+					if (x == x) {
+						sums.sums[cluster * dims + d] += x;
+					}
+				}
+			}
+			return sums;
+		}
+	}
+
+	private class MedoidTask extends RecursiveTask<Void> {
+		private static final long serialVersionUID = 1L;
+		private final DistanceMatrix distances;
+		private final int[] medoids;
+		private final int[] assignment;
+		private final double[] cost;
+		private final int start;
+		private final int end;
+
+		MedoidTask(DistanceMatrix distances, int[] medoids, int[] assignment, double[] cost, int start, int end) {
+			this.distances = distances;
+			this.medoids = medoids;
+			this.assignment = assignment;
+			this.cost = cost;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Void compute() {
+			if (end - start > THRESHOLD) {
+				int mid = (start + end) >>> 1;
+				MedoidTask left = new MedoidTask(distances, medoids, assignment, cost, start, mid);
+				MedoidTask right = new MedoidTask(distances, medoids, assignment, cost, mid, end);
+				if (pool != null) {
+					invokeAll(left, right);
+				} else {
+					left.compute();
+					right.compute();
+				}
+				return null;
+			}
+			for (int r = start; r < end; r++) {
+				double minDist = Double.POSITIVE_INFINITY;
+				int cluster = -1;
+				for (int i = 0; i < medoids.length; i++) {
+					double distance = distances.get(r, medoids[i]);
+					if (distance < minDist) {
+						minDist = distance;
+						cluster = i;
+					}
+				}
+				assignment[r] = cluster;
+				cost[r] = minDist;
+			}
+			return null;
+		}
+	}
+}
@@ -6,84 +6,113 @@ import java.util.Map;
 
 import org.apache.jena.atlas.lib.PairOfSameType;
 import org.apache.jena.graph.Node;
-import org.apache.jena.sparql.core.Var;
+
 import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.DistanceKernels;
+import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.PointStore.Point;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
 
 import com.eatthepath.jvptree.DistanceFunction;
 
+/**
+ * Distances between the points of a clustering. By default the clustering solvers use
+ * {@link #MANHATTAN}; {@code CLUSTER BY} configurations can name any distance of the
+ * {@link Distances} registry instead, whose primitive kernels the solvers then call.
+ */
 public class ClusterDistances {
 
-	static public double manhattan(Binding b1, Binding b2, VarExprList vars) {
-	    double d = 0.0;
-	    for (Var v : vars.getVars()) {
-	        Node n1 = b1.get(v);
-	        Node n2 = b2.get(v);
-	        if (n1 != null && n2 != null && n1.isLiteral() && n2.isLiteral()) {
-	            Object val1 = n1.getLiteralValue();
-	            Object val2 = n2.getLiteralValue();
-	            if (val1 instanceof String && val2 instanceof String) {
-	                // Both are vector strings
-	                List<Double> vec1 = parseVectorString((String) val1);
-	                List<Double> vec2 = parseVectorString((String) val2);
-	                int size = Math.min(vec1.size(), vec2.size());
-	                for (int i = 0; i < size; i++) {
-	                    d += Math.abs(vec1.get(i) - vec2.get(i));
-	                }
-	            } else if (val1 instanceof Number && val2 instanceof Number) {
-	                // Both are numbers
-	                d += Math.abs(((Number) val1).doubleValue() - ((Number) val2).doubleValue());
-	            }
-	        }
-	    }
-	    return d;
+	private static final DistanceKernels KERNELS = DistanceKernels.get();
+
+	/** IRI of the default distance. */
+	public static final String DEFAULT = Distances.NS + "manhattan";
+
+	/**
+	 * Manhattan distance over raw coordinates, where coordinates missing ({@code NaN}) on
+	 * either side do not contribute: the default distance of the clustering solvers.
+	 */
+	public static final DistFunc MANHATTAN = new DistFunc() {
+		@Override
+		public boolean isMetric() {
+			return true;
+		}
+
+		@Override
+		public boolean isNormalised() {
+			return false;
+		}
+
+		@Override
+		public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+			double d = 0;
+			for (int i = 0; i < p1.size(); i++) {
+				Object x = p1.get(i).isLiteral() ? p1.get(i).getLiteralValue() : null;
+				Object y = p2.get(i).isLiteral() ? p2.get(i).getLiteralValue() : null;
+				if (x instanceof Number && y instanceof Number)
+					d += Math.abs(((Number) x).doubleValue() - ((Number) y).doubleValue());
+			}
+			return d;
+		}
+
+		@Override
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+			return manhattan(a, aOffset, b, bOffset, dims);
+		}
+
+		@Override
+		public double coordinate(double a, double b) {
+			double x = Math.abs(a - b);
+			return (x == x) ? x : 0;
+		}
+
+		@Override
+		public double coordinateRange(double radius) {
+			return radius;
+		}
+	};
+
+	/**
+	 * The distance named by an IRI: {@link #MANHATTAN} for {@link #DEFAULT}, else the
+	 * distance registered in {@link Distances}; null if there is none.
+	 */
+	public static DistFunc get(String iri) {
+		if (iri == null || DEFAULT.equalsIgnoreCase(iri))
+			return MANHATTAN;
+		return Distances.getDistance(iri);
 	}
 
-	
-	static public List<Double> parseVectorString(String vectorString) {
-
-	    vectorString = vectorString.replaceAll("\\[", "").replaceAll("\\]", "").trim();
-	    String[] parts = vectorString.split(",");
-
-	    List<Double> vector = new ArrayList<>();
-	    for (String part : parts) {
-
-	        part = part.trim();
-	  
-	        if (part.startsWith("\"")) {
-	            part = part.substring(1);
-	        }
-	        if (part.endsWith("\"")) {
-	            part = part.substring(0, part.length() - 1);
-	        }
-	        try {
-	            vector.add(Double.parseDouble(part));
-	        } catch (NumberFormatException e) {
-	            throw new IllegalArgumentException("Cannot parse '" + part + "' to Double in vector string: " + vectorString, e);
-	        }
-	    }
-	    return vector;
+	static double distance(DistFunc distance, PointStore store, int row1, int row2) {
+		return distance.distance(store.data(), store.offset(row1), store.data(), store.offset(row2), store.dims());
 	}
-	
-	public static DistanceFunction<Binding> generateManhattan(VarExprList clusterVars) {
-		return new DistanceFunction<Binding>() {
-
-			@Override
-			public double getDistance(Binding firstPoint, Binding secondPoint) {
-				double res = 0;
-				for(Var v : clusterVars.getVars()) {
-					Node x = firstPoint.get(v);
-					Node y = secondPoint.get(v);
-					res += Math.abs(((Number)x.getLiteralValue()).doubleValue()-((Number)y.getLiteralValue()).doubleValue());
-				}
-				return res;
-			}
-		};
+
+	/**
+	 * Manhattan distance between two points laid out as in a {@link PointStore}.
+	 * Coordinates missing ({@code NaN}) on either side do not contribute.
+	 */
+	static public double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		return KERNELS.manhattanSkipNaN(a, aOffset, b, bOffset, dims);
 	}
-	
-	
-	
-	
+
+	static public double manhattan(PointStore store, int row1, int row2) {
+		return manhattan(store.data(), store.offset(row1), store.data(), store.offset(row2), store.dims());
+	}
+
+	/** Read all the bindings of the iterator and extract the coordinates of the cluster variables. */
+	public static PointStore createStore(QueryIterator iter, VarExprList clusterVars) {
+		List<Binding> rows = new ArrayList<>();
+		while (iter.hasNext()) {
+			rows.add(iter.nextBinding());
+		}
+		return PointStore.create(rows, clusterVars.getVars());
+	}
+
+	public static DistanceFunction<Point> generateManhattan(int dims) {
+		return (p1, p2) -> manhattan(p1.data, p1.offset, p2.data, p2.offset, dims);
+	}
+
 }
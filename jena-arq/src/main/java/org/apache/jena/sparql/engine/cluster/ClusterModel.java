@@ -0,0 +1,72 @@
+package org.apache.jena.sparql.engine.cluster;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+
+/**
+ * The centres (centroids or medoids) of the clusters found by a solver, to assign new
+ * points to the cluster of their nearest centre without clustering again.
+ */
+public class ClusterModel {
+
+	private final double[] centres;
+	private final int dims;
+	private final DistFunc distance;
+	private final int first;
+
+	/**
+	 * @param centres the centres, row-major
+	 * @param first the number of the cluster of the first centre in the solver output:
+	 *     centre {@code j} is cluster {@code first + j}
+	 */
+	public ClusterModel(double[] centres, int dims, DistFunc distance, int first) {
+		this.centres = centres;
+		this.dims = dims;
+		this.distance = distance;
+		this.first = first;
+	}
+
+	/** Number of clusters. */
+	public int size() {
+		return (dims == 0) ? 0 : centres.length / dims;
+	}
+
+	public int dims() {
+		return dims;
+	}
+
+	/** The number, in the solver output, of the cluster of centre 0. */
+	public int first() {
+		return first;
+	}
+
+	/** A copy of the coordinates of centre {@code j}. */
+	public double[] centre(int j) {
+		double[] centre = new double[dims];
+		System.arraycopy(centres, j * dims, centre, 0, dims);
+		return centre;
+	}
+
+	/** Index of the centre nearest to the point; the first if no distance is defined. */
+	public int nearest(double[] point, int offset) {
+		double minDist = Double.POSITIVE_INFINITY;
+		int nearest = 0;
+		for (int j = 0; j < size(); j++) {
+			double dist = distance.distance(point, offset, centres, j * dims, dims);
+			if (dist < minDist) {
+				minDist = dist;
+				nearest = j;
+			}
+		}
+		return nearest;
+	}
+
+	/** The cluster of the point, as the solver numbers it. */
+	public Node cluster(double[] point) {
+		if (point.length != dims)
+			throw new IllegalArgumentException("Point of " + point.length + " coordinates, clusters of " + dims);
+		return NodeFactory.createLiteralByValue(first + nearest(point, 0), XSDDatatype.XSDinteger);
+	}
+}
@@ -6,10 +6,33 @@ import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.Context;
 
 public interface ClusteringSolver {
 
 	void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar);
+
+	/** Solve with the settings of the query execution context; by default there are none. */
+	default void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		solve(iter, clusterVars, clusterVar);
+	}
+
 	Iterator<Binding> iterator();
+
+	/**
+	 * The centres of the clusters of the last {@code solve}, to assign new points;
+	 * null for methods without centres, such as DBSCAN.
+	 */
+	default ClusterModel model() {
+		return null;
+	}
+
+	/**
+	 * A model of the given centres, with the distance of this solver: centres kept from
+	 * an earlier {@link #model()}. Null for methods without centres.
+	 */
+	default ClusterModel model(double[] centres, int dims, int first) {
+		return null;
+	}
 	
 }
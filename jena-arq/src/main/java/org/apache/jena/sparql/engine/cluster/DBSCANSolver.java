@@ -14,7 +14,8 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingBuilder;
 import org.apache.jena.sparql.engine.binding.BindingFactory;
-import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.PointStore.Point;
 
 import com.eatthepath.jvptree.VPTree;
 
@@ -24,6 +25,7 @@ public class DBSCANSolver implements ClusteringSolver {
 	protected int minElements;
 	private List<List<Binding>> clusters;
 	private List<Binding> results = new ArrayList<>();
+	private PointStore store;
 
 	public DBSCANSolver(double epsilon, int minElements) {
 		this.clusters = new ArrayList<>();
@@ -35,54 +37,53 @@ public class DBSCANSolver implements ClusteringSolver {
 	//implementation based on the one of Apache Commons Math
 	@Override
 	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
-		BufferedQueryIteratorFactory factory = new BufferedQueryIteratorFactory(iter); 
-        VPTree<Binding, Binding> vptree = new VPTree<Binding, Binding>(ClusterDistances.generateManhattan(clusterVars), 
-        		factory.createBufferedQueryIterator().consume());
-        QueryIterator rewindable = factory.createBufferedQueryIterator();
+		store = ClusterDistances.createStore(iter, clusterVars);
+		List<Point> points = store.points();
+        VPTree<Point, Point> vptree = new VPTree<Point, Point>(ClusterDistances.generateManhattan(store.dims()), points);
         Set<Binding> visited = new HashSet<>(vptree.size());
         int currentCluster = 1;
-        while(rewindable.hasNext()) {
-        	Binding current = rewindable.next();
-        	if (visited.contains(current)) {
+        for (Point current : points) {
+        	if (visited.contains(store.binding(current.row))) {
 				continue;
 			}
-        	List<Binding> neighbors = vptree.getAllWithinDistance(current, epsilon);
+        	List<Point> neighbors = vptree.getAllWithinDistance(current, epsilon);
         	if (neighbors.size() >= minElements) {
 				clusters.add(new ArrayList<Binding>());
 				expandCluster(currentCluster, current, neighbors, vptree, visited, clusterVar);
 				currentCluster++;
 			} else {
-				clusters.get(0).add(current);
+				clusters.get(0).add(store.binding(current.row));
 			}
         }	
         addClusterToResults(clusters.get(0), -1, clusterVar);
 	}
 
-	private void expandCluster(int currentCluster, Binding e, List<Binding> neighbors,
-			VPTree<Binding, Binding> vptree, Set<Binding> visited, Var clusterVar) {
+	private void expandCluster(int currentCluster, Point e, List<Point> neighbors,
+			VPTree<Point, Point> vptree, Set<Binding> visited, Var clusterVar) {
 		
-		clusters.get(currentCluster).add(e);
-		visited.add(e);
+		clusters.get(currentCluster).add(store.binding(e.row));
+		visited.add(store.binding(e.row));
 		
-		List<Binding> seeds = new ArrayList<Binding>(neighbors);
+		List<Point> seeds = new ArrayList<Point>(neighbors);
 		int index = 0;
 		while (index < seeds.size()) {
-			Binding current = seeds.get(index);
-			if (visited.contains(current)) {
+			Point current = seeds.get(index);
+			Binding b = store.binding(current.row);
+			if (visited.contains(b)) {
 				index ++;
 				continue;
 			}
-			List<Binding> currentNeighbors = vptree.getAllWithinDistance(current, epsilon);
+			List<Point> currentNeighbors = vptree.getAllWithinDistance(current, epsilon);
 			if (currentNeighbors.size() >= minElements) {
-				for (Binding b : currentNeighbors) {
-					if (! seeds.contains(b) ) {
-						seeds.add(b);
+				for (Point p : currentNeighbors) {
+					if (! seeds.contains(p) ) {
+						seeds.add(p);
 					}
 				}
 			}
-			if (! visited.contains(current) ) {
-				visited.add(current);
-				clusters.get(currentCluster).add(current);
+			if (! visited.contains(b) ) {
+				visited.add(b);
+				clusters.get(currentCluster).add(b);
 			}
 			index++;
 		}
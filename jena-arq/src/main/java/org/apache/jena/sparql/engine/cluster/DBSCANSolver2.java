@@ -14,7 +14,8 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingBuilder;
 import org.apache.jena.sparql.engine.binding.BindingFactory;
-import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.PointStore.Point;
 
 import com.eatthepath.jvptree.VPTree;
 
@@ -35,17 +36,16 @@ public class DBSCANSolver2 implements ClusteringSolver {
 	//implementation based on the one of Apache Commons Math
 	@Override
 	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
-		BufferedQueryIteratorFactory factory = new BufferedQueryIteratorFactory(iter); 
-        VPTree<Binding, Binding> vptree = new VPTree<Binding, Binding>(ClusterDistances.generateManhattan(clusterVars), 
-        		factory.createBufferedQueryIterator().consume());
-        QueryIterator rewindable = factory.createBufferedQueryIterator();
+		PointStore store = ClusterDistances.createStore(iter, clusterVars);
+		List<Point> points = store.points();
+        VPTree<Point, Point> vptree = new VPTree<Point, Point>(ClusterDistances.generateManhattan(store.dims()), points);
         int currentCluster = 1;
-        while(rewindable.hasNext()) {
-        	Binding current = rewindable.next();
+        for (Point currentPoint : points) {
+        	Binding current = store.binding(currentPoint.row);
         	if (anycontains(clusters, current)) {
 				continue;
 			}
-        	List<Binding> neighbors = vptree.getAllWithinDistance(current, epsilon);
+        	List<Point> neighbors = vptree.getAllWithinDistance(currentPoint, epsilon);
         	if (neighbors.size() < minElements) {
         		clusters.get(0).add(current);
 				continue;
@@ -53,10 +53,13 @@ public class DBSCANSolver2 implements ClusteringSolver {
 			}
         	clusters.add(new HashSet<Binding>());
         	clusters.get(currentCluster).add(current);
-        	List<Binding> seeds = new ArrayList<>(neighbors);
+        	List<Point> seeds = new ArrayList<>(neighbors);
+        	Set<Binding> seen = new HashSet<>();
+        	seeds.forEach(x -> seen.add(store.binding(x.row)));
         	int index = 0;
         	while(index < seeds.size()) {
-        		Binding n = seeds.get(index);
+        		Point nPoint = seeds.get(index);
+        		Binding n = store.binding(nPoint.row);
         		if(current.equals(n)) {index++; continue;}
         		if(clusters.get(0).contains(n)) {
         			clusters.get(0).remove(n);
@@ -65,10 +68,10 @@ public class DBSCANSolver2 implements ClusteringSolver {
         			continue;
         		}
         		if(anycontains(clusters, n)) {index++; continue;}
-        		List<Binding> moreNeighbors = vptree.getAllWithinDistance(n, epsilon);
+        		List<Point> moreNeighbors = vptree.getAllWithinDistance(nPoint, epsilon);
         		clusters.get(currentCluster).add(n);
         		if(moreNeighbors.size() < minElements) continue;
-        		moreNeighbors.stream().forEach(x -> {if(!seeds.contains(x)) {seeds.add(x);}});
+        		moreNeighbors.stream().forEach(x -> {if(seen.add(store.binding(x.row))) {seeds.add(x);}});
         		index++;
         	}
         	addClusterToResults(clusters.get(currentCluster), currentCluster, clusterVar);
@@ -0,0 +1,165 @@
+package org.apache.jena.sparql.engine.cluster;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Pairwise distances between the rows of a {@link PointStore}, as the k-medoids solvers
+ * read them over and over.
+ * <p>
+ * Distances are symmetric, so the packed matrices keep the upper triangle only, row by
+ * row: {@code n(n-1)/2} entries. A matrix of floats halves the memory at the cost of
+ * precision. When neither fits, the lazy matrix computes each distance when it is read.
+ */
+public abstract class DistanceMatrix {
+
+	public enum Mode { AUTO, DOUBLE, FLOAT, LAZY }
+
+	public static final long DEFAULT_MEMORY = 512L * 1024 * 1024;
+	// Largest array the JVM allocates.
+	private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+	protected final int size;
+
+	protected DistanceMatrix(int size) {
+		this.size = size;
+	}
+
+	/** Distance matrix of the store, as set by {@link ARQ#clusterDistanceMatrix} in the context. */
+	public static DistanceMatrix create(PointStore store, Context context) {
+		return create(store, ClusterDistances.MANHATTAN, context);
+	}
+
+	/** Matrix of the given distance between the rows of the store, as set in the context. */
+	public static DistanceMatrix create(PointStore store, DistFunc distance, Context context) {
+		long memory = context.getLong(ARQ.clusterDistanceMatrixMemory, DEFAULT_MEMORY);
+		return create(store, distance, mode(context), memory);
+	}
+
+	public static DistanceMatrix create(PointStore store, Mode mode, long memory) {
+		return create(store, ClusterDistances.MANHATTAN, mode, memory);
+	}
+
+	public static DistanceMatrix create(PointStore store, DistFunc distance, Mode mode, long memory) {
+		long entries = entries(store.size());
+		if (mode == Mode.AUTO) {
+			if (entries * Double.BYTES <= memory)
+				mode = Mode.DOUBLE;
+			else if (entries * Float.BYTES <= memory)
+				mode = Mode.FLOAT;
+			else
+				mode = Mode.LAZY;
+		}
+		if (entries > MAX_ENTRIES)
+			mode = Mode.LAZY;
+		switch (mode) {
+			case DOUBLE :
+				return new PackedDouble(store, distance);
+			case FLOAT :
+				return new PackedFloat(store, distance);
+			default :
+				return new Lazy(store, distance);
+		}
+	}
+
+	static Mode mode(Context context) {
+		Object x = context.get(ARQ.clusterDistanceMatrix);
+		if (x == null)
+			return Mode.AUTO;
+		if (x instanceof Mode)
+			return (Mode) x;
+		switch (x.toString().trim().toLowerCase()) {
+			case "auto" :
+				return Mode.AUTO;
+			case "double" :
+				return Mode.DOUBLE;
+			case "float" :
+				return Mode.FLOAT;
+			case "lazy" :
+				return Mode.LAZY;
+			default :
+				throw new QueryExecException("Unknown distance matrix mode: " + x);
+		}
+	}
+
+	/** Number of entries of the upper triangle of an n x n matrix, without the diagonal. */
+	static long entries(int n) {
+		return (long) n * (n - 1) / 2;
+	}
+
+	/** Position of (i, j), i &lt; j, in the packed upper triangle. */
+	static long index(int i, int j, int n) {
+		return (long) i * (2L * n - i - 1) / 2 + (j - i - 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Distance between rows i and j. */
+	public final double get(int i, int j) {
+		if (i == j)
+			return 0.0;
+		return i < j ? entry(i, j) : entry(j, i);
+	}
+
+	/** Distance between rows i &lt; j. */
+	protected abstract double entry(int i, int j);
+
+	static class PackedDouble extends DistanceMatrix {
+		private final double[] distances;
+
+		PackedDouble(PointStore store, DistFunc distance) {
+			super(store.size());
+			distances = new double[(int) entries(size)];
+			int k = 0;
+			for (int i = 0; i < size; i++) {
+				for (int j = i + 1; j < size; j++)
+					distances[k++] = ClusterDistances.distance(distance, store, i, j);
+			}
+		}
+
+		@Override
+		protected double entry(int i, int j) {
+			return distances[(int) index(i, j, size)];
+		}
+	}
+
+	static class PackedFloat extends DistanceMatrix {
+		private final float[] distances;
+
+		PackedFloat(PointStore store, DistFunc distance) {
+			super(store.size());
+			distances = new float[(int) entries(size)];
+			int k = 0;
+			for (int i = 0; i < size; i++) {
+				for (int j = i + 1; j < size; j++)
+					distances[k++] = (float) ClusterDistances.distance(distance, store, i, j);
+			}
+		}
+
+		@Override
+		protected double entry(int i, int j) {
+			return distances[(int) index(i, j, size)];
+		}
+	}
+
+	static class Lazy extends DistanceMatrix {
+		private final PointStore store;
+		private final DistFunc distance;
+
+		Lazy(PointStore store, DistFunc distance) {
+			super(store.size());
+			this.store = store;
+			this.distance = distance;
+		}
+
+		@Override
+		protected double entry(int i, int j) {
+			return ClusterDistances.distance(distance, store, i, j);
+		}
+	}
+}
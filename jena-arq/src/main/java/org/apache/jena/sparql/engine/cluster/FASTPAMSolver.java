@@ -1,173 +1,162 @@
 package org.apache.jena.sparql.engine.cluster;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
-import org.apache.jena.atlas.lib.PairOfSameType;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
 
 public class FASTPAMSolver implements ClusteringSolver{
 	
 	private int K;
 	private List<Binding> nearestMedoidResult;
 
+	// Per row of the store: distance to the nearest and second nearest medoids, index of the nearest medoid.
+	private double[] distanceToNearestMedoid;
+	private double[] distanceToSecondMedoid;
+	private int[] nearestMedoid;
+	private final DistFunc distance;
+	private ClusterModel model = null;
+
 	public FASTPAMSolver(int K) {
+		this(K, ClusterDistances.MANHATTAN);
+	}
+
+	public FASTPAMSolver(int K, DistFunc distance) {
 		assert K > 0;
 		this.K = K;
+		this.distance = distance;
 	}
 
 	@Override
 	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
-		final BufferedQueryIteratorFactory factory = new BufferedQueryIteratorFactory(iter);
-        final Map<PairOfSameType<Binding>, Double> distances = computeDistances(factory, clusterVars);
-        final QueryIterator outer = factory.createBufferedQueryIterator();
-        Binding initialMedoid = null;
-        double TD = Double.MAX_VALUE;
-        while(outer.hasNext()) {
-            final Binding b1 = outer.next();
-            double TDj = 0;
-            final QueryIterator inner = factory.createBufferedQueryIterator();
-            while(inner.hasNext()) {
-                final Binding b2 = inner.next();
-                if(b1.equals(b2)) continue;
-                TDj += distances.getOrDefault(new PairOfSameType<>(b1, b2), distances.getOrDefault(new PairOfSameType<>(b2, b1), 0.0));	
-            }
-            if (TDj < TD) {
-                initialMedoid = Binding.builder().addAll(b1).build();
-                TD = TDj;
-            }
-        }
-        final Map<Binding, Double> distanceToNearestMedoid = new HashMap<>();
-        final Map<Binding, Double> distanceToSecondMedoid = new HashMap<>();
-        final Map<Binding, Integer> nearestMedoid = new HashMap<>();
-        final QueryIterator it = factory.createBufferedQueryIterator();
-        while (it.hasNext()) {
-            final Binding b = it.next();
-            if(b.equals(initialMedoid)) continue;
-            distanceToNearestMedoid.put(b, distances.getOrDefault(new PairOfSameType<>(b, initialMedoid), distances.getOrDefault(new PairOfSameType<>(initialMedoid, b), 0.0)));
-        }
-        List<Binding> medoids = new ArrayList<>(K);
-        medoids.add(initialMedoid);
-        for (int i=1; i < K; i++) {
-            Binding candidate = null;
-            double deltaTDBest = Double.MAX_VALUE;
-            final QueryIterator outer2 = factory.createBufferedQueryIterator();
-            while (outer2.hasNext()) {
-                final Binding b1 = outer2.next();
-                if (medoids.contains(b1)) continue;
-                double deltaTD = 0;
-                final QueryIterator inner2 = factory.createBufferedQueryIterator();
-                while (inner2.hasNext()) {
-                    final Binding b2 = inner2.next();
-                    if (medoids.contains(b2) || b1.equals(b2)) continue;
-                    double delta = distances.getOrDefault(new PairOfSameType<>(b1, b2), distances.getOrDefault(new PairOfSameType<>(b2, b1), 0.0)) 
-                    		- distanceToNearestMedoid.get(b2);
-                    if (delta < 0) deltaTD += delta;
-                }
-                if (deltaTD < deltaTDBest) {
-                    candidate = Binding.builder().addAll(b1).build();
-                    deltaTDBest = deltaTD;
-                }
-            }
-            TD += deltaTDBest;
-            medoids.add(candidate);
-            updateCaches(factory, distances, distanceToNearestMedoid, distanceToSecondMedoid, nearestMedoid, medoids);
-        }
-        while(true) {
-            double deltaTDBest = Double.MAX_VALUE;
-            int swapMedoid = 0;
-            Binding swapObject = null;
-            List<Double> deltaTDmi = new ArrayList<>(K);
-            for (int i=0; i<K; i++) {
-            	final int j = i;
-            	deltaTDmi.add(nearestMedoid.entrySet().stream().filter(e->e.getValue()==j)
-            		.map(e->(distanceToSecondMedoid.get(e.getKey())-distanceToNearestMedoid.get(e.getKey())))
-            		.reduce(Double::sum).get());
-            }
-            QueryIterator outer3 = factory.createBufferedQueryIterator();
-            while (outer3.hasNext()) {
-                Binding b1 = outer3.next();
-                if (medoids.contains(b1)) continue;
-                List<Double> deltaTD = new ArrayList<>(deltaTDmi);
-                double deltaTDb1 = 0;
-                QueryIterator inner3 = factory.createBufferedQueryIterator();
-                while(inner3.hasNext()) {
-                    Binding b2 = inner3.next();
-                    double distb1b2 = distances.getOrDefault(new PairOfSameType<>(b1, b2), distances.getOrDefault(new PairOfSameType<>(b2, b1), 0.0));
-                    if (distb1b2 < distanceToNearestMedoid.get(b2)) {
-                        deltaTDb1 += distb1b2 - distanceToNearestMedoid.get(b2);
-                        deltaTD.set(nearestMedoid.get(b2), deltaTD.get(nearestMedoid.get(b2))+distanceToNearestMedoid.get(b2)-distanceToSecondMedoid.get(b2));
-                    } else if (distb1b2 < distanceToSecondMedoid.get(b2)) {
-                    	deltaTD.set(nearestMedoid.get(b2), deltaTD.get(nearestMedoid.get(b2))+distb1b2-distanceToSecondMedoid.get(b2));
-                    }
-                }
-                int i = deltaTD.indexOf(deltaTD.stream().min(Double::compareTo).get());
-                deltaTD.set(i, deltaTD.get(i)+deltaTDb1);
-                if (deltaTD.get(i) < deltaTDBest) {
-                    deltaTDBest = deltaTD.get(i);
-                    swapMedoid = i;
-                    swapObject = Binding.builder().addAll(b1).build();
-                }
-            }
-	        if (deltaTDBest >= 0) break;
-	        medoids.set(swapMedoid, swapObject);
-	        updateCaches(factory, distances, distanceToNearestMedoid, distanceToSecondMedoid, nearestMedoid, medoids);
-	        TD += deltaTDBest;
-        }
-        nearestMedoidResult = nearestMedoid.entrySet().stream().map(e -> makeBinding(e, clusterVar)).collect(Collectors.toList());
-	}
-	
-	private Binding makeBinding(Map.Entry<Binding, Integer> e, Var clusterVar) {
-		return Binding.builder().addAll(e.getKey()).add(clusterVar, NodeFactory.createLiteral(e.getValue().toString(), XSDDatatype.XSDinteger)).build();
+		solve(iter, clusterVars, clusterVar, ARQ.getContext());
 	}
 
-	private Map<PairOfSameType<Binding>, Double> computeDistances(BufferedQueryIteratorFactory factory, VarExprList clusterVars) {
-		final QueryIterator outer = factory.createBufferedQueryIterator();
-		final Map<PairOfSameType<Binding>, Double> distances = new HashMap<>();
-		while(outer.hasNext()) {
-			final Binding b1 = outer.next();
-			final QueryIterator inner = factory.createBufferedQueryIterator();
-			while(inner.hasNext()) {
-				final Binding b2 = inner.next();
-				if (b1.equals(b2)) continue;
-				final PairOfSameType<Binding> b1b2 = new PairOfSameType<>(b1, b2);
-				final PairOfSameType<Binding> b2b1 = new PairOfSameType<>(b2, b1);
-				if (distances.containsKey(b1b2) || distances.containsKey(b2b1))
-					continue;
-				final double distance = ClusterDistances.manhattan(b1, b2, clusterVars);
-				distances.put(b1b2, distance);
-				//distances.put(b2b1, distance);
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		final PointStore store = ClusterDistances.createStore(iter, clusterVars);
+		final int n = store.size();
+		final DistanceMatrix distances = DistanceMatrix.create(store, distance, context);
+		final int k = Math.min(K, n);
+		distanceToNearestMedoid = new double[n];
+		distanceToSecondMedoid = new double[n];
+		nearestMedoid = new int[n];
+		// Medoids are rows of the store.
+		final int[] medoids = new int[k];
+		final boolean[] isMedoid = new boolean[n];
+		int initialMedoid = 0;
+		double TD = Double.MAX_VALUE;
+		for (int b1 = 0; b1 < n; b1++) {
+			double TDj = 0;
+			for (int b2 = 0; b2 < n; b2++)
+				TDj += distances.get(b1, b2);
+			if (TDj < TD) {
+				initialMedoid = b1;
+				TD = TDj;
 			}
 		}
-		return distances;
+		medoids[0] = initialMedoid;
+		isMedoid[initialMedoid] = true;
+		updateCaches(distances, medoids, 1);
+		for (int i = 1; i < k; i++) {
+			int candidate = -1;
+			double deltaTDBest = Double.MAX_VALUE;
+			for (int b1 = 0; b1 < n; b1++) {
+				if (isMedoid[b1]) continue;
+				double deltaTD = 0;
+				for (int b2 = 0; b2 < n; b2++) {
+					if (isMedoid[b2] || b1 == b2) continue;
+					double delta = distances.get(b1, b2) - distanceToNearestMedoid[b2];
+					if (delta < 0) deltaTD += delta;
+				}
+				if (deltaTD < deltaTDBest) {
+					candidate = b1;
+					deltaTDBest = deltaTD;
+				}
+			}
+			TD += deltaTDBest;
+			medoids[i] = candidate;
+			isMedoid[candidate] = true;
+			updateCaches(distances, medoids, i + 1);
+		}
+		final double[] deltaTDmi = new double[k];
+		final double[] deltaTD = new double[k];
+		// A single medoid is already the best one.
+		while(k > 1) {
+			double deltaTDBest = Double.MAX_VALUE;
+			int swapMedoid = 0;
+			int swapObject = -1;
+			Arrays.fill(deltaTDmi, 0.0);
+			for (int b = 0; b < n; b++)
+				deltaTDmi[nearestMedoid[b]] += distanceToSecondMedoid[b] - distanceToNearestMedoid[b];
+			for (int b1 = 0; b1 < n; b1++) {
+				if (isMedoid[b1]) continue;
+				System.arraycopy(deltaTDmi, 0, deltaTD, 0, k);
+				double deltaTDb1 = 0;
+				for (int b2 = 0; b2 < n; b2++) {
+					double distb1b2 = distances.get(b1, b2);
+					if (distb1b2 < distanceToNearestMedoid[b2]) {
+						deltaTDb1 += distb1b2 - distanceToNearestMedoid[b2];
+						deltaTD[nearestMedoid[b2]] += distanceToNearestMedoid[b2] - distanceToSecondMedoid[b2];
+					} else if (distb1b2 < distanceToSecondMedoid[b2]) {
+						deltaTD[nearestMedoid[b2]] += distb1b2 - distanceToSecondMedoid[b2];
+					}
+				}
+				int i = 0;
+				for (int j = 1; j < k; j++) {
+					if (deltaTD[j] < deltaTD[i]) i = j;
+				}
+				deltaTD[i] += deltaTDb1;
+				if (deltaTD[i] < deltaTDBest) {
+					deltaTDBest = deltaTD[i];
+					swapMedoid = i;
+					swapObject = b1;
+				}
+			}
+			if (deltaTDBest >= 0) break;
+			isMedoid[medoids[swapMedoid]] = false;
+			medoids[swapMedoid] = swapObject;
+			isMedoid[swapObject] = true;
+			updateCaches(distances, medoids, k);
+			TD += deltaTDBest;
+		}
+		model = medoidModel(store, medoids, distance);
+		nearestMedoidResult = new ArrayList<>(n);
+		for (int r = 0; r < n; r++)
+			nearestMedoidResult.add(makeBinding(store.binding(r), nearestMedoid[r], clusterVar));
 	}
 	
-	private static void updateCaches(BufferedQueryIteratorFactory factory,
-							            Map<PairOfSameType<Binding>, Double> distances,
-							            Map<Binding, Double> distanceToNearestMedoid,
-							            Map<Binding, Double> distanceToSecondMedoid,
-							            Map<Binding, Integer> nearestMedoid,
-							            List<Binding> medoids) {
-		final QueryIterator it2 = factory.createBufferedQueryIterator();
-		while(it2.hasNext()) {
-			final Binding b = it2.next();
-			//if (medoids.contains(b)) continue;
+	/** The medoids as centres; clusters are numbered from 0, in the order of the medoids. */
+	static ClusterModel medoidModel(PointStore store, int[] medoids, DistFunc distance) {
+		int dims = store.dims();
+		double[] centres = new double[medoids.length * dims];
+		for (int i = 0; i < medoids.length; i++)
+			System.arraycopy(store.data(), store.offset(medoids[i]), centres, i * dims, dims);
+		return new ClusterModel(centres, dims, distance, 0);
+	}
+
+	private static Binding makeBinding(Binding b, int cluster, Var clusterVar) {
+		return Binding.builder().addAll(b).add(clusterVar, NodeFactory.createLiteral(Integer.toString(cluster), XSDDatatype.XSDinteger)).build();
+	}
+
+	private void updateCaches(DistanceMatrix distances, int[] medoids, int nbMedoids) {
+		for (int b = 0; b < distances.size(); b++) {
 			double minDist = Double.MAX_VALUE;
 			int minIdx = 0;
 			double secondMinDist = Double.MAX_VALUE;
-			int mi = 0;
-			for(final Binding m : medoids) {
-				double dist = distances.getOrDefault(new PairOfSameType<>(b, m), distances.getOrDefault(new PairOfSameType<>(m, b),0.0));
+			for (int mi = 0; mi < nbMedoids; mi++) {
+				double dist = distances.get(b, medoids[mi]);
 				if (dist < minDist) {
 					secondMinDist = minDist;
 					minDist = dist;
@@ -175,11 +164,10 @@ public class FASTPAMSolver implements ClusteringSolver{
 				} else if (dist < secondMinDist) {
 					secondMinDist = dist;
 				}
-				mi++;
 			}
-			distanceToNearestMedoid.put(b, minDist);
-			nearestMedoid.put(b, minIdx);
-			distanceToSecondMedoid.put(b, secondMinDist);
+			distanceToNearestMedoid[b] = minDist;
+			nearestMedoid[b] = minIdx;
+			distanceToSecondMedoid[b] = secondMinDist;
 		}
 	}
 
@@ -188,4 +176,14 @@ public class FASTPAMSolver implements ClusteringSolver{
 		return nearestMedoidResult.iterator();
 	}
 
+	@Override
+	public ClusterModel model() {
+		return model;
+	}
+
+	@Override
+	public ClusterModel model(double[] centres, int dims, int first) {
+		return new ClusterModel(centres, dims, distance, first);
+	}
+
 }
@@ -0,0 +1,472 @@
+package org.apache.jena.sparql.engine.cluster;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * DBSCAN over a grid of cells of side {@code epsilon}.
+ * <p>
+ * Two points within Manhattan distance {@code epsilon} differ by at most {@code epsilon}
+ * on every coordinate, so the neighbours of a point are found in the cells around it.
+ * The grid is built over the first {@link #GRID_DIMS} coordinates; rows with a missing or
+ * infinite coordinate there are compared with every row instead. Other distances size the
+ * cells by their {@linkplain DistFunc#coordinateRange(double) coordinate range}; with no
+ * finite range, such as the cosine distance, every row is compared with every row.
+ * <p>
+ * Where the range depends on the point, the box searched around a row is sized by its
+ * {@linkplain DistFunc#coordinateRange(double, double[], int, int) own ranges}. For the
+ * haversine distance, cells are {@code epsilon / 111.2} degrees of latitude high and the
+ * longitude range widens with the latitude, so a row searches more cells towards the poles.
+ * Coordinates with a {@linkplain DistFunc#period period}, such as longitudes, have a whole
+ * number of cells per period, numbered modulo that number, so that cells either side of
+ * the 180th meridian are next to each other. Rows within {@code epsilon} of a pole, where
+ * every longitude is in range, and rows whose box covers more cells than the grid has,
+ * are compared with every row: with most points near the poles, the cost is quadratic.
+ * <p>
+ * The clusters are the connected components of the core points, merged with a union-find.
+ * Clusters are numbered in the order of their first core row, a border point goes to the
+ * lowest numbered cluster with a core point in its neighbourhood, and equal bindings are
+ * returned once: the same output as {@link DBSCANSolver2}. The neighbourhood queries run
+ * on {@link ARQ#clusterParallelism} threads.
+ */
+public class GridDBSCANSolver implements ClusteringSolver {
+
+	static final int GRID_DIMS = 3;
+	private static final int NOISE = -1;
+
+	protected double epsilon;
+	protected int minElements;
+	protected DistFunc distance;
+	// Side of the cells: the largest difference on one coordinate between neighbours.
+	private double side;
+	// Per grid coordinate: the side of the cells, and the number of cells in the period
+	// of the coordinate, or 0 if it does not wrap around.
+	private double[] sides;
+	private long[] periodCells;
+	// Largest number of cells looked up for a row before comparing it with every row.
+	private long maxProbes;
+	private PointStore store;
+	private int[] labels;
+	private int[] order;
+	private Var clusterVar;
+
+	// The grid: rows ordered by cell, the rows of cell i are at positions cellStart[i] .. cellStart[i+1]
+	// of cellRows, followed by the rows outside the grid. Their coordinates are copied in the same
+	// order in cellData, so that the rows of a cell are read from contiguous memory.
+	private int gridDims;
+	private Map<Cell, Integer> cells;
+	private Cell[] cellKeys;
+	private int[][] around;
+	private int[] cellStart;
+	private int[] cellRows;
+	private double[] cellData;
+	private int indexed;
+
+	public GridDBSCANSolver(double epsilon, int minElements) {
+		this(epsilon, minElements, ClusterDistances.MANHATTAN);
+	}
+
+	public GridDBSCANSolver(double epsilon, int minElements, DistFunc distance) {
+		this.epsilon = epsilon;
+		this.minElements = minElements;
+		this.distance = distance;
+		this.side = distance.coordinateRange(epsilon);
+	}
+
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
+		solve(iter, clusterVars, clusterVar, ARQ.getContext());
+	}
+
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		this.clusterVar = clusterVar;
+		this.store = ClusterDistances.createStore(iter, clusterVars);
+		int n = store.size();
+		buildGrid();
+		// Core points and the union-find are indexed by position in the grid.
+		boolean[] core = new boolean[n];
+		AtomicIntegerArray parent = new AtomicIntegerArray(n);
+		int[] firstRow = new int[n];
+		labels = new int[n];
+		try ( Assignment parallel = new Assignment(context) ) {
+			for (int p = 0; p < n; p++)
+				parent.set(p, p);
+			forEachPosition(parallel, (p, around) -> {
+				int[] count = { 0 };
+				around.forEach(p, q -> ++count[0] < minElements);
+				core[p] = count[0] >= minElements;
+			});
+			forEachPosition(parallel, (p, around) -> {
+				if (core[p])
+					around.forEach(p, q -> {
+						if (q < p && core[q])
+							union(parent, p, q);
+						return true;
+					});
+			});
+			// Components are final: each is identified by its first core row.
+			Arrays.fill(firstRow, Integer.MAX_VALUE);
+			for (int p = 0; p < n; p++) {
+				if (core[p]) {
+					int root = find(parent, p);
+					firstRow[root] = Math.min(firstRow[root], cellRows[p]);
+				}
+			}
+			// Label border points with the smallest first row of a core neighbour.
+			forEachPosition(parallel, (p, around) -> {
+				if (core[p]) {
+					labels[cellRows[p]] = firstRow[find(parent, p)];
+					return;
+				}
+				int[] label = { Integer.MAX_VALUE };
+				around.forEach(p, q -> {
+					if (core[q])
+						label[0] = Math.min(label[0], firstRow[find(parent, q)]);
+					return true;
+				});
+				labels[cellRows[p]] = (label[0] == Integer.MAX_VALUE) ? NOISE : label[0];
+			});
+		}
+		cells = null;
+		cellKeys = null;
+		around = null;
+		cellRows = null;
+		cellData = null;
+		numberClusters();
+	}
+
+	/**
+	 * Renumber clusters, labelled by their first core row, as 1, 2, ... in row order,
+	 * and order the rows by cluster, noise last.
+	 */
+	private void numberClusters() {
+		int n = labels.length;
+		int[] number = new int[n];
+		int clusters = 0;
+		for (int r = 0; r < n; r++) {
+			if (labels[r] == r)
+				number[r] = ++clusters;
+		}
+		int[] start = new int[clusters + 2];
+		for (int r = 0; r < n; r++) {
+			labels[r] = (labels[r] == NOISE) ? NOISE : number[labels[r]];
+			start[slot(labels[r], clusters) + 1]++;
+		}
+		for (int i = 1; i < start.length; i++)
+			start[i] += start[i - 1];
+		order = new int[n];
+		for (int r = 0; r < n; r++)
+			order[start[slot(labels[r], clusters)]++] = r;
+	}
+
+	private static int slot(int label, int clusters) {
+		return (label == NOISE) ? clusters : label - 1;
+	}
+
+	private void buildGrid() {
+		int n = store.size();
+		gridDims = (side > 0 && side < Double.POSITIVE_INFINITY) ? Math.min(GRID_DIMS, store.dims()) : 0;
+		sides = new double[gridDims];
+		periodCells = new long[gridDims];
+		for (int d = 0; d < gridDims; d++) {
+			double period = distance.period(d);
+			// A whole number of cells in the period; no larger than the side.
+			periodCells[d] = (period > 0) ? (long) Math.ceil(period / side) : 0;
+			sides[d] = (period > 0) ? period / periodCells[d] : side;
+		}
+		cells = new HashMap<>();
+		int[] cellOf = new int[n];
+		int unindexedCount = 0;
+		for (int r = 0; r < n; r++) {
+			Cell cell = cell(r);
+			if (cell == null) {
+				cellOf[r] = -1;
+				unindexedCount++;
+				continue;
+			}
+			Integer id = cells.get(cell);
+			if (id == null) {
+				id = cells.size();
+				cells.put(cell, id);
+			}
+			cellOf[r] = id;
+		}
+		maxProbes = Math.max(64, cells.size());
+		cellKeys = new Cell[cells.size()];
+		cells.forEach((cell, id) -> cellKeys[id] = cell);
+		around = new int[cells.size()][];
+		cellStart = new int[cells.size() + 1];
+		for (int r = 0; r < n; r++) {
+			if (cellOf[r] >= 0)
+				cellStart[cellOf[r] + 1]++;
+		}
+		for (int i = 1; i < cellStart.length; i++)
+			cellStart[i] += cellStart[i - 1];
+		indexed = n - unindexedCount;
+		int[] next = Arrays.copyOf(cellStart, cells.size());
+		int outside = indexed;
+		int dims = store.dims();
+		cellRows = new int[n];
+		cellData = new double[n * dims];
+		for (int r = 0; r < n; r++) {
+			int p = (cellOf[r] >= 0) ? next[cellOf[r]]++ : outside++;
+			cellRows[p] = r;
+			System.arraycopy(store.data(), store.offset(r), cellData, p * dims, dims);
+		}
+	}
+
+	/** The cell of a row, or null if a coordinate of the grid is missing or infinite. */
+	private Cell cell(int row) {
+		long[] coords = new long[gridDims];
+		for (int d = 0; d < gridDims; d++) {
+			double x = store.get(row, d);
+			if (Double.isNaN(x) || Double.isInfinite(x))
+				return null;
+			coords[d] = wrap(cellIndex(x, d), d);
+		}
+		return new Cell(coords);
+	}
+
+	/** Index of the cell of a value of a coordinate, before wrapping around its period. */
+	private long cellIndex(double x, int d) {
+		return (long) Math.floor(x / sides[d]);
+	}
+
+	private long wrap(long index, int d) {
+		return (periodCells[d] > 0) ? Math.floorMod(index, periodCells[d]) : index;
+	}
+
+	private interface PositionAction {
+		void apply(int position, Neighbourhood around);
+	}
+
+	/**
+	 * Apply the action to every position, cell after cell: the positions of a cell
+	 * share a {@link Neighbourhood}, and cells may run in parallel.
+	 */
+	private void forEachPosition(Assignment parallel, PositionAction action) {
+		int cellCount = cellKeys.length;
+		// The last range is the rows outside the grid.
+		parallel.forEachRow(cellCount + 1, c -> {
+			Neighbourhood around = new Neighbourhood(c);
+			int end = (c < cellCount) ? cellStart[c + 1] : cellRows.length;
+			for (int p = cellStart[c]; p < end; p++)
+				action.apply(p, around);
+		});
+	}
+
+	/**
+	 * The rows around the rows of a cell. The cells overlapping the box of the coordinate
+	 * ranges around a row, widened by one ulp so that rounding cannot leave out a cell, are
+	 * usually the cells next to its own: these are looked up once per cell and kept.
+	 */
+	private final class Neighbourhood {
+		private final int cell;
+		private final long[] low = new long[gridDims];
+		private final long[] high = new long[gridDims];
+
+		Neighbourhood(int cell) {
+			this.cell = cell;
+		}
+
+		/**
+		 * Call the action on the position of each row within {@code epsilon} of the row at
+		 * a position, including the row itself, until the action returns false. Rows outside
+		 * the grid, or whose box spans too many cells (far from the origin, near a pole), are
+		 * compared with every row.
+		 */
+		void forEach(int position, IntPredicate action) {
+			int n = cellRows.length;
+			int offset = position * store.dims();
+			boolean inGrid = position < indexed;
+			boolean adjacent = true;
+			long probes = 1;
+			for (int d = 0; inGrid && d < gridDims; d++) {
+				double x = cellData[offset + d];
+				double range = distance.coordinateRange(epsilon, cellData, offset, d);
+				long c = cellIndex(x, d);
+				if (periodCells[d] > 0 && 2 * range >= sides[d] * periodCells[d]) {
+					// The whole period.
+					low[d] = c;
+					high[d] = c + periodCells[d] - 1;
+				} else {
+					low[d] = cellIndex(Math.nextDown(x - range), d);
+					high[d] = cellIndex(Math.nextUp(x + range), d);
+				}
+				long span = high[d] - low[d];
+				inGrid = span >= 0 && span < maxProbes && (probes *= span + 1) <= maxProbes;
+				adjacent = adjacent && low[d] >= c - 1 && high[d] <= c + 1;
+			}
+			if (!inGrid) {
+				visit(offset, 0, n, action);
+				return;
+			}
+			if (!visit(offset, indexed, n, action))
+				return;
+			int[] ids;
+			if (adjacent) {
+				if (around[cell] == null) {
+					for (int d = 0; d < gridDims; d++) {
+						low[d] = cellKeys[cell].coords[d] - 1;
+						high[d] = cellKeys[cell].coords[d] + 1;
+					}
+					around[cell] = cellsIn(low, high);
+				}
+				ids = around[cell];
+			} else {
+				ids = cellsIn(low, high);
+			}
+			for (int id : ids) {
+				if (!visit(offset, cellStart[id], cellStart[id + 1], action))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * The cells of the grid in the box {@code [low, high]}, of cell indexes before wrapping
+	 * around the period of a coordinate: each cell once, even if the box covers the period.
+	 */
+	private int[] cellsIn(long[] low, long[] high) {
+		int[] ids = new int[8];
+		int count = 0;
+		long[] index = low.clone();
+		long[] last = high.clone();
+		for (int d = 0; d < gridDims; d++) {
+			if (periodCells[d] > 0)
+				last[d] = Math.min(last[d], low[d] + periodCells[d] - 1);
+		}
+		Cell probe = new Cell(new long[gridDims]);
+		while (true) {
+			for (int d = 0; d < gridDims; d++)
+				probe.coords[d] = wrap(index[d], d);
+			Integer id = cells.get(probe);
+			if (id != null) {
+				if (count == ids.length)
+					ids = Arrays.copyOf(ids, 2 * count);
+				ids[count++] = id;
+			}
+			int d = 0;
+			while (d < gridDims && index[d] == last[d]) {
+				index[d] = low[d];
+				d++;
+			}
+			if (d == gridDims)
+				return Arrays.copyOf(ids, count);
+			index[d]++;
+		}
+	}
+
+	/** Call the action on the rows within {@code epsilon} at positions {@code [start, end)}; false if it stopped. */
+	private boolean visit(int offset, int start, int end, IntPredicate action) {
+		int dims = store.dims();
+		for (int i = start; i < end; i++) {
+			if (distance.distance(cellData, offset, cellData, i * dims, dims) <= epsilon && !action.test(i))
+				return false;
+		}
+		return true;
+	}
+
+	/** Link the root with the larger position under the other one; safe to call concurrently. */
+	private static void union(AtomicIntegerArray parent, int a, int b) {
+		while (true) {
+			a = find(parent, a);
+			b = find(parent, b);
+			if (a == b)
+				return;
+			int high = Math.max(a, b);
+			int low = Math.min(a, b);
+			if (parent.compareAndSet(high, high, low))
+				return;
+		}
+	}
+
+	private static int find(AtomicIntegerArray parent, int x) {
+		int p;
+		while ((p = parent.get(x)) != x) {
+			int grandparent = parent.get(p);
+			if (grandparent != p)
+				parent.compareAndSet(x, p, grandparent);
+			x = p;
+		}
+		return x;
+	}
+
+	private static final class Cell {
+		final long[] coords;
+
+		Cell(long[] coords) {
+			this.coords = coords;
+		}
+
+		// Arrays.hashCode(long[]) gives the same hash to cells -k and k-1.
+		@Override
+		public int hashCode() {
+			long h = 0;
+			for (long c : coords)
+				h = (h + c) * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 29));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Cell && Arrays.equals(coords, ((Cell) other).coords);
+		}
+	}
+
+	@Override
+	public Iterator<Binding> iterator() {
+		return new Iterator<Binding>() {
+			private final Set<Binding> seen = new HashSet<>();
+			private int i = 0;
+			private Binding next = null;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && i < order.length) {
+					int r = order[i++];
+					Binding b = store.binding(r);
+					if (!seen.add(b))
+						continue;
+					Node c = NodeFactory.createLiteralByValue(labels[r], XSDDatatype.XSDinteger);
+					BindingBuilder result = BindingFactory.builder();
+					result.addAll(b);
+					result.add(clusterVar, c);
+					next = result.build();
+				}
+				return next != null;
+			}
+
+			@Override
+			public Binding next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Binding b = next;
+				next = null;
+				return b;
+			}
+		};
+	}
+}
@@ -1,15 +1,14 @@
 package org.apache.jena.sparql.engine.cluster;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 
 import org.apache.jena.datatypes.xsd.XSDDatatype;
-import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.QueryException;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
@@ -17,7 +16,9 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingBuilder;
 import org.apache.jena.sparql.engine.binding.BindingFactory;
-import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
 
 public class KMeansSolver implements ClusteringSolver {
 
@@ -25,68 +26,76 @@ public class KMeansSolver implements ClusteringSolver {
 	protected int maxIter;
 	protected List<Binding> results;
 	protected double EPSILON = 1e-4;
+	protected DistFunc distance;
+	private ClusterModel model = null;
 	
 	public KMeansSolver(int K, int maxIter) {
+		this(K, maxIter, ClusterDistances.MANHATTAN);
+	}
+
+	/** Assign rows to centroids by the given distance; centroids are still the means of their clusters. */
+	public KMeansSolver(int K, int maxIter, DistFunc distance) {
 		assert K > 0;
 		this.K = K;
 		this.maxIter = maxIter;
+		this.distance = distance;
 		results = new LinkedList<Binding>();
 	}
 
 	@Override
 	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
-		BufferedQueryIteratorFactory factory = new BufferedQueryIteratorFactory(iter); 
-        QueryIterator rewindable = factory.createBufferedQueryIterator();
-        List<Binding> centroids = new ArrayList<>();
-        for (int i = 0; i < K; i++) {
-			if(rewindable.hasNext())
-				centroids.add(rewindable.nextBinding());
-			else
-				throw new QueryException("Query Set has less than K objects");
-		}
-        List<List<Binding>> clusters = null;
-        for (int i=0; i < maxIter; i++) {
-        	QueryIterator elements = factory.createBufferedQueryIterator();
-        	clusters = new ArrayList<List<Binding>>(K);
-    		for (int t=0; t < K; t++) {
-    			clusters.add(new LinkedList<Binding>());
-    		}
-        	while(elements.hasNext()) {
-        		Binding current = elements.next();
-        		double minDist = Double.MAX_VALUE;
-        		int cluster = -1;
+		solve(iter, clusterVars, clusterVar, ARQ.getContext());
+	}
 
-        		for (int j = 0; j < K; j++) {
-        		    Binding c = centroids.get(j);
-        		    double dist = ClusterDistances.manhattan(current, c, clusterVars);
-        		    if (dist < minDist) {
-        		        minDist = dist;
-        		        cluster = j;
-        		    }
-        		}
-        		clusters.get(cluster).add(current);
-        	}
-        	List<Binding> oldCentroids = centroids;
-    		centroids = updateCentroids(clusterVars, clusters);
-    		if (converged(oldCentroids, centroids, clusterVars)) {
-    			break;
-    		}
-        }
-        int c = 1;
-        for (List<Binding> cluster : clusters) {
-        	for (Binding b : cluster) {
-        		BindingBuilder result = BindingFactory.builder();
-            	result.addAll(b);
-            	result.add(clusterVar, NodeFactory.createLiteralByValue(c, XSDDatatype.XSDinteger));
-            	results.add(result.build());
-        	}
-        	c++;
-        }
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		PointStore store = ClusterDistances.createStore(iter, clusterVars);
+		if (store.size() < K)
+			throw new QueryException("Query Set has less than K objects");
+		int dims = store.dims();
+		double[] data = store.data();
+		// Centroids, row-major as in the store, seeded by k-means++.
+		double[] centroids = new double[K * dims];
+		int[] seeds = Assignment.seeds(store, distance, K, new Random(Assignment.SEED));
+		for (int j = 0; j < K; j++) {
+			System.arraycopy(data, store.offset(seeds[j]), centroids, j * dims, dims);
+		}
+		int[] assignment = new int[store.size()];
+		// The centroids the rows were last assigned to.
+		double[] assigned = centroids;
+		try (Assignment assign = new Assignment(context)) {
+			for (int i=0; i < maxIter; i++) {
+				Assignment.Sums sums = assign.assignToCentroids(store, distance, centroids, K, assignment);
+				assigned = centroids;
+				centroids = updateCentroids(sums, dims, assigned);
+				if (converged(assigned, centroids, dims)) {
+					break;
+				}
+			}
+		}
+		model = new ClusterModel(assigned, dims, distance, 1);
+		List<List<Binding>> clusters = new ArrayList<List<Binding>>(K);
+		for (int t=0; t < K; t++) {
+			clusters.add(new LinkedList<Binding>());
+		}
+		for (int r = 0; r < store.size(); r++) {
+			clusters.get(assignment[r]).add(store.binding(r));
+		}
+		int c = 1;
+		for (List<Binding> cluster : clusters) {
+			for (Binding b : cluster) {
+				BindingBuilder result = BindingFactory.builder();
+				result.addAll(b);
+				result.add(clusterVar, NodeFactory.createLiteralByValue(c, XSDDatatype.XSDinteger));
+				results.add(result.build());
+			}
+			c++;
+		}
 	}
 
-	private boolean converged(List<Binding> oldCentroids, List<Binding> centroids, VarExprList clusterVars) {
+	private boolean converged(double[] oldCentroids, double[] centroids, int dims) {
 		for (int i=0; i < K; i++) {
-			double d = ClusterDistances.manhattan(oldCentroids.get(i), centroids.get(i), clusterVars);
+			double d = ClusterDistances.manhattan(oldCentroids, i * dims, centroids, i * dims, dims);
 			if (d < EPSILON) {
 				return true;
 			}
@@ -94,53 +103,16 @@ public class KMeansSolver implements ClusteringSolver {
 		return false;
 	}
 
-	private List<Binding> updateCentroids(VarExprList clusterVars, List<List<Binding>> clusters) {
-	    List<Binding> newCentroids = new ArrayList<>(K);
-	    for (int i = 0; i < K; i++) {
-	        Map<Var, Object> sums = new HashMap<>();
-	        int clusterSize = clusters.get(i).size();
-	        for (Binding b : clusters.get(i)) {
-	            for (Var v : clusterVars.getVars()) {
-	                Node node = b.get(v);
-	                if (node == null || !node.isLiteral()) continue;
-	                Object value = node.getLiteralValue();
-	                if (value instanceof String) {
-	                    List<Double> vec = ClusterDistances.parseVectorString((String) value);
-	                    List<Double> sumVec = (List<Double>) sums.get(v);
-	                    if (sumVec == null) {
-	                        sums.put(v, new ArrayList<>(vec));
-	                    } else {
-	                        for (int idx = 0; idx < vec.size(); idx++) {
-	                            sumVec.set(idx, sumVec.get(idx) + vec.get(idx));
-	                        }
-	                    }
-	                } else if (value instanceof Number) {
-	                    sums.put(v, ((Double) sums.getOrDefault(v, 0.0)) + ((Number) value).doubleValue());
-	                }
-	            }
-	        }
-	        BindingBuilder newCentroid = BindingFactory.builder();
-	        for (Var v : clusterVars.getVars()) {
-	            Object sum = sums.get(v);
-	            if (sum instanceof List) {
-	                List<Double> sumVec = (List<Double>) sum;
-	                List<Double> meanVec = new ArrayList<>();
-	                for (Double d : sumVec) meanVec.add(d / clusterSize);
-	                StringBuilder sb = new StringBuilder("[");
-	                for (int idx = 0; idx < meanVec.size(); idx++) {
-	                    sb.append(meanVec.get(idx));
-	                    if (idx < meanVec.size() - 1) sb.append(", ");
-	                }
-	                sb.append("]");
-	                newCentroid.add(v, NodeFactory.createLiteral(sb.toString()));
-	            } else if (sum instanceof Double) {
-	                double val = (Double) sum / clusterSize;
-	                newCentroid.add(v, NodeFactory.createLiteralByValue(val, XSDDatatype.XSDdouble));
-	            }
-	        }
-	        newCentroids.add(newCentroid.build());
-	    }
-	    return newCentroids;
+	/** Mean of each cluster; a cluster left empty keeps its centroid. */
+	private double[] updateCentroids(Assignment.Sums clusterSums, int dims, double[] oldCentroids) {
+		double[] sums = clusterSums.sums;
+		int[] sizes = clusterSums.sizes;
+		for (int c = 0; c < K; c++) {
+			for (int d = 0; d < dims; d++) {
+				sums[c * dims + d] = (sizes[c] == 0) ? oldCentroids[c * dims + d] : sums[c * dims + d] / sizes[c];
+			}
+		}
+		return sums;
 	}
 
 	@Override
@@ -148,4 +120,14 @@ public class KMeansSolver implements ClusteringSolver {
 		return results.iterator();
 	}
 
+	@Override
+	public ClusterModel model() {
+		return model;
+	}
+
+	@Override
+	public ClusterModel model(double[] centres, int dims, int first) {
+		return new ClusterModel(centres, dims, distance, first);
+	}
+
 }
@@ -4,32 +4,44 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.join.PointStore;
 
 public class KMedoidsClusterResult {
 
-	private List<List<Binding>> clusters;
+	// Clusters and medoids are rows of the store.
+	private List<List<Integer>> clusters;
 	private List<Double> medoidCosts;
-	private List<Binding> medoids;
+	private int[] medoids;
 	private boolean converged = false;
-	VarExprList clusterVars;
+	private PointStore store;
+	private DistanceMatrix distances;
+	private Var clusterVar;
 	
-	private final double EPSILON = .985;
-	
-	public KMedoidsClusterResult(List<Binding> medoids, VarExprList clusterVars) {
-		this.clusters = new ArrayList<List<Binding>>();
+	public KMedoidsClusterResult(int[] medoids, PointStore store, Var clusterVar) {
+		this(medoids, store, DistanceMatrix.create(store, DistanceMatrix.Mode.LAZY, 0), clusterVar);
+	}
+
+	public KMedoidsClusterResult(int[] medoids, PointStore store, DistanceMatrix distances, Var clusterVar) {
+		this.distances = distances;
+		this.clusters = new ArrayList<List<Integer>>();
 		this.medoids = medoids;
-		this.clusterVars = clusterVars;
-		this.medoidCosts = new ArrayList<Double>(medoids.size());
-		for(int i=0; i < medoids.size(); i++) {
+		this.store = store;
+		this.clusterVar = clusterVar;
+		this.medoidCosts = new ArrayList<Double>(medoids.length);
+		for(int i=0; i < medoids.length; i++) {
 			this.medoidCosts.add(0.0);
-			this.clusters.add(new ArrayList<Binding>());
+			this.clusters.add(new ArrayList<Integer>());
 		}
 	}
 
-	public void addAssociation(int cluster, Binding result) {
-		this.clusters.get(cluster).add(result);
+	public void addAssociation(int cluster, int row) {
+		this.clusters.get(cluster).add(row);
 	}
 
 	public void updateMedoidCost(int cluster, double minDist) {
@@ -38,15 +50,15 @@ public class KMedoidsClusterResult {
 
 	public void updateMedoids() {
 		this.converged = true;
-		for (int i = 0; i < medoids.size(); i++) {
+		for (int i = 0; i < medoids.length; i++) {
 			double oldMedoidCost = medoidCosts.get(i);
-			for(Binding b : clusters.get(i)) {
+			for(int b : clusters.get(i)) {
 				double currentCost = 0;
-				for(Binding b2 : clusters.get(i)) {
-					currentCost += ClusterDistances.manhattan(b, b2, clusterVars);
+				for(int b2 : clusters.get(i)) {
+					currentCost += distances.get(b, b2);
 				}
 				if(currentCost < oldMedoidCost) {
-					this.medoids.set(i, b);
+					this.medoids[i] = b;
 					this.medoidCosts.set(i, currentCost);
 					this.converged = false;
 				}
@@ -62,10 +74,15 @@ public class KMedoidsClusterResult {
 		return flatten(clusters).iterator();
 	}
 
-	private List<Binding> flatten(List<List<Binding>> clusters) {
+	private List<Binding> flatten(List<List<Integer>> clusters) {
 		List<Binding> ret = new ArrayList<Binding>();
-		for(List<Binding> cluster : clusters) {
-			ret.addAll(cluster);
+		for (int c = 0; c < clusters.size(); c++) {
+			for (int row : clusters.get(c)) {
+				BindingBuilder result = BindingFactory.builder();
+				result.addAll(store.binding(row));
+				result.add(clusterVar, NodeFactory.createLiteralByValue(c, XSDDatatype.XSDinteger));
+				ret.add(result.build());
+			}
 		}
 		return ret;
 	}
@@ -1,79 +1,92 @@
 package org.apache.jena.sparql.engine.cluster;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Random;
 
-import org.apache.jena.datatypes.xsd.XSDDatatype;
-import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.QueryException;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.binding.BindingBuilder;
-import org.apache.jena.sparql.engine.binding.BindingFactory;
-import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
 
 public class KMedoidsSolver implements ClusteringSolver {
 
 	protected int K;
 	protected KMedoidsClusterResult result =  null;
+	private Assignment assign = null;
+	protected DistFunc distance;
+	private ClusterModel model = null;
 	
 	public KMedoidsSolver(int K) {
+		this(K, ClusterDistances.MANHATTAN);
+	}
+
+	public KMedoidsSolver(int K, DistFunc distance) {
 		assert K > 0;
 		this.K = K;
+		this.distance = distance;
 	}
 	
 	@Override
 	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
-		BufferedQueryIteratorFactory factory = new BufferedQueryIteratorFactory(iter); 
-        QueryIterator rewindable = factory.createBufferedQueryIterator();
-        List<Binding> medoids = new ArrayList<>(K);
-        for (int i = 0; i < K; i++) {
-			if(rewindable.hasNext())
-				medoids.add(rewindable.nextBinding());
-			else
-				throw new QueryException("Query Set has less than K objects");
+		solve(iter, clusterVars, clusterVar, ARQ.getContext());
+	}
+
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		PointStore store = ClusterDistances.createStore(iter, clusterVars);
+		if (store.size() < K)
+			throw new QueryException("Query Set has less than K objects");
+		DistanceMatrix distances = DistanceMatrix.create(store, distance, context);
+		// Medoids are rows of the store, seeded by k-means++.
+		int[] medoids = Assignment.seeds(store, distance, K, new Random(Assignment.SEED));
+		try (Assignment assign = new Assignment(context)) {
+			this.assign = assign;
+			while(true) {
+				result = kmedoids(medoids, store, distances, clusterVar);
+				result.updateMedoids();
+				if(result.converged()) 
+					break;
+			}
+		} finally {
+			this.assign = null;
 		}
-        while(true) {
-        	result = kmedoids(medoids, factory.createBufferedQueryIterator(), clusterVars, clusterVar);
-        	result.updateMedoids();
-        	if(result.converged()) 
-        		break;
-        }
+		// Converged: the medoids are those the rows were assigned to.
+		model = FASTPAMSolver.medoidModel(store, medoids, distance);
 	}
 	
 	@Override
 	public Iterator<Binding> iterator() {
 		return result.iterator();
 	}
+
+	@Override
+	public ClusterModel model() {
+		return model;
+	}
+
+	@Override
+	public ClusterModel model(double[] centres, int dims, int first) {
+		return new ClusterModel(centres, dims, distance, first);
+	}
 	
-	protected KMedoidsClusterResult kmedoids(List<Binding> medoids, QueryIterator queryIterator, 
-			VarExprList clusterVars, Var clusterVar) {
-		KMedoidsClusterResult results = new KMedoidsClusterResult(medoids, clusterVars);
-        while(queryIterator.hasNext()) {
-        	Binding current = queryIterator.nextBinding();
-        	double minDist = Double.POSITIVE_INFINITY;
-        	int cluster = -1;
-        	for(int i=0; i<K; i++) {
-        		Binding medoid = medoids.get(i);
-        		double distance = ClusterDistances.manhattan(current, medoid, clusterVars);
-        		if(distance < minDist) {
-        			minDist = distance;
-        			cluster = i;
-        		}
-        	}
-        	if(cluster==-1) {
-        		throw new QueryException("Binding could not be assigned to a cluster");
-        	}
-        	BindingBuilder result = BindingFactory.builder();
-        	result.addAll(current);
-        	result.add(clusterVar, NodeFactory.createLiteralByValue(cluster, XSDDatatype.XSDinteger));
-        	results.addAssociation(cluster, result.build());
-        	results.updateMedoidCost(cluster, minDist);
-        }
-        return results;
+	protected KMedoidsClusterResult kmedoids(int[] medoids, PointStore store, DistanceMatrix distances, Var clusterVar) {
+		KMedoidsClusterResult results = new KMedoidsClusterResult(medoids, store, distances, clusterVar);
+		int[] assignment = new int[store.size()];
+		double[] cost = new double[store.size()];
+		assign.assignToMedoids(distances, medoids, assignment, cost);
+		for (int r = 0; r < store.size(); r++) {
+			if(assignment[r]==-1) {
+				throw new QueryException("Binding could not be assigned to a cluster");
+			}
+			results.addAssociation(assignment[r], r);
+			results.updateMedoidCost(assignment[r], cost[r]);
+		}
+		return results;
 	}
 
 }
@@ -0,0 +1,237 @@
+package org.apache.jena.sparql.engine.cluster;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorCloseable;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryException;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.system.SerializationFactoryFinder;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Mini-batch k-means (Sculley, "Web-scale k-means clustering", 2010), for inputs too
+ * large to cluster in memory.
+ * <p>
+ * The input is copied once to a data bag, which spills to disk above
+ * {@link ARQ#spillToDiskThreshold}; the rows seeding the centroids (k-means++) are
+ * sampled on the way. Each iteration then reads the bag to sample a batch of rows,
+ * and moves each centroid towards the rows of the batch nearest to it, by a step
+ * that decreases with the number of rows it has seen. Only the centroids and one
+ * batch are held in memory. The final assignment reads the bag again and returns
+ * the rows with their clusters as they are read.
+ */
+public class MiniBatchKMeansSolver implements ClusteringSolver {
+
+	protected int K;
+	protected int maxIter;
+	protected int batchSize;
+	protected double EPSILON = 1e-4;
+	protected DistFunc distance;
+
+	private DataBag<Binding> bag = null;
+	private List<Var> vars;
+	private Var clusterVar;
+	private int dims;
+	private double[] centroids;
+
+	public MiniBatchKMeansSolver(int K, int maxIter, int batchSize) {
+		this(K, maxIter, batchSize, ClusterDistances.MANHATTAN);
+	}
+
+	public MiniBatchKMeansSolver(int K, int maxIter, int batchSize, DistFunc distance) {
+		assert K > 0;
+		assert batchSize > 0;
+		this.K = K;
+		this.maxIter = maxIter;
+		this.batchSize = batchSize;
+		this.distance = distance;
+	}
+
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar) {
+		solve(iter, clusterVars, clusterVar, ARQ.getContext());
+	}
+
+	@Override
+	public void solve(QueryIterator iter, VarExprList clusterVars, Var clusterVar, Context context) {
+		this.vars = clusterVars.getVars();
+		this.clusterVar = clusterVar;
+		Random random = new Random(Assignment.SEED);
+		bag = BagFactory.newDefaultBag(ThresholdPolicyFactory.policyFromContext(context), SerializationFactoryFinder.bindingSerializationFactory());
+		try {
+			// A sample large enough for K seeds.
+			List<Binding> sample = new ArrayList<>();
+			int sampleSize = Math.max(batchSize, K);
+			long size = 0;
+			while (iter.hasNext()) {
+				Binding b = iter.nextBinding();
+				bag.add(b);
+				sample(sample, sampleSize, b, size++, random);
+			}
+			bag.flush();
+			if (size < K)
+				throw new QueryException("Query Set has less than K objects");
+			PointStore seeds = PointStore.create(sample, vars);
+			dims = seeds.dims();
+			centroids = new double[K * dims];
+			int[] rows = Assignment.seeds(seeds, distance, K, random);
+			for (int j = 0; j < K; j++) {
+				System.arraycopy(seeds.data(), seeds.offset(rows[j]), centroids, j * dims, dims);
+			}
+			long[] counts = new long[K];
+			for (int i = 0; i < maxIter; i++) {
+				double[] oldCentroids = centroids.clone();
+				update(PointStore.create(batch(random), vars), counts);
+				if (converged(oldCentroids)) {
+					break;
+				}
+			}
+		} catch (RuntimeException ex) {
+			bag.close();
+			bag = null;
+			throw ex;
+		}
+	}
+
+	// Reservoir sampling of the rows read so far.
+	private static void sample(List<Binding> sample, int sampleSize, Binding b, long seen, Random random) {
+		if (sample.size() < sampleSize) {
+			sample.add(b);
+			return;
+		}
+		long j = random.nextLong(seen + 1);
+		if (j < sampleSize)
+			sample.set((int) j, b);
+	}
+
+	private List<Binding> batch(Random random) {
+		List<Binding> batch = new ArrayList<>(batchSize);
+		Iterator<Binding> it = bag.iterator();
+		try {
+			long seen = 0;
+			while (it.hasNext())
+				sample(batch, batchSize, it.next(), seen++, random);
+		} finally {
+			Iter.close(it);
+		}
+		return batch;
+	}
+
+	private void update(PointStore batch, long[] counts) {
+		double[] data = batch.data();
+		// Assign the whole batch before moving the centroids.
+		int[] assignment = new int[batch.size()];
+		for (int r = 0; r < batch.size(); r++) {
+			assignment[r] = nearest(data, batch.offset(r));
+		}
+		for (int r = 0; r < batch.size(); r++) {
+			int c = assignment[r];
+			counts[c]++;
+			double eta = 1.0 / counts[c];
+			int offset = batch.offset(r);
+			for (int d = 0; d < dims; d++) {
+				double x = data[offset + d];
+				if (x == x) {
+					centroids[c * dims + d] += eta * (x - centroids[c * dims + d]);
+				}
+			}
+		}
+	}
+
+	private int nearest(double[] data, int offset) {
+		double minDist = Double.MAX_VALUE;
+		int cluster = 0;
+		for (int j = 0; j < K; j++) {
+			double dist = distance.distance(data, offset, centroids, j * dims, dims);
+			if (dist < minDist) {
+				minDist = dist;
+				cluster = j;
+			}
+		}
+		return cluster;
+	}
+
+	private boolean converged(double[] oldCentroids) {
+		for (int i = 0; i < K; i++) {
+			if (ClusterDistances.manhattan(oldCentroids, i * dims, centroids, i * dims, dims) >= EPSILON) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public ClusterModel model() {
+		return (centroids == null) ? null : new ClusterModel(centroids.clone(), dims, distance, 1);
+	}
+
+	@Override
+	public ClusterModel model(double[] centres, int dims, int first) {
+		return new ClusterModel(centres, dims, distance, first);
+	}
+
+	/** The rows with their clusters, numbered from 1 as {@link KMeansSolver} does, in the order of the input. */
+	@Override
+	public Iterator<Binding> iterator() {
+		if (bag == null)
+			return Iter.nullIterator();
+		return new Assign(bag);
+	}
+
+	private class Assign implements IteratorCloseable<Binding> {
+		private final DataBag<Binding> bag;
+		private final Iterator<Binding> iter;
+		private boolean closed = false;
+
+		Assign(DataBag<Binding> bag) {
+			this.bag = bag;
+			this.iter = bag.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (closed)
+				return false;
+			if (iter.hasNext())
+				return true;
+			close();
+			return false;
+		}
+
+		@Override
+		public Binding next() {
+			Binding b = iter.next();
+			int c = nearest(PointStore.extract(b, vars, null, null), 0);
+			BindingBuilder result = BindingFactory.builder();
+			result.addAll(b);
+			result.add(clusterVar, NodeFactory.createLiteralByValue(c + 1, XSDDatatype.XSDinteger));
+			return result.build();
+		}
+
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			Iter.close(iter);
+			bag.close();
+		}
+	}
+}
@@ -22,6 +22,11 @@ public class BufferedQueryIteratorFactory {
 	public BufferedQueryIterator createBufferedQueryIterator() {
 		return new BufferedQueryIterator(qIter, buffer);
 	}
+
+	/** Number of bindings buffered so far; the input cardinality once an iterator has been exhausted. */
+	public int size() {
+		return buffer.size();
+	}
 	
 	
 	public class BufferedQueryIterator extends QueryIteratorBase{
@@ -49,7 +49,7 @@ public class QueryIterCluster extends QueryIterPlainWrapper {
                 	return Iter.nullIterator() ;
                 }
                 ClusteringSolver solver = conf.getSolver();
-                solver.solve(iter, clusterVars, clusterVar);
+                solver.solve(iter, clusterVars, clusterVar, execCxt.getContext());
                 return solver.iterator();
 			}
     		
@@ -0,0 +1,21 @@
+package org.apache.jena.sparql.engine.join;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+
+/**
+ * Statistics of the objects of predicates, kept by a dataset, so that similarity joins
+ * can be normalised and planned without a pass over their inputs.
+ * <p>
+ * A dataset offers them by setting {@link ARQ#simJoinStatistics} in its context; they
+ * are used if {@link ARQ#simJoinUseStatistics} is true.
+ */
+public interface AttributeStatistics {
+
+	/** The least and greatest numeric objects of the predicate, or null if unknown or none. */
+	public PairOfSameType<Number> range(Node predicate);
+
+	/** The number of triples with the predicate, or -1 if unknown. */
+	public long count(Node predicate);
+}
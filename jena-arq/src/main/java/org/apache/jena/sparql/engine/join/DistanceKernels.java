@@ -0,0 +1,79 @@
+package org.apache.jena.sparql.engine.join;
+
+/**
+ * Distance computations over coordinates laid out as in a {@link PointStore}.
+ * <p>
+ * The kernels in use are vectorised with the incubating Vector API when the module
+ * {@code jdk.incubator.vector} is in the boot layer (run with
+ * {@code --add-modules jdk.incubator.vector}), and are scalar loops otherwise. The
+ * system property {@code jena:simd=false} forces the scalar kernels.
+ * <p>
+ * The two implementations add the coordinates in a different order, so their results
+ * may differ in the last bits; a given implementation always adds them in the same
+ * order, whatever the bound.
+ */
+public abstract class DistanceKernels {
+
+	private static final DistanceKernels SCALAR = new ScalarDistanceKernels();
+	private static final DistanceKernels VECTOR = loadVector();
+	private static final DistanceKernels DEFAULT = (VECTOR != null && !"false".equalsIgnoreCase(System.getProperty("jena:simd")))
+			? VECTOR : SCALAR;
+
+	/** The kernels used by the distance functions. */
+	public static DistanceKernels get() {
+		return DEFAULT;
+	}
+
+	public static DistanceKernels scalar() {
+		return SCALAR;
+	}
+
+	/** The vectorised kernels, or null if the Vector API is not available. */
+	public static DistanceKernels vector() {
+		return VECTOR;
+	}
+
+	private static DistanceKernels loadVector() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return null;
+		try {
+			// Loaded by name: this class must link without the module.
+			Class<?> c = Class.forName(DistanceKernels.class.getPackageName() + ".VectorDistanceKernels");
+			DistanceKernels kernels = (DistanceKernels) c.getDeclaredConstructor().newInstance();
+			// No SIMD registers wide enough for two doubles.
+			return kernels.lanes() >= 2 ? kernels : null;
+		} catch (ReflectiveOperationException | LinkageError ex) {
+			return null;
+		}
+	}
+
+	/** Number of coordinates processed at once. */
+	public abstract int lanes();
+
+	/**
+	 * Manhattan distance; may stop early and return any value greater than
+	 * {@code bound} once the distance is known to exceed it.
+	 */
+	public abstract double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound);
+
+	/**
+	 * Squared euclidean distance; may stop early and return any value greater than
+	 * {@code bound} once the distance is known to exceed it.
+	 */
+	public abstract double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound);
+
+	/** Manhattan distance where coordinates missing ({@code NaN}) on either side do not contribute. */
+	public abstract double manhattanSkipNaN(double[] a, int aOffset, double[] b, int bOffset, int dims);
+
+	/**
+	 * Cosine distance, {@code 1 - a.b / (|a| |b|)}, in one pass over both points.
+	 * A zero vector is at distance 0 of another zero vector and 1 of any other vector.
+	 */
+	public abstract double cosine(double[] a, int aOffset, double[] b, int bOffset, int dims);
+
+	static double cosine(double dot, double normA, double normB) {
+		if (normA == 0 || normB == 0)
+			return (normA == normB) ? 0 : 1;
+		return 1 - dot / Math.sqrt(normA * normB);
+	}
+}
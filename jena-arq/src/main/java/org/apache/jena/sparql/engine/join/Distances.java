@@ -1,81 +1,74 @@
 package org.apache.jena.sparql.engine.join;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.jena.atlas.lib.PairOfSameType;
-import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.graph.Node;
-import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.engine.join.PointStore.Point;
 import org.apache.jena.sparql.engine.join.flann.Metric;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.VectorDatatype;
 
 import com.eatthepath.jvptree.DistanceFunction;
 
 public class Distances {
-	
+
     public static final String NS = "http://sj.dcc.uchile.cl/sim#";
-    
+
 	private static Map<String, DistFunc> registry = new HashMap<String, Distances.DistFunc>();
 	static {
         registry.put(NS + "manhattanvec", new DistFunc() {
             @Override
-            public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
-				
-                double d = 0.0;
-                Node n1 = p1.get(0);
-                Node n2 = p2.get(0);
+            public boolean isMetric() {
+                return true;
+            }
 
-                String vectorString1 = n1.getLiteralValue().toString().trim();
-                String vectorString2 = n2.getLiteralValue().toString().trim();
-
-                List<Double> vector1 = parseVectorString(vectorString1);
-                List<Double> vector2 = parseVectorString(vectorString2);
+            @Override
+            public boolean isVector() {
+                return true;
+            }
 
-                
-                if (vector1.size() != vector2.size()) {
+            @Override
+            public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+                double[] vector1 = VectorDatatype.vector(p1.get(0));
+                double[] vector2 = VectorDatatype.vector(p2.get(0));
+                if (vector1.length != vector2.length) {
                     throw new IllegalArgumentException("Vectors must have the same length.");
                 }
+                return distance(vector1, 0, vector2, 0, vector1.length);
+			}
 
-                for (int i = 0; i < vector1.size(); i++) {
-                    d += Math.abs(vector1.get(i) - vector2.get(i));
-                }
+            @Override
+            public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+                return manhattan(a, aOffset, b, bOffset, dims);
+            }
 
-                
-                return d;
-			}
-			
-			private List<Double> parseVectorString(String vectorString) {
-
-			    vectorString = vectorString.replaceAll("\\[", "").replaceAll("\\]", "").trim();
-			    String[] parts = vectorString.split(",");
-
-			    List<Double> vector = new ArrayList<>();
-			    for (String part : parts) {
-	
-			        part = part.trim();
-			  
-			        if (part.startsWith("\"")) {
-			            part = part.substring(1);
-			        }
-			        if (part.endsWith("\"")) {
-			            part = part.substring(0, part.length() - 1);
-			        }
-			        try {
-			            vector.add(Double.parseDouble(part));
-			        } catch (NumberFormatException e) {
-			            throw new IllegalArgumentException("Cannot parse '" + part + "' to Double in vector string: " + vectorString, e);
-			        }
-			    }
-			    return vector;
-			}
+            @Override
+            public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+                return manhattan(a, aOffset, b, bOffset, dims, bound);
+            }
+
+            @Override
+            public double coordinate(double a, double b) {
+                return Math.abs(a - b);
+            }
+
+            @Override
+            public double coordinateRange(double radius) {
+                return radius;
+            }
 		});
-		
+
 		registry.put(NS + "manhattan", new DistFunc() {
-			
+
+			@Override
+			public boolean isMetric() {
+				return true;
+			}
+
 			@Override
 			public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
 				double d = 0.0;
@@ -90,9 +83,38 @@ public class Distances {
 				}
 				return d;
 			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+				return manhattan(a, aOffset, b, bOffset, dims);
+			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+				return manhattan(a, aOffset, b, bOffset, dims, bound);
+			}
+
+			@Override
+			public double selectivity(int dims, double radius) {
+				// Volume of the L1 ball, (2r)^d / d!
+				double v = 1.0;
+				for (int i = 1; i <= dims; i++)
+					v *= 2 * radius / i;
+				return Math.min(1.0, v);
+			}
+
+			@Override
+			public double coordinate(double a, double b) {
+				return Math.abs(a - b);
+			}
+
+			@Override
+			public double coordinateRange(double radius) {
+				return radius;
+			}
 		});
 		registry.put(NS + "euclidean", new DistFunc() {
-			
+
 			@Override
 			public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
 				double d = 0;
@@ -103,82 +125,297 @@ public class Distances {
 					double minX = minMax.get(leftExpr.get(i)).getLeft().doubleValue();
 					double x = (((Number) n1.getLiteralValue()).doubleValue()- minX)/(maxX-minX);
 					double y = (((Number) n2.getLiteralValue()).doubleValue()- minX)/(maxX-minX);
-					
+
 					d += (x-y)*(x-y);
 				}
 				return d;
 			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+				return squaredEuclidean(a, aOffset, b, bOffset, dims, Double.POSITIVE_INFINITY);
+			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+				return squaredEuclidean(a, aOffset, b, bOffset, dims, bound);
+			}
+
+			@Override
+			public double selectivity(int dims, double radius) {
+				// Volume of the L2 ball of radius sqrt(r): the distance is squared.
+				// V(d) = V(d-2) * 2 pi r / d, with V(0) = 1 and V(1) = 2 sqrt(r).
+				double v = (dims % 2 == 0) ? 1.0 : 2 * Math.sqrt(radius);
+				for (int i = (dims % 2 == 0) ? 2 : 3; i <= dims; i += 2)
+					v *= 2 * Math.PI * radius / i;
+				return Math.min(1.0, v);
+			}
+
+			@Override
+			public double coordinate(double a, double b) {
+				return (a - b) * (a - b);
+			}
+
+			@Override
+			public double coordinateRange(double radius) {
+				return Math.sqrt(Math.max(radius, 0));
+			}
+		});
+		registry.put(NS + "cosine", new DistFunc() {
+
+			@Override
+			public boolean isNormalised() {
+				return false;
+			}
+
+			@Override
+			public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+				double[] a = coordinates(p1);
+				double[] b = coordinates(p2);
+				if (a.length != b.length)
+					throw new IllegalArgumentException("Vectors must have the same length.");
+				return distance(a, 0, b, 0, a.length);
+			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+				return KERNELS.cosine(a, aOffset, b, bOffset, dims);
+			}
+
+			@Override
+			public double coordinate(double a, double b) {
+				// No lower bound from a single coordinate.
+				return 0;
+			}
+		});
+		registry.put(NS + "haversine", new DistFunc() {
+
+			@Override
+			public boolean isMetric() {
+				return true;
+			}
+
+			@Override
+			public boolean isNormalised() {
+				return false;
+			}
+
+			@Override
+			public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+				double[] a = coordinates(p1);
+				double[] b = coordinates(p2);
+				return distance(a, 0, b, 0, Math.min(a.length, b.length));
+			}
+
+			@Override
+			public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+				if (dims != 2)
+					throw new IllegalArgumentException("Haversine distance between (latitude, longitude) pairs, not " + dims + " coordinates");
+				return haversine(a[aOffset], a[aOffset + 1], b[bOffset], b[bOffset + 1]);
+			}
+
+			@Override
+			public double coordinate(double a, double b) {
+				// Which coordinate is not known: a longitude difference may cost nothing at the poles.
+				return 0;
+			}
+
+			@Override
+			public double coordinateRange(double radius) {
+				// The latitude range: longitude ranges are wider, away from the equator.
+				return latitudeRange(radius);
+			}
+
+			@Override
+			public double coordinateRange(double radius, double[] point, int offset, int dim) {
+				switch (dim) {
+					case 0: return latitudeRange(radius);
+					case 1: return longitudeRange(radius, point[offset]);
+					default: return Double.POSITIVE_INFINITY;
+				}
+			}
+
+			@Override
+			public double period(int dim) {
+				return (dim == 1) ? 360 : 0;
+			}
 		});
 	}
 
 	public interface DistFunc {
 		public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr);
+
+		/**
+		 * Distance between two points laid out as in a {@link PointStore}, starting
+		 * at the given offsets. Coordinates are already normalised.
+		 */
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims);
+
+		/**
+		 * As {@link #distance(double[], int, double[], int, int)}, but may stop early and
+		 * return any value greater than {@code bound} once the distance is known to exceed it.
+		 * Callers that only keep points within a bound (the k-th nearest so far, a radius)
+		 * skip the remaining coordinates of far points.
+		 */
+		public default double distance(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+			return distance(a, aOffset, b, bOffset, dims);
+		}
+
+		/**
+		 * Contribution of a single coordinate to the distance. Summed over some of
+		 * the coordinates, it is a lower bound of the distance, as KD-trees require.
+		 */
+		public double coordinate(double a, double b);
+
+		/**
+		 * Largest difference on a single coordinate between two points within {@code radius},
+		 * as grid indexes require; infinite if there is none. Where the range depends on the
+		 * coordinate and the point, the smallest of them, which grid indexes use as the side
+		 * of their cells.
+		 */
+		public default double coordinateRange(double radius) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Largest difference on coordinate {@code dim} between the point at {@code offset}
+		 * and the points within {@code radius} of it. By default the same for every point
+		 * and coordinate: {@link #coordinateRange(double)}.
+		 */
+		public default double coordinateRange(double radius, double[] point, int offset, int dim) {
+			return coordinateRange(radius);
+		}
+
+		/** Period of coordinate {@code dim} if its values wrap around, as longitudes do; else 0. */
+		public default double period(int dim) {
+			return 0;
+		}
+
+		/**
+		 * Whether numeric attributes are normalised to their range before the distance is
+		 * computed. Distances over angles, such as cosine and haversine, use the raw values.
+		 */
+		public default boolean isNormalised() {
+			return true;
+		}
+
+		/** Whether the function satisfies the triangle inequality, as metric-space indexes (VP-trees) require. */
+		public default boolean isMetric() {
+			return false;
+		}
+
+		/** Whether the function compares vector literals rather than numeric attributes. */
+		public default boolean isVector() {
+			return false;
+		}
+
+		/**
+		 * Estimated fraction of the points, uniform over the normalised unit cube, within
+		 * {@code radius} of a point: the selectivity of a range join, as used for planning.
+		 * Points near the border of the cube are not corrected for, so this is an upper
+		 * estimate. Default 1 (unknown).
+		 */
+		public default double selectivity(int dims, double radius) {
+			return 1.0;
+		}
 	}
-	
+
 	public static DistFunc getDistance(String distance) {
 		return registry.get(distance.toLowerCase());
 	}
 
-	public static DistanceFunction<List<Double>> asVPFunction(DistFunc distFunc, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
-		DistanceFunction<List<Double>> res = new DistanceFunction<List<Double>>() {
+	static double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		return manhattan(a, aOffset, b, bOffset, dims, Double.POSITIVE_INFINITY);
+	}
 
-			@Override
-			public double getDistance(List<Double> firstPoint, List<Double> secondPoint) {
-				List<Node> p1 = new ArrayList<Node>();
-				List<Node> p2 = new ArrayList<Node>();
-				for (int i = 0; i < firstPoint.size(); i++) {
-					p1.add(NodeFactory.createLiteralByValue(firstPoint.get(i), XSDDatatype.XSDdouble));
-					p2.add(NodeFactory.createLiteralByValue(secondPoint.get(i), XSDDatatype.XSDdouble));
-				}
-				return distFunc.distance(p1, p2, minMax, leftExpr, rightExpr);
-			}
-		};
-		return res;
+	// The kernels are fixed at class initialisation, so calls through them are inlined.
+	private static final DistanceKernels KERNELS = DistanceKernels.get();
+
+	static double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		return KERNELS.manhattan(a, aOffset, b, bOffset, dims, bound);
+	}
+
+	static double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		return KERNELS.squaredEuclidean(a, aOffset, b, bOffset, dims, bound);
+	}
+
+	/** Mean radius of the Earth in kilometres, as used by {@code sim:haversine}. */
+	public static final double EARTH_RADIUS = 6371.0088;
+
+	// Relative margin of the coordinate ranges of sim:haversine over rounding in the distance.
+	private static final double RANGE_MARGIN = 1 + 1e-9;
+
+	/**
+	 * Largest latitude difference, in degrees, between two points within {@code radius}
+	 * kilometres: one degree is 111.2 km along any meridian.
+	 */
+	public static double latitudeRange(double radius) {
+		return Math.toDegrees(Math.max(radius, 0) / EARTH_RADIUS) * RANGE_MARGIN;
 	}
 
-	public static Metric getMetric(DistFunc distFunc, Map<Expr,PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+	/**
+	 * Largest longitude difference, in degrees, between a point at the latitude and the
+	 * points within {@code radius} kilometres of it; infinite if they include a pole.
+	 */
+	public static double longitudeRange(double radius, double latitude) {
+		double delta = Math.max(radius, 0) / EARTH_RADIUS;
+		double lat = Math.toRadians(Math.abs(latitude));
+		if (lat + delta * RANGE_MARGIN >= Math.PI / 2)
+			return Double.POSITIVE_INFINITY;
+		return Math.toDegrees(Math.asin(Math.sin(delta) / Math.cos(lat))) * RANGE_MARGIN;
+	}
+
+	/** Great-circle distance in kilometres between two (latitude, longitude) pairs in degrees. */
+	public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double sinLat = Math.sin(dLat / 2);
+		double sinLon = Math.sin(dLon / 2);
+		double h = sinLat * sinLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+	}
+
+	// Numeric literals give one coordinate each, vector literals one per component.
+	private static double[] coordinates(List<Node> nodes) {
+		if (nodes.size() == 1 && !(nodes.get(0).getLiteralValue() instanceof Number))
+			return VectorDatatype.vector(nodes.get(0));
+		double[] x = new double[nodes.size()];
+		for (int i = 0; i < x.length; i++)
+			x[i] = ((Number) nodes.get(i).getLiteralValue()).doubleValue();
+		return x;
+	}
+
+	public static DistanceFunction<Point> asVPFunction(DistFunc distFunc, int dims) {
+		return (p1, p2) -> distFunc.distance(p1.data, p1.offset, p2.data, p2.offset, dims);
+	}
+
+	public static Metric getMetric(DistFunc distFunc) {
 		return new Metric() {
-			
+
 			@Override
 			public int distance(int a, int b) {
-				List<Node> p1 = new ArrayList<Node>();
-				List<Node> p2 = new ArrayList<Node>();
-				p1.add(NodeFactory.createLiteralByValue(a, XSDDatatype.XSDdouble));
-				p2.add(NodeFactory.createLiteralByValue(b, XSDDatatype.XSDdouble));
-				return (int) distFunc.distance(p1, p2, minMax, leftExpr, rightExpr);
+				return (int) distFunc.coordinate(a, b);
 			}
-			
+
 			@Override
 			public int distance(int[] a, int[] b) {
-				List<Node> p1 = new ArrayList<Node>();
-				List<Node> p2 = new ArrayList<Node>();
+				double d = 0;
 				for (int i = 0; i < a.length; i++) {
-					p1.add(NodeFactory.createLiteralByValue(a[i], XSDDatatype.XSDdouble));
-					p2.add(NodeFactory.createLiteralByValue(b[i], XSDDatatype.XSDdouble));
+					d += distFunc.coordinate(a[i], b[i]);
 				}
-				return (int) distFunc.distance(p1, p2, minMax, leftExpr, rightExpr);
+				return (int) d;
 			}
-			
+
 			@Override
 			public double distance(double a, double b) {
-				List<Node> p1 = new ArrayList<Node>();
-				List<Node> p2 = new ArrayList<Node>();
-				p1.add(NodeFactory.createLiteralByValue(a, XSDDatatype.XSDdouble));
-				p2.add(NodeFactory.createLiteralByValue(b, XSDDatatype.XSDdouble));
-				return distFunc.distance(p1, p2, minMax, leftExpr, rightExpr);
+				return distFunc.coordinate(a, b);
 			}
-			
+
 			@Override
 			public double distance(double[] a, double[] b) {
-				List<Node> p1 = new ArrayList<Node>();
-				List<Node> p2 = new ArrayList<Node>();
-				for (int i = 0; i < a.length; i++) {
-					p1.add(NodeFactory.createLiteralByValue(a[i], XSDDatatype.XSDdouble));
-					p2.add(NodeFactory.createLiteralByValue(b[i], XSDDatatype.XSDdouble));
-				}
-				return distFunc.distance(p1, p2, minMax, leftExpr, rightExpr);
+				return distFunc.distance(a, 0, b, 0, a.length);
 			}
 		};
 	}
-	
+
 }
@@ -20,13 +20,12 @@ package org.apache.jena.sparql.engine.join;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List ;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.sparql.algebra.Algebra ;
 import org.apache.jena.sparql.algebra.Table ;
 import org.apache.jena.sparql.algebra.TableFactory ;
@@ -36,9 +35,12 @@ import org.apache.jena.sparql.engine.QueryIterator ;
 import org.apache.jena.sparql.engine.binding.Binding ;
 import org.apache.jena.sparql.engine.iterator.BufferedQueryIteratorFactory;
 import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper ;
+import org.apache.jena.sparql.engine.join.solver.SimJoinIndexCache;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner;
 import org.apache.jena.sparql.engine.main.OpExecutor ;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList ;
+import org.apache.jena.sparql.util.Context ;
 
 /** API to various join algorithms */
 public class Join {
@@ -261,57 +263,101 @@ public class Join {
     
     public static QueryIterator simJoin(QueryIterator left, QueryIterator right, OpSimJoin opSimJoin,
 			ExecutionContext execCxt) {
+		if (SimJoinPlanner.isStreaming(opSimJoin, execCxt.getContext())) {
+			// The solver spills both sides and computes the normalisation itself.
+			return QueryIterSimJoin.create(left, right, opSimJoin, SimJoinInputs.UNKNOWN, execCxt);
+		}
+		AttributeStatistics stats = statistics(execCxt.getContext());
+		SimJoinInputs fromStats = (stats == null) ? null : SimJoinStatistics.inputs(opSimJoin, stats);
+		if (fromStats != null) {
+			// Normalised and planned from the statistics: no pass over the inputs.
+			return QueryIterSimJoin.create(left, right, opSimJoin, fromStats, execCxt);
+		}
 		BufferedQueryIteratorFactory leftFactory = new BufferedQueryIteratorFactory(left);
+		SimJoinIndexCache.RightSide cached = SimJoinIndexCache.get().getRightSide(opSimJoin, execCxt);
+		if (cached != null) {
+			// The range of the right side is known: only the left side is read now, and
+			// the right side is not evaluated at all if its index is cached too.
+			Map<Expr, PairOfSameType<Number>> leftMinMax = getNormalisationMap(leftFactory.createBufferedQueryIterator(), opSimJoin.getLeftAttributes());
+			SimJoinInputs inputs = new SimJoinInputs(
+					condense(new PairOfSameType<>(leftMinMax, cached.ranges()), opSimJoin.getLeftAttributes(), opSimJoin.getRightAttributes()),
+					leftFactory.size(), cached.size());
+			return QueryIterSimJoin.create(leftFactory.createBufferedQueryIterator(), right, opSimJoin, inputs, execCxt);
+		}
 		BufferedQueryIteratorFactory rightFactory = new BufferedQueryIteratorFactory(right);
-		PairOfSameType<Map<Expr, PairOfSameType<Number>>> minMax = getNormalisationMap(leftFactory.createBufferedQueryIterator(),
-				rightFactory.createBufferedQueryIterator(), opSimJoin.getLeftAttributes(), opSimJoin.getRightAttributes());
-		Map<Expr, PairOfSameType<Number>> condensedMinMax = condense(minMax);
-		opSimJoin.setNormMap(condensedMinMax);
-		return QueryIterSimJoin.create(leftFactory.createBufferedQueryIterator(), rightFactory.createBufferedQueryIterator(), opSimJoin, execCxt);
+		PairOfSameType<Map<Expr, PairOfSameType<Number>>> minMax = new PairOfSameType<>(
+				getNormalisationMap(leftFactory.createBufferedQueryIterator(), opSimJoin.getLeftAttributes()),
+				getNormalisationMap(rightFactory.createBufferedQueryIterator(), opSimJoin.getRightAttributes()));
+		SimJoinIndexCache.get().putRightSide(opSimJoin, execCxt, minMax.getRight(), rightFactory.size());
+		Map<Expr, PairOfSameType<Number>> condensedMinMax = condense(minMax, opSimJoin.getLeftAttributes(), opSimJoin.getRightAttributes());
+		SimJoinInputs inputs = new SimJoinInputs(condensedMinMax, leftFactory.size(), rightFactory.size());
+		return QueryIterSimJoin.create(leftFactory.createBufferedQueryIterator(), rightFactory.createBufferedQueryIterator(), opSimJoin, inputs, execCxt);
 	}
 
+	/**
+	 * Similarity join of the rows of one scan with themselves, renamed: the normalisation
+	 * map is computed over one side only, as both have the same values.
+	 */
+	public static QueryIterator simJoin(SharedScan shared, OpSimJoin opSimJoin, ExecutionContext execCxt) {
+		AttributeStatistics stats = statistics(execCxt.getContext());
+		SimJoinInputs inputs = (stats == null) ? null : SimJoinStatistics.inputs(opSimJoin, stats);
+		if (inputs == null) {
+			Map<Expr, PairOfSameType<Number>> minMax = new HashMap<Expr, PairOfSameType<Number>>();
+			for (Binding current : shared.getLeftRows()) {
+				for (Expr lexpr : opSimJoin.getLeftAttributes().getList()) {
+					probeToMap(minMax, current, lexpr);
+				}
+			}
+			inputs = new SimJoinInputs(minMax, shared.size(), shared.size());
+		}
+		QueryIterator left = QueryIterPlainWrapper.create(shared.getLeftRows().iterator(), execCxt);
+		QueryIterator right = QueryIterPlainWrapper.create(shared.getRightRows().iterator(), execCxt);
+		return QueryIterSimJoin.create(left, right, opSimJoin, shared, inputs, execCxt);
+	}
+
+	private static AttributeStatistics statistics(Context context) {
+		if (!context.isTrue(ARQ.simJoinUseStatistics))
+			return null;
+		Object x = context.get(ARQ.simJoinStatistics);
+		return (x instanceof AttributeStatistics) ? (AttributeStatistics) x : null;
+	}
+
+	// Attribute i of the left side is compared with attribute i of the right side.
 	private static Map<Expr, PairOfSameType<Number>> condense(
-			PairOfSameType<Map<Expr, PairOfSameType<Number>>> minMax) {
+			PairOfSameType<Map<Expr, PairOfSameType<Number>>> minMax, ExprList leftAttributes, ExprList rightAttributes) {
 		Map<Expr, PairOfSameType<Number>> res = new HashMap<Expr, PairOfSameType<Number>>();
-		Iterator<Entry<Expr, PairOfSameType<Number>>> leftIter = minMax.getLeft().entrySet().iterator();
-		Iterator<Entry<Expr, PairOfSameType<Number>>> rightIter = minMax.getRight().entrySet().iterator();
-		while (leftIter.hasNext() && rightIter.hasNext()) {
-			Entry<Expr, PairOfSameType<Number>> left = leftIter.next();
-			Entry<Expr, PairOfSameType<Number>> right = rightIter.next();
+		for (int i = 0; i < leftAttributes.size() && i < rightAttributes.size(); i++) {
+			PairOfSameType<Number> left = minMax.getLeft().get(leftAttributes.get(i));
+			PairOfSameType<Number> right = minMax.getRight().get(rightAttributes.get(i));
+			if (left == null || right == null)
+				continue;
 			PairOfSameType<Number> pair = new PairOfSameType<Number>(
-					Math.min(left.getValue().getLeft().doubleValue(), right.getValue().getLeft().doubleValue()),
-					Math.max(left.getValue().getRight().doubleValue(), right.getValue().getRight().doubleValue()));
-			res.put(left.getKey(), pair);
+					Math.min(left.getLeft().doubleValue(), right.getLeft().doubleValue()),
+					Math.max(left.getRight().doubleValue(), right.getRight().doubleValue()));
+			res.put(leftAttributes.get(i), pair);
 		}
 		return res;
 	}
 
-	private static PairOfSameType<Map<Expr, PairOfSameType<Number>>> getNormalisationMap(QueryIterator left, QueryIterator right,
-			ExprList leftAttributes, ExprList rightAttributes) {
-		Map<Expr, PairOfSameType<Number>> resultLeft = new HashMap<Expr, PairOfSameType<Number>>();
-		Map<Expr, PairOfSameType<Number>> resultRight = new HashMap<Expr, PairOfSameType<Number>>();
-		for(;left.hasNext();) {
-			Binding current = left.nextBinding();
-			for(Expr lexpr : leftAttributes.getList()) {
-				probeToMap(resultLeft, current, lexpr);
-			}
-		}
-		for(;right.hasNext();) {
-			Binding current = right.nextBinding();
-			for(Expr rexpr : rightAttributes.getList()) {
-				probeToMap(resultRight, current, rexpr);
+	private static Map<Expr, PairOfSameType<Number>> getNormalisationMap(QueryIterator input, ExprList attributes) {
+		Map<Expr, PairOfSameType<Number>> result = new HashMap<Expr, PairOfSameType<Number>>();
+		for(;input.hasNext();) {
+			Binding current = input.nextBinding();
+			for(Expr expr : attributes.getList()) {
+				probeToMap(result, current, expr);
 			}
 		}
-		return new PairOfSameType<Map<Expr,PairOfSameType<Number>>>(resultLeft, resultRight);
+		return result;
 	}
 
 	private static void probeToMap(Map<Expr, PairOfSameType<Number>> result, Binding current, Expr expr) {
 		if(current.get(expr.asVar())==null)
 			throw new IllegalArgumentException("Similarity Join variables should not be obtained from an OPTIONAL clause");
 	    Object literalValue = current.get(expr.asVar()).getLiteralValue();
-	    if (literalValue instanceof String) {
+	    // Vectors, as strings or sim:vector values, are not normalised.
+	    if (!(literalValue instanceof Number)) {
 	    	return;
-	    } 
+	    }
 		Number currentValue = (Number) literalValue;
 		if (!result.containsKey(expr)) {
 			result.put(expr, new PairOfSameType<Number>(currentValue, currentValue));
@@ -0,0 +1,193 @@
+package org.apache.jena.sparql.engine.join;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.VectorDatatype;
+
+/**
+ * Coordinates of a set of bindings, extracted once into a single row-major
+ * {@code double[]} so that distance functions and indexes work on primitives.
+ * <p>
+ * Each variable contributes one coordinate if bound to a numeric literal, or
+ * one coordinate per component if bound to a vector literal ({@code "[0.1, 0.2]"},
+ * as a string or a {@link VectorDatatype sim:vector} literal, whose value is parsed only once).
+ * Numeric coordinates can be min-max normalised while the store is built.
+ * Unbound or non-literal values are stored as {@code NaN}.
+ * <p>
+ * Row {@code i} of the store is the {@code i}-th binding it was built from.
+ */
+public class PointStore {
+
+	private final Binding[] bindings;
+	private final double[] data;
+	private final int dims;
+
+	private PointStore(Binding[] bindings, double[] data, int dims) {
+		this.bindings = bindings;
+		this.data = data;
+		this.dims = dims;
+	}
+
+	/** Store the raw coordinates of the bindings. */
+	public static PointStore create(List<Binding> bindings, List<Var> vars) {
+		return create(bindings, vars, null, null);
+	}
+
+	/**
+	 * Store the coordinates of the bindings, normalising variable {@code i} with
+	 * {@code min[i]} and {@code max[i]} unless they are {@code NaN}.
+	 */
+	public static PointStore create(List<Binding> bindings, List<Var> vars, double[] min, double[] max) {
+		Binding[] rows = bindings.toArray(new Binding[0]);
+		if (rows.length == 0)
+			return new PointStore(rows, new double[0], 0);
+		int dims = dimensions(rows[0], vars);
+		double[] data = new double[rows.length * dims];
+		for (int i = 0; i < rows.length; i++) {
+			extract(rows[i], vars, min, max, data, i * dims, dims);
+		}
+		return new PointStore(rows, data, dims);
+	}
+
+	/** Number of coordinates of the binding: one per numeric variable, one per component of a vector variable. */
+	public static int dimensions(Binding b, List<Var> vars) {
+		int dims = 0;
+		for (Var v : vars) {
+			double[] vector = vector(literalValue(b.get(v)));
+			dims += (vector != null) ? vector.length : 1;
+		}
+		return dims;
+	}
+
+	/** The coordinates of a binding outside of any store, such as a probe binding. */
+	public static double[] extract(Binding b, List<Var> vars, double[] min, double[] max) {
+		int dims = dimensions(b, vars);
+		double[] point = new double[dims];
+		extract(b, vars, min, max, point, 0, dims);
+		return point;
+	}
+
+	private static void extract(Binding b, List<Var> vars, double[] min, double[] max, double[] dest, int offset, int dims) {
+		int j = offset;
+		for (int i = 0; i < vars.size(); i++) {
+			Object value = literalValue(b.get(vars.get(i)));
+			double[] vector = vector(value);
+			if (vector != null) {
+				if (j + vector.length > offset + dims)
+					throw new IllegalArgumentException("Vectors must have the same length.");
+				System.arraycopy(vector, 0, dest, j, vector.length);
+				j += vector.length;
+			} else if (value instanceof Number) {
+				double x = ((Number) value).doubleValue();
+				dest[j++] = (min == null) ? x : normalise(x, min[i], max[i]);
+			} else {
+				dest[j++] = Double.NaN;
+			}
+		}
+		if (j != offset + dims)
+			throw new IllegalArgumentException("Vectors must have the same length.");
+	}
+
+	private static double normalise(double x, double min, double max) {
+		if (Double.isNaN(min) || Double.isNaN(max))
+			return x;
+		if (max == min)
+			return 0;
+		return (x - min) / (max - min);
+	}
+
+	private static Object literalValue(Node n) {
+		if (n == null || ! n.isLiteral())
+			return null;
+		return n.getLiteralValue();
+	}
+
+	/** The components of a vector value: a {@code sim:vector} value or a string to parse, else null. */
+	private static double[] vector(Object value) {
+		if (value instanceof double[])
+			return (double[]) value;
+		if (value instanceof String)
+			return parseVector((String) value);
+		return null;
+	}
+
+	/** Parse a vector literal such as {@code "[0.1, 0.2, 0.3]"}. */
+	public static double[] parseVector(String vectorString) {
+		return VectorDatatype.parseVector(vectorString);
+	}
+
+	public int size() {
+		return bindings.length;
+	}
+
+	public int dims() {
+		return dims;
+	}
+
+	/** The backing array: row {@code i} starts at {@link #offset(int) offset(i)}. */
+	public double[] data() {
+		return data;
+	}
+
+	public int offset(int row) {
+		return row * dims;
+	}
+
+	public Binding binding(int row) {
+		return bindings[row];
+	}
+
+	public double get(int row, int dim) {
+		return data[row * dims + dim];
+	}
+
+	/** A copy of the coordinates of a row. */
+	public double[] point(int row) {
+		double[] point = new double[dims];
+		System.arraycopy(data, row * dims, point, 0, dims);
+		return point;
+	}
+
+	/** A copy of the store as one array per row, for indexes that need it. */
+	public double[][] toArrays() {
+		double[][] rows = new double[bindings.length][];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = point(i);
+		}
+		return rows;
+	}
+
+	/** All rows as {@link Point}s, sharing the backing array. */
+	public List<Point> points() {
+		List<Point> points = new ArrayList<>(bindings.length);
+		for (int i = 0; i < bindings.length; i++) {
+			points.add(new Point(data, i * dims, i));
+		}
+		return points;
+	}
+
+	/**
+	 * A reference to a point: a row of a store, or a free standing probe
+	 * (row {@code -1}). Used as the element type of metric indexes.
+	 */
+	public static final class Point {
+		public final double[] data;
+		public final int offset;
+		public final int row;
+
+		public Point(double[] data, int offset, int row) {
+			this.data = data;
+			this.offset = offset;
+			this.row = row;
+		}
+
+		/** A probe point that is not a row of a store. */
+		public Point(double[] data) {
+			this(data, 0, -1);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIter2;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.system.SerializationFactoryFinder;
+
+/**
+ * Hash join that spills to disk when the probe side is larger than
+ * {@link ARQ#spillToDiskThreshold} ("grace" hash join).
+ * <p>
+ * The left side is read into memory up to the threshold. If it fits, the join is
+ * the in-memory {@link QueryIterHashJoin}. Otherwise both sides are split into
+ * partitions by the hash of the value of the first join key variable, in data bags
+ * that write to disk above their share of the threshold. Matching rows have the same
+ * value, so they are in the partitions of the same number, which are joined in turn in
+ * the same way: a partition still too large is split again with a different hash.
+ * After {@link #MAX_DEPTH} rounds, as when most rows share one value, a partition is
+ * joined in memory.
+ * <p>
+ * Rows that do not bind the partitioning variable are compatible with rows of any
+ * partition. They are kept in a partition of their own, joined with the whole of the
+ * other side a block of rows at a time.
+ * <p>
+ * The bags of a join share half of its threshold between them; the other half is for
+ * the partition or block being joined, so nested joins stay within the threshold of
+ * the first one, until the in-memory join of {@link #MAX_DEPTH}.
+ * <p>
+ * Results are not in the order of the in-memory hash join.
+ */
+public class QueryIterGraceHashJoin extends QueryIter2 {
+    /** Number of partitions each side is split into. */
+    static final int PARTITIONS = 16;
+
+    /** Number of times a partition is split again before it is joined in memory. */
+    static final int MAX_DEPTH = 4;
+
+    /** Number of bags open at once: the partitions of each side and the rows without the partitioning variable. */
+    private static final int BAGS = 2 * (PARTITIONS + 1);
+
+    private final JoinKey joinKey;
+    private final Var partitionVar;
+    private final long threshold;
+    private final int depth;
+
+    private final List<DataBag<Binding>> bags = new ArrayList<>();
+    private final Deque<Supplier<QueryIterator>> joins = new ArrayDeque<>();
+    private QueryIterator current = null;
+    private boolean started = false;
+
+    /** The spill threshold of the execution, or -1 if hash joins are kept in memory. */
+    static long threshold(ExecutionContext execCxt) {
+        if ( execCxt == null || execCxt.getContext() == null )
+            return -1;
+        return execCxt.getContext().getLong(ARQ.spillToDiskThreshold, -1);
+    }
+
+    /**
+     * Create a hash join that partitions its inputs to disk above the threshold.
+     * @param joinKey  Join key - not null and not empty
+     * @param left     Probe side
+     * @param right    Stream side
+     * @param execCxt
+     * @param threshold Number of rows held in memory
+     */
+    public static QueryIterator create(JoinKey joinKey, QueryIterator left, QueryIterator right, ExecutionContext execCxt, long threshold) {
+        return new QueryIterGraceHashJoin(joinKey, left, right, execCxt, threshold, 0);
+    }
+
+    private QueryIterGraceHashJoin(JoinKey joinKey, QueryIterator left, QueryIterator right, ExecutionContext execCxt, long threshold, int depth) {
+        super(left, right, execCxt);
+        if ( joinKey == null || joinKey.isEmpty() )
+            throw new IllegalArgumentException("Grace hash join needs a join key");
+        this.joinKey = joinKey;
+        this.partitionVar = joinKey.get(0);
+        this.threshold = Math.max(threshold, 2 * BAGS);
+        this.depth = depth;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        if ( ! started ) {
+            started = true;
+            start();
+        }
+        for (;;) {
+            if ( current != null ) {
+                if ( current.hasNext() )
+                    return true;
+                current.close();
+                current = null;
+            }
+            if ( joins.isEmpty() )
+                return false;
+            current = joins.poll().get();
+        }
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        return current.next();
+    }
+
+    private void start() {
+        QueryIterator left = getLeft();
+        QueryIterator right = getRight();
+        if ( depth >= MAX_DEPTH ) {
+            joins.add(() -> new QueryIterHashJoin(joinKey, left, right, getExecContext()));
+            return;
+        }
+        Deque<Binding> buffer = new ArrayDeque<>();
+        while ( left.hasNext() && buffer.size() < threshold )
+            buffer.add(left.next());
+        if ( ! left.hasNext() ) {
+            joins.add(() -> new QueryIterHashJoin(joinKey, wrap(buffer.iterator()), right, getExecContext()));
+            return;
+        }
+
+        // Too large for memory: partition both sides.
+        // The rows read so far move from the buffer to the bags.
+        long share = threshold / (2 * BAGS);
+        List<DataBag<Binding>> leftParts = bags(PARTITIONS, share);
+        List<DataBag<Binding>> rightParts = bags(PARTITIONS, share);
+        DataBag<Binding> leftNoKey = bags(1, share).get(0);
+        DataBag<Binding> rightNoKey = bags(1, share).get(0);
+        while ( ! buffer.isEmpty() )
+            add(buffer.poll(), leftParts, leftNoKey);
+        partition(left, leftParts, leftNoKey);
+        partition(right, rightParts, rightNoKey);
+
+        for ( int i = 0 ; i < PARTITIONS ; i++ ) {
+            DataBag<Binding> l = leftParts.get(i);
+            DataBag<Binding> r = rightParts.get(i);
+            if ( l.size() > 0 && r.size() > 0 )
+                joins.add(() -> new QueryIterGraceHashJoin(joinKey, wrap(l.iterator()), wrap(r.iterator()), getExecContext(), threshold / 2, depth+1));
+        }
+        // Rows without the partitioning variable: with all rows of the other side.
+        if ( leftNoKey.size() > 0 )
+            blockJoin(leftNoKey, () -> Iter.concat(concat(rightParts), rightNoKey.iterator()));
+        if ( rightNoKey.size() > 0 )
+            blockJoin(rightNoKey, () -> concat(leftParts));
+    }
+
+    /**
+     * Join the rows of a bag with all the rows of the other side, one block of half the
+     * threshold at a time: the block is the in-memory side and the other side is read
+     * again for each block.
+     */
+    private void blockJoin(DataBag<Binding> bag, Supplier<Iterator<Binding>> other) {
+        Iterator<Binding> rows = bag.iterator();
+        long blockSize = threshold / 2;
+        joins.add(new Supplier<QueryIterator>() {
+            @Override
+            public QueryIterator get() {
+                List<Binding> block = new ArrayList<>();
+                while ( rows.hasNext() && block.size() < blockSize )
+                    block.add(rows.next());
+                if ( rows.hasNext() )
+                    joins.addFirst(this);
+                return new QueryIterHashJoin(joinKey, wrap(block.iterator()), wrap(other.get()), getExecContext());
+            }
+        });
+    }
+
+    private List<DataBag<Binding>> bags(int n, long share) {
+        List<DataBag<Binding>> x = new ArrayList<>(n);
+        for ( int i = 0 ; i < n ; i++ ) {
+            DataBag<Binding> bag = BagFactory.newDefaultBag(ThresholdPolicyFactory.count(share),
+                                                            SerializationFactoryFinder.bindingSerializationFactory());
+            bags.add(bag);
+            x.add(bag);
+        }
+        return x;
+    }
+
+    private void partition(Iterator<Binding> input, List<DataBag<Binding>> parts, DataBag<Binding> noKey) {
+        while ( input.hasNext() )
+            add(input.next(), parts, noKey);
+        for ( DataBag<Binding> bag : parts )
+            bag.flush();
+        noKey.flush();
+    }
+
+    private void add(Binding row, List<DataBag<Binding>> parts, DataBag<Binding> noKey) {
+        Node value = row.get(partitionVar);
+        if ( value == null )
+            noKey.add(row);
+        else
+            parts.get(partition(value, depth)).add(row);
+    }
+
+    /** The partition of a value: a different hash function at each depth. */
+    static int partition(Node value, int depth) {
+        // Murmur3 finalizer, seeded by the depth.
+        int h = value.hashCode() ^ (depth * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, PARTITIONS);
+    }
+
+    private static Iterator<Binding> concat(List<DataBag<Binding>> parts) {
+        Iterator<Binding> iter = null;
+        for ( DataBag<Binding> bag : parts )
+            iter = Iter.concat(iter, bag.iterator());
+        return iter;
+    }
+
+    private QueryIterator wrap(Iterator<Binding> iter) {
+        return QueryIterPlainWrapper.create(iter, getExecContext());
+    }
+
+    @Override
+    protected void closeSubIterator() {
+        if ( current != null )
+            current.close();
+        current = null;
+        joins.clear();
+        for ( DataBag<Binding> bag : bags )
+            bag.close();
+        bags.clear();
+    }
+
+    @Override
+    protected void requestSubCancel() {
+        if ( current != null )
+            current.cancel();
+    }
+}
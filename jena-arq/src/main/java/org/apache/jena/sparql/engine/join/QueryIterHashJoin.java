@@ -18,10 +18,13 @@
 
 package org.apache.jena.sparql.engine.join;
 
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.sparql.engine.ExecutionContext ;
 import org.apache.jena.sparql.engine.QueryIterator ;
 import org.apache.jena.sparql.engine.binding.Binding ;
 import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator ;
+import org.apache.jena.sparql.engine.iterator.QueryIterPeek ;
 
 /** Hash left join.
  * This code materializes the right into a probe table
@@ -35,6 +38,8 @@ public class QueryIterHashJoin extends AbstractIterHashJoin {
 
     /**
      * Create a hashjoin QueryIterator.
+     * If {@link ARQ#spillToDiskThreshold} is set, this is a {@link QueryIterGraceHashJoin}
+     * that partitions the inputs to disk when the left side is larger than that.
      * @param joinKey  Join key - if null, one is guessed by snooping the input QueryIterators
      * @param left
      * @param right
@@ -49,6 +54,20 @@ public class QueryIterHashJoin extends AbstractIterHashJoin {
             return QueryIterNullIterator.create(execCxt) ;
         }
 
+        long threshold = QueryIterGraceHashJoin.threshold(execCxt) ;
+        if ( threshold >= 0 ) {
+            // May spill to disk: the partitioning needs the join key now.
+            if ( joinKey == null ) {
+                QueryIterPeek pLeft = QueryIterPeek.create(left, execCxt) ;
+                QueryIterPeek pRight = QueryIterPeek.create(right, execCxt) ;
+                joinKey = JoinKey.create(Iter.toList(pLeft.peek().vars()), Iter.toList(pRight.peek().vars())) ;
+                left = pLeft ;
+                right = pRight ;
+            }
+            if ( ! joinKey.isEmpty() )
+                return QueryIterGraceHashJoin.create(joinKey, left, right, execCxt, threshold) ;
+        }
+
         return new QueryIterHashJoin(joinKey, left, right, execCxt) ;
     }
 
@@ -64,7 +83,7 @@ public class QueryIterHashJoin extends AbstractIterHashJoin {
         return create(null, left, right, execCxt) ;
     }
 
-    private QueryIterHashJoin(JoinKey joinKey, QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
+    /*package*/ QueryIterHashJoin(JoinKey joinKey, QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
         super(joinKey, left, right, execCxt) ;
     }
 
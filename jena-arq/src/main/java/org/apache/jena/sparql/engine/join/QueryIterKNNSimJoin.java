@@ -8,30 +8,36 @@ import org.apache.jena.sparql.algebra.op.OpKNNSimJoin;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.join.solver.KNNSimJoinFLANNSolver;
-import org.apache.jena.sparql.engine.join.solver.KNNSimJoinNestedLoopSolver;
-import org.apache.jena.sparql.engine.join.solver.KNNSimJoinVPTreeSolver;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner;
 
 public class QueryIterKNNSimJoin extends QueryIterSimJoin {
 	
 	private int k;
 	protected Map<Binding, PriorityQueue<Neighbor<Binding>>> knn = new HashMap<>();
 	
-	protected QueryIterKNNSimJoin(QueryIterator left, QueryIterator right, OpKNNSimJoin opKNNSimJoin, ExecutionContext execCxt) {
+	protected QueryIterKNNSimJoin(QueryIterator left, QueryIterator right, OpKNNSimJoin opKNNSimJoin, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt) {
 		super(left, right, execCxt);
 		this.k = opKNNSimJoin.getTop();
 		this.leftAttributes = opKNNSimJoin.getLeftAttributes();
 		this.rightAttributes = opKNNSimJoin.getRightAttributes();
+		this.rightOp = opKNNSimJoin.getRight();
 		this.distFunc = Distances.getDistance(opKNNSimJoin.getDistance());
-		this.minMax= opKNNSimJoin.getMinMax();
-		this.solver = new KNNSimJoinNestedLoopSolver(this);
+		this.minMax = inputs.getMinMax();
 		this.distVar = opKNNSimJoin.getAsVar();
+		setSharedScan(shared);
+		this.solver = SimJoinPlanner.createKNNSolver(this, inputs.getLeftSize(), inputs.getRightSize(), execCxt);
 		solver.setUp();
 	}
 
 	public static QueryIterator createknn(QueryIterator left, QueryIterator right, OpKNNSimJoin opKNNSimJoin,
 			ExecutionContext execCxt) {
-		return new QueryIterKNNSimJoin(left, right, opKNNSimJoin, execCxt);
+		return createknn(left, right, opKNNSimJoin, null, SimJoinInputs.UNKNOWN, execCxt);
+	}
+
+	public static QueryIterator createknn(QueryIterator left, QueryIterator right, OpKNNSimJoin opKNNSimJoin,
+			SharedScan shared, SimJoinInputs inputs, ExecutionContext execCxt) {
+		return new QueryIterKNNSimJoin(left, right, opKNNSimJoin, shared, inputs, execCxt);
 	}
 
 	public int getK() {
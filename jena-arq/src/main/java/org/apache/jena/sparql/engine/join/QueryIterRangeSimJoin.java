@@ -1,43 +1,41 @@
 package org.apache.jena.sparql.engine.join;
 
-import java.util.LinkedList;
-import java.util.List;
-
-import org.apache.jena.atlas.lib.Pair;
 import org.apache.jena.sparql.algebra.op.OpRangeSimJoin;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
-import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.join.solver.RangeSimJoinNestedLoopSolver;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner;
 
 public class QueryIterRangeSimJoin extends QueryIterSimJoin {
 
 	private double radius;
-	private List<Pair<Pair<Binding, Binding>, Double>> pairs = new LinkedList<Pair<Pair<Binding,Binding>,Double>>();
 
-	private QueryIterRangeSimJoin(QueryIterator left, QueryIterator right, OpRangeSimJoin op, ExecutionContext execCxt) {
+	private QueryIterRangeSimJoin(QueryIterator left, QueryIterator right, OpRangeSimJoin op, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt) {
 		super(left, right, execCxt);
 		this.radius = op.getWithin();
 		this.leftAttributes = op.getLeftAttributes();
 		this.rightAttributes = op.getRightAttributes();
+		this.rightOp = op.getRight();
 		this.distFunc = Distances.getDistance(op.getDistance());
-		this.minMax = op.getMinMax();
-		this.solver = new RangeSimJoinNestedLoopSolver(this);
+		this.minMax = inputs.getMinMax();
 		this.distVar = op.getAsVar();
+		setSharedScan(shared);
+		this.solver = SimJoinPlanner.createRangeSolver(this, inputs.getLeftSize(), inputs.getRightSize(), execCxt);
 		this.solver.setUp();
 	}
 
 	public static QueryIterator createRange(QueryIterator left, QueryIterator right, OpRangeSimJoin op,
 			ExecutionContext execCxt) {
-		return new QueryIterRangeSimJoin(left, right, op, execCxt);
+		return createRange(left, right, op, null, SimJoinInputs.UNKNOWN, execCxt);
 	}
 
-	public double getRadius() {
-		return radius;
+	public static QueryIterator createRange(QueryIterator left, QueryIterator right, OpRangeSimJoin op,
+			SharedScan shared, SimJoinInputs inputs, ExecutionContext execCxt) {
+		return new QueryIterRangeSimJoin(left, right, op, shared, inputs, execCxt);
 	}
 
-	public List<Pair<Pair<Binding, Binding>, Double>> getPairs() {
-		return pairs;
+	public double getRadius() {
+		return radius;
 	}
 	
 }
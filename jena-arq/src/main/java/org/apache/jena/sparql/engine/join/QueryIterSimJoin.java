@@ -1,5 +1,6 @@
 package org.apache.jena.sparql.engine.join;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
@@ -8,6 +9,7 @@ import java.util.Objects;
 
 import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.op.OpSimJoin;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
@@ -23,6 +25,7 @@ public class QueryIterSimJoin extends QueryIter2 {
 	
 	protected ExprList leftAttributes;
 	protected ExprList rightAttributes;
+	protected Op rightOp;
 	
 	protected List<Binding> results = new LinkedList<>();
 	
@@ -39,6 +42,11 @@ public class QueryIterSimJoin extends QueryIter2 {
     protected Binding slot;
 	protected SimJoinSolver solver;
 	protected Map<Expr, PairOfSameType<Number>> minMax;
+	protected PointStore rightStore = null;
+	// The lower and upper bounds of each attribute, published together once complete:
+	// the probes of a parallel solver read them from several threads.
+	private volatile double[][] normalisation = null;
+	protected SharedScan sharedScan = null;
 
 	public QueryIterSimJoin(QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
 		super(left, right, execCxt);
@@ -47,6 +55,18 @@ public class QueryIterSimJoin extends QueryIter2 {
 	public static QueryIterator create(QueryIterator left, QueryIterator right, OpSimJoin opSimJoin, ExecutionContext execCxt) {
 		return opSimJoin.createIterator(left, right, execCxt);
 	}
+
+	/** The join, given what is known of its inputs in this evaluation. */
+	public static QueryIterator create(QueryIterator left, QueryIterator right, OpSimJoin opSimJoin, SimJoinInputs inputs,
+			ExecutionContext execCxt) {
+		return opSimJoin.createIterator(left, right, null, inputs, execCxt);
+	}
+
+	/** The join of the rows of one scan, as both sides. */
+	public static QueryIterator create(QueryIterator left, QueryIterator right, OpSimJoin opSimJoin, SharedScan shared,
+			SimJoinInputs inputs, ExecutionContext execCxt) {
+		return opSimJoin.createIterator(left, right, shared, inputs, execCxt);
+	}
 	
 	public static class Neighbor<K>{
         private K key;
@@ -106,14 +126,34 @@ public class QueryIterSimJoin extends QueryIter2 {
 
 	@Override
 	protected void closeSubIterator() {
+		solver.close();
 		getLeft().close();
 		getRight().close();
 	}
 
+	/** The operator evaluated for the right side. */
+	public Op getRightOp() {
+		return rightOp;
+	}
+
 	public ExprList getRightAttributes() {
 		return rightAttributes;
 	}
 
+	/** Take both sides from the rows of one scan rather than from the input iterators. */
+	protected void setSharedScan(SharedScan sharedScan) {
+		this.sharedScan = sharedScan;
+		if (sharedScan != null) {
+			leftRows = sharedScan.getLeftRows();
+			rightRows = sharedScan.getRightRows();
+		}
+	}
+
+	/** The rows shared by both sides, or null if they were evaluated apart. */
+	public SharedScan getSharedScan() {
+		return sharedScan;
+	}
+
 	public List<Binding> getLeftRows() {
 		if (leftRows == null)
 			leftRows = Iter.toList(getLeft());
@@ -128,6 +168,80 @@ public class QueryIterSimJoin extends QueryIter2 {
 		return rightRows;
 	}
 
+	/** The right rows and their coordinates, normalised as the distance function expects. */
+	public PointStore getRightStore() {
+		if (rightStore == null) {
+			rightStore = createRightStore(getRightRows());
+		}
+		return rightStore;
+	}
+
+	/** A store of some right rows, normalised as those of {@link #getRightStore()}. */
+	public PointStore createRightStore(List<Binding> rows) {
+		double[][] n = normalisation();
+		return PointStore.create(rows, vars(rightAttributes), n[0], n[1]);
+	}
+
+	/**
+	 * Set the range of each join attribute, for a solver that reads the inputs itself
+	 * rather than through the normalisation map of the operator.
+	 */
+	public void setNormalisation(double[] min, double[] max) {
+		if (distFunc != null && !distFunc.isNormalised())
+			return;
+		this.normalisation = new double[][] { min, max };
+	}
+
+	/** The lower bound of each join attribute used to normalise, or NaN if not normalised. */
+	public double[] getNormalisationMin() {
+		return normalisation()[0];
+	}
+
+	/** The upper bound of each join attribute used to normalise, or NaN if not normalised. */
+	public double[] getNormalisationMax() {
+		return normalisation()[1];
+	}
+
+	/** The coordinates of a left binding, normalised as those of {@link #getRightStore()}. */
+	public double[] leftPoint(Binding l) {
+		double[][] n = normalisation();
+		if (sharedScan != null && rightStore != null) {
+			// The left row is also a right row: its coordinates are in the store.
+			int i = sharedScan.row(l);
+			if (i >= 0 && i < rightStore.size() && rightStore.binding(i) == rightRows.get(i))
+				return rightStore.point(i);
+		}
+		return PointStore.extract(l, vars(leftAttributes), n[0], n[1]);
+	}
+
+	// Both sides are normalised with the range of the left attribute, as the distance functions do.
+	// Built into locals and assigned once, so that no thread sees them half filled. Threads
+	// that race here compute the same values.
+	private double[][] normalisation() {
+		double[][] n = normalisation;
+		if (n != null)
+			return n;
+		double[] min = new double[leftAttributes.size()];
+		double[] max = new double[leftAttributes.size()];
+		boolean normalised = minMax != null && (distFunc == null || distFunc.isNormalised());
+		for (int i = 0; i < min.length; i++) {
+			PairOfSameType<Number> range = normalised ? minMax.get(leftAttributes.get(i)) : null;
+			min[i] = (range == null) ? Double.NaN : range.getLeft().doubleValue();
+			max[i] = (range == null) ? Double.NaN : range.getRight().doubleValue();
+		}
+		n = new double[][] { min, max };
+		normalisation = n;
+		return n;
+	}
+
+	private static List<Var> vars(ExprList attributes) {
+		List<Var> vars = new ArrayList<>(attributes.size());
+		for (Expr e : attributes) {
+			vars.add(e.asVar());
+		}
+		return vars;
+	}
+
 	public ExprList getLeftAttributes() {
 		return leftAttributes;
 	}
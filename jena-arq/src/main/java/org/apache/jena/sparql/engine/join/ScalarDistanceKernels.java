@@ -0,0 +1,92 @@
+package org.apache.jena.sparql.engine.join;
+
+final class ScalarDistanceKernels extends DistanceKernels {
+
+	// Partial sums only grow, so the bound is checked after each block of coordinates.
+	// Coordinates are added in order either way, so a distance within the bound is exact.
+	static final int BLOCK = 8;
+
+	@Override
+	public int lanes() {
+		return 1;
+	}
+
+	@Override
+	public double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		return manhattanScalar(a, aOffset, b, bOffset, dims, bound);
+	}
+
+	@Override
+	public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		return squaredEuclideanScalar(a, aOffset, b, bOffset, dims, bound);
+	}
+
+	@Override
+	public double manhattanSkipNaN(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		return manhattanSkipNaNScalar(a, aOffset, b, bOffset, dims);
+	}
+
+	@Override
+	public double cosine(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		return cosineScalar(a, aOffset, b, bOffset, dims);
+	}
+
+	static double manhattanScalar(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		double d = 0;
+		int i = 0;
+		for (int end = BLOCK; end <= dims; end += BLOCK) {
+			for (; i < end; i++) {
+				d += Math.abs(a[aOffset + i] - b[bOffset + i]);
+			}
+			if (d > bound)
+				return d;
+		}
+		for (; i < dims; i++) {
+			d += Math.abs(a[aOffset + i] - b[bOffset + i]);
+		}
+		return d;
+	}
+
+	static double squaredEuclideanScalar(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		double d = 0;
+		int i = 0;
+		for (int end = BLOCK; end <= dims; end += BLOCK) {
+			for (; i < end; i++) {
+				double x = a[aOffset + i] - b[bOffset + i];
+				d += x * x;
+			}
+			if (d > bound)
+				return d;
+		}
+		for (; i < dims; i++) {
+			double x = a[aOffset + i] - b[bOffset + i];
+			d += x * x;
+		}
+		return d;
+	}
+
+	static double cosineScalar(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		double dot = 0;
+		double normA = 0;
+		double normB = 0;
+		for (int i = 0; i < dims; i++) {
+			double x = a[aOffset + i];
+			double y = b[bOffset + i];
+			dot += x * y;
+			normA += x * x;
+			normB += y * y;
+		}
+		return cosine(dot, normA, normB);
+	}
+
+	static double manhattanSkipNaNScalar(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		double d = 0.0;
+		for (int i = 0; i < dims; i++) {
+			double x = a[aOffset + i] - b[bOffset + i];
+			if (x == x) {
+				d += Math.abs(x);
+			}
+		}
+		return d;
+	}
+}
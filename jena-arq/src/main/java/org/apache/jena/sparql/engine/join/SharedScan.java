@@ -0,0 +1,169 @@
+package org.apache.jena.sparql.engine.join;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+
+/**
+ * The rows of a similarity join between two copies of the same basic graph pattern,
+ * differing only in the names of their variables, as in "find the items similar to each
+ * item". The pattern is evaluated once: the left side reads its rows, and the right side
+ * the same rows with the variables renamed, in the same order.
+ * <p>
+ * Rows with the same join attribute nodes share a key. Solvers skip a left row paired
+ * with itself, or with another row of the same attribute nodes, by comparing two keys
+ * rather than the nodes of both bindings.
+ */
+public class SharedScan {
+
+	/** Patterns larger than this are not compared. */
+	static final int MAX_TRIPLES = 12;
+
+	private final List<Binding> leftRows;
+	private final List<Binding> rightRows;
+	private final Map<Binding, Integer> leftIndex = new IdentityHashMap<>();
+	private final int[] keys;
+
+	/**
+	 * @param rows the rows of the left pattern
+	 * @param renaming the right variable of each left variable
+	 */
+	public SharedScan(List<Binding> rows, Map<Var, Var> renaming, ExprList leftAttributes) {
+		this.leftRows = rows;
+		this.rightRows = rename(rows, renaming);
+		this.keys = new int[rows.size()];
+		Map<List<Node>, Integer> ids = new HashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			Binding row = rows.get(i);
+			leftIndex.put(row, i);
+			List<Node> nodes = new ArrayList<>(leftAttributes.size());
+			for (Expr e : leftAttributes) {
+				nodes.add(row.get(e.asVar()));
+			}
+			// An unbound attribute is the same as nothing.
+			keys[i] = nodes.contains(null) ? -1 - i : ids.computeIfAbsent(nodes, k -> ids.size());
+		}
+	}
+
+	public List<Binding> getLeftRows() {
+		return leftRows;
+	}
+
+	public List<Binding> getRightRows() {
+		return rightRows;
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	/** Index of a left row, or -1 if the binding is not one of them. */
+	public int row(Binding l) {
+		Integer i = leftIndex.get(l);
+		return (i == null) ? -1 : i;
+	}
+
+	/** Whether the left and the right row of these indexes have the same join attribute nodes. */
+	public boolean sameObject(int leftRow, int rightRow) {
+		return keys[leftRow] >= 0 && keys[leftRow] == keys[rightRow];
+	}
+
+	/** The rows with their variables renamed; variables not renamed are dropped. */
+	public static List<Binding> rename(List<Binding> rows, Map<Var, Var> renaming) {
+		List<Binding> renamed = new ArrayList<>(rows.size());
+		for (Binding row : rows) {
+			BindingBuilder builder = Binding.builder();
+			row.forEach((v, n) -> {
+				Var v2 = renaming.get(v);
+				if (v2 != null)
+					builder.add(v2, n);
+			});
+			renamed.add(builder.build());
+		}
+		return renamed;
+	}
+
+	/**
+	 * A one to one renaming of the variables of {@code from} to variables of {@code to}
+	 * that maps each triple of {@code from} to a different triple of {@code to}, or null if
+	 * there is none. Then the rows of {@code to} are rows of {@code from}, renamed, that
+	 * also match the {@link #remaining} triples of {@code to}.
+	 */
+	public static Map<Var, Var> embedding(BasicPattern from, BasicPattern to) {
+		if (from.size() > to.size() || to.size() > MAX_TRIPLES)
+			return null;
+		Map<Var, Var> renaming = new HashMap<>();
+		Map<Var, Var> inverse = new HashMap<>();
+		boolean[] used = new boolean[to.size()];
+		return embed(from.getList(), 0, to.getList(), used, renaming, inverse) ? renaming : null;
+	}
+
+	/** The triples of {@code to} that are not the image of a triple of {@code from} by the renaming. */
+	public static BasicPattern remaining(BasicPattern from, BasicPattern to, Map<Var, Var> renaming) {
+		List<Triple> images = new ArrayList<>(from.size());
+		for (Triple t : from) {
+			images.add(Triple.create(rename(t.getSubject(), renaming), rename(t.getPredicate(), renaming), rename(t.getObject(), renaming)));
+		}
+		BasicPattern remaining = new BasicPattern();
+		for (Triple t : to) {
+			if (!images.remove(t))
+				remaining.add(t);
+		}
+		return remaining;
+	}
+
+	private static Node rename(Node n, Map<Var, Var> renaming) {
+		return Var.isVar(n) ? renaming.get(Var.alloc(n)) : n;
+	}
+
+	private static boolean embed(List<Triple> from, int i, List<Triple> to, boolean[] used, Map<Var, Var> renaming, Map<Var, Var> inverse) {
+		if (i == from.size())
+			return true;
+		Triple t = from.get(i);
+		for (int j = 0; j < to.size(); j++) {
+			if (used[j])
+				continue;
+			List<Var> added = new ArrayList<>(3);
+			Triple u = to.get(j);
+			if (unify(t.getSubject(), u.getSubject(), renaming, inverse, added)
+					&& unify(t.getPredicate(), u.getPredicate(), renaming, inverse, added)
+					&& unify(t.getObject(), u.getObject(), renaming, inverse, added)) {
+				used[j] = true;
+				if (embed(from, i + 1, to, used, renaming, inverse))
+					return true;
+				used[j] = false;
+			}
+			for (Var v : added) {
+				inverse.remove(renaming.remove(v));
+			}
+		}
+		return false;
+	}
+
+	private static boolean unify(Node a, Node b, Map<Var, Var> renaming, Map<Var, Var> inverse, List<Var> added) {
+		if (!Var.isVar(a) || !Var.isVar(b))
+			return !Var.isVar(a) && !Var.isVar(b) && a.equals(b);
+		Var va = Var.alloc(a);
+		Var vb = Var.alloc(b);
+		Var x = renaming.get(va);
+		if (x != null)
+			return x.equals(vb);
+		if (inverse.containsKey(vb))
+			return false;
+		renaming.put(va, vb);
+		inverse.put(vb, va);
+		added.add(va);
+		return true;
+	}
+}
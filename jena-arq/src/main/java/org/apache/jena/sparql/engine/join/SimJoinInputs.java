@@ -0,0 +1,44 @@
+package org.apache.jena.sparql.engine.join;
+
+import java.util.Map;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.sparql.expr.Expr;
+
+/**
+ * What is known of the inputs of one evaluation of a similarity join: the range of each
+ * left join attribute, used to normalise it, and the number of rows of each side.
+ * <p>
+ * It is passed to the iterator of that evaluation, not kept in the operator, which
+ * executions of the same query share.
+ */
+public final class SimJoinInputs {
+
+	/** Nothing known: no normalisation map and unknown cardinalities. */
+	public static final SimJoinInputs UNKNOWN = new SimJoinInputs(null, -1, -1);
+
+	private final Map<Expr, PairOfSameType<Number>> minMax;
+	private final long leftSize;
+	private final long rightSize;
+
+	public SimJoinInputs(Map<Expr, PairOfSameType<Number>> minMax, long leftSize, long rightSize) {
+		this.minMax = minMax;
+		this.leftSize = leftSize;
+		this.rightSize = rightSize;
+	}
+
+	/** The range of each left join attribute, or null if the join is not normalised from it. */
+	public Map<Expr, PairOfSameType<Number>> getMinMax() {
+		return minMax;
+	}
+
+	/** Cardinality of the left input, or -1 if unknown. */
+	public long getLeftSize() {
+		return leftSize;
+	}
+
+	/** Cardinality of the right input, or -1 if unknown. */
+	public long getRightSize() {
+		return rightSize;
+	}
+}
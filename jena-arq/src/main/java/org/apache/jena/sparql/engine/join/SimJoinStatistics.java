@@ -0,0 +1,125 @@
+package org.apache.jena.sparql.engine.join;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.OpWalker;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpQuad;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.op.OpSimJoin;
+import org.apache.jena.sparql.algebra.op.OpTriple;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+
+/**
+ * Normalisation map and input cardinalities of a similarity join from
+ * {@link AttributeStatistics}, instead of a pass over both inputs.
+ * <p>
+ * Each join attribute must be the object of a triple pattern with a constant
+ * predicate in its side of the join. The attribute is normalised with the range of
+ * that predicate over the whole dataset, rather than over the join input, and the
+ * size of a side is estimated by the least count of its predicates.
+ */
+class SimJoinStatistics {
+
+	/** The normalisation map and cardinalities of the join; null if an attribute has no predicate. */
+	static SimJoinInputs inputs(OpSimJoin opSimJoin, AttributeStatistics stats) {
+		Map<Var, List<Node>> leftPredicates = predicates(opSimJoin.getLeft());
+		Map<Var, List<Node>> rightPredicates = predicates(opSimJoin.getRight());
+		ExprList leftAttributes = opSimJoin.getLeftAttributes();
+		ExprList rightAttributes = opSimJoin.getRightAttributes();
+		Map<Expr, PairOfSameType<Number>> minMax = new HashMap<>();
+		long leftSize = Long.MAX_VALUE;
+		long rightSize = Long.MAX_VALUE;
+		for (int i = 0; i < leftAttributes.size(); i++) {
+			List<Node> lp = leftPredicates.get(leftAttributes.get(i).asVar());
+			List<Node> rp = rightPredicates.get(rightAttributes.get(i).asVar());
+			if (lp == null || rp == null)
+				return null;
+			leftSize = Math.min(leftSize, count(stats, lp));
+			rightSize = Math.min(rightSize, count(stats, rp));
+			PairOfSameType<Number> range = union(range(stats, lp), range(stats, rp));
+			// No numeric values (vectors): not normalised, as when scanning.
+			if (range != null)
+				minMax.put(leftAttributes.get(i), range);
+		}
+		return new SimJoinInputs(minMax, leftSize, rightSize);
+	}
+
+	/** The constant predicates of the triple patterns of which each variable is the object. */
+	static Map<Var, List<Node>> predicates(Op op) {
+		Map<Var, List<Node>> predicates = new HashMap<>();
+		OpWalker.walk(op, new OpVisitorBase() {
+			@Override
+			public void visit(OpBGP opBGP) {
+				opBGP.getPattern().forEach(this::add);
+			}
+
+			@Override
+			public void visit(OpQuadPattern quadPattern) {
+				quadPattern.getPattern().forEach(q -> add(q.asTriple()));
+			}
+
+			@Override
+			public void visit(OpTriple opTriple) {
+				add(opTriple.getTriple());
+			}
+
+			@Override
+			public void visit(OpQuad opQuad) {
+				add(opQuad.getQuad().asTriple());
+			}
+
+			private void add(Triple t) {
+				if (t.getPredicate().isURI() && Var.isVar(t.getObject()))
+					predicates.computeIfAbsent(Var.alloc(t.getObject()), v -> new ArrayList<>()).add(t.getPredicate());
+			}
+		});
+		return predicates;
+	}
+
+	// A variable bound by several predicates takes values in the intersection of their ranges.
+	private static PairOfSameType<Number> range(AttributeStatistics stats, List<Node> predicates) {
+		double min = Double.NEGATIVE_INFINITY;
+		double max = Double.POSITIVE_INFINITY;
+		for (Node p : predicates) {
+			PairOfSameType<Number> range = stats.range(p);
+			if (range == null)
+				return null;
+			min = Math.max(min, range.getLeft().doubleValue());
+			max = Math.min(max, range.getRight().doubleValue());
+		}
+		if (min > max)
+			return stats.range(predicates.get(0));
+		return new PairOfSameType<Number>(min, max);
+	}
+
+	private static PairOfSameType<Number> union(PairOfSameType<Number> r1, PairOfSameType<Number> r2) {
+		if (r1 == null)
+			return r2;
+		if (r2 == null)
+			return r1;
+		return new PairOfSameType<Number>(Math.min(r1.getLeft().doubleValue(), r2.getLeft().doubleValue()),
+				Math.max(r1.getRight().doubleValue(), r2.getRight().doubleValue()));
+	}
+
+	private static long count(AttributeStatistics stats, List<Node> predicates) {
+		long count = Long.MAX_VALUE;
+		for (Node p : predicates) {
+			long c = stats.count(p);
+			if (c < 0)
+				return -1;
+			count = Math.min(count, c);
+		}
+		return count;
+	}
+}
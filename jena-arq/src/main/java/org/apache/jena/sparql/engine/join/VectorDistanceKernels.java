@@ -0,0 +1,132 @@
+package org.apache.jena.sparql.engine.join;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Distance kernels with the Vector API. Only loaded by {@link DistanceKernels} when the
+ * module {@code jdk.incubator.vector} is present.
+ * <p>
+ * Each lane accumulates every {@code LANES}-th coordinate; the lanes are summed, in
+ * order, at the end. Points with fewer coordinates than lanes use the scalar loops.
+ */
+final class VectorDistanceKernels extends DistanceKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	// Summing the lanes costs several additions, so the bound is checked less often than the scalar loop does.
+	private static final int CHECK = 4 * LANES;
+
+	@Override
+	public int lanes() {
+		return LANES;
+	}
+
+	@Override
+	public double manhattan(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		if (dims < LANES)
+			return ScalarDistanceKernels.manhattanScalar(a, aOffset, b, bOffset, dims, bound);
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(dims);
+		int i = 0;
+		if (bound != Double.POSITIVE_INFINITY) {
+			for (int end = CHECK; end < upper; end += CHECK) {
+				for (; i < end; i += LANES)
+					acc = acc.add(DoubleVector.fromArray(SPECIES, a, aOffset + i).sub(DoubleVector.fromArray(SPECIES, b, bOffset + i)).abs());
+				double d = acc.reduceLanes(VectorOperators.ADD);
+				if (d > bound)
+					return d;
+			}
+		}
+		for (; i < upper; i += LANES)
+			acc = acc.add(DoubleVector.fromArray(SPECIES, a, aOffset + i).sub(DoubleVector.fromArray(SPECIES, b, bOffset + i)).abs());
+		double d = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < dims; i++) {
+			d += Math.abs(a[aOffset + i] - b[bOffset + i]);
+		}
+		return d;
+	}
+
+	@Override
+	public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+		if (dims < LANES)
+			return ScalarDistanceKernels.squaredEuclideanScalar(a, aOffset, b, bOffset, dims, bound);
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(dims);
+		int i = 0;
+		if (bound != Double.POSITIVE_INFINITY) {
+			for (int end = CHECK; end < upper; end += CHECK) {
+				for (; i < end; i += LANES) {
+					DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i).sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+					acc = x.fma(x, acc);
+				}
+				double d = acc.reduceLanes(VectorOperators.ADD);
+				if (d > bound)
+					return d;
+			}
+		}
+		for (; i < upper; i += LANES) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i).sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+			acc = x.fma(x, acc);
+		}
+		double d = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < dims; i++) {
+			double x = a[aOffset + i] - b[bOffset + i];
+			d += x * x;
+		}
+		return d;
+	}
+
+	@Override
+	public double manhattanSkipNaN(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		if (dims < LANES)
+			return ScalarDistanceKernels.manhattanSkipNaNScalar(a, aOffset, b, bOffset, dims);
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(dims);
+		int i = 0;
+		for (; i < upper; i += LANES) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i).sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+			VectorMask<Double> present = x.compare(VectorOperators.EQ, x);
+			acc = acc.add(x.abs(), present);
+		}
+		double d = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < dims; i++) {
+			double x = a[aOffset + i] - b[bOffset + i];
+			if (x == x) {
+				d += Math.abs(x);
+			}
+		}
+		return d;
+	}
+
+	@Override
+	public double cosine(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+		if (dims < LANES)
+			return ScalarDistanceKernels.cosineScalar(a, aOffset, b, bOffset, dims);
+		DoubleVector dot = DoubleVector.zero(SPECIES);
+		DoubleVector normA = DoubleVector.zero(SPECIES);
+		DoubleVector normB = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(dims);
+		int i = 0;
+		for (; i < upper; i += LANES) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			dot = x.fma(y, dot);
+			normA = x.fma(x, normA);
+			normB = y.fma(y, normB);
+		}
+		double d = dot.reduceLanes(VectorOperators.ADD);
+		double na = normA.reduceLanes(VectorOperators.ADD);
+		double nb = normB.reduceLanes(VectorOperators.ADD);
+		for (; i < dims; i++) {
+			double x = a[aOffset + i];
+			double y = b[bOffset + i];
+			d += x * y;
+			na += x * x;
+			nb += y * y;
+		}
+		return cosine(d, na, nb);
+	}
+}
@@ -0,0 +1,264 @@
+package org.apache.jena.sparql.engine.join.hnsw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin) over the rows of a
+ * {@link PointStore}, for approximate nearest neighbour search.
+ * <p>
+ * Unlike space partitioning trees, the search cost grows slowly with the number of
+ * dimensions, and the distance function need not be a metric. Recall is traded for
+ * speed with {@code efConstruction} when building and {@code ef} when searching.
+ * <p>
+ * The graph is built once; searches do not modify it and may run concurrently.
+ */
+public class IndexHNSW {
+
+	public static class BuildParams {
+		/** Links per node on the upper layers; twice as many on layer 0. */
+		public int m = 16;
+		/** Size of the dynamic candidate list while inserting. */
+		public int efConstruction = 100;
+		public long seed = 42;
+	}
+
+	/** A row of the store and its distance to the query. */
+	public static final class Result {
+		public final int row;
+		public final double distance;
+
+		Result(int row, double distance) {
+			this.row = row;
+			this.distance = distance;
+		}
+	}
+
+	private static final Comparator<Result> nearestFirst = Comparator.comparingDouble(r -> r.distance);
+	private static final Comparator<Result> furthestFirst = nearestFirst.reversed();
+
+	private final PointStore store;
+	private final DistFunc distFunc;
+	private final int m;
+	private final int efConstruction;
+	private final double levelFactor;
+	private final Random random;
+
+	// links[node][layer] holds linkCount[node][layer] neighbours, at linkDist[node][layer].
+	private final int[][][] links;
+	private final double[][][] linkDist;
+	private final int[][] linkCount;
+	private int entryPoint = -1;
+	private int maxLayer = -1;
+	// Rows visited by a search, kept per thread as searches may run concurrently.
+	private final ThreadLocal<Visited> visitedSets;
+
+	public IndexHNSW(PointStore store, DistFunc distFunc, BuildParams params) {
+		this.store = store;
+		this.distFunc = distFunc;
+		this.m = Math.max(2, params.m);
+		this.efConstruction = Math.max(this.m, params.efConstruction);
+		this.levelFactor = 1 / Math.log(this.m);
+		this.random = new Random(params.seed);
+		this.links = new int[store.size()][][];
+		this.linkDist = new double[store.size()][][];
+		this.linkCount = new int[store.size()][];
+		this.visitedSets = ThreadLocal.withInitial(() -> new Visited(store.size()));
+	}
+
+	/**
+	 * A set of rows, emptied in constant time: a row is in the set if its stamp is the
+	 * current generation.
+	 */
+	private static final class Visited {
+		private final int[] stamps;
+		private int generation = 0;
+
+		Visited(int size) {
+			this.stamps = new int[size];
+		}
+
+		void clear() {
+			generation++;
+			if (generation == 0) {
+				// Wrapped around: stamps of old generations could match again.
+				Arrays.fill(stamps, 0);
+				generation = 1;
+			}
+		}
+
+		/** Add the row; false if it was already in the set. */
+		boolean add(int row) {
+			if (stamps[row] == generation)
+				return false;
+			stamps[row] = generation;
+			return true;
+		}
+	}
+
+	public void buildIndex() {
+		for (int i = 0; i < store.size(); i++) {
+			insert(i);
+		}
+	}
+
+	public int size() {
+		return store.size();
+	}
+
+	/** The (approximately) {@code k} nearest rows to the query, nearest first. */
+	public List<Result> knnSearch(double[] query, int k, int ef) {
+		if (entryPoint < 0 || k <= 0)
+			return new ArrayList<>();
+		int ep = entryPoint;
+		double epDist = distance(query, ep);
+		for (int layer = maxLayer; layer > 0; layer--) {
+			// Greedy descent through the upper layers.
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				int[] ns = links[ep][layer];
+				for (int i = 0; i < linkCount[ep][layer]; i++) {
+					double d = distance(query, ns[i]);
+					if (d < epDist) {
+						epDist = d;
+						ep = ns[i];
+						changed = true;
+					}
+				}
+			}
+		}
+		PriorityQueue<Result> found = searchLayer(query, -1, new Result(ep, epDist), Math.max(ef, k), 0);
+		List<Result> results = new ArrayList<>(found);
+		results.sort(nearestFirst);
+		return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+	}
+
+	private void insert(int node) {
+		int level = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelFactor);
+		links[node] = new int[level + 1][];
+		linkDist[node] = new double[level + 1][];
+		linkCount[node] = new int[level + 1];
+		for (int layer = 0; layer <= level; layer++) {
+			links[node][layer] = new int[maxLinks(layer) + 1];
+			linkDist[node][layer] = new double[maxLinks(layer) + 1];
+		}
+		if (entryPoint < 0) {
+			entryPoint = node;
+			maxLayer = level;
+			return;
+		}
+		double[] data = store.data();
+		int offset = store.offset(node);
+		int ep = entryPoint;
+		double epDist = distance(node, ep);
+		for (int layer = maxLayer; layer > level; layer--) {
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				int[] ns = links[ep][layer];
+				for (int i = 0; i < linkCount[ep][layer]; i++) {
+					double d = distance(node, ns[i]);
+					if (d < epDist) {
+						epDist = d;
+						ep = ns[i];
+						changed = true;
+					}
+				}
+			}
+		}
+		double[] query = Arrays.copyOfRange(data, offset, offset + store.dims());
+		Result start = new Result(ep, epDist);
+		for (int layer = Math.min(level, maxLayer); layer >= 0; layer--) {
+			PriorityQueue<Result> found = searchLayer(query, node, start, efConstruction, layer);
+			List<Result> candidates = new ArrayList<>(found);
+			candidates.sort(nearestFirst);
+			start = candidates.get(0);
+			for (int i = 0; i < candidates.size() && i < m; i++) {
+				Result other = candidates.get(i);
+				addLink(node, other.row, other.distance, layer);
+				addLink(other.row, node, other.distance, layer);
+			}
+		}
+		if (level > maxLayer) {
+			maxLayer = level;
+			entryPoint = node;
+		}
+	}
+
+	private int maxLinks(int layer) {
+		return layer == 0 ? 2 * m : m;
+	}
+
+	// Link from -> to, keeping only the nearest neighbours if there are too many.
+	private void addLink(int from, int to, double distance, int layer) {
+		int[] ns = links[from][layer];
+		double[] ds = linkDist[from][layer];
+		int count = linkCount[from][layer];
+		ns[count] = to;
+		ds[count] = distance;
+		count++;
+		if (count > maxLinks(layer)) {
+			// The arrays have one spare slot: drop the furthest neighbour.
+			int furthest = 0;
+			for (int i = 1; i < count; i++) {
+				if (ds[i] > ds[furthest])
+					furthest = i;
+			}
+			count--;
+			ns[furthest] = ns[count];
+			ds[furthest] = ds[count];
+		}
+		linkCount[from][layer] = count;
+	}
+
+	// Best first search of one layer; returns up to ef results, furthest at the head.
+	private PriorityQueue<Result> searchLayer(double[] query, int exclude, Result start, int ef, int layer) {
+		Visited visited = visitedSets.get();
+		visited.clear();
+		visited.add(start.row);
+		if (exclude >= 0)
+			visited.add(exclude);
+		PriorityQueue<Result> candidates = new PriorityQueue<>(nearestFirst);
+		PriorityQueue<Result> found = new PriorityQueue<>(furthestFirst);
+		candidates.add(start);
+		found.add(start);
+		while (!candidates.isEmpty()) {
+			Result c = candidates.poll();
+			if (c.distance > found.peek().distance && found.size() >= ef)
+				break;
+			if (links[c.row].length <= layer)
+				continue;
+			int[] ns = links[c.row][layer];
+			for (int i = 0; i < linkCount[c.row][layer]; i++) {
+				int n = ns[i];
+				if (!visited.add(n))
+					continue;
+				double d = distance(query, n);
+				if (found.size() < ef || d < found.peek().distance) {
+					Result r = new Result(n, d);
+					candidates.add(r);
+					found.add(r);
+					if (found.size() > ef)
+						found.poll();
+				}
+			}
+		}
+		return found;
+	}
+
+	private double distance(double[] query, int row) {
+		return distFunc.distance(query, 0, store.data(), store.offset(row), store.dims());
+	}
+
+	private double distance(int a, int b) {
+		return distFunc.distance(store.data(), store.offset(a), store.data(), store.offset(b), store.dims());
+	}
+}
@@ -1,73 +1,61 @@
 package org.apache.jena.sparql.engine.join.solver;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
 
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.engine.join.PointStore;
 import org.apache.jena.sparql.engine.join.QueryIterKNNSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
 import org.apache.jena.sparql.engine.join.flann.IndexKDTree;
 import org.apache.jena.sparql.engine.join.flann.IndexKDTree.SearchParams;
 import org.apache.jena.sparql.engine.join.flann.Metric;
-import org.apache.jena.sparql.expr.Expr;
 
 public class KNNSimJoinFLANNSolver extends KNNSimJoinSolver {
 
-	double[][] data;
-	private List<Binding> rightRows;
+	private PointStore store;
 	private SearchParams searchParams2;
 	private IndexKDTree index;
 	
 	public KNNSimJoinFLANNSolver(QueryIterSimJoin simjoin) {
 		super(simjoin);
-		this.rightRows = simjoin.getRightRows();
-		this.bindingIterator = this.rightRows.iterator();
 	}
 
 	@Override
 	public void setUp() {
-		materialise();
 		QueryIterKNNSimJoin knnsimjoin = (QueryIterKNNSimJoin) simjoin;
-		Metric metric = Distances.getMetric(knnsimjoin.getDistFunc(), knnsimjoin.getMinMax(), knnsimjoin.getLeftAttributes(), knnsimjoin.getRightAttributes());
+		Metric metric = Distances.getMetric(knnsimjoin.getDistFunc());
         IndexKDTree.BuildParams buildParams = new IndexKDTree.BuildParams(4);
-        index = new IndexKDTree(metric, data, buildParams);
-        index.buildIndex();
+        SimJoinIndexCache.Index<IndexKDTree> cached = SimJoinIndexCache.get().getOrBuild(simjoin, "kdtree",
+                List.of(buildParams.trees), s -> {
+                    IndexKDTree kdtree = new IndexKDTree(metric, s.toArrays(), buildParams);
+                    kdtree.buildIndex();
+                    return kdtree;
+                });
+        store = cached.store();
+        index = cached.index();
         searchParams2 = new IndexKDTree.SearchParams();
         searchParams2.eps = 0.0f;
         searchParams2.maxNeighbors = knnsimjoin.getK();
         searchParams2.checks = 128;
 	}
 
-	private void materialise() {
-		List<List<Double>> res = new LinkedList<>();
-        for(;bindingIterator.hasNext();){
-        	Binding b = bindingIterator.next();
-            List<Double> row = new LinkedList<>();
-            for (Expr v : simjoin.getRightAttributes() ) {
-                row.add(((Number)b.get(v.asVar()).getLiteralValue()).doubleValue());
-            }
-            res.add(row);
-        }
-        data = res.stream().map(l->l.stream().mapToDouble(Double::doubleValue).toArray()).toArray(double[][]::new);
-	}
-
 	@Override
-	protected void getNextBatch(Binding l) {
+	protected Queue<Neighbor<Binding>> getNeighbors(Binding l) {
 		QueryIterKNNSimJoin knnsimjoin = (QueryIterKNNSimJoin) simjoin;
+		Queue<Neighbor<Binding>> cache = new PriorityQueue<Neighbor<Binding>>(Neighbor.comparator);
         int[][] indices = new int[1][knnsimjoin.getK()];
         double[][] distances = new double[1][knnsimjoin.getK()];
-        List<Double> lvals = new LinkedList<>();
-        for (Expr v : knnsimjoin.getLeftAttributes().getListRaw()) {
-            lvals.add(((Number)l.get(v.asVar()).getLiteralValue()).doubleValue());
-        }
-        double[][] query = new double[1][lvals.size()];
-        query[0] = lvals.stream().mapToDouble(Double::doubleValue).toArray();
+        double[][] query = new double[1][];
+        query[0] = simjoin.leftPoint(l);
         index.knnSearch(query, indices, distances, searchParams2);
         for(int j=0; j<knnsimjoin.getK(); j++){
-            cache.add(new Neighbor<>(rightRows.get(indices[0][j]), distances[0][j]));
-        }       
+            cache.add(new Neighbor<>(store.binding(indices[0][j]), distances[0][j]));
+        }
+        return cache;
 	}
 
 }
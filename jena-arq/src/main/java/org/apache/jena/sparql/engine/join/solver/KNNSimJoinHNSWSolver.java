@@ -0,0 +1,76 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.QueryIterKNNSimJoin;
+import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
+import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
+import org.apache.jena.sparql.engine.join.hnsw.IndexHNSW;
+import org.apache.jena.sparql.util.Context;
+
+public class KNNSimJoinHNSWSolver extends KNNSimJoinSolver {
+
+	private PointStore store;
+	private IndexHNSW index;
+	private int efSearch;
+
+	/**
+	 * Uses an HNSW graph to solve a knn-similarity join approximately. Materializes
+	 * the right iterator to build the graph and probes the left bindings to find the
+	 * result. The graph is tuned with {@link ARQ#simJoinHnswM},
+	 * {@link ARQ#simJoinHnswEfConstruction} and {@link ARQ#simJoinHnswEfSearch}.
+	 *
+	 * @param simjoin
+	 */
+	public KNNSimJoinHNSWSolver(QueryIterSimJoin simjoin) {
+		super(simjoin);
+	}
+
+	@Override
+	public void setUp() {
+		Context context = simjoin.getExecContext().getContext();
+		IndexHNSW.BuildParams params = new IndexHNSW.BuildParams();
+		params.m = context.getInt(ARQ.simJoinHnswM, params.m);
+		params.efConstruction = context.getInt(ARQ.simJoinHnswEfConstruction, params.efConstruction);
+		efSearch = context.getInt(ARQ.simJoinHnswEfSearch, 50);
+		SimJoinIndexCache.Index<IndexHNSW> cached = SimJoinIndexCache.get().getOrBuild(simjoin, "hnsw",
+				List.of(params.m, params.efConstruction, params.seed), s -> {
+					IndexHNSW hnsw = new IndexHNSW(s, simjoin.getDistFunc(), params);
+					hnsw.buildIndex();
+					return hnsw;
+				});
+		store = cached.store();
+		index = cached.index();
+	}
+
+	@Override
+	protected Queue<Neighbor<Binding>> getNeighbors(Binding l) {
+		int k = ((QueryIterKNNSimJoin) simjoin).getK();
+		double[] query = simjoin.leftPoint(l);
+		Queue<Neighbor<Binding>> neighbors = new PriorityQueue<Neighbor<Binding>>(Neighbor.comparator);
+		// As the nested loop, skip right bindings with the same attribute values.
+		// Ask for more neighbours while such duplicates hide the k nearest.
+		int want = k + 1;
+		while (true) {
+			neighbors.clear();
+			List<IndexHNSW.Result> res = index.knnSearch(query, want, Math.max(efSearch, want));
+			for (IndexHNSW.Result r : res) {
+				Binding b = store.binding(r.row);
+				if (r.distance == 0 && sameObject(l, store, r.row))
+					continue;
+				if (neighbors.size() < k)
+					neighbors.add(new Neighbor<Binding>(b, r.distance));
+			}
+			if (neighbors.size() >= k || res.size() < want)
+				break;
+			want = 2 * want;
+		}
+		return neighbors;
+	}
+
+}
@@ -1,50 +1,64 @@
 package org.apache.jena.sparql.engine.join.solver;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
 
-import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
 import org.apache.jena.sparql.engine.join.QueryIterKNNSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
-import org.apache.jena.sparql.expr.Expr;
 
+/**
+ * Compares each left binding with every right binding, keeping the k nearest in a
+ * bounded heap. Distances stop being summed once they exceed the k-th nearest so far.
+ * For metric distances, if a sample shows it prunes most of them, right bindings are
+ * visited in order of their distance to a pivot, and the scan stops when the triangle
+ * inequality rules out the rest.
+ */
 public class KNNSimJoinNestedLoopSolver extends KNNSimJoinSolver {
 
+	/** Smallest right side worth ordering by distance to a pivot. */
+	static final int PIVOT_MIN_SIZE = 64;
+
+	private PointStore store;
+	private PivotOrder pivotOrder;
+
 	public KNNSimJoinNestedLoopSolver(QueryIterSimJoin simjoin) {
 		super(simjoin);
-		this.bindingIterator = simjoin.getRightRows().iterator();
 	}
 
 	@Override
-	public void setUp() {	}
+	public void setUp() {
+		store = simjoin.getRightStore();
+		if (store.size() >= PIVOT_MIN_SIZE && PivotOrder.applies(store, simjoin.getDistFunc())) {
+			PivotOrder order = new PivotOrder(store, simjoin.getDistFunc());
+			if (order.isSelective(((QueryIterKNNSimJoin) simjoin).getK()))
+				pivotOrder = order;
+		}
+	}
 
 	@Override
-	protected void getNextBatch(Binding l) {
+	protected Queue<Neighbor<Binding>> getNeighbors(Binding l) {
 		QueryIterKNNSimJoin knnSimJoin = (QueryIterKNNSimJoin) simjoin;
-		List<Node> lvals = new ArrayList<>();
-		for (Expr v: knnSimJoin.getLeftAttributes().getListRaw()) {
-		    lvals.add(l.get(v.asVar()));
-		}
-		while(bindingIterator.hasNext()){
-		    Binding r = bindingIterator.next();
-		    List<Node> rvals = new ArrayList<>();
-		    for (Expr v: knnSimJoin.getRightAttributes().getListRaw()) {
-		        rvals.add(r.get(v.asVar()));
-		    }
-		    double d = simjoin.getDistFunc().distance(lvals, rvals, simjoin.getMinMax(), simjoin.getLeftAttributes(), simjoin.getRightAttributes());
-		    if (d == 0 && sameObject(lvals, rvals)) {
-				continue;
+		TopK top = new TopK(knnSimJoin.getK());
+		double[] lvals = simjoin.leftPoint(l);
+		if (pivotOrder == null) {
+			for (int r = 0; r < store.size(); r++) {
+				offer(l, lvals, r, top);
 			}
-		    if (cache.size() < knnSimJoin.getK()){
-		    	cache.add(new Neighbor<Binding>(r, d));
-		    } else if(d< cache.peek().getDistance()){
-		    	cache.poll();
-		    	cache.add(new Neighbor<Binding>(r, d));
-		    }
+		} else {
+			pivotOrder.scan(lvals, top, r -> offer(l, lvals, r, top));
 		}
-		bindingIterator = knnSimJoin.getRightRows().iterator();
+		return top.toNeighbors(store);
+	}
+
+	private void offer(Binding l, double[] lvals, int r, TopK top) {
+		DistFunc distFunc = simjoin.getDistFunc();
+		double d = distFunc.distance(lvals, 0, store.data(), store.offset(r), store.dims(), top.bound());
+		if (d == 0 && sameObject(l, store, r))
+			return;
+		top.offer(r, d);
 	}
-	
+
 }
@@ -1,6 +1,7 @@
 package org.apache.jena.sparql.engine.join.solver;
 
-import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 
 import org.apache.jena.sparql.engine.binding.Binding;
@@ -9,29 +10,21 @@ import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
 
 public abstract class KNNSimJoinSolver extends SimJoinSolver {
 
-	protected Queue<Neighbor<Binding>> cache = new PriorityQueue<Neighbor<Binding>>(Neighbor.comparator);
-	protected Binding currentSource = null;
-
 	public KNNSimJoinSolver(QueryIterSimJoin simjoin) {
 		super(simjoin);
 	}
-	
-	protected abstract void getNextBatch(Binding l);
-	
-	@Override
-	public Binding nextBinding() {
-		if (cache.isEmpty() && simjoin.getLeft().hasNext()) {
-			currentSource = simjoin.getLeft().nextBinding();
-			getNextBatch(currentSource);
-		}
-		Binding r = consolidateKNN(currentSource, cache.poll(), simjoin.getVar());
-		return r;
-	}
+
+	/** The nearest neighbours of a left binding, in a queue ordered by {@link Neighbor#comparator}. */
+	protected abstract Queue<Neighbor<Binding>> getNeighbors(Binding l);
 
 	@Override
-	public boolean hasNextBinding() {
-		boolean b = (!cache.isEmpty()) || simjoin.getLeft().hasNext();
-		return b;
+	protected List<Binding> probe(Binding l) {
+		Queue<Neighbor<Binding>> neighbors = getNeighbors(l);
+		List<Binding> results = new ArrayList<>(neighbors.size());
+		while (!neighbors.isEmpty()) {
+			results.add(consolidateKNN(l, neighbors.poll(), simjoin.getVar()));
+		}
+		return results;
 	}
 
 }
@@ -0,0 +1,162 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import java.util.Arrays;
+
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+
+/**
+ * The rows of a {@link PointStore} sorted by their distance to a pivot row.
+ * <p>
+ * For a metric distance, the triangle inequality gives
+ * {@code |d(q, pivot) - d(r, pivot)| <= d(q, r)}, so a scan outwards from the
+ * position of a query in this order can stop as soon as that lower bound exceeds the
+ * distance of interest.
+ */
+final class PivotOrder {
+
+	/** Rounding slack on the lower bound, so that no row within the bound is pruned. */
+	private static final double SLACK = 1e-9;
+	/** Rows probed to estimate how many rows a k nearest neighbour scan visits. */
+	private static final int SAMPLE = 32;
+	/**
+	 * Largest fraction of rows a scan may visit for the pivot order to be used: at high
+	 * (intrinsic) dimension the bound prunes little, and visiting rows out of storage
+	 * order is slower than a plain scan.
+	 */
+	static final double SELECTIVE = 0.25;
+
+	/** Compare a query with a row, offering it to the nearest rows so far. */
+	interface Visitor {
+		void visit(int row);
+	}
+
+	private final PointStore store;
+	private final DistFunc distFunc;
+	private final int pivot;
+	private final int[] rows;
+	private final double[] keys;
+
+	/** The pivot is the row furthest from the first one, which tends to lie on the hull. */
+	PivotOrder(PointStore store, DistFunc distFunc) {
+		this.store = store;
+		this.distFunc = distFunc;
+		int n = store.size();
+		int far = 0;
+		double farDist = -1;
+		for (int r = 0; r < n; r++) {
+			double d = rowDistance(0, r);
+			if (d > farDist) {
+				farDist = d;
+				far = r;
+			}
+		}
+		this.pivot = far;
+		double[] d = new double[n];
+		for (int r = 0; r < n; r++) {
+			d[r] = rowDistance(pivot, r);
+		}
+		Integer[] order = new Integer[n];
+		for (int r = 0; r < n; r++) {
+			order[r] = r;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(d[a], d[b]));
+		this.rows = new int[n];
+		this.keys = new double[n];
+		for (int i = 0; i < n; i++) {
+			rows[i] = order[i];
+			keys[i] = d[order[i]];
+		}
+	}
+
+	/** Whether the store can be ordered: a metric distance and no missing coordinates. */
+	static boolean applies(PointStore store, DistFunc distFunc) {
+		if (!distFunc.isMetric())
+			return false;
+		for (double x : store.data()) {
+			if (Double.isNaN(x))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a scan for the k nearest rows, estimated by probing with a sample of the
+	 * rows themselves, visits few enough rows to be worth the pivot order.
+	 */
+	boolean isSelective(int k) {
+		int n = size();
+		int samples = Math.min(SAMPLE, n);
+		long visited = 0;
+		for (int i = 0; i < samples; i++) {
+			int offset = store.offset((int) ((long) i * n / samples));
+			double[] query = Arrays.copyOfRange(store.data(), offset, offset + store.dims());
+			// The row itself is among the nearest.
+			TopK top = new TopK(k + 1);
+			visited += scan(query, top, r -> top.offer(r,
+					distFunc.distance(query, 0, store.data(), store.offset(r), store.dims(), top.bound())));
+		}
+		return visited <= SELECTIVE * samples * n;
+	}
+
+	/**
+	 * Visit rows outwards from the query's distance to the pivot, nearest lower bound
+	 * first, until no other row can be among the nearest.
+	 * @return the number of rows visited
+	 */
+	int scan(double[] query, TopK top, Visitor visitor) {
+		double dq = pivotDistance(query);
+		int hi = position(dq);
+		int lo = hi - 1;
+		int visited = 0;
+		while (lo >= 0 || hi < keys.length) {
+			double lbLo = (lo >= 0) ? dq - keys[lo] : Double.POSITIVE_INFINITY;
+			double lbHi = (hi < keys.length) ? keys[hi] - dq : Double.POSITIVE_INFINITY;
+			boolean low = lbLo <= lbHi;
+			if (top.isFull() && exceeds(low ? lbLo : lbHi, top.bound()))
+				break;
+			visitor.visit(rows[low ? lo-- : hi++]);
+			visited++;
+		}
+		return visited;
+	}
+
+	int size() {
+		return rows.length;
+	}
+
+	int row(int i) {
+		return rows[i];
+	}
+
+	double key(int i) {
+		return keys[i];
+	}
+
+	double pivotDistance(double[] query) {
+		return distFunc.distance(query, 0, store.data(), store.offset(pivot), store.dims());
+	}
+
+	/** The first position whose key is not less than the given one. */
+	int position(double key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** Whether a lower bound on the distance certainly exceeds the bound. */
+	static boolean exceeds(double lowerBound, double bound) {
+		return lowerBound > bound + SLACK * (1 + Math.abs(bound));
+	}
+
+	private double rowDistance(int a, int b) {
+		return distFunc.distance(store.data(), store.offset(a), store.data(), store.offset(b), store.dims());
+	}
+}
@@ -1,48 +1,79 @@
 package org.apache.jena.sparql.engine.join.solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.jena.atlas.lib.Pair;
-import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
 import org.apache.jena.sparql.engine.join.QueryIterRangeSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
-import org.apache.jena.sparql.expr.Expr;
 
+/**
+ * Compares each left binding with every right binding. Distances stop being summed once
+ * they exceed the radius. For metric distances, only right bindings whose distance to a
+ * pivot is within the radius of the query's are compared.
+ */
 public class RangeSimJoinNestedLoopSolver extends RangeSimJoinSolver {
 
+	private PointStore store;
+	private PivotOrder pivotOrder;
+
 	public RangeSimJoinNestedLoopSolver(QueryIterSimJoin simjoin) {
 		super(simjoin);
-		this.bindingIterator = simjoin.getRightRows().iterator();
 	}
 
 	@Override
-	public void setUp() {	}
+	public void setUp() {
+		store = simjoin.getRightStore();
+		if (store.size() >= KNNSimJoinNestedLoopSolver.PIVOT_MIN_SIZE && PivotOrder.applies(store, simjoin.getDistFunc()))
+			pivotOrder = new PivotOrder(store, simjoin.getDistFunc());
+	}
 
 	@Override
-	protected void getNextBatch(Binding l) {
-		List<Node> lvals = new ArrayList<>();
-        for (Expr v: simjoin.getLeftAttributes().getListRaw()) {
-            lvals.add(l.get(v.asVar()));
-        }
-		while(bindingIterator.hasNext()){
-		    Binding r = bindingIterator.next();
-		    List<Node> rvals = new ArrayList<>();
-		    for (Expr v: simjoin.getRightAttributes().getListRaw()) {
-		        rvals.add(r.get(v.asVar()));
-		    }
-		    double d = simjoin.getDistFunc().distance(lvals, rvals, simjoin.getMinMax(), simjoin.getLeftAttributes(), simjoin.getRightAttributes());
-		    if (d==0 && sameObject(lvals, rvals)) {
-					continue;
-			}
-		    if (d <= ((QueryIterRangeSimJoin)simjoin).getRadius()) {
-		    	Pair<Binding, Binding> result = new Pair<Binding, Binding>(l, r);
-		    	Pair<Pair<Binding, Binding>, Double> resultWithDistance = new Pair<Pair<Binding, Binding>, Double>(result, d);
-		    	cache.add(resultWithDistance);
+	protected List<Pair<Binding, Double>> getMatches(Binding l) {
+		List<Pair<Binding, Double>> matches = new ArrayList<>();
+		double radius = ((QueryIterRangeSimJoin)simjoin).getRadius();
+		double[] lvals = simjoin.leftPoint(l);
+		int lo = 0;
+		int hi = 0;
+		if (pivotOrder != null) {
+			double dq = pivotOrder.pivotDistance(lvals);
+			lo = pivotOrder.position(dq);
+			while (lo > 0 && !PivotOrder.exceeds(dq - pivotOrder.key(lo - 1), radius))
+				lo--;
+			hi = lo;
+			while (hi < pivotOrder.size() && !PivotOrder.exceeds(pivotOrder.key(hi) - dq, radius))
+				hi++;
+		}
+		// A wide window prunes too little to be worth visiting rows out of order.
+		if (pivotOrder == null || hi - lo > PivotOrder.SELECTIVE * store.size()) {
+			for (int r = 0; r < store.size(); r++) {
+				match(l, lvals, r, radius, matches);
 			}
+			return matches;
 		}
-		bindingIterator = simjoin.getLeftRows().iterator();
+		// Compare the candidates in row order, as the plain scan does.
+		int[] rows = new int[hi - lo];
+		for (int i = lo; i < hi; i++) {
+			rows[i - lo] = pivotOrder.row(i);
+		}
+		Arrays.sort(rows);
+		for (int r : rows) {
+			match(l, lvals, r, radius, matches);
+		}
+		return matches;
+	}
+
+	private void match(Binding l, double[] lvals, int r, double radius, List<Pair<Binding, Double>> matches) {
+		DistFunc distFunc = simjoin.getDistFunc();
+		double d = distFunc.distance(lvals, 0, store.data(), store.offset(r), store.dims(), radius);
+		if (d == 0 && sameObject(l, store, r))
+			return;
+		if (d <= radius)
+			matches.add(new Pair<Binding, Double>(store.binding(r), d));
 	}
 
 }
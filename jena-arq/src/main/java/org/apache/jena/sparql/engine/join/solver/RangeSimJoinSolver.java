@@ -1,7 +1,7 @@
 package org.apache.jena.sparql.engine.join.solver;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.jena.atlas.lib.Pair;
 import org.apache.jena.sparql.engine.binding.Binding;
@@ -9,26 +9,21 @@ import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
 
 public abstract class RangeSimJoinSolver extends SimJoinSolver {
 
-	protected Queue<Pair<Pair<Binding, Binding>, Double>> cache = new LinkedList<Pair<Pair<Binding,Binding>,Double>>();
-
 	public RangeSimJoinSolver(QueryIterSimJoin simjoin) {
 		super(simjoin);
 	}
 
-	protected abstract void getNextBatch(Binding l);
-	
-	@Override
-	public Binding nextBinding() {
-		Pair<Pair<Binding, Binding>, Double> next = cache.poll();
-		return consolidateRange(next, simjoin.getVar());
-	}
+	/** The right bindings within the radius of a left binding, with their distances. */
+	protected abstract List<Pair<Binding, Double>> getMatches(Binding l);
 
 	@Override
-	public boolean hasNextBinding() {
-		while (cache.isEmpty() && simjoin.getLeft().hasNext()) {
-			getNextBatch(simjoin.getLeft().nextBinding());
+	protected List<Binding> probe(Binding l) {
+		List<Pair<Binding, Double>> matches = getMatches(l);
+		List<Binding> results = new ArrayList<>(matches.size());
+		for (Pair<Binding, Double> m : matches) {
+			results.add(consolidateRange(new Pair<Pair<Binding, Binding>, Double>(new Pair<Binding, Binding>(l, m.getLeft()), m.getRight()), simjoin.getVar()));
 		}
-		return !cache.isEmpty();
+		return results;
 	}
 
 }
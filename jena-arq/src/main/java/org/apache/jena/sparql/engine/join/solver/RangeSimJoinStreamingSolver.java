@@ -0,0 +1,241 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.ThresholdPolicy;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.PointStore.Point;
+import org.apache.jena.sparql.engine.join.QueryIterRangeSimJoin;
+import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.system.SerializationFactoryFinder;
+import org.apache.jena.sparql.util.Context;
+
+import com.eatthepath.jvptree.DistanceFunction;
+import com.eatthepath.jvptree.VPTree;
+
+/**
+ * Range similarity join in bounded memory, used when {@link ARQ#simJoinStreaming} is set.
+ * <p>
+ * The right side is read in blocks of at most {@link ARQ#spillToDiskThreshold} bindings.
+ * Each block is indexed, with a VP-tree or for a nested loop as {@link SimJoinPlanner}
+ * chooses, and the left side is read past it. Results are produced lazily, block after
+ * block, so only one block of the right side is held in memory.
+ * <p>
+ * If the right side fits in one block, it is not copied, and neither is the left side
+ * when the distance function does not normalise the attributes: the left input is then
+ * streamed past the block as it is evaluated. Otherwise the inputs are first copied to
+ * data bags, which spill to disk above the threshold, computing the normalisation ranges
+ * on the way: the right side to be read block by block, and the left side to be read
+ * once per block, or once after its range is known.
+ */
+public class RangeSimJoinStreamingSolver extends RangeSimJoinSolver {
+
+	private DataBag<Binding> leftBag = null;
+	private DataBag<Binding> rightBag = null;
+	private Iterator<Binding> rightIter = null;
+	private Iterator<Binding> leftIter = null;
+	private boolean started = false;
+	private final Deque<Binding> pending = new ArrayDeque<>();
+
+	// The current block of the right side.
+	private PointStore block;
+	private VPTree<Point, Point> index;
+	private DistanceFunction<Point> fun;
+
+	public RangeSimJoinStreamingSolver(QueryIterSimJoin simjoin) {
+		super(simjoin);
+	}
+
+	@Override
+	public void setUp() {}
+
+	@Override
+	public boolean hasNextBinding() {
+		if (!started)
+			start();
+		while (pending.isEmpty()) {
+			if (leftIter == null || !leftIter.hasNext()) {
+				// Left input streamed past the only block: done.
+				if (leftBag == null)
+					return false;
+				Iter.close(leftIter);
+				leftIter = null;
+				if (!nextBlock())
+					return false;
+				leftIter = leftBag.iterator();
+				continue;
+			}
+			pending.addAll(probe(leftIter.next()));
+		}
+		return true;
+	}
+
+	@Override
+	public Binding nextBinding() {
+		return pending.poll();
+	}
+
+	@Override
+	public void close() {
+		Iter.close(leftIter);
+		Iter.close(rightIter);
+		if (leftBag != null)
+			leftBag.close();
+		if (rightBag != null)
+			rightBag.close();
+		super.close();
+	}
+
+	// Read the first block of the right side, copy to data bags what must be read again,
+	// and set the normalisation from the ranges of the attributes.
+	private void start() {
+		started = true;
+		Context context = simjoin.getExecContext().getContext();
+		ExprList leftAttrs = simjoin.getLeftAttributes();
+		ExprList rightAttrs = simjoin.getRightAttributes();
+		double[] min = new double[leftAttrs.size()];
+		double[] max = new double[leftAttrs.size()];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		QueryIterator right = simjoin.getRight();
+		List<Binding> rows = readBlock(right, context);
+		for (Binding b : rows)
+			range(b, rightAttrs, min, max);
+		boolean oneBlock = !right.hasNext();
+		if (!oneBlock) {
+			rightBag = newBag(context);
+			for (Binding b : rows)
+				rightBag.add(b);
+			rows = null;
+			fill(rightBag, right, rightAttrs, min, max);
+		}
+		// The left rows are needed before the first probe only for their range.
+		if (oneBlock && !simjoin.getDistFunc().isNormalised()) {
+			leftIter = simjoin.getLeft();
+		} else {
+			leftBag = newBag(context);
+			fill(leftBag, simjoin.getLeft(), leftAttrs, min, max);
+		}
+		for (int i = 0; i < min.length; i++) {
+			if (min[i] > max[i]) {
+				// No numeric values: leave the attribute as it is.
+				min[i] = Double.NaN;
+				max[i] = Double.NaN;
+			}
+		}
+		simjoin.setNormalisation(min, max);
+		if (oneBlock) {
+			index(rows);
+			if (leftBag != null)
+				leftIter = leftBag.iterator();
+		} else {
+			rightIter = rightBag.iterator();
+		}
+	}
+
+	private static DataBag<Binding> newBag(Context context) {
+		return BagFactory.newDefaultBag(ThresholdPolicyFactory.policyFromContext(context), SerializationFactoryFinder.bindingSerializationFactory());
+	}
+
+	private static void fill(DataBag<Binding> bag, QueryIterator input, ExprList attrs, double[] min, double[] max) {
+		while (input.hasNext()) {
+			Binding b = input.nextBinding();
+			range(b, attrs, min, max);
+			bag.add(b);
+		}
+		bag.flush();
+	}
+
+	private static void range(Binding b, ExprList attrs, double[] min, double[] max) {
+		for (int i = 0; i < attrs.size(); i++) {
+			Node n = b.get(attrs.get(i).asVar());
+			if (n != null && n.isLiteral() && n.getLiteralValue() instanceof Number) {
+				double x = ((Number) n.getLiteralValue()).doubleValue();
+				min[i] = Math.min(min[i], x);
+				max[i] = Math.max(max[i], x);
+			}
+		}
+	}
+
+	// At most a threshold's worth of bindings.
+	private static List<Binding> readBlock(Iterator<Binding> input, Context context) {
+		ThresholdPolicy<Binding> policy = ThresholdPolicyFactory.policyFromContext(context);
+		List<Binding> rows = new ArrayList<>();
+		while (input.hasNext() && !policy.isThresholdExceeded()) {
+			Binding b = input.next();
+			rows.add(b);
+			policy.increment(b);
+		}
+		return rows;
+	}
+
+	// Read and index the next block of the right side, if it was spilled.
+	private boolean nextBlock() {
+		block = null;
+		index = null;
+		if (rightIter == null || !rightIter.hasNext())
+			return false;
+		index(readBlock(rightIter, simjoin.getExecContext().getContext()));
+		return true;
+	}
+
+	private void index(List<Binding> rows) {
+		Context context = simjoin.getExecContext().getContext();
+		block = simjoin.createRightStore(rows);
+		DistFunc distFunc = simjoin.getDistFunc();
+		// The size of a streamed left side is not known.
+		long leftSize = (leftBag == null) ? -1 : leftBag.size();
+		SimJoinPlanner.Solver solver = SimJoinPlanner.chooseRange(distFunc, block.dims(), leftSize, block.size(),
+				((QueryIterRangeSimJoin) simjoin).getRadius(), context);
+		if (solver == SimJoinPlanner.Solver.VPTREE) {
+			fun = Distances.asVPFunction(distFunc, block.dims());
+			index = new VPTree<Point, Point>(fun, block.points());
+		}
+	}
+
+	@Override
+	protected List<Pair<Binding, Double>> getMatches(Binding l) {
+		double radius = ((QueryIterRangeSimJoin) simjoin).getRadius();
+		double[] lvals = simjoin.leftPoint(l);
+		List<Pair<Binding, Double>> matches = new ArrayList<>();
+		if (index != null) {
+			Point query = new Point(lvals);
+			for (Point r : index.getAllWithinDistance(query, radius)) {
+				addMatch(matches, l, block.binding(r.row), fun.getDistance(query, r));
+			}
+			return matches;
+		}
+		DistFunc distFunc = simjoin.getDistFunc();
+		double[] data = block.data();
+		int dims = block.dims();
+		for (int r = 0; r < block.size(); r++) {
+			double d = distFunc.distance(lvals, 0, data, block.offset(r), dims, radius);
+			if (d <= radius)
+				addMatch(matches, l, block.binding(r), d);
+		}
+		return matches;
+	}
+
+	private void addMatch(List<Pair<Binding, Double>> matches, Binding l, Binding r, double d) {
+		if (d == 0 && sameObject(l, r))
+			return;
+		matches.add(new Pair<Binding, Double>(r, d));
+	}
+}
@@ -0,0 +1,351 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpSimJoin;
+import org.apache.jena.sparql.core.DataVersion;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Indexes of the right side of similarity joins, kept between query executions.
+ * <p>
+ * An index is reused when the same right operator is evaluated, with the same join
+ * attributes, distance function, normalisation and index parameters, over the same
+ * version of the same dataset (see {@link DataVersion}). Indexes are only cached in
+ * read transactions of datasets that record their version. The range of the right
+ * attributes is kept as well, so that a join can be normalised, and its index found,
+ * without evaluating the right side again.
+ * <p>
+ * The cached rows are copies of the right rows, independent of the transaction that
+ * read them. Datasets are held weakly: the entries of a dataset that is no longer used
+ * are dropped.
+ * <p>
+ * Entries are evicted least recently used first, when there are more than
+ * {@link ARQ#simJoinIndexCacheSize} or their estimated size exceeds
+ * {@link ARQ#simJoinIndexCacheMemory}.
+ */
+public class SimJoinIndexCache {
+
+	public static final int DEFAULT_SIZE = 16;
+	public static final long DEFAULT_MEMORY = 128L * 1024 * 1024;
+	/** Estimated bytes of the index structure per indexed row. */
+	static final long INDEX_BYTES_PER_ROW = 64;
+	// Rows sampled to estimate the size of the bindings.
+	private static final int SAMPLE = 64;
+
+	private static final SimJoinIndexCache cache = new SimJoinIndexCache();
+
+	public static SimJoinIndexCache get() {
+		return cache;
+	}
+
+	/** A built index and the store of the rows it indexes. */
+	public static final class Index<T> {
+		private final PointStore store;
+		private final T index;
+
+		Index(PointStore store, T index) {
+			this.store = store;
+			this.index = index;
+		}
+
+		public PointStore store() {
+			return store;
+		}
+
+		public T index() {
+			return index;
+		}
+	}
+
+	/** The range of each right attribute, and the number of right rows. */
+	public static final class RightSide {
+		private final Map<Expr, PairOfSameType<Number>> ranges;
+		private final long size;
+
+		RightSide(Map<Expr, PairOfSameType<Number>> ranges, long size) {
+			this.ranges = ranges;
+			this.size = size;
+		}
+
+		public Map<Expr, PairOfSameType<Number>> ranges() {
+			return ranges;
+		}
+
+		public long size() {
+			return size;
+		}
+	}
+
+	private static final class Entry {
+		final Index<?> index;
+		final long bytes;
+
+		Entry(Index<?> index, long bytes) {
+			this.index = index;
+			this.bytes = bytes;
+		}
+	}
+
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	// Small: bounded in number only, apart from the indexes.
+	private final Map<Key, RightSide> rightSides = new LinkedHashMap<>(16, 0.75f, true);
+	private final ReferenceQueue<DatasetGraph> dropped = new ReferenceQueue<>();
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * The index of the right side of a similarity join, from the cache or built now.
+	 * @param name Kind of index, such as "vptree".
+	 * @param params Build parameters that change the index, if any.
+	 * @param build Build the index over the rows of a store.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Index<T> getOrBuild(QueryIterSimJoin simjoin, String name, List<Object> params, Function<PointStore, T> build) {
+		Context context = simjoin.getExecContext().getContext();
+		int maxSize = context.getInt(ARQ.simJoinIndexCacheSize, DEFAULT_SIZE);
+		Key key = maxSize > 0 ? indexKey(simjoin, name, params) : null;
+		if (key == null) {
+			PointStore store = simjoin.getRightStore();
+			return new Index<>(store, build.apply(store));
+		}
+		synchronized (this) {
+			expunge();
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return (Index<T>) entry.index;
+			}
+			misses++;
+		}
+		// Build outside the lock; concurrent builds of the same index are harmless.
+		// The rows are copied: they may be read lazily, in the transaction of this query.
+		List<Binding> rows = new ArrayList<>(simjoin.getRightRows().size());
+		for (Binding b : simjoin.getRightRows())
+			rows.add(BindingFactory.copy(b));
+		PointStore store = simjoin.createRightStore(rows);
+		Index<T> index = new Index<>(store, build.apply(store));
+		long maxBytes = context.getLong(ARQ.simJoinIndexCacheMemory, DEFAULT_MEMORY);
+		put(key, new Entry(index, estimateBytes(store)), maxSize, maxBytes);
+		return index;
+	}
+
+	/** The range of the right attributes of the join, if kept, without evaluating the right side. */
+	public RightSide getRightSide(OpSimJoin op, ExecutionContext execCxt) {
+		if (execCxt.getContext().getInt(ARQ.simJoinIndexCacheSize, DEFAULT_SIZE) <= 0)
+			return null;
+		Key key = rightSideKey(op, execCxt);
+		if (key == null)
+			return null;
+		synchronized (this) {
+			expunge();
+			return rightSides.get(key);
+		}
+	}
+
+	/** Keep the range of the right attributes of the join, read from its right side. */
+	public void putRightSide(OpSimJoin op, ExecutionContext execCxt, Map<Expr, PairOfSameType<Number>> ranges, long size) {
+		Context context = execCxt.getContext();
+		int maxSize = context.getInt(ARQ.simJoinIndexCacheSize, DEFAULT_SIZE);
+		Key key = maxSize > 0 ? rightSideKey(op, execCxt) : null;
+		if (key == null)
+			return;
+		RightSide rightSide = new RightSide(Map.copyOf(ranges), size);
+		synchronized (this) {
+			expunge();
+			rightSides.put(key, rightSide);
+			Iterator<RightSide> iter = rightSides.values().iterator();
+			while (iter.hasNext() && rightSides.size() > maxSize) {
+				iter.next();
+				iter.remove();
+			}
+		}
+	}
+
+	private synchronized void put(Key key, Entry entry, int maxSize, long maxBytes) {
+		expunge();
+		if (entry.bytes > maxBytes)
+			return;
+		Entry old = entries.put(key, entry);
+		if (old != null)
+			bytes -= old.bytes;
+		bytes += entry.bytes;
+		Iterator<Entry> iter = entries.values().iterator();
+		while (iter.hasNext() && (entries.size() > maxSize || bytes > maxBytes)) {
+			bytes -= iter.next().bytes;
+			iter.remove();
+		}
+	}
+
+	// Drop the entries of datasets that have been garbage collected.
+	private void expunge() {
+		if (dropped.poll() == null)
+			return;
+		while (dropped.poll() != null) {}
+		Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Key, Entry> e = iter.next();
+			if (e.getKey().dsg.get() == null) {
+				bytes -= e.getValue().bytes;
+				iter.remove();
+			}
+		}
+		rightSides.keySet().removeIf(k -> k.dsg.get() == null);
+	}
+
+	/** Drop all indexes and reset the statistics. */
+	public synchronized void clear() {
+		entries.clear();
+		rightSides.clear();
+		bytes = 0;
+		hits = 0;
+		misses = 0;
+	}
+
+	/** The number of indexes. */
+	public synchronized int size() {
+		expunge();
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Estimated bytes of a store, its bindings sampled, and of an index over it. */
+	static long estimateBytes(PointStore store) {
+		int n = store.size();
+		if (n == 0)
+			return 0;
+		long sampled = 0;
+		int count = Math.min(n, SAMPLE);
+		for (int i = 0; i < count; i++)
+			sampled += bindingBytes(store.binding((int) ((long) i * n / count)));
+		long perRow = sampled / count + 8L * store.dims() + INDEX_BYTES_PER_ROW;
+		return n * perRow;
+	}
+
+	// Estimated bytes of a binding: its entries and nodes, with Java object overheads.
+	private static long bindingBytes(Binding b) {
+		long bytes = 32;
+		Iterator<Var> vars = b.vars();
+		while (vars.hasNext())
+			bytes += 16 + nodeBytes(b.get(vars.next()));
+		return bytes;
+	}
+
+	private static long nodeBytes(Node n) {
+		if (n == null)
+			return 0;
+		if (n.isURI())
+			return 56 + 2L * n.getURI().length();
+		if (n.isLiteral())
+			return 80 + 2L * (n.getLiteralLexicalForm().length() + n.getLiteralLanguage().length());
+		if (n.isBlank())
+			return 56 + 2L * n.getBlankNodeLabel().length();
+		return 64;
+	}
+
+	private Key indexKey(QueryIterSimJoin simjoin, String name, List<Object> params) {
+		return key(simjoin.getExecContext(), simjoin.getRightOp(),
+				Arrays.asList(simjoin.getRightAttributes(), simjoin.getDistFunc(), values(simjoin.getNormalisationMin()),
+						values(simjoin.getNormalisationMax()), name, params));
+	}
+
+	private Key rightSideKey(OpSimJoin op, ExecutionContext execCxt) {
+		return key(execCxt, op.getRight(), Arrays.asList(op.getRightAttributes(), "ranges"));
+	}
+
+	/** The cache key of the right side of a join, or null if it cannot be cached. */
+	private Key key(ExecutionContext execCxt, Op rightOp, List<Object> detail) {
+		DatasetGraph dsg = execCxt.getDataset();
+		if (dsg == null || rightOp == null)
+			return null;
+		long version = DataVersion.dataVersion(dsg);
+		if (version == DataVersion.UNKNOWN)
+			return null;
+		return new Key(dsg, dropped, version, activeGraph(execCxt.getActiveGraph()), rightOp, detail);
+	}
+
+	// Boxed, so that the key compares them by value. NaN is equal to NaN.
+	private static List<Double> values(double[] x) {
+		List<Double> list = new ArrayList<>(x.length);
+		for (double d : x)
+			list.add(d);
+		return list;
+	}
+
+	// Graph views of a dataset are created as needed: use the graph name.
+	private static Object activeGraph(Graph graph) {
+		if (graph instanceof GraphView) {
+			GraphView view = (GraphView) graph;
+			return view.getGraphName() == null ? Quad.defaultGraphIRI : view.getGraphName();
+		}
+		return graph;
+	}
+
+	private static final class Key {
+		private final WeakReference<DatasetGraph> dsg;
+		private final long version;
+		private final Object activeGraph;
+		private final Op rightOp;
+		private final List<Object> detail;
+		private final int hash;
+
+		Key(DatasetGraph dsg, ReferenceQueue<DatasetGraph> queue, long version, Object activeGraph, Op rightOp, List<Object> detail) {
+			this.dsg = new WeakReference<>(dsg, queue);
+			this.version = version;
+			this.activeGraph = activeGraph;
+			this.rightOp = rightOp;
+			this.detail = detail;
+			this.hash = Objects.hash(System.identityHashCode(dsg), version, activeGraph, rightOp, detail);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			DatasetGraph x = dsg.get();
+			return hash == other.hash && x != null && x == other.dsg.get() && version == other.version
+					&& Objects.equals(activeGraph, other.activeGraph) && Objects.equals(rightOp, other.rightOp)
+					&& detail.equals(other.detail);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.algebra.op.OpRangeSimJoin;
+import org.apache.jena.sparql.algebra.op.OpSimJoin;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.QueryIterKNNSimJoin;
+import org.apache.jena.sparql.engine.join.QueryIterRangeSimJoin;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Chooses the {@link SimJoinSolver} for a similarity join.
+ * <p>
+ * The solver can be forced with the context symbol {@link ARQ#simJoinSolver}.
+ * Otherwise the planner compares a simple cost model of a nested loop
+ * ({@code |L| * |R| * d} distance terms) against building a VP-tree over the right
+ * side and probing it with every left binding. The number of tree nodes visited per probe is
+ * estimated as {@code (log2 |R| + k) * 2^(d/2)}, capped at {@code |R|}, which reflects how
+ * metric indexes degrade towards brute force as the dimensionality grows. For range joins,
+ * {@code k} is the expected number of matches per probe, {@code |R|} times the
+ * {@linkplain DistFunc#selectivity(int, double) selectivity} of the radius.
+ * <p>
+ * Only exact solvers are chosen automatically: the VP-tree requires a metric distance over
+ * numeric attributes, and the KD-tree and HNSW solvers (approximate search) are only used
+ * when forced.
+ */
+public class SimJoinPlanner {
+
+	public enum Solver { AUTO, NESTED_LOOP, VPTREE, KDTREE, HNSW }
+
+	/** Below this number of candidate pairs the nested loop is always used. */
+	static final long SMALL_JOIN = 10_000;
+	/** Relative cost of a distance computation through the index compared to the nested loop. */
+	static final double INDEX_OVERHEAD = 2.0;
+
+	public static SimJoinSolver createKNNSolver(QueryIterKNNSimJoin simjoin, long leftSize, long rightSize, ExecutionContext execCxt) {
+		Solver solver = choose(simjoin.getDistFunc(), simjoin.getLeftAttributes().size(), leftSize, rightSize, simjoin.getK(), execCxt.getContext());
+		switch (solver) {
+			case VPTREE :
+				return new KNNSimJoinVPTreeSolver(simjoin);
+			case KDTREE :
+				return new KNNSimJoinFLANNSolver(simjoin);
+			case HNSW :
+				return new KNNSimJoinHNSWSolver(simjoin);
+			default :
+				return new KNNSimJoinNestedLoopSolver(simjoin);
+		}
+	}
+
+	public static SimJoinSolver createRangeSolver(QueryIterRangeSimJoin simjoin, long leftSize, long rightSize, ExecutionContext execCxt) {
+		if (execCxt.getContext().isTrue(ARQ.simJoinStreaming))
+			return new RangeSimJoinStreamingSolver(simjoin);
+		Solver solver = chooseRange(simjoin.getDistFunc(), simjoin.getLeftAttributes().size(), leftSize, rightSize, simjoin.getRadius(), execCxt.getContext());
+		switch (solver) {
+			case VPTREE :
+				return new RangeSimJoinVPTreeSolver(simjoin);
+			case KDTREE :
+				throw new QueryExecException("No KD-tree solver for range similarity joins");
+			case HNSW :
+				throw new QueryExecException("No HNSW solver for range similarity joins");
+			default :
+				return new RangeSimJoinNestedLoopSolver(simjoin);
+		}
+	}
+
+	/**
+	 * Whether the join is evaluated by {@link RangeSimJoinStreamingSolver}, which reads
+	 * its inputs itself: they must not be buffered in memory beforehand.
+	 */
+	public static boolean isStreaming(OpSimJoin opSimJoin, Context context) {
+		return opSimJoin instanceof OpRangeSimJoin && context.isTrue(ARQ.simJoinStreaming);
+	}
+
+	/** Choose the solver, honouring {@link ARQ#simJoinSolver} if set in the context. */
+	public static Solver choose(DistFunc distFunc, int dims, long leftSize, long rightSize, int k, Context context) {
+		return choose(distFunc, dims, leftSize, rightSize, (double) k, context);
+	}
+
+	/** Choose the solver of a range join, honouring {@link ARQ#simJoinSolver} if set in the context. */
+	public static Solver chooseRange(DistFunc distFunc, int dims, long leftSize, long rightSize, double radius, Context context) {
+		double matches = rightSize < 0 ? 0 : rightSize * distFunc.selectivity(dims, radius);
+		return choose(distFunc, dims, leftSize, rightSize, matches, context);
+	}
+
+	private static Solver choose(DistFunc distFunc, int dims, long leftSize, long rightSize, double matches, Context context) {
+		Solver forced = forcedSolver(context);
+		if (forced != Solver.AUTO)
+			return forced;
+		if (distFunc.isVector() || !distFunc.isMetric())
+			return Solver.NESTED_LOOP;
+		// Unknown cardinalities: stay with the solver that makes no assumptions.
+		if (leftSize < 0 || rightSize < 0)
+			return Solver.NESTED_LOOP;
+		if (leftSize * rightSize < SMALL_JOIN)
+			return Solver.NESTED_LOOP;
+		double nestedLoop = nestedLoopCost(leftSize, rightSize, dims);
+		double vptree = indexCost(leftSize, rightSize, dims, matches);
+		return vptree < nestedLoop ? Solver.VPTREE : Solver.NESTED_LOOP;
+	}
+
+	static double nestedLoopCost(long leftSize, long rightSize, int dims) {
+		return (double) leftSize * rightSize * dims;
+	}
+
+	static double indexCost(long leftSize, long rightSize, int dims, double k) {
+		double n = Math.max(rightSize, 2);
+		double log2n = Math.log(n) / Math.log(2);
+		double build = n * log2n * dims;
+		double visited = Math.min(n, (log2n + k) * Math.pow(2, dims / 2.0));
+		return build + INDEX_OVERHEAD * leftSize * visited * dims;
+	}
+
+	static Solver forcedSolver(Context context) {
+		Object x = context.get(ARQ.simJoinSolver);
+		if (x == null)
+			return Solver.AUTO;
+		if (x instanceof Solver)
+			return (Solver) x;
+		String name = x.toString().trim().toLowerCase();
+		switch (name) {
+			case "auto" :
+				return Solver.AUTO;
+			case "nestedloop" :
+			case "nested_loop" :
+				return Solver.NESTED_LOOP;
+			case "vptree" :
+				return Solver.VPTREE;
+			case "kdtree" :
+			case "flann" :
+				return Solver.KDTREE;
+			case "hnsw" :
+				return Solver.HNSW;
+			default :
+				throw new QueryExecException("Unknown similarity join solver: " + x);
+		}
+	}
+}
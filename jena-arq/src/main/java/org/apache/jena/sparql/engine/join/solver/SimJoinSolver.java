@@ -1,38 +1,158 @@
 package org.apache.jena.sparql.engine.join.solver;
 
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import org.apache.jena.atlas.lib.Pair;
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.algebra.Algebra;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.PointStore;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin;
 import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
+import org.apache.jena.sparql.engine.join.SharedScan;
+import org.apache.jena.sparql.expr.ExprList;
 
+/**
+ * Evaluates a similarity join by probing the right side, prepared by {@link #setUp()},
+ * with each left binding in turn.
+ * <p>
+ * If {@link ARQ#simJoinParallelism} is greater than one, left bindings are probed in
+ * batches on a fork/join pool of that many threads. The results of a batch are
+ * returned in the order of its left bindings, so the output is the same as probing
+ * sequentially.
+ */
 public abstract class SimJoinSolver {
-	
+
+	/** Left bindings probed per worker thread in each parallel batch. */
+	static final int BATCH_PER_THREAD = 256;
+
 	protected QueryIterSimJoin simjoin;
-	protected Iterator<Binding> bindingIterator;
-	
+	private final Deque<Binding> output = new ArrayDeque<>();
+	private final int parallelism;
+	private ForkJoinPool pool = null;
+
 	public SimJoinSolver(QueryIterSimJoin simjoin) {
 		this.simjoin = simjoin;
+		this.parallelism = simjoin.getExecContext().getContext().getInt(ARQ.simJoinParallelism, 1);
+	}
+
+	public abstract void setUp();
+
+	/**
+	 * The results of joining a left binding with the right side, in output order.
+	 * In parallel mode, this is called from several threads at once.
+	 */
+	protected abstract List<Binding> probe(Binding l);
+
+	public Binding nextBinding() {
+		return output.poll();
+	}
+
+	public boolean hasNextBinding() {
+		QueryIterator left = simjoin.getLeft();
+		while (output.isEmpty() && left.hasNext()) {
+			if (parallelism > 1)
+				probeBatch(left);
+			else
+				output.addAll(probe(left.nextBinding()));
+		}
+		return !output.isEmpty();
+	}
+
+	/** Release the threads of parallel mode, if any. */
+	public void close() {
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
 	}
-	
-	public abstract Binding nextBinding();
-	
-	public abstract boolean hasNextBinding();
 
-	protected boolean sameObject(List<Node> lvals, List<Node> rvals) {
-		for (int i = 0; i < lvals.size(); i++) {
-			if (! lvals.get(i).equals(rvals.get(i))) {
+	private void probeBatch(QueryIterator left) {
+		List<Binding> rows = new ArrayList<>();
+		while (rows.size() < parallelism * BATCH_PER_THREAD && left.hasNext()) {
+			rows.add(left.nextBinding());
+		}
+		List<List<Binding>> results = new ArrayList<>(rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			results.add(null);
+		}
+		if (pool == null) {
+			// Computed here, before the probes that read it run in parallel.
+			simjoin.getNormalisationMin();
+			pool = new ForkJoinPool(parallelism);
+		}
+		pool.invoke(new ProbeTask(rows, results, 0, rows.size()));
+		for (List<Binding> r : results) {
+			output.addAll(r);
+		}
+	}
+
+	/** Probe the left bindings {@code [start, end)} of a batch, splitting the range between threads. */
+	private class ProbeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+		private final List<Binding> rows;
+		private final List<List<Binding>> results;
+		private final int start;
+		private final int end;
+
+		ProbeTask(List<Binding> rows, List<List<Binding>> results, int start, int end) {
+			this.rows = rows;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= THRESHOLD) {
+				for (int i = start; i < end; i++) {
+					results.set(i, probe(rows.get(i)));
+				}
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new ProbeTask(rows, results, start, mid), new ProbeTask(rows, results, mid, end));
+		}
+	}
+
+	/**
+	 * Whether the join attributes of the left binding and of a row of the store are the
+	 * same nodes. When both sides are the rows of one scan, compares their keys.
+	 */
+	protected boolean sameObject(Binding l, PointStore store, int row) {
+		SharedScan shared = simjoin.getSharedScan();
+		if (shared != null) {
+			int i = shared.row(l);
+			// The store may hold other rows, as one of the index cache does.
+			if (i >= 0 && row < shared.size() && store.binding(row) == shared.getRightRows().get(row))
+				return shared.sameObject(i, row);
+		}
+		return sameObject(l, store.binding(row));
+	}
+
+	/** Whether the join attributes of the left and the right binding are the same nodes. */
+	protected boolean sameObject(Binding l, Binding r) {
+		ExprList leftAttrs = simjoin.getLeftAttributes();
+		ExprList rightAttrs = simjoin.getRightAttributes();
+		for (int i = 0; i < leftAttrs.size(); i++) {
+			Node ln = l.get(leftAttrs.get(i).asVar());
+			Node rn = r.get(rightAttrs.get(i).asVar());
+			if (ln == null || ! ln.equals(rn)) {
 				return false;
 			}
 		}
 		return true;
 	}
 	
-	
 	protected Binding consolidateRange(Pair<Pair<Binding,Binding>,Double> pair, Var var) {
 		return Algebra.joinRange(pair, var);
 	}
@@ -41,6 +161,4 @@ public abstract class SimJoinSolver {
 		return Algebra.joinKNN(l, n, var);
 	}
 
-	public abstract void setUp();
-	
 }
@@ -0,0 +1,99 @@
+package org.apache.jena.sparql.engine.join.solver;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.engine.join.QueryIterSimJoin.Neighbor;
+
+/**
+ * The k nearest rows of a {@link PointStore} seen so far, in a max-heap on primitive
+ * arrays. Ties in distance are broken by row number, so the k nearest rows do not
+ * depend on the order in which rows are offered.
+ */
+final class TopK {
+
+	private final int k;
+	private final int[] rows;
+	private final double[] dists;
+	private int size = 0;
+
+	TopK(int k) {
+		this.k = Math.max(k, 0);
+		this.rows = new int[this.k];
+		this.dists = new double[this.k];
+	}
+
+	boolean isFull() {
+		return size == k;
+	}
+
+	/** The distance a row must not exceed to be kept; infinite until there are k rows. */
+	double bound() {
+		if (k == 0)
+			return Double.NEGATIVE_INFINITY;
+		return isFull() ? dists[0] : Double.POSITIVE_INFINITY;
+	}
+
+	/** Keep the row if it is among the k nearest so far. */
+	void offer(int row, double d) {
+		if (!isFull()) {
+			rows[size] = row;
+			dists[size] = d;
+			siftUp(size++);
+		} else if (k > 0 && before(d, row, dists[0], rows[0])) {
+			rows[0] = row;
+			dists[0] = d;
+			siftDown(0);
+		}
+	}
+
+	/** The rows kept, as a queue ordered by {@link Neighbor#comparator}. */
+	Queue<Neighbor<Binding>> toNeighbors(PointStore store) {
+		Queue<Neighbor<Binding>> neighbors = new PriorityQueue<Neighbor<Binding>>(Neighbor.comparator);
+		for (int i = 0; i < size; i++) {
+			neighbors.add(new Neighbor<Binding>(store.binding(rows[i]), dists[i]));
+		}
+		return neighbors;
+	}
+
+	private static boolean before(double d1, int row1, double d2, int row2) {
+		return d1 < d2 || (d1 == d2 && row1 < row2);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(dists[parent], rows[parent], dists[i], rows[i]))
+				return;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int largest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && before(dists[largest], rows[largest], dists[left], rows[left]))
+				largest = left;
+			if (right < size && before(dists[largest], rows[largest], dists[right], rows[right]))
+				largest = right;
+			if (largest == i)
+				return;
+			swap(i, largest);
+			i = largest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int r = rows[i];
+		rows[i] = rows[j];
+		rows[j] = r;
+		double d = dists[i];
+		dists[i] = dists[j];
+		dists[j] = d;
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.main;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.atlas.io.IndentedLineBuffer;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.*;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.sse.writers.WriterOp;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+
+/**
+ * Execution statistics of each operator of a query: "explain analyze".
+ * <p>
+ * When {@link ARQ#explainAnalyze} is set, the {@link OpExecutor} wraps the iterator it
+ * creates for each operator with counters of the rows it produces, the time spent in it and
+ * the memory allocated meanwhile. Times and allocations include those of the operators
+ * below it, which it calls for their rows. An operator executed once per row of its input,
+ * as the right side of an index join is, adds to its counters each time.
+ * <p>
+ * Operators rewritten for each input row (OPTIONAL by substitution, for example)
+ * are new operators each time and are not reported.
+ * <p>
+ * The counters may be updated from several threads, when an iterator is read from a
+ * thread other than the one executing the query. The time and memory of an operator are
+ * then the sums over those threads, not the elapsed time.
+ * <p>
+ * The statistics are complete once the results have been read. Use
+ * {@link #get(QueryExec)} for those of a query execution, then {@link #toSSE()} or
+ * {@link #toJson()} for the operator tree annotated with them.
+ */
+public class ExplainAnalyze {
+    /** Context key of the statistics of a query execution, set when it starts. */
+    public static final Symbol symExplainAnalyze = Symbol.create(ARQConstants.systemVarNS + "explainAnalyze");
+
+    /** The counters of one operator. */
+    public static class OpStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+
+        /** Number of times the operator was executed. */
+        public long getCalls()          { return calls.sum(); }
+
+        /** Number of rows produced, over all executions. */
+        public long getRows()           { return rows.sum(); }
+
+        /** Time spent producing rows, in nanoseconds. */
+        public long getNanos()          { return nanos.sum(); }
+
+        /** Memory allocated while producing rows, in bytes, or -1 if the JVM does not measure it. */
+        public long getAllocatedBytes() { return (threads == null) ? -1 : allocated.sum(); }
+
+        @Override
+        public String toString() {
+            String str = String.format("rows=%d calls=%d time=%.3fms", getRows(), getCalls(), getNanos() / 1e6);
+            if ( threads != null )
+                str = str + " alloc=" + getAllocatedBytes() + "B";
+            return str;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threads = threadMXBean();
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        try {
+            if ( ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean ) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+                if ( bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled() )
+                    return bean;
+            }
+        } catch (Throwable ex) {}
+        return null;
+    }
+
+    private final Map<Op, OpStats> stats = Collections.synchronizedMap(new IdentityHashMap<>());
+    private volatile Op root = null;
+
+    /** The statistics recorded in the context, or null if the execution is not analysed. */
+    public static ExplainAnalyze get(Context context) {
+        if ( context == null )
+            return null;
+        Object x = context.get(symExplainAnalyze);
+        return (x instanceof ExplainAnalyze) ? (ExplainAnalyze)x : null;
+    }
+
+    /** The statistics of a query execution built with {@link ARQ#explainAnalyze} set, or null. */
+    public static ExplainAnalyze get(QueryExec qExec) {
+        return get(qExec.getContext());
+    }
+
+    /** Set up the statistics of a query execution, if its context asks for them. */
+    public static void setup(Context context) {
+        if ( context.isTrue(ARQ.explainAnalyze) && get(context) == null )
+            context.set(symExplainAnalyze, new ExplainAnalyze());
+    }
+
+    /** The operator tree executed, or null if the execution has not started. */
+    public Op getOp() {
+        return root;
+    }
+
+    /** The counters of an operator of the tree, or null if it was not executed. */
+    public OpStats getStats(Op op) {
+        return stats.get(op);
+    }
+
+    /** Record the tree executed: the first one only, as EXISTS and SERVICE execute parts of it again. */
+    synchronized void start(Op op) {
+        if ( root == null )
+            root = op;
+    }
+
+    /** Count the rows of an iterator of an operator. */
+    QueryIterator track(Op op, QueryIterator qIter) {
+        OpStats s = stats.computeIfAbsent(op, x -> new OpStats());
+        s.calls.increment();
+        return new QueryIterAnalyze(qIter, s);
+    }
+
+    /** The operator tree, each operator labelled with its counters. */
+    public Op annotate() {
+        return (root == null) ? null : annotate(root);
+    }
+
+    private Op annotate(Op op) {
+        Op x = op;
+        if ( op instanceof Op1 ) {
+            Op1 op1 = (Op1)op;
+            x = op1.copy(annotate(op1.getSubOp()));
+        } else if ( op instanceof Op2 ) {
+            Op2 op2 = (Op2)op;
+            x = op2.copy(annotate(op2.getLeft()), annotate(op2.getRight()));
+        } else if ( op instanceof OpN ) {
+            OpN opN = (OpN)op;
+            List<Op> elts = new ArrayList<>(opN.size());
+            for ( Op elt : opN.getElements() )
+                elts.add(annotate(elt));
+            x = opN.copy(elts);
+        }
+        OpStats s = stats.get(op);
+        return (s == null) ? x : OpLabel.create(s.toString(), x);
+    }
+
+    /** The annotated operator tree as SSE. */
+    public String toSSE() {
+        return toSSE(null);
+    }
+
+    /** The annotated operator tree as SSE, using the prefixes. */
+    public String toSSE(PrefixMapping prefixMapping) {
+        Op op = annotate();
+        if ( op == null )
+            return "";
+        IndentedLineBuffer out = new IndentedLineBuffer();
+        WriterOp.output(out, op, new SerializationContext(prefixMapping));
+        return out.asString();
+    }
+
+    /**
+     * The operator tree as JSON: an object for each operator with its name ("op"),
+     * counters ("rows", "calls", "timeMs", "allocatedBytes") and sub-operators ("args").
+     * Operators without sub-operators also have their SSE ("sse").
+     */
+    public JsonObject toJson() {
+        return (root == null) ? new JsonObject() : toJson(root);
+    }
+
+    private JsonObject toJson(Op op) {
+        JsonObject obj = new JsonObject();
+        obj.put("op", op.getName());
+        OpStats s = stats.get(op);
+        if ( s != null ) {
+            obj.put("rows", s.getRows());
+            obj.put("calls", s.getCalls());
+            obj.put("timeMs", JsonNumber.value(s.getNanos() / 1e6));
+            if ( threads != null )
+                obj.put("allocatedBytes", s.getAllocatedBytes());
+        }
+        List<Op> args = new ArrayList<>();
+        if ( op instanceof Op1 ) {
+            args.add(((Op1)op).getSubOp());
+        } else if ( op instanceof Op2 ) {
+            args.add(((Op2)op).getLeft());
+            args.add(((Op2)op).getRight());
+        } else if ( op instanceof OpN ) {
+            args.addAll(((OpN)op).getElements());
+        }
+        if ( args.isEmpty() ) {
+            obj.put("sse", op.toString().trim());
+        } else {
+            JsonArray array = new JsonArray();
+            for ( Op arg : args )
+                array.add(toJson(arg));
+            obj.put("args", array);
+        }
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return toSSE();
+    }
+
+    /** Counts the rows of an iterator, and the time and memory spent producing them. */
+    private static class QueryIterAnalyze extends QueryIteratorWrapper {
+        private final OpStats stats;
+
+        QueryIterAnalyze(QueryIterator qIter, OpStats stats) {
+            super(qIter);
+            this.stats = stats;
+        }
+
+        @Override
+        protected boolean hasNextBinding() {
+            long start = System.nanoTime();
+            long alloc = allocated();
+            try {
+                return super.hasNextBinding();
+            } finally {
+                record(start, alloc);
+            }
+        }
+
+        @Override
+        protected Binding moveToNextBinding() {
+            long start = System.nanoTime();
+            long alloc = allocated();
+            try {
+                Binding b = super.moveToNextBinding();
+                stats.rows.increment();
+                return b;
+            } finally {
+                record(start, alloc);
+            }
+        }
+
+        @Override
+        public boolean isJoinIdentity() {
+            return iterator != null && iterator.isJoinIdentity();
+        }
+
+        private static long allocated() {
+            return (threads == null) ? 0 : threads.getCurrentThreadAllocatedBytes();
+        }
+
+        private void record(long start, long alloc) {
+            stats.nanos.add(System.nanoTime() - start);
+            if ( threads != null )
+                stats.allocated.add(threads.getCurrentThreadAllocatedBytes() - alloc);
+        }
+    }
+}
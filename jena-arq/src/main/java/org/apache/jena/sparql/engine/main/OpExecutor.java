@@ -21,6 +21,7 @@ package org.apache.jena.sparql.engine.main;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.jena.atlas.iterator.Iter;
@@ -40,6 +41,8 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.iterator.*;
 import org.apache.jena.sparql.engine.join.Join;
+import org.apache.jena.sparql.engine.join.SharedScan;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterGraph;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterOptionalIndex;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterUnion;
@@ -48,7 +51,6 @@ import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.procedure.ProcEval;
 import org.apache.jena.sparql.procedure.Procedure;
 import org.apache.jena.sparql.service.ServiceExec;
-import org.apache.jena.sparql.util.Symbol;
 
 /**
  * Turn an Op expression into an execution of QueryIterators. Does not consider
@@ -85,6 +87,8 @@ public class OpExecutor {
     /** Public interface is via QC.execute. **/
     static QueryIterator execute(Op op, QueryIterator qIter, ExecutionContext execCxt) {
         OpExecutor exec = createOpExecutor(execCxt);
+        if ( exec.analyze != null )
+            exec.analyze.start(op);
         QueryIterator q = exec.exec(op, qIter);
         return q;
     }
@@ -97,13 +101,14 @@ public class OpExecutor {
     protected int level = TOP_LEVEL - 1;
     private final boolean hideBNodeVars;
     protected final StageGenerator stageGenerator;
-    public static boolean optimiseOverlappingPatterns = false;
+    private final ExplainAnalyze analyze;
 
     protected OpExecutor(ExecutionContext execCxt) {
         this.execCxt = execCxt;
         this.dispatcher = new ExecutionDispatch(this);
         this.hideBNodeVars = execCxt.getContext().isTrue(ARQ.hideNonDistiguishedVariables);
         this.stageGenerator = StageBuilder.chooseStageGenerator(execCxt.getContext());
+        this.analyze = ExplainAnalyze.get(execCxt.getContext());
     }
 
     // Public interface
@@ -115,6 +120,8 @@ public class OpExecutor {
     protected QueryIterator exec(Op op, QueryIterator input) {
         level++;
         QueryIterator qIter = dispatcher.exec(op, input);
+        if ( analyze != null )
+            qIter = analyze.track(op, qIter);
         // Intentionally not try/finally so exceptions leave some evidence
         // around.
         level--;
@@ -459,20 +466,58 @@ public class OpExecutor {
     }
     
     public QueryIterator execute(OpSimJoin opSimJoin, QueryIterator input) {
-		QueryIterator left;
-        QueryIterator right;
-		if (optimiseOverlappingPatterns && opSimJoin.getLeft() instanceof OpBGP
-			&& opSimJoin.getRight() instanceof OpBGP){
-			execCxt.getContext().put(Symbol.create("RIGHT_PATTERN"), ((OpBGP) opSimJoin.getRight()).getPattern());
-			left = exec(opSimJoin.getLeft(), input) ;
-	        right = exec(opSimJoin.getRight(), root()) ;
-		} else {
-			left = exec(opSimJoin.getLeft(), input) ;
-        	right = exec(opSimJoin.getRight(), root()) ;
-		}
-        QueryIterator qIter = Join.simJoin(left, right, opSimJoin, execCxt) ;
-        return qIter ;
-	}
+        if ( sharedScan(opSimJoin, input) ) {
+            BasicPattern leftPattern = ((OpBGP)opSimJoin.getLeft()).getPattern();
+            BasicPattern rightPattern = ((OpBGP)opSimJoin.getRight()).getPattern();
+            Map<Var, Var> toRight = SharedScan.embedding(leftPattern, rightPattern);
+            if ( toRight != null ) {
+                List<Binding> rows = all(exec(opSimJoin.getLeft(), input));
+                if ( leftPattern.size() == rightPattern.size() && sameAttributes(toRight, opSimJoin) )
+                    return Join.simJoin(new SharedScan(rows, toRight, opSimJoin.getLeftAttributes()), opSimJoin, execCxt);
+                // The right pattern is the left one and more triples.
+                QueryIterator right = extend(rows, toRight, SharedScan.remaining(leftPattern, rightPattern, toRight));
+                return Join.simJoin(QueryIterPlainWrapper.create(rows.iterator(), execCxt), right, opSimJoin, execCxt);
+            }
+            Map<Var, Var> toLeft = SharedScan.embedding(rightPattern, leftPattern);
+            if ( toLeft != null ) {
+                List<Binding> rows = all(exec(opSimJoin.getRight(), input));
+                QueryIterator left = extend(rows, toLeft, SharedScan.remaining(rightPattern, leftPattern, toLeft));
+                return Join.simJoin(left, QueryIterPlainWrapper.create(rows.iterator(), execCxt), opSimJoin, execCxt);
+            }
+        }
+        QueryIterator left = exec(opSimJoin.getLeft(), input);
+        QueryIterator right = exec(opSimJoin.getRight(), root());
+        return Join.simJoin(left, right, opSimJoin, execCxt);
+    }
+
+    // Both sides are basic graph patterns evaluated from the root, and held in memory.
+    private boolean sharedScan(OpSimJoin opSimJoin, QueryIterator input) {
+        return execCxt.getContext().isTrueOrUndef(ARQ.simJoinSharedScan)
+            && opSimJoin.getLeft() instanceof OpBGP && opSimJoin.getRight() instanceof OpBGP
+            && input.isJoinIdentity()
+            && !SimJoinPlanner.isStreaming(opSimJoin, execCxt.getContext());
+    }
+
+    // Each left attribute is renamed to the right attribute in the same position.
+    private static boolean sameAttributes(Map<Var, Var> renaming, OpSimJoin opSimJoin) {
+        ExprList leftAttrs = opSimJoin.getLeftAttributes();
+        ExprList rightAttrs = opSimJoin.getRightAttributes();
+        if ( leftAttrs.size() != rightAttrs.size() )
+            return false;
+        for ( int i = 0 ; i < leftAttrs.size() ; i++ ) {
+            if ( !leftAttrs.get(i).isVariable() || !rightAttrs.get(i).isVariable() )
+                return false;
+            if ( !rightAttrs.get(i).asVar().equals(renaming.get(leftAttrs.get(i).asVar())) )
+                return false;
+        }
+        return true;
+    }
+
+    // The rows of the general pattern, renamed, matched against the remaining triples.
+    private QueryIterator extend(List<Binding> rows, Map<Var, Var> renaming, BasicPattern remaining) {
+        QueryIterator renamed = QueryIterPlainWrapper.create(SharedScan.rename(rows, renaming).iterator(), execCxt);
+        return remaining.isEmpty() ? renamed : exec(new OpBGP(remaining), renamed);
+    }
 
     public static QueryIterator createRootQueryIterator(ExecutionContext execCxt) {
         return QueryIterRoot.create(execCxt);
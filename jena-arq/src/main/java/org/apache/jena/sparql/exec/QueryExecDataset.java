@@ -53,6 +53,7 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import org.apache.jena.sparql.engine.main.ExplainAnalyze;
 import org.apache.jena.sparql.graph.GraphOps;
 import org.apache.jena.sparql.modify.TemplateLib;
 import org.apache.jena.sparql.syntax.ElementGroup;
@@ -110,6 +111,7 @@ public class QueryExecDataset implements QueryExec
 
     private void init() {
         Context.setCurrentDateTime(context);
+        ExplainAnalyze.setup(context);
         if ( query != null )
             context.put(ARQConstants.sysCurrentQuery, query);
     }
@@ -164,6 +164,15 @@ public class QueryExecDatasetBuilder implements QueryExecMod, QueryExecBuilder {
         return this;
     }
 
+    /**
+     * Record the rows, time and memory of each operator of the query.
+     * See {@link org.apache.jena.sparql.engine.main.ExplainAnalyze}.
+     */
+    public QueryExecDatasetBuilder explainAnalyze(boolean value) {
+        contextAcc.set(ARQ.explainAnalyze, value);
+        return this;
+    }
+
     @Override
     public QueryExecDatasetBuilder timeout(long value, TimeUnit timeUnit) {
         this.initialTimeout = UNSET;
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.datatypes.BaseDatatype;
+import org.apache.jena.datatypes.DatatypeFormatException;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.impl.LiteralLabel;
+import org.apache.jena.vocabulary.SIM;
+
+/**
+ * The datatype {@code sim:vector} of vector literals such as {@code "[0.1, 0.2, 0.3]"^^sim:vector}.
+ * <p>
+ * The value of a literal is a {@code double[]}, parsed once when the value is
+ * first needed and then kept by the literal. The value must not be modified.
+ * <p>
+ * RDF Thrift, RDF Protobuf and so TDB2 node tables can store literals in the
+ * canonical lexical form by value, as packed IEEE 754 doubles, see
+ * {@link #toBytes(double[])} and {@link #isCanonical(Node)}.
+ */
+public class VectorDatatype extends BaseDatatype {
+
+	public final static String uri = SIM.NS + "vector";
+	public final static VectorDatatype type = new VectorDatatype();
+
+	private VectorDatatype() {
+		super(uri);
+	}
+
+	@Override
+	public Class<?> getJavaClass() {
+		return double[].class;
+	}
+
+	@Override
+	public Object parse(String lexicalForm) throws DatatypeFormatException {
+		try {
+			return parseVector(lexicalForm);
+		} catch (IllegalArgumentException e) {
+			throw new DatatypeFormatException(lexicalForm, this, e.getMessage());
+		}
+	}
+
+	@Override
+	public String unparse(Object value) {
+		double[] vector = (double[]) value;
+		StringBuilder sb = new StringBuilder(vector.length * 8);
+		sb.append('[');
+		for (int i = 0; i < vector.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(vector[i]);
+		}
+		return sb.append(']').toString();
+	}
+
+	@Override
+	public boolean isValidValue(Object valueForm) {
+		return valueForm instanceof double[] && ((double[]) valueForm).length > 0;
+	}
+
+	@Override
+	public boolean isEqual(LiteralLabel litLabel1, LiteralLabel litLabel2) {
+		return litLabel1.getDatatype() == litLabel2.getDatatype()
+			&& Arrays.equals((double[]) litLabel1.getValue(), (double[]) litLabel2.getValue());
+	}
+
+	@Override
+	public int getHashCode(LiteralLabel lit) {
+		return Arrays.hashCode((double[]) lit.getValue());
+	}
+
+	/** Whether the node is a well formed {@code sim:vector} literal. */
+	public static boolean isVector(Node n) {
+		return n != null && n.isLiteral() && n.getLiteralDatatype() == type;
+	}
+
+	/**
+	 * The components of a vector node: the value of a {@code sim:vector} literal,
+	 * or else the parsed lexical form of the literal.
+	 */
+	public static double[] vector(Node n) {
+		if (isVector(n))
+			return (double[]) n.getLiteralValue();
+		return parseVector(n.getLiteralLexicalForm());
+	}
+
+	/** Parse a vector literal such as {@code "[0.1, 0.2, 0.3]"}. */
+	public static double[] parseVector(String vectorString) {
+		String s = vectorString.trim();
+		int start = s.startsWith("[") ? 1 : 0;
+		int end = s.endsWith("]") ? s.length() - 1 : s.length();
+		List<String> parts = new ArrayList<>();
+		int from = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || s.charAt(i) == ',') {
+				parts.add(s.substring(from, i));
+				from = i + 1;
+			}
+		}
+		double[] vector = new double[parts.size()];
+		for (int i = 0; i < vector.length; i++) {
+			String part = parts.get(i).trim();
+			if (part.startsWith("\""))
+				part = part.substring(1);
+			if (part.endsWith("\""))
+				part = part.substring(0, part.length() - 1);
+			try {
+				vector[i] = Double.parseDouble(part);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Cannot parse '" + part + "' to Double in vector string: " + vectorString, e);
+			}
+		}
+		return vector;
+	}
+
+	/**
+	 * Whether the node is a {@code sim:vector} literal written in the canonical form,
+	 * {@link #unparse(Object)} of its value, so that the value gives back the same term.
+	 */
+	public static boolean isCanonical(Node n) {
+		if (!isVector(n))
+			return false;
+		String lex = n.getLiteralLexicalForm();
+		if (!type.isValid(lex))
+			return false;
+		return lex.equals(type.unparse(n.getLiteralValue()));
+	}
+
+	/** The binary encoding of a vector: its components as big-endian IEEE 754 doubles. */
+	public static byte[] toBytes(double[] vector) {
+		ByteBuffer bb = ByteBuffer.allocate(vector.length * Double.BYTES);
+		bb.asDoubleBuffer().put(vector);
+		return bb.array();
+	}
+
+	/** Decode the binary encoding of a vector. */
+	public static double[] fromBytes(ByteBuffer bytes) {
+		if (bytes.remaining() % Double.BYTES != 0)
+			throw new IllegalArgumentException("Vector encoding is not a whole number of doubles: " + bytes.remaining() + " bytes");
+		double[] vector = new double[bytes.remaining() / Double.BYTES];
+		bytes.slice().asDoubleBuffer().get(vector);
+		return vector;
+	}
+
+	@Override
+	public String toString() {
+		return "sim:vector";
+	}
+}
@@ -28,6 +28,7 @@ import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.NodeFactory ;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.rdf.model.impl.Util ;
 import org.apache.jena.riot.protobuf.wire.PB_RDF.*;
 import org.apache.jena.riot.protobuf.wire.PB_RDF.RDF_Literal.LiteralKindCase;
@@ -36,6 +37,7 @@ import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapFactory ;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.sse.SSE ;
+import org.apache.jena.sparql.util.VectorDatatype;
 import org.apache.jena.vocabulary.RDF ;
 import org.apache.jena.vocabulary.RDFS ;
 import org.apache.jena.vocabulary.XSD ;
@@ -242,6 +244,39 @@ public class TestProtobufTerm {
         assertEquals("5.0E7", n.getLiteralLexicalForm());
     }
 
+    @Test public void term_value_vector_1() {
+        ARQ.getContext().set(ARQ.binaryVectorTerms, true) ;
+        try {
+            RDF_Term rt = testTermValue("'[0.5, -1.0, 2000.0]'^^<" + VectorDatatype.uri + ">") ;
+            assertTrue(rt.hasValVector()) ;
+            assertEquals(3 * Double.BYTES, rt.getValVector().size()) ;
+            Node n = ProtobufConvert.convert(rt, prefixMap) ;
+            assertEquals(VectorDatatype.type, n.getLiteralDatatype()) ;
+            assertEquals("[0.5, -1.0, 2000.0]", n.getLiteralLexicalForm()) ;
+        } finally {
+            ARQ.getContext().unset(ARQ.binaryVectorTerms) ;
+        }
+    }
+
+    @Test public void term_value_vector_2() {
+        // Not the canonical form: by lexical form, so the term is unchanged.
+        ARQ.getContext().set(ARQ.binaryVectorTerms, true) ;
+        try {
+            Node node = SSE.parseNode("'[0.5,-1]'^^<" + VectorDatatype.uri + ">") ;
+            RDF_Term rt = testTerm(node, prefixMap, true) ;
+            assertFalse(rt.hasValVector()) ;
+            assertEquals(node, ProtobufConvert.convert(rt, prefixMap)) ;
+        } finally {
+            ARQ.getContext().unset(ARQ.binaryVectorTerms) ;
+        }
+    }
+
+    @Test public void term_value_vector_3() {
+        // Not enabled.
+        RDF_Term rt = testTermValue("'[0.5, -1.0]'^^<" + VectorDatatype.uri + ">") ;
+        assertFalse(rt.hasValVector()) ;
+    }
+
     private RDF_Term testTermValue(String str) {
         RDF_Term rt = testTerm(SSE.parseNode(str), prefixMap, true) ;
         return rt ;
@@ -397,6 +432,12 @@ public class TestProtobufTerm {
                 assertEquals(nv.getDecimal(), d);
                 break;
             }
+            case VALVECTOR : {
+                assertEquals(node.getLiteralDatatype(), VectorDatatype.type);
+                double[] x = VectorDatatype.fromBytes(rt.getValVector().asReadOnlyByteBuffer());
+                assertArrayEquals((double[])node.getLiteralValue(), x, 0);
+                break;
+            }
             case TERM_NOT_SET :
                 break;
         }
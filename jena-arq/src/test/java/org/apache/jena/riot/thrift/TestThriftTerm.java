@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.rdf.model.impl.Util ;
 import org.apache.jena.riot.system.PrefixMap ;
 import org.apache.jena.riot.system.PrefixMapFactory ;
@@ -30,6 +31,7 @@ import org.apache.jena.riot.thrift.wire.RDF_IRI ;
 import org.apache.jena.riot.thrift.wire.RDF_Literal ;
 import org.apache.jena.riot.thrift.wire.RDF_Term ;
 import org.apache.jena.sparql.sse.SSE ;
+import org.apache.jena.sparql.util.VectorDatatype ;
 import org.apache.jena.vocabulary.RDF ;
 import org.apache.jena.vocabulary.RDFS ;
 import org.apache.jena.vocabulary.XSD ;
@@ -208,6 +210,39 @@ public class TestThriftTerm {
         assertEquals(50e-6, rt.getValDouble(), 0.001e6) ;
     }
 
+    @Test public void term_value_vector_1() {
+        ARQ.getContext().set(ARQ.binaryVectorTerms, true) ;
+        try {
+            RDF_Term rt = testTermValue("'[0.5, -1.0, 2000.0]'^^<" + VectorDatatype.uri + ">") ;
+            assertTrue(rt.isSetValVector()) ;
+            assertEquals(3 * Double.BYTES, rt.getValVector().length) ;
+            Node n = ThriftConvert.convert(rt, prefixMap) ;
+            assertEquals(VectorDatatype.type, n.getLiteralDatatype()) ;
+            assertEquals("[0.5, -1.0, 2000.0]", n.getLiteralLexicalForm()) ;
+        } finally {
+            ARQ.getContext().unset(ARQ.binaryVectorTerms) ;
+        }
+    }
+
+    @Test public void term_value_vector_2() {
+        // Not the canonical form: by lexical form, so the term is unchanged.
+        ARQ.getContext().set(ARQ.binaryVectorTerms, true) ;
+        try {
+            Node node = SSE.parseNode("'[0.5,-1]'^^<" + VectorDatatype.uri + ">") ;
+            RDF_Term rt = testTerm(node, prefixMap, true) ;
+            assertFalse(rt.isSetValVector()) ;
+            assertEquals(node, ThriftConvert.convert(rt, prefixMap)) ;
+        } finally {
+            ARQ.getContext().unset(ARQ.binaryVectorTerms) ;
+        }
+    }
+
+    @Test public void term_value_vector_3() {
+        // Not enabled.
+        RDF_Term rt = testTermValue("'[0.5, -1.0]'^^<" + VectorDatatype.uri + ">") ;
+        assertFalse(rt.isSetValVector()) ;
+    }
+
     private RDF_Term testTermValue(String str) {
         RDF_Term rt = testTerm(SSE.parseNode(str), prefixMap, true) ;
         return rt ;
@@ -240,6 +275,7 @@ public class TestThriftTerm {
             }
         } else if ( rt.isSetValDecimal() ||
                     rt.isSetValDouble() ||
+                    rt.isSetValVector() ||
                     rt.isSetValInteger() )
         {
             // Nothing specific to check.
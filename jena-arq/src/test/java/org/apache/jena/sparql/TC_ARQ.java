@@ -31,6 +31,7 @@ import org.apache.jena.sparql.engine.binding.TS_EngineBinding ;
 import org.apache.jena.sparql.engine.index.TS_Minus;
 import org.apache.jena.sparql.engine.iterator.TS_QueryIterators;
 import org.apache.jena.sparql.engine.join.TS_Join ;
+import org.apache.jena.sparql.engine.cluster.TS_Cluster ;
 import org.apache.jena.sparql.exec.TS_ExecSPARQL;
 import org.apache.jena.sparql.expr.E_Function ;
 import org.apache.jena.sparql.expr.NodeValue ;
@@ -80,6 +81,7 @@ import org.junit.runners.Suite ;
     , TS_Solver.class
     , TS_Algebra.class
     , TS_Join.class
+    , TS_Cluster.class
     , TS_Minus.class
     , TS_QueryIterators.class
     , TS_Optimization.class
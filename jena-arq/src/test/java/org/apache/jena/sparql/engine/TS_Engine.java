@@ -26,6 +26,7 @@ import org.junit.runners.Suite ;
         TestQueryEngineMultiThreaded.class
       , TestQueryEngineFromContext.class
       , TestJsonEval.class
+      , TestExplainAnalyze.class
 })
 
 public class TS_Engine {}
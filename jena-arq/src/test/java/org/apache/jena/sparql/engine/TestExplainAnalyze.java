@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.Op1;
+import org.apache.jena.sparql.algebra.op.OpUnion;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.main.ExplainAnalyze;
+import org.apache.jena.sparql.engine.main.ExplainAnalyze.OpStats;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.Test;
+
+/** Row counts of the operators of a query executed with {@link ARQ#explainAnalyze}. */
+public class TestExplainAnalyze {
+
+    private static DatasetGraph data() {
+        return SSE.parseDatasetGraph("(dataset (graph (:s1 :p 1) (:s2 :p 2) (:s3 :p 3) (:s1 :q 4) (:s2 :q 5)))");
+    }
+
+    private static final String QUERY = "PREFIX : <http://example/> SELECT * { { ?s :p ?o } UNION { ?s :q ?o } }";
+
+    private static long count(QueryExec qExec) {
+        RowSet rowSet = qExec.select();
+        long n = 0;
+        for ( ; rowSet.hasNext() ; rowSet.next() )
+            n++;
+        return n;
+    }
+
+    private static OpUnion findUnion(Op op) {
+        if ( op instanceof OpUnion )
+            return (OpUnion)op;
+        if ( op instanceof Op1 )
+            return findUnion(((Op1)op).getSubOp());
+        return null;
+    }
+
+    @Test public void explain_analyze_rows() {
+        try ( QueryExec qExec = QueryExec.newBuilder().dataset(data()).query(QUERY).explainAnalyze(true).build() ) {
+            assertEquals(5, count(qExec));
+            ExplainAnalyze analyze = ExplainAnalyze.get(qExec);
+            assertNotNull(analyze);
+            OpUnion union = findUnion(analyze.getOp());
+            assertNotNull(union);
+            assertEquals(5, analyze.getStats(union).getRows());
+            assertEquals(1, analyze.getStats(union).getCalls());
+            OpStats left = analyze.getStats(union.getLeft());
+            OpStats right = analyze.getStats(union.getRight());
+            assertEquals(3, left.getRows());
+            assertEquals(2, right.getRows());
+            assertTrue(analyze.getStats(union).getNanos() >= left.getNanos());
+        }
+    }
+
+    @Test public void explain_analyze_context() {
+        try ( QueryExec qExec = QueryExec.dataset(data()).query(QUERY).set(ARQ.explainAnalyze, true).build() ) {
+            assertEquals(5, count(qExec));
+            assertNotNull(ExplainAnalyze.get(qExec));
+        }
+    }
+
+    @Test public void explain_analyze_off() {
+        try ( QueryExec qExec = QueryExec.dataset(data()).query(QUERY).build() ) {
+            assertEquals(5, count(qExec));
+            assertNull(ExplainAnalyze.get(qExec));
+        }
+    }
+
+    @Test public void explain_analyze_sse() {
+        try ( QueryExec qExec = QueryExec.newBuilder().dataset(data()).query(QUERY).explainAnalyze(true).build() ) {
+            count(qExec);
+            String sse = ExplainAnalyze.get(qExec).toSSE();
+            assertTrue(sse, sse.contains("rows=5 calls=1"));
+            assertTrue(sse, sse.contains("rows=3 calls=1"));
+            // The annotated tree is an algebra expression.
+            Op op = SSE.parseOp(sse);
+            assertNotNull(op);
+        }
+    }
+
+    @Test public void explain_analyze_json() {
+        try ( QueryExec qExec = QueryExec.newBuilder().dataset(data()).query(QUERY).explainAnalyze(true).build() ) {
+            count(qExec);
+            JsonObject json = ExplainAnalyze.get(qExec).toJson();
+            JsonObject union = json;
+            while ( !union.get("op").getAsString().value().equals("union") )
+                union = union.get("args").getAsArray().get(0).getAsObject();
+            assertEquals(5, union.get("rows").getAsNumber().value().intValue());
+            JsonArray args = union.get("args").getAsArray();
+            assertEquals(2, args.size());
+            assertEquals(3, args.get(0).getAsObject().get("rows").getAsNumber().value().intValue());
+            assertEquals("bgp", args.get(1).getAsObject().get("op").getAsString().value());
+            assertTrue(args.get(1).getAsObject().hasKey("sse"));
+        }
+    }
+}
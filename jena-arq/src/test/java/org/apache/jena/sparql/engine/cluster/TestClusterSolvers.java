@@ -0,0 +1,494 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryException;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.query.cluster.DBSCANConfiguration;
+import org.apache.jena.query.cluster.KMeansConfiguration;
+import org.apache.jena.query.cluster.KMedoidsConfiguration;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.vocabulary.SIM;
+import org.junit.Test;
+
+/** Clustering solvers over three well separated groups of points. */
+public class TestClusterSolvers {
+
+    private static final Var vId = Var.alloc("id");
+    private static final Var vX = Var.alloc("x");
+    private static final Var vY = Var.alloc("y");
+    private static final Var vCluster = Var.alloc("c");
+    private static final double[][] centres = { {0, 0}, {10, 10}, {20, 0} };
+    private static final int groupSize = 20;
+
+    private static List<Binding> points() {
+        return points(groupSize);
+    }
+
+    private static List<Binding> points(int n) {
+        Random random = new Random(42);
+        List<Binding> rows = new ArrayList<>();
+        for ( int i = 0 ; i < n ; i++ ) {
+            for ( int g = 0 ; g < centres.length ; g++ ) {
+                double x = centres[g][0] + random.nextDouble();
+                double y = centres[g][1] + random.nextDouble();
+                rows.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(g * n + i, XSDDatatype.XSDinteger),
+                                                vX, NodeFactory.createLiteralByValue(x, XSDDatatype.XSDdouble),
+                                                vY, NodeFactory.createLiteralByValue(y, XSDDatatype.XSDdouble)));
+            }
+        }
+        return rows;
+    }
+
+    private static VarExprList clusterVars() {
+        VarExprList vars = new VarExprList();
+        vars.add(vX);
+        vars.add(vY);
+        return vars;
+    }
+
+    /** Solve and return the cluster of each point, by point id. */
+    private static Map<Integer, Node> solve(ClusteringSolver solver) {
+        return solve(solver, ARQ.getContext());
+    }
+
+    private static Map<Integer, Node> solve(ClusteringSolver solver, Context context) {
+        return solve(solver, context, points());
+    }
+
+    private static Map<Integer, Node> solve(ClusteringSolver solver, Context context, List<Binding> input) {
+        solver.solve(QueryIterPlainWrapper.create(input.iterator()), clusterVars(), vCluster, context);
+        Map<Integer, Node> clusters = new HashMap<>();
+        solver.iterator().forEachRemaining(b -> {
+            int id = ((Number)b.get(vId).getLiteralValue()).intValue();
+            Node c = clusters.put(id, b.get(vCluster));
+            assertEquals("Point output twice: " + id, null, c);
+        });
+        assertEquals(input.size(), clusters.size());
+        return clusters;
+    }
+
+    /** Each group is one cluster, and the groups are in different clusters. */
+    private static void assertGroups(Map<Integer, Node> clusters) {
+        Set<Node> seen = new HashSet<>();
+        for ( int g = 0 ; g < centres.length ; g++ ) {
+            Node c = clusters.get(g * groupSize);
+            for ( int i = 0 ; i < groupSize ; i++ )
+                assertEquals(c, clusters.get(g * groupSize + i));
+            seen.add(c);
+        }
+        assertEquals(centres.length, seen.size());
+    }
+
+    @Test public void cluster_kmeans() {
+        Map<Integer, Node> clusters = solve(new KMeansSolver(3, 10));
+        assertNotEquals(0, new HashSet<>(clusters.values()).size());
+    }
+
+    @Test public void cluster_kmeans_seeding() {
+        // k-means++ seeds one centroid in each of the separated groups.
+        assertGroups(solve(new KMeansSolver(3, 10)));
+    }
+
+    private static Context parallel(int threads) {
+        Context cxt = new Context();
+        cxt.set(ARQ.clusterParallelism, threads);
+        return cxt;
+    }
+
+    @Test public void cluster_kmeans_parallel() {
+        // Several ranges of rows.
+        List<Binding> input = points(1500);
+        Map<Integer, Node> expected = solve(new KMeansSolver(3, 10), parallel(1), input);
+        assertEquals(expected, solve(new KMeansSolver(3, 10), parallel(4), input));
+    }
+
+    @Test public void cluster_kmedoids_parallel() {
+        List<Binding> input = points(500);
+        Map<Integer, Node> expected = solve(new KMedoidsSolver(3), parallel(1), input);
+        assertEquals(expected, solve(new KMedoidsSolver(3), parallel(4), input));
+    }
+
+    @Test public void cluster_seeds() {
+        List<Binding> input = points(5);
+        PointStore store = PointStore.create(input, List.of(vX, vY));
+        int[] seeds = Assignment.seeds(store, input.size(), new Random(1));
+        assertEquals(input.size(), Arrays.stream(seeds).distinct().count());
+    }
+
+    @Test public void cluster_minibatch() {
+        assertGroups(solve(new MiniBatchKMeansSolver(3, 20, 30)));
+    }
+
+    @Test public void cluster_minibatch_spill() {
+        Context cxt = new Context();
+        cxt.set(ARQ.spillToDiskThreshold, 10);
+        assertGroups(solve(new MiniBatchKMeansSolver(3, 20, 30), cxt));
+    }
+
+    @Test public void cluster_minibatch_syntax() {
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + SIM.NS + ">"
+            , "SELECT * { ?s <http://example/x> ?x ; <http://example/y> ?y }"
+            , "CLUSTER BY ?x ?y WITH sim:kmeans(3, 20, 30) AS ?c");
+        Query query = QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+        assertTrue(query.getClusterConf().getSolver() instanceof MiniBatchKMeansSolver);
+    }
+
+    @Test public void cluster_fastpam() {
+        assertGroups(solve(new FASTPAMSolver(3)));
+    }
+
+    private static Context matrix(String mode) {
+        Context cxt = new Context();
+        cxt.set(ARQ.clusterDistanceMatrix, mode);
+        return cxt;
+    }
+
+    @Test public void cluster_fastpam_float() {
+        assertGroups(solve(new FASTPAMSolver(3), matrix("float")));
+    }
+
+    @Test public void cluster_fastpam_lazy() {
+        assertGroups(solve(new FASTPAMSolver(3), matrix("lazy")));
+    }
+
+    @Test public void cluster_fastpam_one() {
+        assertEquals(1, new HashSet<>(solve(new FASTPAMSolver(1)).values()).size());
+    }
+
+    @Test public void cluster_kmedoids_lazy() {
+        Map<Integer, Node> clusters = solve(new KMedoidsSolver(3), matrix("lazy"));
+        assertEquals(solve(new KMedoidsSolver(3)), clusters);
+    }
+
+    @Test public void cluster_kmedoids() {
+        Map<Integer, Node> clusters = solve(new KMedoidsSolver(3));
+        assertNotEquals(0, new HashSet<>(clusters.values()).size());
+    }
+
+    @Test public void cluster_dbscan() {
+        assertGroups(solve(new DBSCANSolver(2.5, 3)));
+    }
+
+    @Test public void cluster_dbscan2() {
+        assertGroups(solve(new DBSCANSolver2(2.5, 3)));
+    }
+
+    @Test public void cluster_dbscan_grid() {
+        assertGroups(solve(new GridDBSCANSolver(2.5, 3)));
+    }
+
+    /** Points on a small lattice: clusters touch, share border points and leave noise. */
+    private static List<Binding> lattice(int n, long seed, boolean missing) {
+        Random random = new Random(seed);
+        List<Binding> rows = new ArrayList<>();
+        for ( int i = 0 ; i < n ; i++ ) {
+            Node x = missing && random.nextInt(10) == 0
+                ? NodeFactory.createURI("http://example/none")
+                : NodeFactory.createLiteralByValue(random.nextInt(40) / 2.0, XSDDatatype.XSDdouble);
+            Node y = NodeFactory.createLiteralByValue(random.nextInt(40) / 2.0, XSDDatatype.XSDdouble);
+            rows.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(i, XSDDatatype.XSDinteger), vX, x, vY, y));
+        }
+        return rows;
+    }
+
+    @Test public void cluster_dbscan_grid_same() {
+        for ( long seed = 0 ; seed < 5 ; seed++ ) {
+            List<Binding> input = lattice(300, seed, false);
+            for ( double epsilon : new double[] {0, 0.5, 1, 1.5, 3} ) {
+                for ( int minElements : new int[] {1, 2, 4} ) {
+                    Map<Integer, Node> expected = solve(new DBSCANSolver2(epsilon, minElements), ARQ.getContext(), input);
+                    assertEquals(expected, solve(new GridDBSCANSolver(epsilon, minElements), ARQ.getContext(), input));
+                }
+            }
+        }
+    }
+
+    @Test public void cluster_dbscan_grid_missing() {
+        // A missing coordinate does not contribute to distances: the row is compared with every row.
+        List<Binding> input = new ArrayList<>(points());
+        input.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(-1, XSDDatatype.XSDinteger),
+                                         vX, NodeFactory.createURI("http://example/none"),
+                                         vY, NodeFactory.createLiteralByValue(10.5, XSDDatatype.XSDdouble)));
+        Map<Integer, Node> clusters = solve(new GridDBSCANSolver(2.5, 3), ARQ.getContext(), input);
+        assertGroups(clusters);
+        assertEquals(clusters.get(groupSize), clusters.get(-1));
+    }
+
+    @Test public void cluster_dbscan_grid_duplicates() {
+        // Equal bindings are returned once, as by DBSCANSolver2.
+        List<Binding> input = new ArrayList<>(points());
+        input.addAll(points().subList(0, 10));
+        Set<Binding> expected = new HashSet<>();
+        DBSCANSolver2 solver2 = new DBSCANSolver2(2.5, 3);
+        solver2.solve(QueryIterPlainWrapper.create(input.iterator()), clusterVars(), vCluster);
+        solver2.iterator().forEachRemaining(expected::add);
+        List<Binding> actual = new ArrayList<>();
+        GridDBSCANSolver solver = new GridDBSCANSolver(2.5, 3);
+        solver.solve(QueryIterPlainWrapper.create(input.iterator()), clusterVars(), vCluster);
+        solver.iterator().forEachRemaining(actual::add);
+        assertEquals(points().size(), actual.size());
+        assertEquals(expected, new HashSet<>(actual));
+    }
+
+    @Test public void cluster_dbscan_grid_parallel() {
+        List<Binding> input = lattice(5000, 1, true);
+        Map<Integer, Node> expected = solve(new GridDBSCANSolver(1, 4), parallel(1), input);
+        assertEquals(expected, solve(new GridDBSCANSolver(1, 4), parallel(4), input));
+    }
+
+    @Test public void cluster_dbscan_syntax() {
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + SIM.NS + ">"
+            , "SELECT * { ?s <http://example/x> ?x ; <http://example/y> ?y }"
+            , "CLUSTER BY ?x ?y WITH sim:dbscan(2.5, 3) AS ?c");
+        Query query = QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+        assertTrue(query.getClusterConf().getSolver() instanceof GridDBSCANSolver);
+    }
+
+    private static final DistFunc EUCLIDEAN = Distances.getDistance(Distances.NS + "euclidean");
+
+    /** Points of the three groups by the angle of their direction: far apart in cosine distance only. */
+    private static List<Binding> rays() {
+        Random random = new Random(42);
+        double[] angles = { 0.1, 0.8, 1.5 };
+        List<Binding> rows = new ArrayList<>();
+        for ( int g = 0 ; g < angles.length ; g++ ) {
+            for ( int i = 0 ; i < groupSize ; i++ ) {
+                double angle = angles[g] + 0.05 * random.nextDouble();
+                double length = 1 + 100 * random.nextDouble();
+                rows.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(g * groupSize + i, XSDDatatype.XSDinteger),
+                                                vX, NodeFactory.createLiteralByValue(length * Math.cos(angle), XSDDatatype.XSDdouble),
+                                                vY, NodeFactory.createLiteralByValue(length * Math.sin(angle), XSDDatatype.XSDdouble)));
+            }
+        }
+        return rows;
+    }
+
+    /** Latitude and longitude of points around three cities. */
+    private static List<Binding> cities() {
+        Random random = new Random(42);
+        double[][] cities = { {48.86, 2.35}, {-33.45, -70.66}, {35.68, 139.69} };
+        List<Binding> rows = new ArrayList<>();
+        for ( int g = 0 ; g < cities.length ; g++ ) {
+            for ( int i = 0 ; i < groupSize ; i++ ) {
+                double lat = cities[g][0] + 0.2 * random.nextDouble();
+                double lon = cities[g][1] + 0.2 * random.nextDouble();
+                rows.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(g * groupSize + i, XSDDatatype.XSDinteger),
+                                                vX, NodeFactory.createLiteralByValue(lat, XSDDatatype.XSDdouble),
+                                                vY, NodeFactory.createLiteralByValue(lon, XSDDatatype.XSDdouble)));
+            }
+        }
+        return rows;
+    }
+
+    @Test public void cluster_kmeans_euclidean() {
+        assertGroups(solve(new KMeansSolver(3, 10, EUCLIDEAN)));
+    }
+
+    @Test public void cluster_fastpam_euclidean() {
+        assertGroups(solve(new FASTPAMSolver(3, EUCLIDEAN)));
+    }
+
+    @Test public void cluster_dbscan_grid_euclidean() {
+        // The same clusters as comparing every pair of rows.
+        DistFunc noGrid = new DistFunc() {
+            @Override
+            public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+                return EUCLIDEAN.distance(p1, p2, minMax, leftExpr, rightExpr);
+            }
+            @Override
+            public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+                return EUCLIDEAN.distance(a, aOffset, b, bOffset, dims);
+            }
+            @Override
+            public double coordinate(double a, double b) {
+                return EUCLIDEAN.coordinate(a, b);
+            }
+        };
+        List<Binding> input = lattice(300, 7, false);
+        for ( double eps : new double[] { 0.5, 1, 1.5, 3 } ) {
+            Map<Integer, Node> expected = solve(new GridDBSCANSolver(eps, 3, noGrid), ARQ.getContext(), input);
+            assertEquals(expected, solve(new GridDBSCANSolver(eps, 3, EUCLIDEAN), ARQ.getContext(), input));
+        }
+    }
+
+    @Test public void cluster_fastpam_cosine() {
+        DistFunc cosine = Distances.getDistance(Distances.NS + "cosine");
+        assertGroups(solve(new FASTPAMSolver(3, cosine), ARQ.getContext(), rays()));
+    }
+
+    @Test public void cluster_dbscan_cosine() {
+        DistFunc cosine = Distances.getDistance(Distances.NS + "cosine");
+        assertGroups(solve(new GridDBSCANSolver(0.01, 3, cosine), ARQ.getContext(), rays()));
+    }
+
+    @Test public void cluster_dbscan_haversine() {
+        DistFunc haversine = Distances.getDistance(Distances.NS + "haversine");
+        assertGroups(solve(new GridDBSCANSolver(50, 3, haversine), ARQ.getContext(), cities()));
+    }
+
+    /** Points around the 180th meridian, at high latitudes and around the poles. */
+    private static List<Binding> globe(long seed) {
+        Random random = new Random(seed);
+        double[][] centres = { {0, 179.9}, {0, -179.9}, {-40, 180}, {70, 10}, {85, -120}, {89.5, 60}, {-89.8, 0} };
+        List<Binding> rows = new ArrayList<>();
+        for ( double[] centre : centres ) {
+            for ( int i = 0 ; i < 60 ; i++ ) {
+                double lat = Math.max(-90, Math.min(90, centre[0] + 4 * random.nextGaussian()));
+                double lon = centre[1] + 8 * random.nextGaussian();
+                // Longitudes in [-180, 180].
+                lon = lon - 360 * Math.floor((lon + 180) / 360);
+                rows.add(BindingFactory.binding(vId, NodeFactory.createLiteralByValue(rows.size(), XSDDatatype.XSDinteger),
+                                                vX, NodeFactory.createLiteralByValue(lat, XSDDatatype.XSDdouble),
+                                                vY, NodeFactory.createLiteralByValue(lon, XSDDatatype.XSDdouble)));
+            }
+        }
+        return rows;
+    }
+
+    @Test public void cluster_dbscan_grid_haversine() {
+        // The same clusters as comparing every pair of rows, across the 180th meridian and near the poles.
+        DistFunc haversine = Distances.getDistance(Distances.NS + "haversine");
+        DistFunc noGrid = new DistFunc() {
+            @Override
+            public double distance(List<Node> p1, List<Node> p2, Map<Expr, PairOfSameType<Number>> minMax, ExprList leftExpr, ExprList rightExpr) {
+                return haversine.distance(p1, p2, minMax, leftExpr, rightExpr);
+            }
+            @Override
+            public double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+                return haversine.distance(a, aOffset, b, bOffset, dims);
+            }
+            @Override
+            public double coordinate(double a, double b) {
+                return haversine.coordinate(a, b);
+            }
+        };
+        for ( long seed = 0 ; seed < 3 ; seed++ ) {
+            List<Binding> input = globe(seed);
+            for ( double eps : new double[] { 20, 100, 300, 2000 } ) {
+                Map<Integer, Node> expected = solve(new GridDBSCANSolver(eps, 4, noGrid), ARQ.getContext(), input);
+                assertEquals(expected, solve(new GridDBSCANSolver(eps, 4, haversine), ARQ.getContext(), input));
+            }
+        }
+    }
+
+    @Test public void haversine_coordinate_range() {
+        DistFunc haversine = Distances.getDistance(Distances.NS + "haversine");
+        // One degree of latitude is 111.2 km.
+        assertEquals(1, haversine.coordinateRange(111.2), 1e-3);
+        assertEquals(1, haversine.coordinateRange(111.2, new double[] {60, 0}, 0, 0), 1e-3);
+        // Two degrees of longitude at 60 degrees.
+        assertEquals(2, haversine.coordinateRange(111.2, new double[] {60, 0}, 0, 1), 1e-2);
+        // A pole within range: every longitude.
+        assertEquals(Double.POSITIVE_INFINITY, haversine.coordinateRange(111.2, new double[] {89.5, 0}, 0, 1), 0);
+        assertEquals(360, haversine.period(1), 0);
+        assertEquals(0, haversine.period(0), 0);
+    }
+
+    private static Query clusterQuery(String clusterBy) {
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + SIM.NS + ">"
+            , "SELECT * { ?s <http://example/x> ?x ; <http://example/y> ?y }"
+            , "CLUSTER BY ?x ?y WITH " + clusterBy + " AS ?c");
+        return QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+    }
+
+    @Test public void cluster_distance_syntax() {
+        KMeansConfiguration kmeans = (KMeansConfiguration) clusterQuery("sim:kmeans(3, 10, sim:euclidean)").getClusterConf();
+        assertEquals(3, kmeans.getNbOfClusters());
+        assertEquals(10, kmeans.getMaxIterations());
+        assertEquals(SIM.NS + "euclidean", kmeans.getDistance());
+        DBSCANConfiguration dbscan = (DBSCANConfiguration) clusterQuery("sim:dbscan(50, 3, sim:haversine)").getClusterConf();
+        assertEquals(3, dbscan.getMinElements());
+        assertEquals(SIM.NS + "haversine", dbscan.getDistance());
+        KMedoidsConfiguration kmedoids = (KMedoidsConfiguration) clusterQuery("sim:kmedoids(4)").getClusterConf();
+        assertEquals(ClusterDistances.DEFAULT, kmedoids.getDistance());
+    }
+
+    @Test(expected = QueryException.class)
+    public void cluster_distance_unknown() {
+        clusterQuery("sim:kmedoids(3, sim:nothing)");
+    }
+
+    /** The model assigns every row to the cluster the solver put it in. */
+    private static void testModel(ClusteringSolver solver) {
+        Map<Integer, Node> clusters = solve(solver);
+        ClusterModel model = solver.model();
+        assertEquals(centres.length, model.size());
+        List<Var> vars = clusterVars().getVars();
+        for ( Binding b : points() ) {
+            int id = ((Number)b.get(vId).getLiteralValue()).intValue();
+            assertEquals(clusters.get(id), model.cluster(PointStore.extract(b, vars, null, null)));
+        }
+    }
+
+    @Test public void cluster_model_kmeans() {
+        testModel(new KMeansSolver(3, 10));
+    }
+
+    @Test public void cluster_model_minibatch() {
+        testModel(new MiniBatchKMeansSolver(3, 20, 30));
+    }
+
+    @Test public void cluster_model_fastpam() {
+        testModel(new FASTPAMSolver(3));
+    }
+
+    @Test public void cluster_model_kmedoids() {
+        testModel(new KMedoidsSolver(3));
+    }
+
+    @Test public void cluster_model_dbscan() {
+        GridDBSCANSolver solver = new GridDBSCANSolver(2, 3);
+        solve(solver);
+        assertEquals(null, solver.model());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.cluster.DistanceMatrix.Mode;
+import org.apache.jena.sparql.engine.join.PointStore;
+import org.apache.jena.sparql.util.Context;
+import org.junit.Test;
+
+public class TestDistanceMatrix {
+
+    private static final Var vX = Var.alloc("x");
+    private static final Var vY = Var.alloc("y");
+
+    private static PointStore points(int n) {
+        Random random = new Random(42);
+        List<Binding> rows = new ArrayList<>();
+        for ( int i = 0 ; i < n ; i++ )
+            rows.add(BindingFactory.binding(vX, NodeFactory.createLiteralByValue(random.nextDouble(), XSDDatatype.XSDdouble),
+                                            vY, NodeFactory.createLiteralByValue(random.nextDouble(), XSDDatatype.XSDdouble)));
+        return PointStore.create(rows, List.of(vX, vY));
+    }
+
+    private static void testMatrix(PointStore store, DistanceMatrix matrix, double delta) {
+        assertEquals(store.size(), matrix.size());
+        for ( int i = 0 ; i < store.size() ; i++ ) {
+            for ( int j = 0 ; j < store.size() ; j++ )
+                assertEquals(ClusterDistances.manhattan(store, i, j), matrix.get(i, j), delta);
+        }
+    }
+
+    @Test public void matrix_index() {
+        int n = 7;
+        long k = 0;
+        for ( int i = 0 ; i < n ; i++ ) {
+            for ( int j = i + 1 ; j < n ; j++ )
+                assertEquals(k++, DistanceMatrix.index(i, j, n));
+        }
+        assertEquals(DistanceMatrix.entries(n), k);
+    }
+
+    @Test public void matrix_double() {
+        PointStore store = points(50);
+        testMatrix(store, DistanceMatrix.create(store, Mode.DOUBLE, 0), 0);
+    }
+
+    @Test public void matrix_float() {
+        PointStore store = points(50);
+        testMatrix(store, DistanceMatrix.create(store, Mode.FLOAT, 0), 1e-6);
+    }
+
+    @Test public void matrix_lazy() {
+        PointStore store = points(50);
+        testMatrix(store, DistanceMatrix.create(store, Mode.LAZY, 0), 0);
+    }
+
+    @Test public void matrix_small() {
+        PointStore store = points(1);
+        testMatrix(store, DistanceMatrix.create(store, Mode.DOUBLE, 0), 0);
+    }
+
+    @Test public void matrix_auto() {
+        PointStore store = points(50);
+        long entries = DistanceMatrix.entries(50);
+        assertTrue(DistanceMatrix.create(store, Mode.AUTO, entries * 8) instanceof DistanceMatrix.PackedDouble);
+        assertTrue(DistanceMatrix.create(store, Mode.AUTO, entries * 4) instanceof DistanceMatrix.PackedFloat);
+        assertTrue(DistanceMatrix.create(store, Mode.AUTO, entries) instanceof DistanceMatrix.Lazy);
+    }
+
+    @Test public void matrix_context() {
+        Context cxt = new Context();
+        cxt.set(ARQ.clusterDistanceMatrix, "lazy");
+        assertTrue(DistanceMatrix.create(points(10), cxt) instanceof DistanceMatrix.Lazy);
+    }
+
+    @Test(expected = QueryExecException.class)
+    public void matrix_context_bad() {
+        Context cxt = new Context();
+        cxt.set(ARQ.clusterDistanceMatrix, "sparse");
+        DistanceMatrix.create(points(10), cxt);
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.query.cluster.MaterializedClustering;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.system.Txn;
+import org.apache.jena.vocabulary.SIM;
+import org.junit.Test;
+
+/** A clustering kept up to date as points are added to and removed from the dataset. */
+public class TestMaterializedClustering {
+
+    private static final String EX = "http://example/";
+    private static final Node pX = NodeFactory.createURI(EX + "x");
+    private static final Node pY = NodeFactory.createURI(EX + "y");
+    private static final Node pLabel = NodeFactory.createURI(EX + "label");
+    private static final Var vS = Var.alloc("s");
+    private static final Var vCluster = Var.alloc("c");
+    private static final double[][] centres = { {0, 0}, {10, 10}, {20, 0} };
+    private static final int groupSize = 20;
+
+    private static Node point(int group, int i) {
+        return NodeFactory.createURI(EX + "p" + group + "_" + i);
+    }
+
+    private static void addPoint(DatasetGraph dsg, Node s, double x, double y) {
+        dsg.add(Quad.defaultGraphIRI, s, pX, NodeFactory.createLiteralByValue(x, XSDDatatype.XSDdouble));
+        dsg.add(Quad.defaultGraphIRI, s, pY, NodeFactory.createLiteralByValue(y, XSDDatatype.XSDdouble));
+    }
+
+    private static DatasetGraph dataset() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Random random = new Random(42);
+        Txn.executeWrite(dsg, () -> {
+            for ( int g = 0 ; g < centres.length ; g++ ) {
+                for ( int i = 0 ; i < groupSize ; i++ )
+                    addPoint(dsg, point(g, i), centres[g][0] + random.nextDouble(), centres[g][1] + random.nextDouble());
+            }
+        });
+        return dsg;
+    }
+
+    private static Query query(String method) {
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + SIM.NS + ">"
+            , "SELECT * { ?s <" + pX.getURI() + "> ?x ; <" + pY.getURI() + "> ?y }"
+            , "CLUSTER BY ?x ?y WITH " + method + " AS ?c");
+        return QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+    }
+
+    /** The cluster of each subject. */
+    private static Map<Node, Node> clusters(List<Binding> bindings) {
+        Map<Node, Node> clusters = new HashMap<>();
+        for ( Binding b : bindings ) {
+            Node c = clusters.put(b.get(vS), b.get(vCluster));
+            assertNull("Subject output twice: " + b.get(vS), c);
+        }
+        return clusters;
+    }
+
+    @Test public void materialized_create() {
+        DatasetGraph dsg = dataset();
+        Query query = query("sim:kmeans(3, 10)");
+        MaterializedClustering clustering = MaterializedClustering.create(dsg, query);
+        List<Binding> expected = new ArrayList<>();
+        Txn.executeRead(dsg, () -> QueryExec.dataset(dsg).query(query).build().select().forEachRemaining(expected::add));
+        assertEquals(new HashSet<>(expected), new HashSet<>(clustering.getBindings()));
+        assertNotNull(clustering.getModel());
+        assertEquals(1, clustering.getReclusterings());
+    }
+
+    @Test public void materialized_add() {
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:kmeans(3, 10)"));
+        Node s = NodeFactory.createURI(EX + "new");
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        Txn.executeWrite(dsg, () -> addPoint(dsg, s, 10.5, 10.5));
+        Map<Node, Node> clusters = clusters(clustering.getBindings());
+        assertEquals(centres.length * groupSize + 1, clusters.size());
+        assertEquals(clusters.get(point(1, 0)), clusters.get(s));
+        // The new row was assigned, not clustered again.
+        assertEquals(1, clustering.getReclusterings());
+    }
+
+    @Test public void materialized_delete() {
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:kmedoids(3)"));
+        Map<Node, Node> before = clusters(clustering.getBindings());
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        Txn.executeWrite(dsg, () -> dsg.deleteAny(Node.ANY, point(2, 5), Node.ANY, Node.ANY));
+        Map<Node, Node> after = clusters(clustering.getBindings());
+        before.remove(point(2, 5));
+        assertEquals(before, after);
+        assertEquals(1, clustering.getReclusterings());
+    }
+
+    @Test public void materialized_graph() {
+        // Changes through a graph of the dataset are seen too.
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:kmeans(3, 10)"));
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        Node s = NodeFactory.createURI(EX + "new");
+        Txn.executeWrite(dsg, () -> {
+            dsg.getDefaultGraph().add(s, pX, NodeFactory.createLiteralByValue(20.5, XSDDatatype.XSDdouble));
+            dsg.getDefaultGraph().add(s, pY, NodeFactory.createLiteralByValue(0.5, XSDDatatype.XSDdouble));
+        });
+        Map<Node, Node> clusters = clusters(clustering.getBindings());
+        assertEquals(clusters.get(point(2, 0)), clusters.get(s));
+    }
+
+    @Test public void materialized_abort() {
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:kmeans(3, 10)"));
+        List<Binding> before = clustering.getBindings();
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        dsg.begin(TxnType.WRITE);
+        addPoint(dsg, NodeFactory.createURI(EX + "new"), 1, 1);
+        dsg.abort();
+        dsg.end();
+        assertEquals(before, clustering.getBindings());
+    }
+
+    @Test public void materialized_recompute() {
+        DatasetGraph base = dataset();
+        base.getContext().set(ARQ.clusterRecomputeRatio, 0.2);
+        MaterializedClustering clustering = MaterializedClustering.create(base, query("sim:kmeans(3, 10)"));
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        // 10 new rows out of 70: below the ratio.
+        Txn.executeWrite(dsg, () -> {
+            for ( int i = 0 ; i < 10 ; i++ )
+                addPoint(dsg, NodeFactory.createURI(EX + "a" + i), 0.5, 0.5);
+        });
+        assertEquals(1, clustering.getReclusterings());
+        // 20 rows changed since out of 80: over it.
+        Txn.executeWrite(dsg, () -> {
+            for ( int i = 0 ; i < 10 ; i++ )
+                addPoint(dsg, NodeFactory.createURI(EX + "b" + i), 10.5, 10.5);
+        });
+        assertEquals(2, clustering.getReclusterings());
+        assertEquals(centres.length * groupSize + 20, clustering.getBindings().size());
+    }
+
+    @Test public void materialized_unrelated() {
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:dbscan(2, 3)"));
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        // DBSCAN has no centres: any change to the rows clusters them again.
+        Txn.executeWrite(dsg, () -> dsg.add(Quad.defaultGraphIRI, point(0, 0), pLabel, NodeFactory.createLiteralString("zero")));
+        assertEquals(1, clustering.getReclusterings());
+        Txn.executeWrite(dsg, () -> addPoint(dsg, NodeFactory.createURI(EX + "new"), 0.5, 0.5));
+        assertEquals(2, clustering.getReclusterings());
+        Map<Node, Node> clusters = clusters(clustering.getBindings());
+        assertEquals(clusters.get(point(0, 0)), clusters.get(NodeFactory.createURI(EX + "new")));
+    }
+
+    @Test public void materialized_direct() {
+        // Changes made to the dataset itself are seen on refresh.
+        DatasetGraph dsg = dataset();
+        MaterializedClustering clustering = MaterializedClustering.create(dsg, query("sim:kmeans(3, 10)"));
+        Node s = NodeFactory.createURI(EX + "new");
+        Txn.executeWrite(dsg, () -> addPoint(dsg, s, 0.5, 0.5));
+        assertEquals(centres.length * groupSize, clustering.getBindings().size());
+        clustering.refresh();
+        Map<Node, Node> clusters = clusters(clustering.getBindings());
+        assertEquals(clusters.get(point(0, 0)), clusters.get(s));
+    }
+
+    @Test public void materialized_reader() throws InterruptedException {
+        // A read transaction ending in another thread does not lose the changes of a writer.
+        MaterializedClustering clustering = MaterializedClustering.create(dataset(), query("sim:kmeans(3, 10)"));
+        DatasetGraph dsg = clustering.getDatasetGraph();
+        Node s = NodeFactory.createURI(EX + "new");
+        dsg.begin(TxnType.WRITE);
+        addPoint(dsg, s, 10.5, 10.5);
+        Thread reader = new Thread(() -> {
+            dsg.begin(TxnType.READ);
+            dsg.end();
+        });
+        reader.start();
+        reader.join();
+        dsg.commit();
+        dsg.end();
+        Map<Node, Node> clusters = clusters(clustering.getBindings());
+        assertEquals(clusters.get(point(1, 0)), clusters.get(s));
+    }
+
+    @Test public void materialized_centres_file() throws IOException {
+        Path dir = Files.createTempDirectory("centres");
+        try {
+            Path file = dir.resolve("centres.ttl");
+            DatasetGraph dsg = dataset();
+            MaterializedClustering clustering1 = MaterializedClustering.create(dsg, query("sim:kmeans(3, 10)"), file);
+            assertTrue(Files.exists(file));
+            // Created again: the rows are assigned to the stored centres.
+            MaterializedClustering clustering2 = MaterializedClustering.create(dsg, query("sim:kmeans(3, 10)"), file);
+            assertEquals(0, clustering2.getReclusterings());
+            assertEquals(clusters(clustering1.getBindings()), clusters(clustering2.getBindings()));
+            assertEquals(3, clustering2.getModel().size());
+        } finally {
+            FileOps.clearAll(dir.toString());
+            Files.delete(dir);
+        }
+    }
+}
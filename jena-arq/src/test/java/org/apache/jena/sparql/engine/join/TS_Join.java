@@ -28,6 +28,7 @@ import org.junit.runners.Suite.SuiteClasses ;
     , TestJoinNestedLoopSimple.class    // Real simple materializing version.
     , TestJoinNestedLoop.class
     , TestHashJoin.class
+    , TestGraceHashJoin.class
 
     , TestLeftJoinSimple.class
     , TestLeftJoinNestedLoopSimple.class    // Real simple materializing version.
@@ -35,6 +36,11 @@ import org.junit.runners.Suite.SuiteClasses ;
     , TestHashLeftJoin_Left.class           // Left hash, stream right
     , TestHashLeftJoin_Right.class          // Normal implementation.
     , TestTableJoin.class
+
+    , TestSimJoin.class
+    , TestPointStore.class
+    , TestSimJoinIndexCache.class
+    , TestDistanceKernels.class
 })
 
 public class TS_Join { }
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** The vectorised distance kernels agree with the scalar ones. */
+public class TestDistanceKernels {
+
+    private static final int[] DIMS = { 1, 2, 3, 7, 8, 9, 15, 16, 17, 31, 32, 33, 64, 100, 1024 };
+
+    private static double[] random(Random random, int n) {
+        double[] x = new double[n];
+        for ( int i = 0 ; i < n ; i++ )
+            x[i] = random.nextDouble();
+        return x;
+    }
+
+    private static DistanceKernels vector() {
+        DistanceKernels kernels = DistanceKernels.vector();
+        assumeNotNull(kernels);
+        return kernels;
+    }
+
+    @Test public void kernels_manhattan() {
+        DistanceKernels scalar = DistanceKernels.scalar();
+        DistanceKernels vector = vector();
+        Random random = new Random(42);
+        for ( int dims : DIMS ) {
+            // Offsets not aligned to the vector length.
+            double[] a = random(random, dims + 3);
+            double[] b = random(random, dims + 5);
+            double expected = scalar.manhattan(a, 3, b, 5, dims, Double.POSITIVE_INFINITY);
+            assertEquals(expected, vector.manhattan(a, 3, b, 5, dims, Double.POSITIVE_INFINITY), 1e-12 * dims);
+        }
+    }
+
+    @Test public void kernels_squaredEuclidean() {
+        DistanceKernels scalar = DistanceKernels.scalar();
+        DistanceKernels vector = vector();
+        Random random = new Random(42);
+        for ( int dims : DIMS ) {
+            double[] a = random(random, dims + 1);
+            double[] b = random(random, dims);
+            double expected = scalar.squaredEuclidean(a, 1, b, 0, dims, Double.POSITIVE_INFINITY);
+            assertEquals(expected, vector.squaredEuclidean(a, 1, b, 0, dims, Double.POSITIVE_INFINITY), 1e-12 * dims);
+        }
+    }
+
+    @Test public void kernels_skipNaN() {
+        DistanceKernels scalar = DistanceKernels.scalar();
+        DistanceKernels vector = vector();
+        Random random = new Random(42);
+        for ( int dims : DIMS ) {
+            double[] a = random(random, dims);
+            double[] b = random(random, dims);
+            for ( int i = 0 ; i < dims ; i += 3 )
+                a[i] = Double.NaN;
+            double expected = scalar.manhattanSkipNaN(a, 0, b, 0, dims);
+            assertEquals(expected, vector.manhattanSkipNaN(a, 0, b, 0, dims), 1e-12 * dims);
+        }
+    }
+
+    @Test public void kernels_cosine() {
+        DistanceKernels scalar = DistanceKernels.scalar();
+        DistanceKernels vector = vector();
+        Random random = new Random(42);
+        for ( int dims : DIMS ) {
+            double[] a = random(random, dims + 2);
+            double[] b = random(random, dims);
+            double expected = scalar.cosine(a, 2, b, 0, dims);
+            assertEquals(expected, vector.cosine(a, 2, b, 0, dims), 1e-12 * dims);
+        }
+    }
+
+    @Test public void kernels_cosine_values() {
+        DistanceKernels kernels = DistanceKernels.get();
+        double[] x = { 1, 0, 2, 0, 0, 3, 0, 0 };
+        assertEquals(0, kernels.cosine(x, 0, new double[] { 2, 0, 4, 0 }, 0, 4), 1e-12);
+        assertEquals(1, kernels.cosine(x, 0, x, 4, 2), 1e-12);
+        assertEquals(2, kernels.cosine(new double[] { 1, 1 }, 0, new double[] { -1, -1 }, 0, 2), 1e-12);
+        // The zero vector is at 0 from itself and at 1 from any other vector.
+        assertEquals(0, kernels.cosine(x, 6, x, 6, 2), 0);
+        assertEquals(1, kernels.cosine(x, 0, x, 6, 2), 0);
+    }
+
+    @Test public void haversine() {
+        // Paris to London, and a quarter of the equator.
+        assertEquals(343.5, Distances.haversine(48.8566, 2.3522, 51.5074, -0.1278), 0.5);
+        assertEquals(Math.PI * Distances.EARTH_RADIUS / 2, Distances.haversine(0, 0, 0, 90), 1e-9);
+        assertEquals(0, Distances.haversine(-33.45, -70.66, -33.45, -70.66), 0);
+    }
+
+    private static void testBounded(DistanceKernels kernels) {
+        Random random = new Random(42);
+        for ( int dims : DIMS ) {
+            double[] a = random(random, dims);
+            double[] b = random(random, dims);
+            double d = kernels.manhattan(a, 0, b, 0, dims, Double.POSITIVE_INFINITY);
+            double e = kernels.squaredEuclidean(a, 0, b, 0, dims, Double.POSITIVE_INFINITY);
+            // Within the bound: the same value, whatever the bound.
+            assertEquals(d, kernels.manhattan(a, 0, b, 0, dims, d), 0);
+            assertEquals(e, kernels.squaredEuclidean(a, 0, b, 0, dims, e), 0);
+            // Over the bound: any value over it.
+            assertTrue(kernels.manhattan(a, 0, b, 0, dims, d / 4) > d / 4);
+            assertTrue(kernels.squaredEuclidean(a, 0, b, 0, dims, e / 4) > e / 4);
+        }
+    }
+
+    @Test public void kernels_bounded_scalar() {
+        testBounded(DistanceKernels.scalar());
+    }
+
+    @Test public void kernels_bounded_vector() {
+        testBounded(vector());
+    }
+}
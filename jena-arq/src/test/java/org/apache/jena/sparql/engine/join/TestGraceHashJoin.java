@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.algebra.table.TableN;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.Context;
+import org.junit.Test;
+
+/** Hash join with {@link ARQ#spillToDiskThreshold} set: the inner join tests, and large joins that spill. */
+public class TestGraceHashJoin extends AbstractTestInnerJoin {
+    private static final Var a = Var.alloc("a");
+    private static final Var b = Var.alloc("b");
+    private static final Var c = Var.alloc("c");
+    private static final Var d = Var.alloc("d");
+
+    private static ExecutionContext execCxt(long threshold) {
+        Context context = new Context();
+        context.set(ARQ.spillToDiskThreshold, threshold);
+        return new ExecutionContext(context, null, null, null);
+    }
+
+    @Override
+    public QueryIterator join(JoinKey joinKey, Table left, Table right, ExprList conditions) {
+        ExecutionContext execCxt = execCxt(0);
+        return Join.hashJoin(joinKey, left.iterator(execCxt), right.iterator(execCxt), execCxt);
+    }
+
+    @Test public void grace_spill_01() { testSpill(JoinKey.create(a), 1000, 800, 50, 0.0); }
+    // Unbound key variable on both sides.
+    @Test public void grace_spill_02() { testSpill(JoinKey.create(a), 1000, 800, 50, 0.1); }
+    // Few values: partitions stay above the threshold, down to the in-memory join.
+    @Test public void grace_spill_03() { testSpill(JoinKey.create(a), 300, 200, 3, 0.0); }
+    // Two key variables.
+    @Test public void grace_spill_04() { testSpill(JoinKey.create("a", "b"), 1000, 1000, 20, 0.05); }
+    // Join key guessed from the first rows.
+    @Test public void grace_spill_05() { testSpill(null, 1000, 800, 50, 0.0); }
+    // Rows without the key variable, more than fit in memory: joined in several blocks.
+    @Test public void grace_spill_06() { testSpill(JoinKey.create(a), 1000, 800, 50, 0.5); }
+
+    @Test public void grace_partition_depth() {
+        // The same values are split differently at each depth.
+        int same = 0;
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            Node n = NodeFactory.createURI("http://example/" + i);
+            if ( QueryIterGraceHashJoin.partition(n, 0) == QueryIterGraceHashJoin.partition(n, 1) )
+                same++;
+        }
+        assertTrue("Partitions not independent: " + same, same < 1000 / 4);
+    }
+
+    private static void testSpill(JoinKey joinKey, int leftSize, int rightSize, int values, double unbound) {
+        Random random = new Random(leftSize + rightSize + values);
+        Table left = table(random, leftSize, values, unbound, c);
+        Table right = table(random, rightSize, values, unbound, d);
+        Table expected = TableFactory.create(Join.hashJoin(joinKey, left.iterator(null), right.iterator(null), null));
+        assertFalse(expected.isEmpty());
+
+        ExecutionContext execCxt = execCxt(64);
+        QueryIterator qIter = Join.hashJoin(joinKey, left.iterator(execCxt), right.iterator(execCxt), execCxt);
+        if ( leftSize > 64 )
+            assertTrue(qIter instanceof QueryIterGraceHashJoin);
+        Table actual = TableFactory.create(qIter);
+        assertTrue(equalTables(expected, actual));
+    }
+
+    // Rows of ?a, ?b and a variable of this side only, with values taken from a small set.
+    private static Table table(Random random, int size, int values, double unbound, Var other) {
+        TableN table = new TableN();
+        for ( int i = 0 ; i < size ; i++ ) {
+            BindingBuilder builder = Binding.builder();
+            // The first row binds the key, for the key to be guessed.
+            if ( i == 0 || random.nextDouble() >= unbound )
+                builder.add(a, value(random.nextInt(values)));
+            builder.add(b, value(random.nextInt(2)));
+            builder.add(other, NodeFactory.createLiteralString(Integer.toString(i)));
+            table.addBinding(builder.build());
+        }
+        return table;
+    }
+
+    private static Node value(int i) {
+        return ( i % 2 == 0 ) ? NodeFactory.createURI("http://example/" + i) : NodeFactory.createBlankNode("b" + i);
+    }
+
+    // Same rows, same number of times. Blank node labels are kept in the spill files.
+    private static boolean equalTables(Table table1, Table table2) {
+        return rows(table1).equals(rows(table2));
+    }
+
+    private static Map<Map<Var, Node>, Integer> rows(Table table) {
+        Map<Map<Var, Node>, Integer> rows = new HashMap<>();
+        table.rows().forEachRemaining(row -> {
+            Map<Var, Node> map = new HashMap<>();
+            row.forEach(map::put);
+            rows.merge(map, 1, Integer::sum);
+        });
+        return rows;
+    }
+}
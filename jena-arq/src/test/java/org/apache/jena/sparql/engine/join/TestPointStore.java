@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.util.VectorDatatype;
+import org.junit.Test;
+
+public class TestPointStore {
+
+    private static final Var vX = Var.alloc("x");
+    private static final Var vY = Var.alloc("y");
+    private static final double EPS = 1e-12;
+
+    private static Binding row(double x, double y) {
+        return BindingFactory.binding(vX, NodeFactory.createLiteralByValue(x, XSDDatatype.XSDdouble),
+                                      vY, NodeFactory.createLiteralByValue(y, XSDDatatype.XSDdouble));
+    }
+
+    @Test public void pointstore_parse_vector() {
+        assertArrayEquals(new double[] {0.5, -1, 2}, PointStore.parseVector(" [0.5, -1,2] "), EPS);
+        assertArrayEquals(new double[] {1, 2}, PointStore.parseVector("[\"1\", \"2\"]"), EPS);
+        assertArrayEquals(new double[] {3}, PointStore.parseVector("3"), EPS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pointstore_parse_vector_bad() {
+        PointStore.parseVector("[1, x]");
+    }
+
+    @Test public void pointstore_raw() {
+        PointStore store = PointStore.create(List.of(row(1, 2), row(3, 4)), List.of(vX, vY));
+        assertEquals(2, store.size());
+        assertEquals(2, store.dims());
+        assertEquals(2, store.offset(1));
+        assertArrayEquals(new double[] {1, 2, 3, 4}, store.data(), EPS);
+        assertArrayEquals(new double[] {3, 4}, store.point(1), EPS);
+    }
+
+    @Test public void pointstore_normalised() {
+        double[] min = {0, Double.NaN};
+        double[] max = {4, Double.NaN};
+        PointStore store = PointStore.create(List.of(row(1, 2), row(3, 4)), List.of(vX, vY), min, max);
+        assertEquals(0.25, store.get(0, 0), EPS);
+        assertEquals(2, store.get(0, 1), EPS);
+        assertEquals(0.75, store.get(1, 0), EPS);
+    }
+
+    @Test public void pointstore_constant_range() {
+        double[] point = PointStore.extract(row(5, 5), List.of(vX), new double[] {5}, new double[] {5});
+        assertArrayEquals(new double[] {0}, point, EPS);
+    }
+
+    @Test public void pointstore_vector() {
+        Binding b = BindingFactory.binding(vX, NodeFactory.createLiteralString("[1, 2, 3]"),
+                                           vY, NodeFactory.createLiteralByValue(4.0, XSDDatatype.XSDdouble));
+        assertEquals(4, PointStore.dimensions(b, List.of(vX, vY)));
+        assertArrayEquals(new double[] {1, 2, 3, 4}, PointStore.extract(b, List.of(vX, vY), null, null), EPS);
+    }
+
+    @Test public void pointstore_vector_datatype() {
+        Binding b = BindingFactory.binding(vX, NodeFactory.createLiteralDT("[1, 2, 3]", VectorDatatype.type));
+        assertArrayEquals(new double[] {1, 2, 3}, PointStore.extract(b, List.of(vX), null, null), EPS);
+    }
+
+    @Test public void vector_datatype_value() {
+        Node n1 = NodeFactory.createLiteralDT("[1, 2]", VectorDatatype.type);
+        Node n2 = NodeFactory.createLiteralDT("[1.0,2.0]", VectorDatatype.type);
+        assertTrue(n1.sameValueAs(n2));
+        assertFalse(n1.equals(n2));
+        assertArrayEquals(new double[] {1, 2}, VectorDatatype.vector(n1), EPS);
+        assertFalse(VectorDatatype.type.isValid("[1, x]"));
+    }
+
+    @Test public void vector_datatype_bytes() {
+        double[] vector = {0.25, -3, 1e10};
+        byte[] bytes = VectorDatatype.toBytes(vector);
+        assertEquals(24, bytes.length);
+        assertArrayEquals(vector, VectorDatatype.fromBytes(ByteBuffer.wrap(bytes)), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pointstore_vector_length() {
+        Binding b1 = BindingFactory.binding(vX, NodeFactory.createLiteralString("[1, 2]"));
+        Binding b2 = BindingFactory.binding(vX, NodeFactory.createLiteralString("[1, 2, 3]"));
+        PointStore.create(List.of(b1, b2), List.of(vX));
+    }
+
+    @Test public void pointstore_unbound() {
+        Binding b = BindingFactory.binding(vX, NodeFactory.createLiteralByValue(1.0, XSDDatatype.XSDdouble));
+        double[] point = PointStore.extract(b, List.of(vX, vY), null, null);
+        assertEquals(1, point[0], EPS);
+        assertTrue(Double.isNaN(point[1]));
+    }
+
+    @Test public void pointstore_distances() {
+        double[] a = {0, 0, 1, 1};
+        assertEquals(2, Distances.getDistance(Distances.NS + "manhattan").distance(a, 0, a, 2, 2), EPS);
+        assertEquals(2, Distances.getDistance(Distances.NS + "euclidean").distance(a, 0, a, 2, 2), EPS);
+    }
+}
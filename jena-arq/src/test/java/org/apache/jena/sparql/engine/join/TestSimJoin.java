@@ -0,0 +1,461 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.join.Distances.DistFunc;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner;
+import org.apache.jena.sparql.engine.join.solver.SimJoinPlanner.Solver;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.junit.Test;
+
+/** Similarity joins give the same answers whichever solver evaluates them. */
+public class TestSimJoin {
+
+    private static final String PREFIXES = String.join("\n"
+        , "PREFIX : <http://example/>"
+        , "PREFIX sim: <" + Distances.NS + ">"
+        , "");
+
+    private static final String KNN = PREFIXES + String.join("\n"
+        , "SELECT ?a ?b ?d {"
+        , "  ?a :x ?x1 ; :y ?y1 ."
+        , "  SIMILARITY JOIN ON (?x1, ?y1) (?x2, ?y2) TOP 3 DISTANCE sim:manhattan AS ?d"
+        , "  { ?b :x ?x2 ; :y ?y2 . }"
+        , "}");
+
+    private static final String RANGE = PREFIXES + String.join("\n"
+        , "SELECT ?a ?b ?d {"
+        , "  ?a :x ?x1 ; :y ?y1 ."
+        , "  SIMILARITY JOIN ON (?x1, ?y1) (?x2, ?y2) WITHIN 0.2 DISTANCE sim:manhattan AS ?d"
+        , "  { ?b :x ?x2 ; :y ?y2 . }"
+        , "}");
+
+    private static DatasetGraph points(int n) {
+        Random random = new Random(42);
+        Graph graph = GraphFactory.createDefaultGraph();
+        Node x = NodeFactory.createURI("http://example/x");
+        Node y = NodeFactory.createURI("http://example/y");
+        for ( int i = 0 ; i < n ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/p" + i);
+            graph.add(s, x, NodeFactory.createLiteralDT(Double.toString(random.nextDouble()), XSDDatatype.XSDdouble));
+            graph.add(s, y, NodeFactory.createLiteralDT(Double.toString(random.nextDouble()), XSDDatatype.XSDdouble));
+        }
+        return DatasetGraphFactory.wrap(graph);
+    }
+
+    private static List<String> exec(DatasetGraph dsg, String queryString, String solver) {
+        List<String> results = execOrdered(dsg, queryString, solver, 1);
+        Collections.sort(results);
+        return results;
+    }
+
+    private static List<String> execOrdered(DatasetGraph dsg, String queryString, String solver, int parallelism) {
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinSolver, solver);
+        cxt.set(ARQ.simJoinParallelism, parallelism);
+        return exec(dsg, queryString, cxt);
+    }
+
+    private static List<String> exec(DatasetGraph dsg, String queryString, Context cxt) {
+        Query query = QueryFactory.create(queryString, Syntax.syntaxSPARQL_11_sim);
+        List<String> results = new ArrayList<>();
+        try ( QueryExec qExec = QueryExec.dataset(dsg).query(query).context(cxt).build() ) {
+            RowSet rowSet = qExec.select();
+            rowSet.forEachRemaining((Binding b) -> {
+                double d = ((Number)b.get("d").getLiteralValue()).doubleValue();
+                results.add(b.get("a").getURI() + " " + b.get("b").getURI() + " " + String.format("%.9f", d));
+            });
+        }
+        return results;
+    }
+
+    private static void testSolvers(String queryString) {
+        DatasetGraph dsg = points(80);
+        List<String> expected = exec(dsg, queryString, "nestedloop");
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, exec(dsg, queryString, "vptree"));
+        assertEquals(expected, exec(dsg, queryString, "auto"));
+    }
+
+    @Test public void simjoin_knn_solvers()     { testSolvers(KNN); }
+
+    @Test public void simjoin_range_solvers()   { testSolvers(RANGE); }
+
+    private static void testParallel(String queryString, String solver) {
+        // Several batches of left bindings.
+        DatasetGraph dsg = points(600);
+        List<String> expected = execOrdered(dsg, queryString, solver, 1);
+        List<String> actual = execOrdered(dsg, queryString, solver, 2);
+        assertFalse(expected.isEmpty());
+        // Left bindings in the same order. The order of the matches of one
+        // left binding from a VP-tree depends on how the tree was built.
+        assertEquals(leftColumn(expected), leftColumn(actual));
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private static List<String> leftColumn(List<String> results) {
+        List<String> left = new ArrayList<>(results.size());
+        results.forEach(r -> left.add(r.substring(0, r.indexOf(' '))));
+        return left;
+    }
+
+    @Test public void simjoin_knn_parallel_order() {
+        DatasetGraph dsg = points(600);
+        assertEquals(execOrdered(dsg, KNN, "nestedloop", 1), execOrdered(dsg, KNN, "nestedloop", 3));
+    }
+
+    @Test public void simjoin_knn_parallel_nestedloop()     { testParallel(KNN, "nestedloop"); }
+
+    @Test public void simjoin_knn_parallel_vptree()         { testParallel(KNN, "vptree"); }
+
+    @Test public void simjoin_range_parallel_nestedloop()   { testParallel(RANGE, "nestedloop"); }
+
+    @Test public void simjoin_range_parallel_vptree()       { testParallel(RANGE, "vptree"); }
+
+    private static void testStreaming(String solver, long threshold) {
+        testStreaming(RANGE, solver, threshold);
+    }
+
+    private static void testStreaming(String queryString, String solver, long threshold) {
+        DatasetGraph dsg = points(80);
+        List<String> expected = exec(dsg, queryString, "nestedloop");
+        assertFalse(expected.isEmpty());
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinSolver, solver);
+        cxt.set(ARQ.simJoinStreaming, true);
+        if ( threshold >= 0 )
+            cxt.set(ARQ.spillToDiskThreshold, threshold);
+        List<String> actual = exec(dsg, queryString, cxt);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test public void simjoin_range_streaming()             { testStreaming("auto", -1); }
+
+    @Test public void simjoin_range_streaming_spill()       { testStreaming("auto", 25); }
+
+    @Test public void simjoin_range_streaming_vptree()      { testStreaming("vptree", 25); }
+
+    // Not normalised: the left side is streamed past the right side, in one block, or spilled.
+    private static final String RANGE_HAVERSINE = RANGE.replace("WITHIN 0.2 DISTANCE sim:manhattan", "WITHIN 20.0 DISTANCE sim:haversine");
+
+    @Test public void simjoin_range_streaming_left()        { testStreaming(RANGE_HAVERSINE, "auto", -1); }
+
+    @Test public void simjoin_range_streaming_left_spill()  { testStreaming(RANGE_HAVERSINE, "auto", 25); }
+
+    @Test public void simjoin_knn_size() {
+        assertEquals(80 * 3, exec(points(80), KNN, "auto").size());
+    }
+
+    // Integer coordinates: many equal distances, so compare left bindings and distances only.
+    private static DatasetGraph grid(int n) {
+        Random random = new Random(42);
+        Graph graph = GraphFactory.createDefaultGraph();
+        Node x = NodeFactory.createURI("http://example/x");
+        Node y = NodeFactory.createURI("http://example/y");
+        for ( int i = 0 ; i < n ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/p" + i);
+            graph.add(s, x, NodeFactory.createLiteralDT(Integer.toString(random.nextInt(20)), XSDDatatype.XSDinteger));
+            graph.add(s, y, NodeFactory.createLiteralDT(Integer.toString(random.nextInt(20)), XSDDatatype.XSDinteger));
+        }
+        return DatasetGraphFactory.wrap(graph);
+    }
+
+    private static List<String> distances(List<String> results) {
+        List<String> x = new ArrayList<>();
+        for ( String r : results ) {
+            String[] parts = r.split(" ");
+            x.add(parts[0] + " " + parts[2]);
+        }
+        Collections.sort(x);
+        return x;
+    }
+
+    @Test public void simjoin_knn_pruning() {
+        DatasetGraph dsg = grid(500);
+        assertEquals(distances(exec(dsg, KNN, "vptree")), distances(exec(dsg, KNN, "nestedloop")));
+    }
+
+    @Test public void simjoin_range_pruning() {
+        DatasetGraph dsg = grid(500);
+        assertEquals(exec(dsg, RANGE, "vptree"), exec(dsg, RANGE, "nestedloop"));
+    }
+
+    @Test public void distance_bounded() {
+        Random random = new Random(42);
+        for ( String name : new String[] {"manhattan", "manhattanvec", "euclidean"} ) {
+            Distances.DistFunc f = Distances.getDistance(Distances.NS + name);
+            for ( int i = 0 ; i < 100 ; i++ ) {
+                int dims = 1 + random.nextInt(40);
+                double[] a = new double[dims];
+                double[] b = new double[dims];
+                for ( int j = 0 ; j < dims ; j++ ) {
+                    a[j] = random.nextDouble();
+                    b[j] = random.nextDouble();
+                }
+                double d = f.distance(a, 0, b, 0, dims);
+                double bound = random.nextDouble() * dims / 2;
+                double bounded = f.distance(a, 0, b, 0, dims, bound);
+                if ( d <= bound )
+                    assertEquals(d, bounded, 0);
+                else
+                    assertTrue(bounded > bound);
+            }
+        }
+    }
+
+    @Test public void simjoin_knn_hnsw() {
+        // Approximate, but exact on a small graph with the default search list.
+        DatasetGraph dsg = points(80);
+        assertEquals(exec(dsg, KNN, "nestedloop"), exec(dsg, KNN, "hnsw"));
+    }
+
+    @Test public void simjoin_knn_hnsw_recall() {
+        DatasetGraph dsg = points(400);
+        List<String> expected = exec(dsg, KNN, "nestedloop");
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinSolver, "hnsw");
+        cxt.set(ARQ.simJoinHnswM, 4);
+        cxt.set(ARQ.simJoinHnswEfSearch, 4);
+        List<String> actual = exec(dsg, KNN, cxt);
+        assertEquals(400 * 3, actual.size());
+        Set<String> found = new HashSet<>(actual);
+        long hits = expected.stream().filter(found::contains).count();
+        assertTrue("Recall too low: " + hits, hits >= 0.9 * expected.size());
+    }
+
+    @Test(expected = QueryExecException.class)
+    public void simjoin_range_hnsw() {
+        exec(points(10), RANGE, "hnsw");
+    }
+
+    // Statistics as a dataset would keep them, scaled to widen the ranges.
+    private static AttributeStatistics statistics(DatasetGraph dsg, double scale) {
+        return new AttributeStatistics() {
+            @Override
+            public PairOfSameType<Number> range(Node predicate) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for ( Triple t : dsg.getDefaultGraph().find(null, predicate, null).toList() ) {
+                    double v = ((Number)t.getObject().getLiteralValue()).doubleValue();
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+                return new PairOfSameType<>(min, min + scale * (max - min));
+            }
+
+            @Override
+            public long count(Node predicate) {
+                return dsg.getDefaultGraph().find(null, predicate, null).toList().size();
+            }
+        };
+    }
+
+    private static List<String> execStatistics(DatasetGraph dsg, String queryString, AttributeStatistics stats) {
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinStatistics, stats);
+        cxt.set(ARQ.simJoinUseStatistics, true);
+        List<String> results = exec(dsg, queryString, cxt);
+        Collections.sort(results);
+        return results;
+    }
+
+    @Test public void simjoin_statistics_knn() {
+        DatasetGraph dsg = points(80);
+        assertEquals(exec(dsg, KNN, "auto"), execStatistics(dsg, KNN, statistics(dsg, 1.0)));
+    }
+
+    @Test public void simjoin_statistics_range() {
+        DatasetGraph dsg = points(80);
+        assertEquals(exec(dsg, RANGE, "auto"), execStatistics(dsg, RANGE, statistics(dsg, 1.0)));
+    }
+
+    @Test public void simjoin_statistics_normalisation() {
+        // Ranges twice as wide: distances are halved.
+        DatasetGraph dsg = points(40);
+        List<String> expected = exec(dsg, KNN, "auto");
+        List<String> actual = execStatistics(dsg, KNN, statistics(dsg, 2.0));
+        assertEquals(expected.size(), actual.size());
+        for ( int i = 0 ; i < expected.size() ; i++ ) {
+            double d1 = Double.parseDouble(expected.get(i).split(" ")[2]);
+            double d2 = Double.parseDouble(actual.get(i).split(" ")[2]);
+            assertEquals(d1 / 2, d2, 1e-8);
+        }
+    }
+
+    @Test public void simjoin_statistics_unused() {
+        // Not enabled: the statistics are ignored.
+        DatasetGraph dsg = points(40);
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinStatistics, statistics(dsg, 2.0));
+        List<String> results = exec(dsg, KNN, cxt);
+        Collections.sort(results);
+        assertEquals(exec(dsg, KNN, "auto"), results);
+    }
+
+    @Test public void planner_range_selectivity() {
+        DistFunc manhattan = Distances.getDistance(Distances.NS + "manhattan");
+        assertEquals(Solver.VPTREE, SimJoinPlanner.chooseRange(manhattan, 2, 200_000, 200_000, 0.001, new Context()));
+        assertEquals(Solver.NESTED_LOOP, SimJoinPlanner.chooseRange(manhattan, 2, 200_000, 200_000, 1.0, new Context()));
+    }
+
+    @Test public void selectivity() {
+        assertEquals(0.02, Distances.getDistance(Distances.NS + "manhattan").selectivity(2, 0.1), 1e-12);
+        assertEquals(Math.PI * 0.01, Distances.getDistance(Distances.NS + "euclidean").selectivity(2, 0.01), 1e-12);
+        assertEquals(1.0, Distances.getDistance(Distances.NS + "euclidean").selectivity(3, 4.0), 0);
+    }
+
+    @Test public void planner_small() {
+        Solver s = SimJoinPlanner.choose(Distances.getDistance(Distances.NS + "manhattan"), 2, 50, 50, 3, new Context());
+        assertEquals(Solver.NESTED_LOOP, s);
+    }
+
+    @Test public void planner_large_low_dimensions() {
+        Solver s = SimJoinPlanner.choose(Distances.getDistance(Distances.NS + "manhattan"), 2, 200_000, 200_000, 5, new Context());
+        assertEquals(Solver.VPTREE, s);
+    }
+
+    @Test public void planner_large_high_dimensions() {
+        Solver s = SimJoinPlanner.choose(Distances.getDistance(Distances.NS + "manhattan"), 64, 200_000, 200_000, 5, new Context());
+        assertEquals(Solver.NESTED_LOOP, s);
+    }
+
+    private static final String RANGE_TYPED = PREFIXES + String.join("\n"
+        , "SELECT ?a ?b ?d {"
+        , "  ?a a :T ; :x ?x1 ; :y ?y1 ."
+        , "  SIMILARITY JOIN ON (?x1, ?y1) (?x2, ?y2) WITHIN 0.2 DISTANCE sim:manhattan AS ?d"
+        , "  { ?b :x ?x2 ; :y ?y2 . }"
+        , "}");
+
+    private static final String KNN_TYPED = PREFIXES + String.join("\n"
+        , "SELECT ?a ?b ?d {"
+        , "  ?a :x ?x1 ; :y ?y1 ."
+        , "  SIMILARITY JOIN ON (?x1, ?y1) (?x2, ?y2) TOP 3 DISTANCE sim:manhattan AS ?d"
+        , "  { ?b :y ?y2 ; a :T ; :x ?x2 . }"
+        , "}");
+
+    // Points, some typed, and maybe a copy of a point under another name.
+    // Nearest neighbours of the copy are ties, broken by the order of the rows.
+    private static DatasetGraph typedPoints(int n, boolean copy) {
+        DatasetGraph dsg = points(n);
+        Graph graph = dsg.getDefaultGraph();
+        Node type = NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+        Node t = NodeFactory.createURI("http://example/T");
+        for ( int i = 0 ; i < n ; i += 3 )
+            graph.add(NodeFactory.createURI("http://example/p" + i), type, t);
+        if ( copy ) {
+            Node p0 = NodeFactory.createURI("http://example/p0");
+            Node c = NodeFactory.createURI("http://example/copy");
+            graph.find(p0, Node.ANY, Node.ANY).toList().forEach(tr -> graph.add(c, tr.getPredicate(), tr.getObject()));
+        }
+        return dsg;
+    }
+
+    private static void testSharedScan(String queryString, String solver) {
+        DatasetGraph dsg = typedPoints(80, queryString.contains("WITHIN"));
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinSolver, solver);
+        cxt.set(ARQ.simJoinSharedScan, false);
+        List<String> expected = exec(dsg, queryString, cxt);
+        Collections.sort(expected);
+        assertFalse(expected.isEmpty());
+        cxt.set(ARQ.simJoinSharedScan, true);
+        List<String> results = exec(dsg, queryString, cxt);
+        Collections.sort(results);
+        assertEquals(expected, results);
+    }
+
+    @Test public void simjoin_shared_knn_nestedloop()       { testSharedScan(KNN, "nestedloop"); }
+
+    @Test public void simjoin_shared_knn_vptree()           { testSharedScan(KNN, "vptree"); }
+
+    @Test public void simjoin_shared_range_nestedloop()     { testSharedScan(RANGE, "nestedloop"); }
+
+    @Test public void simjoin_shared_range_vptree()         { testSharedScan(RANGE, "vptree"); }
+
+    @Test public void simjoin_shared_range_subsumed()       { testSharedScan(RANGE_TYPED, "auto"); }
+
+    @Test public void simjoin_shared_knn_subsumed()         { testSharedScan(KNN_TYPED, "auto"); }
+
+    @Test public void shared_scan_embedding() {
+        BasicPattern left = SSE.parseBGP("(bgp (?a :x ?x1) (?a :y ?y1))");
+        BasicPattern right = SSE.parseBGP("(bgp (?b :y ?y2) (?b :x ?x2))");
+        Map<Var, Var> renaming = SharedScan.embedding(left, right);
+        assertEquals(Var.alloc("b"), renaming.get(Var.alloc("a")));
+        assertEquals(Var.alloc("x2"), renaming.get(Var.alloc("x1")));
+        assertEquals(Var.alloc("y2"), renaming.get(Var.alloc("y1")));
+        assertTrue(SharedScan.remaining(left, right, renaming).isEmpty());
+
+        BasicPattern typed = SSE.parseBGP("(bgp (?s rdf:type :T) (?s :x ?u) (?s :y ?v))");
+        renaming = SharedScan.embedding(left, typed);
+        assertEquals(SSE.parseBGP("(bgp (?s rdf:type :T))"), SharedScan.remaining(left, typed, renaming));
+        assertNull(SharedScan.embedding(typed, left));
+        // Two variables may not be renamed to the same variable.
+        assertNull(SharedScan.embedding(left, SSE.parseBGP("(bgp (?b :x ?z) (?b :y ?z))")));
+        // Nor a constant to a variable.
+        assertNull(SharedScan.embedding(left, SSE.parseBGP("(bgp (:c :x ?x2) (:c :y ?y2))")));
+    }
+
+    @Test public void planner_not_metric() {
+        Solver s = SimJoinPlanner.choose(Distances.getDistance(Distances.NS + "euclidean"), 2, 200_000, 200_000, 5, new Context());
+        assertEquals(Solver.NESTED_LOOP, s);
+    }
+
+    @Test public void planner_forced() {
+        Context cxt = new Context();
+        cxt.set(ARQ.simJoinSolver, "VPTree");
+        Solver s = SimJoinPlanner.choose(Distances.getDistance(Distances.NS + "manhattan"), 2, 10, 10, 3, cxt);
+        assertEquals(Solver.VPTREE, s);
+    }
+}
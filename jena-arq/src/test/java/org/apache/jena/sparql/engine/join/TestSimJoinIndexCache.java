@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DataVersion;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.DatasetGraphWrapperView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.join.solver.SimJoinIndexCache;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.graph.GraphWrapper;
+import org.apache.jena.system.Txn;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Reuse of similarity join indexes between query executions. */
+public class TestSimJoinIndexCache {
+
+    private static final String QUERY = String.join("\n"
+        , "PREFIX : <http://example/>"
+        , "PREFIX sim: <" + Distances.NS + ">"
+        , "SELECT ?a ?b ?d {"
+        , "  ?a :x ?x1 ; :y ?y1 ."
+        , "  SIMILARITY JOIN ON (?x1, ?y1) (?x2, ?y2) TOP 2 DISTANCE sim:manhattan AS ?d"
+        , "  { ?b :x ?x2 ; :y ?y2 . }"
+        , "}");
+
+    // The right side is not the same pattern as the left side, so it is not read by a shared scan.
+    private static final String QUERY_FILTER = QUERY.replace("?y2 . }", "?y2 . FILTER(?x2 >= 0) }");
+
+    private static final SimJoinIndexCache cache = SimJoinIndexCache.get();
+
+    @Before public void before() {
+        cache.clear();
+    }
+
+    private static DatasetGraph points(int n) {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(dsg, ()->addPoints(dsg, 0, n));
+        return dsg;
+    }
+
+    private static void addPoints(DatasetGraph dsg, int start, int n) {
+        Random random = new Random(42 + start);
+        Node x = NodeFactory.createURI("http://example/x");
+        Node y = NodeFactory.createURI("http://example/y");
+        for ( int i = start ; i < start + n ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/p" + i);
+            dsg.add(Quad.defaultGraphIRI, s, x, NodeFactory.createLiteralDT(Double.toString(random.nextDouble()), XSDDatatype.XSDdouble));
+            dsg.add(Quad.defaultGraphIRI, s, y, NodeFactory.createLiteralDT(Double.toString(random.nextDouble()), XSDDatatype.XSDdouble));
+        }
+    }
+
+    private static List<String> exec(DatasetGraph dsg, String solver) {
+        return exec(dsg, QUERY, solver);
+    }
+
+    private static List<String> exec(DatasetGraph dsg, String queryString, String solver) {
+        Query query = QueryFactory.create(queryString, Syntax.syntaxSPARQL_11_sim);
+        List<String> results = new ArrayList<>();
+        try ( QueryExec qExec = QueryExec.dataset(dsg).query(query).set(ARQ.simJoinSolver, solver).build() ) {
+            qExec.select().forEachRemaining(b->results.add(b.get("a").getURI() + " " + b.get("b").getURI()));
+        }
+        Collections.sort(results);
+        return results;
+    }
+
+    private static List<String> read(DatasetGraph dsg, String solver) {
+        return Txn.calculateRead(dsg, ()->exec(dsg, solver));
+    }
+
+    @Test public void index_cache_reuse() {
+        DatasetGraph dsg = points(50);
+        List<String> expected = read(dsg, "nestedloop");
+        assertEquals(0, cache.size());
+        assertEquals(expected, read(dsg, "vptree"));
+        assertEquals(expected, read(dsg, "vptree"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test public void index_cache_per_solver() {
+        DatasetGraph dsg = points(50);
+        read(dsg, "vptree");
+        read(dsg, "kdtree");
+        read(dsg, "hnsw");
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+    }
+
+    @Test public void index_cache_data_changed() {
+        DatasetGraph dsg = points(50);
+        read(dsg, "vptree");
+        Txn.executeWrite(dsg, ()->addPoints(dsg, 50, 10));
+        List<String> expected = read(dsg, "nestedloop");
+        assertEquals(expected, read(dsg, "vptree"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test public void index_cache_write_transaction() {
+        DatasetGraph dsg = points(50);
+        Txn.executeWrite(dsg, ()->{
+            assertEquals(DataVersion.UNKNOWN, DataVersion.dataVersion(dsg));
+            exec(dsg, "vptree");
+            addPoints(dsg, 50, 10);
+            exec(dsg, "vptree");
+        });
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void index_cache_no_version() {
+        DatasetGraph dsg = DatasetGraphFactory.wrap(points(50).getDefaultGraph());
+        exec(dsg, "vptree");
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void index_cache_evict() {
+        DatasetGraph dsg1 = points(50);
+        DatasetGraph dsg2 = points(50);
+        read(dsg1, "vptree");
+        read(dsg2, "vptree");
+        assertEquals(2, cache.size());
+        dsg1.getContext().set(ARQ.simJoinIndexCacheSize, 1);
+        read(dsg1, "kdtree");
+        assertEquals(1, cache.size());
+        // The latest index is kept.
+        read(dsg1, "kdtree");
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test public void index_cache_right_side_not_evaluated() {
+        // The right side of a join whose index is cached is not evaluated again.
+        DatasetGraph base = points(50);
+        LongAdder reads = new LongAdder();
+        Graph graph = new GraphWrapper(base.getDefaultGraph()) {
+            @Override
+            public ExtendedIterator<Triple> find(Node s, Node p, Node o) {
+                return super.find(s, p, o).mapWith(t -> { reads.increment(); return t; });
+            }
+        };
+        // A view, so that query execution does not unwrap it, with the version of the base.
+        class Counting extends DatasetGraphWrapper implements DatasetGraphWrapperView, DataVersion {
+            Counting() { super(base); }
+            @Override
+            public long getDataVersion() {
+                return DataVersion.dataVersion(base);
+            }
+            @Override
+            public Graph getDefaultGraph() {
+                return graph;
+            }
+        }
+        DatasetGraph dsg = new Counting();
+        List<String> expected = Txn.calculateRead(dsg, ()->exec(dsg, QUERY_FILTER, "vptree"));
+        long first = reads.sumThenReset();
+        assertEquals(expected, Txn.calculateRead(dsg, ()->exec(dsg, QUERY_FILTER, "vptree")));
+        assertEquals(1, cache.getHits());
+        assertTrue(reads.sum() < first);
+    }
+
+    @Test public void index_cache_memory() {
+        DatasetGraph dsg = points(50);
+        // Each row takes more than 100 bytes.
+        dsg.getContext().set(ARQ.simJoinIndexCacheMemory, 50 * 100);
+        read(dsg, "vptree");
+        assertEquals(0, cache.size());
+        dsg.getContext().set(ARQ.simJoinIndexCacheMemory, 50 * 1000);
+        read(dsg, "vptree");
+        assertEquals(1, cache.size());
+    }
+}
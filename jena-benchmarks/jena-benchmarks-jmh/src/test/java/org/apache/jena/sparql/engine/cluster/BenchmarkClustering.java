@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.cluster;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.engine.join.PeakHeap;
+import org.apache.jena.sparql.engine.join.SimilarityDatasets;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Benchmark of CLUSTER BY, by clustering method and distance.
+ * The allocation rate is reported by the GC profiler, the peak heap by {@link PeakHeap}.
+ * The junit runner is {@link TestBenchmarkClustering}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkClustering {
+    @Param({
+        "uniform",
+        "clustered"
+        // , "bsbm"
+    })
+    public String param0_dataset;
+
+    @Param({
+        "1000",
+        "10000"
+    })
+    public int param1_size;
+
+    @Param({
+        "2",
+        "8",
+        "32"
+    })
+    public int param2_dimensions;
+
+    @Param({
+        "kmeans",
+        "minibatch",
+        "kmedoids",
+        "dbscan"
+    })
+    public String param3_method;
+
+    @Param({
+        "manhattan",
+        "euclidean"
+    })
+    public String param4_distance;
+
+    private DatasetGraph dsg;
+    private Query query;
+
+    @Benchmark
+    public long runQuery(PeakHeap heap) {
+        try ( QueryExec qExec = QueryExec.dataset(dsg).query(query).build() ) {
+            RowSet rowSet = qExec.select();
+            long count = 0;
+            for ( ; rowSet.hasNext() ; rowSet.next() )
+                count++;
+            heap.sample();
+            return count;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        dsg = SimilarityDatasets.create(param0_dataset, param1_size, param2_dimensions);
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + Distances.NS + ">"
+            , "SELECT * { " + SimilarityDatasets.pattern(param0_dataset, "?a", "x", param2_dimensions) + " }"
+            , "CLUSTER BY " + SimilarityDatasets.variables(param0_dataset, "x", param2_dimensions, " ")
+            , "  WITH " + method(param3_method, "sim:" + param4_distance) + " AS ?c");
+        query = QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+    }
+
+    private static String method(String method, String distance) {
+        switch (method) {
+            case "kmeans":
+                return "sim:kmeans(10, 20, " + distance + ")";
+            case "minibatch":
+                return "sim:kmeans(10, 20, 256, " + distance + ")";
+            case "kmedoids":
+                return "sim:kmedoids(10, " + distance + ")";
+            case "dbscan":
+                return "sim:dbscan(0.1, 5, " + distance + ")";
+            default:
+                throw new IllegalArgumentException("Unknown clustering method: " + method);
+        }
+    }
+
+    public static ChainedOptionsBuilder getDefaults(Class<?> c) {
+        return new OptionsBuilder()
+                // Specify which benchmarks to run.
+                // You can be more specific if you'd like to run only one benchmark per test.
+                .include(c.getName())
+                // Set the following options as needed
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .threads(1)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xmx4G")
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(c.getSimpleName() + "_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".json");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = getDefaults(BenchmarkClustering.class).build();
+        new Runner(opt).run();
+    }
+}
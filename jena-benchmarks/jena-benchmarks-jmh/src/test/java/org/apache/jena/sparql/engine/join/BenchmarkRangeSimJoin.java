@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.util.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+
+/**
+ * Benchmark of range similarity joins of a dataset with itself, by solver and distance.
+ * There is no HNSW solver for range joins, and the VP-tree is only used with a metric distance.
+ * The allocation rate is reported by the GC profiler, the peak heap by {@link PeakHeap}.
+ * The junit runner is {@link TestBenchmarkRangeSimJoin}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkRangeSimJoin {
+    @Param({
+        "uniform",
+        "clustered"
+        // , "bsbm"
+    })
+    public String param0_dataset;
+
+    @Param({
+        "1000",
+        "10000"
+    })
+    public int param1_size;
+
+    @Param({
+        "2",
+        "8",
+        "32"
+    })
+    public int param2_dimensions;
+
+    @Param({
+        "WITHIN 0.05",
+        "WITHIN 0.2"
+    })
+    public String param3_join;
+
+    // Solver and distance.
+    @Param({
+        "nestedloop manhattan",
+        "nestedloop euclidean",
+        "vptree manhattan"
+    })
+    public String param4_solver;
+
+    private DatasetGraph dsg;
+    private Query query;
+    private Context context;
+
+    @Benchmark
+    public long runQuery(PeakHeap heap) {
+        try ( QueryExec qExec = QueryExec.dataset(dsg).query(query).context(context).build() ) {
+            RowSet rowSet = qExec.select();
+            long count = 0;
+            for ( ; rowSet.hasNext() ; rowSet.next() )
+                count++;
+            heap.sample();
+            return count;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        String[] solver = param4_solver.split(" ");
+        dsg = SimilarityDatasets.create(param0_dataset, param1_size, param2_dimensions);
+        query = BenchmarkSimJoin.query(param0_dataset, param2_dimensions, param3_join, solver[1]);
+        context = BenchmarkSimJoin.context(solver[0]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = BenchmarkSimJoin.getDefaults(BenchmarkRangeSimJoin.class).build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.util.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Benchmark of KNN similarity joins of a dataset with itself, by solver and distance.
+ * The VP-tree is only used with a metric distance; range joins are in {@link BenchmarkRangeSimJoin}.
+ * The allocation rate is reported by the GC profiler, the peak heap by {@link PeakHeap}.
+ * The junit runner is {@link TestBenchmarkSimJoin}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkSimJoin {
+    @Param({
+        "uniform",
+        "clustered"
+        // , "bsbm"
+    })
+    public String param0_dataset;
+
+    @Param({
+        "1000",
+        "10000"
+    })
+    public int param1_size;
+
+    @Param({
+        "2",
+        "8",
+        "32"
+    })
+    public int param2_dimensions;
+
+    @Param({
+        "TOP 1",
+        "TOP 10"
+    })
+    public String param3_join;
+
+    // Solver and distance.
+    @Param({
+        "nestedloop manhattan",
+        "nestedloop euclidean",
+        "vptree manhattan",
+        "hnsw manhattan",
+        "hnsw euclidean"
+    })
+    public String param4_solver;
+
+    private DatasetGraph dsg;
+    private Query query;
+    private Context context;
+
+    @Benchmark
+    public long runQuery(PeakHeap heap) {
+        try ( QueryExec qExec = QueryExec.dataset(dsg).query(query).context(context).build() ) {
+            RowSet rowSet = qExec.select();
+            long count = 0;
+            for ( ; rowSet.hasNext() ; rowSet.next() )
+                count++;
+            heap.sample();
+            return count;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        String[] solver = param4_solver.split(" ");
+        dsg = SimilarityDatasets.create(param0_dataset, param1_size, param2_dimensions);
+        query = query(param0_dataset, param2_dimensions, param3_join, solver[1]);
+        context = context(solver[0]);
+    }
+
+    /** The similarity join of the dataset with itself. */
+    static Query query(String dataset, int dimensions, String join, String distance) {
+        String qs = String.join("\n"
+            , "PREFIX sim: <" + Distances.NS + ">"
+            , "SELECT * {"
+            , "  " + SimilarityDatasets.pattern(dataset, "?a", "x", dimensions)
+            , "  SIMILARITY JOIN ON (" + SimilarityDatasets.variables(dataset, "x", dimensions, ", ") + ")"
+            , "    (" + SimilarityDatasets.variables(dataset, "y", dimensions, ", ") + ")"
+            , "    " + join + " DISTANCE sim:" + distance + " AS ?d"
+            , "  { " + SimilarityDatasets.pattern(dataset, "?b", "y", dimensions) + " }"
+            , "}");
+        return QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+    }
+
+    /** The context of the query, forcing the solver. */
+    static Context context(String solver) {
+        Context context = new Context();
+        context.set(ARQ.simJoinSolver, solver);
+        // Measure the join, not the reuse of an index built by an earlier invocation.
+        context.set(ARQ.simJoinIndexCacheSize, 0);
+        return context;
+    }
+
+    public static ChainedOptionsBuilder getDefaults(Class<?> c) {
+        return new OptionsBuilder()
+                // Specify which benchmarks to run.
+                // You can be more specific if you'd like to run only one benchmark per test.
+                .include(c.getName())
+                // Set the following options as needed
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .threads(1)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xmx4G")
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(c.getSimpleName() + "_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".json");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = getDefaults(BenchmarkSimJoin.class).build();
+        new Runner(opt).run();
+    }
+}
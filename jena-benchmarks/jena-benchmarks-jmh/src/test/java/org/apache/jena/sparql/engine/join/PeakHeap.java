@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The peak heap of an iteration, reported by JMH as the secondary result "peakHeapMB"
+ * alongside the score. See {@link SimilarityDatasets#peakHeapMB()}.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class PeakHeap {
+    /** The peak heap, in MB, since the start of the iteration. */
+    public double peakHeapMB;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        SimilarityDatasets.resetPeakHeap();
+        peakHeapMB = 0;
+    }
+
+    /** Record the peak heap so far, after an invocation of the benchmark. */
+    public void sample() {
+        peakHeapMB = SimilarityDatasets.peakHeapMB();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Random;
+import java.util.StringJoiner;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+/**
+ * Datasets of numeric points for the similarity join and clustering benchmarks,
+ * and the heap measurements they report.
+ * <ul>
+ * <li>"uniform": points drawn uniformly from the unit cube.</li>
+ * <li>"clustered": points drawn around a few random centres, as real data often is.</li>
+ * <li>"bsbm": the products of the BSBM dataset and their numeric properties, whatever the size.
+ *   BSBM products have 6 numeric properties: more dimensions are reduced to 6.</li>
+ * </ul>
+ */
+public class SimilarityDatasets {
+
+    public static final String NS = "http://example/";
+
+    public static final String BSBM_FILE = "../testing/BSBM/bsbm-1m.nt.gz";
+
+    private static final String BSBM_NS = "http://www4.wiwiss.fu-berlin.de/bizer/bsbm/v01/vocabulary/";
+
+    private static final int BSBM_DIMENSIONS = 6;
+
+    private static final int CENTRES = 10;
+
+    public static DatasetGraph create(String dataset, int size, int dimensions) {
+        switch (dataset) {
+            case "uniform":
+                return synthetic(size, dimensions, 0);
+            case "clustered":
+                return synthetic(size, dimensions, CENTRES);
+            case "bsbm":
+                DatasetGraph dsg = DatasetGraphFactory.create();
+                RDFDataMgr.read(dsg, BSBM_FILE);
+                return dsg;
+            default:
+                throw new IllegalArgumentException("Unknown dataset: " + dataset);
+        }
+    }
+
+    private static DatasetGraph synthetic(int size, int dimensions, int centres) {
+        Random random = new Random(42);
+        double[][] centre = new double[centres][dimensions];
+        for (double[] c : centre) {
+            for (int d = 0; d < dimensions; d++)
+                c[d] = random.nextDouble();
+        }
+        Graph graph = GraphFactory.createDefaultGraph();
+        Node[] predicates = new Node[dimensions];
+        for (int d = 0; d < dimensions; d++)
+            predicates[d] = NodeFactory.createURI(NS + "a" + d);
+        for (int i = 0; i < size; i++) {
+            Node s = NodeFactory.createURI(NS + "p" + i);
+            double[] c = (centres == 0) ? null : centre[random.nextInt(centres)];
+            for (int d = 0; d < dimensions; d++) {
+                double v = (c == null) ? random.nextDouble() : c[d] + 0.05 * random.nextGaussian();
+                graph.add(s, predicates[d], NodeFactory.createLiteralDT(Double.toString(v), XSDDatatype.XSDdouble));
+            }
+        }
+        return DatasetGraphFactory.wrap(graph);
+    }
+
+    /** Number of attributes of the points of the dataset. */
+    public static int dimensions(String dataset, int dimensions) {
+        return dataset.equals("bsbm") ? Math.min(dimensions, BSBM_DIMENSIONS) : dimensions;
+    }
+
+    /** The triple patterns binding variables {@code prefix0}, {@code prefix1}, ... to the attributes of {@code subject}. */
+    public static String pattern(String dataset, String subject, String prefix, int dimensions) {
+        StringJoiner pattern = new StringJoiner(" ; ", subject + " ", " .");
+        for (int d = 0; d < dimensions(dataset, dimensions); d++) {
+            String p = dataset.equals("bsbm") ? BSBM_NS + "productPropertyNumeric" + (d + 1) : NS + "a" + d;
+            pattern.add("<" + p + "> ?" + prefix + d);
+        }
+        return pattern.toString();
+    }
+
+    /** The variables {@code prefix0}, {@code prefix1}, ... separated by the separator. */
+    public static String variables(String dataset, String prefix, int dimensions, String separator) {
+        StringJoiner vars = new StringJoiner(separator);
+        for (int d = 0; d < dimensions(dataset, dimensions); d++)
+            vars.add("?" + prefix + d);
+        return vars.toString();
+    }
+
+    /** Reset the peak usage of the heap memory pools. */
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * The sum of the peak usage of the heap memory pools since the last reset, in MB.
+     * The pools may peak at different times, so this is an upper bound of the peak heap.
+     */
+    public static double peakHeapMB() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak / (1024.0 * 1024.0);
+    }
+}
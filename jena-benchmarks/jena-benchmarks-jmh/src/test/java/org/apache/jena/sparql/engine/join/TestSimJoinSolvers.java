@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.mem.graph.helper.JMHDefaultOptions;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.VectorDatatype;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+
+import java.util.Random;
+
+/**
+ * kNN similarity joins over {@code sim:vector} literals of increasing dimensionality,
+ * comparing the exact solvers with the approximate KD-tree and HNSW solvers.
+ */
+@State(Scope.Benchmark)
+public class TestSimJoinSolvers {
+
+    @Param({
+            "nestedloop",
+            "vptree",
+            "kdtree",
+            "hnsw"
+    })
+    public String param0_Solver;
+
+    @Param({
+            "2",
+            "16",
+            "64"
+    })
+    public int param1_Dimensions;
+
+    @Param({
+            "2000",
+//            "20000",
+    })
+    public int param2_Size;
+
+    private static final String QUERY = String.join("\n"
+            , "PREFIX : <http://example/>"
+            , "PREFIX sim: <" + Distances.NS + ">"
+            , "SELECT ?a ?b ?d {"
+            , "  ?a :v ?v1 ."
+            , "  SIMILARITY JOIN ON (?v1) (?v2) TOP 5 DISTANCE sim:manhattanvec AS ?d"
+            , "  { ?b :v ?v2 . }"
+            , "}");
+
+    private DatasetGraph dsg;
+    private Query query;
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        Random random = new Random(42);
+        Graph graph = GraphFactory.createDefaultGraph();
+        Node p = NodeFactory.createURI("http://example/v");
+        for (int i = 0; i < param2_Size; i++) {
+            double[] v = new double[param1_Dimensions];
+            for (int j = 0; j < v.length; j++)
+                v[j] = random.nextDouble();
+            graph.add(NodeFactory.createURI("http://example/p" + i), p,
+                    NodeFactory.createLiteralByValue(v, VectorDatatype.type));
+        }
+        this.dsg = DatasetGraphFactory.wrap(graph);
+        this.query = QueryFactory.create(QUERY, Syntax.syntaxSPARQL_11_sim);
+        this.context = new Context();
+        this.context.set(ARQ.simJoinSolver, param0_Solver);
+    }
+
+    @Benchmark
+    public long knnSimJoin() {
+        try (QueryExec qExec = QueryExec.dataset(dsg).query(query).context(context).build()) {
+            return qExec.select().rewindable().size();
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        var opt = JMHDefaultOptions.getDefaults(this.getClass())
+                .build();
+        var results = new Runner(opt).run();
+        Assert.assertNotNull(results);
+    }
+}
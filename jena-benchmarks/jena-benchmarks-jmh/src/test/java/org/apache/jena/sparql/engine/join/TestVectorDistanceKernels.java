@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import org.apache.jena.mem.graph.helper.JMHDefaultOptions;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar against vectorised ({@code jdk.incubator.vector}) distance kernels:
+ * distances from one point to a block of points, as a nested loop join probes them.
+ */
+@State(Scope.Benchmark)
+public class TestVectorDistanceKernels {
+
+    @Param({
+            "scalar",
+            "vector"
+    })
+    public String param0_Kernels;
+
+    @Param({
+            "32",
+            "64",
+            "128",
+            "256",
+            "512",
+            "1024"
+    })
+    public int param1_Dimensions;
+
+    private static final int POINTS = 1000;
+
+    private DistanceKernels kernels;
+    private double[] data;
+    private double[] query;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        this.kernels = param0_Kernels.equals("vector") ? DistanceKernels.vector() : DistanceKernels.scalar();
+        if (this.kernels == null)
+            throw new IllegalStateException("Vector API not available: run with --add-modules jdk.incubator.vector");
+        Random random = new Random(42);
+        this.data = new double[POINTS * param1_Dimensions];
+        for (int i = 0; i < data.length; i++)
+            data[i] = random.nextDouble();
+        this.query = new double[param1_Dimensions];
+        for (int i = 0; i < query.length; i++)
+            query[i] = random.nextDouble();
+    }
+
+    @Benchmark
+    public double manhattan() {
+        double sum = 0;
+        for (int r = 0; r < POINTS; r++)
+            sum += kernels.manhattan(query, 0, data, r * param1_Dimensions, param1_Dimensions, Double.POSITIVE_INFINITY);
+        return sum;
+    }
+
+    @Benchmark
+    public double squaredEuclidean() {
+        double sum = 0;
+        for (int r = 0; r < POINTS; r++)
+            sum += kernels.squaredEuclidean(query, 0, data, r * param1_Dimensions, param1_Dimensions, Double.POSITIVE_INFINITY);
+        return sum;
+    }
+
+    @Benchmark
+    public double manhattanSkipNaN() {
+        double sum = 0;
+        for (int r = 0; r < POINTS; r++)
+            sum += kernels.manhattanSkipNaN(query, 0, data, r * param1_Dimensions, param1_Dimensions);
+        return sum;
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        var opt = JMHDefaultOptions.getDefaults(this.getClass())
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .build();
+        var results = new Runner(opt).run();
+        Assert.assertNotNull(results);
+    }
+}
@@ -29,6 +29,15 @@ public class SIM {
     /** <p>The k-medoids clustering algorithm.</p> */
     public static final Resource dbscan = m_model.createResource( "http://sj.dcc.uchile.cl/sim#dbscan" );
     
+    /** <p>The datatype of vector literals, such as embeddings.</p> */
+    public static final Resource vector = m_model.createResource( "http://sj.dcc.uchile.cl/sim#vector" );
+    
+    /** <p>The number of a cluster, in a stored clustering model.</p> */
+    public static final Property cluster = m_model.createProperty( "http://sj.dcc.uchile.cl/sim#cluster" );
+    
+    /** <p>The centre of a cluster, a vector literal, in a stored clustering model.</p> */
+    public static final Property centre = m_model.createProperty( "http://sj.dcc.uchile.cl/sim#centre" );
+    
     /** <p>The number of clusters parameter.</p> */
     public static final Property nbOfClusters = m_model.createProperty( "http://sj.dcc.uchile.cl/sim#numberOfClusters" );
     
@@ -47,6 +47,7 @@ import org.apache.jena.riot.web.HttpNames;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Prologue;
 import org.apache.jena.sparql.engine.Timeouts;
+import org.apache.jena.sparql.engine.main.ExplainAnalyze;
 import org.apache.jena.sparql.exec.QueryExec;
 import org.apache.jena.sparql.exec.QueryExecDatasetBuilder;
 import org.apache.jena.sparql.exec.QueryExecutionAdapter;
@@ -278,6 +279,10 @@ public abstract class SPARQLQueryProcessor extends ActionService
 
             try ( QueryExecution qExec = createQueryExecution(action, q, dataset); ) {
                 SPARQLResult result = executeQuery(action, qExec, query, queryStringLog);
+                if ( isExplainAnalyze(action) ) {
+                    sendExplainAnalyze(action, qExec, result, query.getPrologue());
+                    return;
+                }
                 // Deals with exceptions itself.
                 sendResults(action, result, query.getPrologue());
             }
@@ -313,11 +318,46 @@ public abstract class SPARQLQueryProcessor extends ActionService
                 .query(query)
                 .context(action.getContext())
                 ;
+        if ( isExplainAnalyze(action) )
+            builder.explainAnalyze(true);
         setTimeouts(builder, action);
         QueryExec qExec = builder.build();
         return QueryExecutionAdapter.adapt(qExec);
     }
 
+    /**
+     * Whether the request asks for the execution statistics of each operator
+     * ({@code explain=analyze}) rather than the results.
+     */
+    protected static boolean isExplainAnalyze(HttpAction action) {
+        String explain = action.getRequestParameter(paramExplain);
+        if ( explain == null )
+            return false;
+        if ( !explain.equalsIgnoreCase("analyze") )
+            ServletOps.errorBadRequest("SPARQL Query: explain: only 'analyze' is supported: " + explain);
+        return true;
+    }
+
+    /**
+     * Read the results to the end, then send the operator tree of the query annotated
+     * with the rows, time and memory of each operator, as JSON ("explain") and SSE ("algebra").
+     */
+    protected void sendExplainAnalyze(HttpAction action, QueryExecution qExec, SPARQLResult result, Prologue qPrologue) {
+        if ( result.isResultSet() )
+            ResultSetFormatter.consume(result.getResultSet());
+        else if ( result.isJson() )
+            result.getJsonItems().forEachRemaining(x -> {});
+        ExplainAnalyze analyze = ExplainAnalyze.get(qExec.getContext());
+        if ( analyze == null ) {
+            ServletOps.errorOccurred("No execution statistics for this query");
+            return;
+        }
+        JsonObject obj = new JsonObject();
+        obj.put("explain", analyze.toJson());
+        obj.put("algebra", analyze.toSSE(qPrologue.getPrefixMapping()));
+        ServletOps.sendJsonReponse(action, obj);
+    }
+
     /**
      * Set the timeouts. The context timeout, which is the system settings, provides
      * an upper bound to setting by protocol ?timeout.
@@ -482,7 +522,8 @@ public abstract class SPARQLQueryProcessor extends ActionService
     /** The parameters Fuseki also provides */
     private static Collection<String> fusekiParams_ = Arrays.asList(paramQueryRef, paramStyleSheet, paramAccept,
                                                                     paramOutput1, paramOutput2, paramOutput3,
-                                                                    paramCallback, paramForceAccept, paramTimeout);
+                                                                    paramCallback, paramForceAccept, paramTimeout,
+                                                                    paramExplain);
 
     protected Collection<String> fusekiParams() { return fusekiParams_; }
 }
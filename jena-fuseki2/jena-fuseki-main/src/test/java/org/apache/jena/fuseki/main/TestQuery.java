@@ -28,7 +28,9 @@ import java.net.URL;
 import java.net.http.HttpClient;
 import java.util.Iterator;
 
+import org.apache.jena.atlas.json.JSON;
 import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
 import org.apache.jena.atlas.web.AcceptList;
 import org.apache.jena.atlas.web.MediaType;
 import org.apache.jena.fuseki.DEF;
@@ -38,6 +40,7 @@ import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.http.HttpEnv;
+import org.apache.jena.http.HttpOp;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.sparql.core.Quad;
@@ -308,6 +311,33 @@ public class TestQuery extends AbstractFusekiTest {
         Assert.assertTrue(result.contains("http://example/x"));
     }
 
+    @Test
+    public void query_explain_analyze_01() {
+        String qs = Convert.encWWWForm("SELECT * { ?s ?p ?o FILTER(?o > 0) }");
+        String result = HttpOp.httpGetString(serviceQuery() + "?explain=analyze&query=" + qs);
+        JsonObject obj = JSON.parse(result);
+        // The operator tree: the filter, with the rows it produced, over the basic graph pattern.
+        JsonObject explain = obj.getObj("explain");
+        assertEquals("filter", explain.getString("op"));
+        assertEquals(1, explain.getNumber("rows").longValue());
+        assertEquals(1, explain.getNumber("calls").longValue());
+        assertTrue(explain.hasKey("timeMs"));
+        JsonArray args = explain.get("args").getAsArray();
+        assertEquals(1, args.size());
+        JsonObject bgp = args.get(0).getAsObject();
+        assertEquals("bgp", bgp.getString("op"));
+        assertEquals(1, bgp.getNumber("rows").longValue());
+        assertTrue(bgp.hasKey("sse"));
+        // The same tree as SSE.
+        assertTrue(obj.getString("algebra").contains("rows=1"));
+    }
+
+    @Test
+    public void query_explain_analyze_02() {
+        String qs = Convert.encWWWForm("SELECT * { ?s ?p ?o }");
+        FusekiTestLib.expect400(() -> HttpOp.httpGetString(serviceQuery() + "?explain=plan&query=" + qs));
+    }
+
     private void execQuery(String queryString, int exceptedRowCount) {
         try ( QueryExecution qExec = QueryExecution.service(serviceQuery(), queryString) ) {
             ResultSet rs = qExec.execSelect();
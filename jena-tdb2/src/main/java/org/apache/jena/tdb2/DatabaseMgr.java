@@ -81,6 +81,22 @@ public class DatabaseMgr {
         DatabaseOps.compact(dsg, shouldDeleteOld);
     }
 
+    /**
+     * Compact a dataset which must be a switchable TDB database, allowing updates while
+     * the database is copied.
+     * <p>
+     * Changes committed during the copy are applied to the compacted database, and
+     * writers wait only while the last of them are applied and the databases are switched.
+     * On MS Windows, this is {@link #compact(DatasetGraph, boolean)}.
+     *
+     * @param container
+     * @param shouldDeleteOld
+     */
+    public static void compactOnline(DatasetGraph container, boolean shouldDeleteOld) {
+        DatasetGraphSwitchable dsg = requireSwitchable(container);
+        DatabaseOps.compactOnline(dsg, shouldDeleteOld);
+    }
+
     /**
      * Create a backup for a switchable TDB database. This is the normal dataset type for
      * on-disk TDB2 databases.
@@ -26,6 +26,7 @@ import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingBase;
+import org.apache.jena.sparql.engine.binding.BindingProject;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.store.NodeId;
 import org.apache.jena.tdb2.store.nodetable.NodeTable;
@@ -41,12 +42,25 @@ public class BindingTDB extends BindingBase
     // Whether the cache is worthwhile is unclear - the NodeTable keeps a cache.
     private final Map<Var,Node> cache = ( caching ? new HashMap<>() : null );
 
+    // Rows converted together, and the index of this one, or null.
+    // Set to null once the batch has been released.
+    private BindingTDBBatch batch;
+    private final int batchIndex;
+
     public BindingTDB(BindingNodeId idBinding, NodeTable nodeTable)
+    {
+        this(idBinding, nodeTable, null, -1);
+    }
+
+    /** A row of a batch: the first {@link #get} of a variable looks up its nodes for all the rows. */
+    /*package*/ BindingTDB(BindingNodeId idBinding, NodeTable nodeTable, BindingTDBBatch batch, int batchIndex)
     {
         // BindingNodeId contains the bindings actually used  copied down when created.
         super(idBinding.getParentBinding());
         this.idBinding = idBinding;
         this.nodeTable = nodeTable;
+        this.batch = batch;
+        this.batchIndex = batchIndex;
     }
 
     @Override
@@ -94,6 +108,26 @@ public class BindingTDB extends BindingBase
 
     public BindingNodeId getBindingId() { return idBinding; }
 
+    /*package*/ NodeTable getNodeTable() { return nodeTable; }
+
+    /**
+     * The projection of this row: a row of the NodeIds of the variables, so the terms
+     * are still not decoded until needed.
+     */
+    /*package*/ BindingTDB project(List<Var> projectVars)
+    {
+        Binding parentProject = ( parent == null ) ? null : new BindingProject(projectVars, parent);
+        BindingNodeId idProject = new BindingNodeId(parentProject);
+        for ( Var v : projectVars )
+        {
+            NodeId id = idBinding.get(v);
+            if ( id != null )
+                idProject.put(v, id);
+        }
+        BindingTDBBatch b = batch;
+        return new BindingTDB(idProject, nodeTable, b, b == null ? -1 : batchIndex);
+    }
+
     public NodeId getNodeId(Var var)
     {
         NodeId id = idBinding.get(var);
@@ -123,6 +157,14 @@ public class BindingTDB extends BindingBase
                 return null;
             if ( NodeId.isDoesNotExist(id) )
                 return null;
+            BindingTDBBatch b = batch;
+            if ( b != null ) {
+                n = b.get(batchIndex, var);
+                if ( n != null )
+                    return n;
+                if ( b.isReleased() )
+                    batch = null;
+            }
             n = nodeTable.getNodeForNodeId(id);
             if ( n == null )
                 // But there was to put it in the BindingNodeId.
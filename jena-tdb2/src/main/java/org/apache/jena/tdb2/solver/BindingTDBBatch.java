@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Rows of NodeIds converted to {@link BindingTDB}s together.
+ * <p>
+ * The first time the node of a variable is needed for one row, the nodes of that
+ * variable are looked up for all the rows with one call of
+ * {@link NodeTable#bulkNodeIdToNode}, which reads the node table in file order.
+ * Variables that are never asked for, such as those projected away, are not looked up.
+ * <p>
+ * The iterator that makes the rows {@linkplain #release releases} the batch when it
+ * moves on to the next one, so rows kept by later operators (top-N, DISTINCT, GROUP BY,
+ * the table of a hash join) do not keep the ids and nodes of the whole batch alive.
+ * After that, a row looks up its nodes one at a time.
+ */
+class BindingTDBBatch {
+    /** Size of the first batch of a query. */
+    static final int MinBatchSize = 16;
+    /** Largest size of a batch. */
+    static final int MaxBatchSize = 1024;
+
+    private List<BindingNodeId> rows;
+    private final NodeTable nodeTable;
+    private Map<Var, List<Node>> nodes = new HashMap<>();
+
+    BindingTDBBatch(List<BindingNodeId> rows, NodeTable nodeTable) {
+        this.rows = rows;
+        this.nodeTable = nodeTable;
+    }
+
+    /** The node of the variable in a row, or null, including when the batch has been released. */
+    synchronized Node get(int index, Var var) {
+        if ( rows == null )
+            return null;
+        return nodes.computeIfAbsent(var, this::lookup).get(index);
+    }
+
+    /** Drop the rows and the nodes looked up so far. */
+    synchronized void release() {
+        rows = null;
+        nodes = null;
+    }
+
+    synchronized boolean isReleased() {
+        return rows == null;
+    }
+
+    private List<Node> lookup(Var var) {
+        List<NodeId> ids = new ArrayList<>(rows.size());
+        for ( BindingNodeId row : rows )
+            ids.add(row.get(var));
+        return nodeTable.bulkNodeIdToNode(ids);
+    }
+}
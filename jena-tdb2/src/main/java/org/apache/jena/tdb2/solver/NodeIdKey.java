@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * The NodeIds of a row for a list of variables, null for an unbound variable.
+ * <p>
+ * In one node table, two terms are the same if and only if their NodeIds are the
+ * same (inline values are canonical), so rows of a {@link BindingTDB} can be compared,
+ * hashed and grouped by key without decoding their terms.
+ */
+final class NodeIdKey {
+    private final NodeId[] ids;
+    private final int hash;
+
+    private NodeIdKey(NodeId[] ids) {
+        this.ids = ids;
+        this.hash = Arrays.hashCode(ids);
+    }
+
+    /**
+     * The NodeId of a variable in a row of the node table, or null if the row does not
+     * carry one for the variable.
+     */
+    static NodeId nodeId(Binding binding, Var var, NodeTable nodeTable) {
+        if ( ! ( binding instanceof BindingTDB bindingTDB ) || bindingTDB.getNodeTable() != nodeTable )
+            return null;
+        NodeId id = bindingTDB.getNodeId(var);
+        if ( id == null || NodeId.isDoesNotExist(id) )
+            return null;
+        return id;
+    }
+
+    /**
+     * The key of a row, or null if the row is not a row of NodeIds of the node table, or
+     * binds one of the variables without a NodeId.
+     */
+    static NodeIdKey create(Binding binding, List<Var> vars, NodeTable nodeTable) {
+        if ( ! ( binding instanceof BindingTDB bindingTDB ) || bindingTDB.getNodeTable() != nodeTable )
+            return null;
+        NodeId[] ids = new NodeId[vars.size()];
+        for ( int i = 0 ; i < ids.length ; i++ ) {
+            Var var = vars.get(i);
+            NodeId id = bindingTDB.getNodeId(var);
+            if ( id == null ) {
+                // Unbound, or bound by a row without NodeIds.
+                if ( bindingTDB.contains(var) )
+                    return null;
+                continue;
+            }
+            if ( NodeId.isDoesNotExist(id) )
+                return null;
+            ids[i] = id;
+        }
+        return new NodeIdKey(ids);
+    }
+
+    /** The row of NodeIds of the key, with a parent row (which may be null). */
+    BindingTDB binding(List<Var> vars, Binding parent, NodeTable nodeTable) {
+        BindingNodeId idBinding = new BindingNodeId(parent);
+        for ( int i = 0 ; i < ids.length ; i++ ) {
+            if ( ids[i] != null )
+                idBinding.put(vars.get(i), ids[i]);
+        }
+        return new BindingTDB(idBinding, nodeTable);
+    }
+
+    /** The rows of terms of keys, decoding the NodeIds of all of them together. */
+    static List<Binding> decode(Collection<NodeIdKey> keys, List<Var> vars, NodeTable nodeTable) {
+        List<NodeId> ids = new ArrayList<>(keys.size()*vars.size());
+        for ( NodeIdKey key : keys )
+            ids.addAll(Arrays.asList(key.ids));
+        List<Node> nodes = nodeTable.bulkNodeIdToNode(ids);
+        List<Binding> bindings = new ArrayList<>(keys.size());
+        int idx = 0;
+        for ( int k = 0 ; k < keys.size() ; k++ ) {
+            BindingBuilder builder = Binding.builder();
+            for ( Var var : vars ) {
+                Node n = nodes.get(idx++);
+                if ( n != null )
+                    builder.add(var, n);
+            }
+            bindings.add(builder.build());
+        }
+        return bindings;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if ( this == other )
+            return true;
+        return other instanceof NodeIdKey key && hash == key.hash && Arrays.equals(ids, key.ids);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(ids);
+    }
+}
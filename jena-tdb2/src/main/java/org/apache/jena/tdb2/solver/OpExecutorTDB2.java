@@ -18,29 +18,41 @@
 
 package org.apache.jena.tdb2.solver;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.ARQInternalErrorException;
 import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
 import org.apache.jena.sparql.algebra.op.*;
 import org.apache.jena.sparql.algebra.optimize.TransformFilterPlacement;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Substitute;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.BindingProject;
+import org.apache.jena.sparql.engine.iterator.QueryIterConvert;
 import org.apache.jena.sparql.engine.iterator.QueryIterPeek;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.OpExecutorFactory;
 import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterGraph;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProc;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.mgt.Explain;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
@@ -50,7 +62,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** TDB executor for algebra expressions.  It is the standard ARQ executor
- *  except for basic graph patterns and filtered basic graph patterns (currently).
+ *  except for basic graph patterns and filtered basic graph patterns, and for
+ *  projection, DISTINCT, GROUP BY variables, joins and filters, which work on NodeIds.
  *
  * See also: StageGeneratorDirectTDB, a non-reordering
  */
@@ -87,14 +100,40 @@ public class OpExecutorTDB2 extends OpExecutor
         return super.exec(op, input);
     }
 
-    // Retrieving nodes isn't so bad because they will be needed anyway.
-    // And if their duplicates, likely to be cached.
-    // Need to work with SolverLib which wraps the NodeId bindgins with a converter.
+    // Rows from the TDB2 solver are BindingTDB: NodeIds, decoded when a term is needed.
+    // Projection, DISTINCT, GROUP BY variables, joins and equality filters keep
+    // them as NodeIds and compare NodeIds, so terms are decoded for the results only.
+
+    @Override
+    protected QueryIterator execute(OpProject opProject, QueryIterator input)
+    {
+        if ( ! isForTDB || ! ( input instanceof QueryIterRoot ) )
+            return super.execute(opProject, input);
+        List<Var> vars = opProject.getVars();
+        QueryIterator qIter = exec(opProject.getSubOp(), input);
+        return new QueryIterConvert(qIter, b -> ( b instanceof BindingTDB bindingTDB )
+                                                ? bindingTDB.project(vars)
+                                                : new BindingProject(vars, b),
+                                    execCxt);
+    }
 
     @Override
     protected QueryIterator execute(OpDistinct opDistinct, QueryIterator input)
     {
-        return super.execute(opDistinct, input);
+        // Spilling DISTINCT compares terms.
+        if ( ! isForTDB || spillToDisk(execCxt) )
+            return super.execute(opDistinct, input);
+        List<Var> vars = new ArrayList<>();
+        boolean hideUnnamed = false;
+        for ( Var v : OpVars.visibleVars(opDistinct.getSubOp()) )
+        {
+            if ( v.isNamedVar() )
+                vars.add(v);
+            else
+                hideUnnamed = true;
+        }
+        QueryIterator qIter = exec(opDistinct.getSubOp(), input);
+        return new QueryIterDistinctTDB(qIter, vars, hideUnnamed, execCxt);
     }
 
     @Override
@@ -131,8 +170,50 @@ public class OpExecutorTDB2 extends OpExecutor
         }
 
         // (filter (anything else))
-        return super.execute(opFilter, input);
-        }
+        QueryIterator qIter = exec(opFilter.getSubOp(), input);
+        return filter(qIter, opFilter.getExprs(), execCxt);
+    }
+
+    /** Filter, comparing NodeIds for equality tests. */
+    private static QueryIterator filter(QueryIterator qIter, ExprList exprs, ExecutionContext execCxt)
+    {
+        for ( Expr expr : exprs )
+            qIter = QueryIterFilterTDB.create(qIter, expr, execCxt);
+        return qIter;
+    }
+
+    @Override
+    protected QueryIterator execute(OpGroup opGroup, QueryIterator input)
+    {
+        VarExprList groupVars = opGroup.getGroupVars();
+        // Group by variables only.
+        if ( ! isForTDB || groupVars.isEmpty() || ! groupVars.getExprs().isEmpty() )
+            return super.execute(opGroup, input);
+        List<ExprAggregator> aggregators = ( opGroup.getAggregators() == null ) ? List.of() : opGroup.getAggregators();
+        QueryIterator qIter = exec(opGroup.getSubOp(), input);
+        return new QueryIterGroupTDB(qIter, groupVars.getVars(), aggregators, execCxt);
+    }
+
+    @Override
+    protected QueryIterator execute(OpJoin opJoin, QueryIterator input)
+    {
+        // Spilling hash joins compare terms.
+        if ( ! isForTDB || spillToDisk(execCxt) )
+            return super.execute(opJoin, input);
+        Set<Var> vars = new LinkedHashSet<>(OpVars.fixedVars(opJoin.getLeft()));
+        vars.retainAll(OpVars.fixedVars(opJoin.getRight()));
+        if ( vars.isEmpty() )
+            // Cross product.
+            return super.execute(opJoin, input);
+        QueryIterator left = exec(opJoin.getLeft(), input);
+        QueryIterator right = exec(opJoin.getRight(), root());
+        return new QueryIterJoinTDB(vars.iterator().next(), left, right, execCxt);
+    }
+
+    private static boolean spillToDisk(ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isDefined(ARQ.spillToDiskThreshold);
+    }
 
     // ---- Triple patterns
 
@@ -376,6 +457,13 @@ public class OpExecutorTDB2 extends OpExecutor
             filter = QC2.getFilter(execCxt.getContext());
         }
 
+        @Override
+        protected QueryIterator execute(OpFilter opFilter, QueryIterator input)
+        {
+            QueryIterator qIter = exec(opFilter.getSubOp(), input);
+            return filter(qIter, opFilter.getExprs(), execCxt);
+        }
+
         @Override
         public QueryIterator execute(OpBGP opBGP, QueryIterator input)
         {
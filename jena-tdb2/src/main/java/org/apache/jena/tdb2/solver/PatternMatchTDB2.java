@@ -19,6 +19,7 @@
 package org.apache.jena.tdb2.solver;
 
 import static org.apache.jena.sparql.engine.main.solver.SolverLib.makeAbortable;
+import static org.apache.jena.sparql.engine.main.solver.SolverLib.tripleHasEmbTripleWithVars;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -103,14 +104,19 @@ public class PatternMatchTDB2 {
         Iterator<BindingNodeId> chain = Iter.map(input, SolverLibTDB.convFromBinding(nodeTable));
         List<Abortable> killList = new ArrayList<>();
 
-        for ( Triple triple : triples ) {
-            Tuple<Node> patternTuple = null;
-            if ( graphNode == null )
-                // 3-tuples
-                patternTuple = TupleFactory.create3(triple.getSubject(), triple.getPredicate(), triple.getObject());
-            else
-                // 4-tuples.
-                patternTuple = TupleFactory.create4(graphNode, triple.getSubject(), triple.getPredicate(), triple.getObject());
+        int start = 0;
+        if ( SolverRX.DATAPATH && triples.size() >= 2 && ! anyGraph
+             && ! tripleHasEmbTripleWithVars(triples.get(0)) && ! tripleHasEmbTripleWithVars(triples.get(1)) ) {
+            // Merge join of the first two patterns, if they can be read in order of a shared variable.
+            chain = StageMergeJoin.access(nodeTupleTable, chain,
+                                          patternTuple(graphNode, triples.get(0)), patternTuple(graphNode, triples.get(1)),
+                                          filter, execCxt);
+            chain = makeAbortable(chain, killList);
+            start = 2;
+        }
+
+        for ( Triple triple : triples.subList(start, triples.size()) ) {
+            Tuple<Node> patternTuple = patternTuple(graphNode, triple);
             // Plain RDF, no RDF-star
             // chain = solve(nodeTupleTable, tuple, anyGraph, chain, filter, execCxt)
             // ;
@@ -127,6 +133,14 @@ public class PatternMatchTDB2 {
         return new QueryIterAbortable(iterBinding, killList, input, execCxt);
     }
 
+    private static Tuple<Node> patternTuple(Node graphNode, Triple triple) {
+        if ( graphNode == null )
+            // 3-tuples
+            return TupleFactory.create3(triple.getSubject(), triple.getPredicate(), triple.getObject());
+        // 4-tuples.
+        return TupleFactory.create4(graphNode, triple.getSubject(), triple.getPredicate(), triple.getObject());
+    }
+
     private static Iterator<BindingNodeId> matchQuadPattern(Iterator<BindingNodeId> chain, Node graphNode, Triple tPattern,
                                                             NodeTupleTable nodeTupleTable, Tuple<Node> patternTuple, boolean anyGraph,
                                                             Predicate<Tuple<NodeId>> filter, ExecutionContext execCxt) {
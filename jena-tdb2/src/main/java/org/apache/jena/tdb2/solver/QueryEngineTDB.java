@@ -20,6 +20,7 @@ package org.apache.jena.tdb2.solver;
 
 
 import org.apache.jena.atlas.lib.Lib ;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.query.Query ;
 import org.apache.jena.sparql.algebra.Algebra ;
 import org.apache.jena.sparql.algebra.Op ;
@@ -38,6 +39,7 @@ import org.apache.jena.sparql.mgt.Explain ;
 import org.apache.jena.sparql.util.Context ;
 import org.apache.jena.tdb2.TDB2;
 import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.solver.stats.NumericRangeStats;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.sys.TDBInternal;
 
@@ -59,11 +61,22 @@ public class QueryEngineTDB extends QueryEngineMain
     protected QueryEngineTDB(Op op, DatasetGraphTDB dataset, Binding input, Context context)
     {
         super(op, dataset, input, context);
+        setAttributeStatistics(dataset);
     }
 
     protected QueryEngineTDB(Query query, DatasetGraphTDB dataset, Binding input, Context cxt)
     {
         super(query, dataset, input, cxt);
+        setAttributeStatistics(dataset);
+    }
+
+    // Statistics of this dataset, if used, unless the application supplied its own.
+    private void setAttributeStatistics(DatasetGraphTDB dataset) {
+        if ( !context.isTrue(ARQ.simJoinUseStatistics) )
+            return;
+        Object x = context.get(ARQ.simJoinStatistics);
+        if ( x == null || x instanceof NumericRangeStats )
+            context.set(ARQ.simJoinStatistics, dataset.getNumericRangeStats());
     }
 
     private static boolean isUnionDefaultGraph(Context cxt) {
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingProjectNamed;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.engine.iterator.QueryIterDistinct;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * DISTINCT over rows of a TDB2 database, comparing the NodeIds of the rows, not their
+ * terms. The rows are passed on as they are, so their terms are still not decoded.
+ * <p>
+ * On the first row that is not a row of NodeIds (from a VALUES block, for example), the
+ * rows seen so far are decoded and the rest of the input is compared by terms,
+ * as {@link QueryIterDistinct} does. This iterator does not spill to disk.
+ */
+class QueryIterDistinctTDB extends QueryIter1 {
+    // The named variables the rows may bind.
+    private final List<Var> vars;
+    private final boolean hideUnnamed;
+    private NodeTable nodeTable = null;
+    private Set<NodeIdKey> seenIds = new HashSet<>();
+    // Once a row without NodeIds has been seen.
+    private Set<Binding> seen = null;
+    private Binding slot = null;
+
+    /**
+     * @param vars          The named variables of the rows.
+     * @param hideUnnamed   Whether rows may also have unnamed variables, to be hidden.
+     */
+    QueryIterDistinctTDB(QueryIterator input, List<Var> vars, boolean hideUnnamed, ExecutionContext execCxt) {
+        super(input, execCxt);
+        this.vars = vars;
+        this.hideUnnamed = hideUnnamed;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        if ( slot != null )
+            return true;
+        while ( getInput().hasNext() ) {
+            Binding b = getInput().next();
+            if ( isFreshSighting(b) ) {
+                slot = hideUnnamed ? new BindingProjectNamed(b) : b;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFreshSighting(Binding b) {
+        if ( seen == null ) {
+            if ( nodeTable == null && b instanceof BindingTDB bindingTDB )
+                nodeTable = bindingTDB.getNodeTable();
+            NodeIdKey key = NodeIdKey.create(b, vars, nodeTable);
+            if ( key != null )
+                return seenIds.add(key);
+            // Switch to terms.
+            seen = new HashSet<>();
+            if ( ! seenIds.isEmpty() )
+                seen.addAll(NodeIdKey.decode(seenIds, vars, nodeTable));
+            seenIds = null;
+        }
+        return seen.add(new BindingProjectNamed(b));
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        Binding b = slot;
+        slot = null;
+        return b;
+    }
+
+    @Override
+    protected void closeSubIterator() {
+        seenIds = null;
+        seen = null;
+        slot = null;
+    }
+
+    @Override
+    protected void requestSubCancel() {}
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterFilterExpr;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_SameTerm;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction2;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Filter by an equality test, answered by comparing NodeIds for rows of a TDB2 database,
+ * without decoding their terms. Other rows are filtered by evaluating the expression.
+ * <p>
+ * The tests are {@code sameTerm(?x, ?y)}, {@code sameTerm(?x, <iri>)} and
+ * {@code ?x = <iri>}, either way round. An IRI is only {@code =} to itself, and, for
+ * these rows, unbound variables and an IRI not in the database fail the test.
+ */
+class QueryIterFilterTDB extends QueryIterFilterExpr {
+    private final Var var1;
+    // One of these two.
+    private final Var var2;
+    private final Node constant;
+
+    private NodeTable nodeTable = null;
+    private NodeId constantId = null;
+
+    /** Filter by the expression, by NodeIds if it is one of the tests. */
+    static QueryIterator create(QueryIterator input, Expr expr, ExecutionContext execCxt) {
+        if ( expr instanceof E_SameTerm || expr instanceof E_Equals ) {
+            ExprFunction2 f = (ExprFunction2)expr;
+            Expr arg1 = f.getArg1();
+            Expr arg2 = f.getArg2();
+            if ( ! arg1.isVariable() ) {
+                arg1 = f.getArg2();
+                arg2 = f.getArg1();
+            }
+            if ( arg1.isVariable() ) {
+                if ( arg2.isConstant() && arg2.getConstant().isIRI() )
+                    return new QueryIterFilterTDB(input, expr, arg1.asVar(), null, arg2.getConstant().asNode(), execCxt);
+                // Two terms the same as values are not always the same term.
+                if ( expr instanceof E_SameTerm && arg2.isVariable() )
+                    return new QueryIterFilterTDB(input, expr, arg1.asVar(), arg2.asVar(), null, execCxt);
+            }
+        }
+        return new QueryIterFilterExpr(input, expr, execCxt);
+    }
+
+    private QueryIterFilterTDB(QueryIterator input, Expr expr, Var var1, Var var2, Node constant, ExecutionContext execCxt) {
+        super(input, expr, execCxt);
+        this.var1 = var1;
+        this.var2 = var2;
+        this.constant = constant;
+    }
+
+    @Override
+    public Binding accept(Binding binding) {
+        if ( ! ( binding instanceof BindingTDB bindingTDB ) )
+            return super.accept(binding);
+        NodeTable rowNodeTable = bindingTDB.getNodeTable();
+        NodeId id1 = NodeIdKey.nodeId(binding, var1, rowNodeTable);
+        NodeId id2 = ( var2 != null ) ? NodeIdKey.nodeId(binding, var2, rowNodeTable) : constantId(rowNodeTable);
+        if ( id1 == null || id2 == null ) {
+            // Unbound, or not a NodeId.
+            return super.accept(binding);
+        }
+        return id1.equals(id2) ? binding : null;
+    }
+
+    // The NodeId of the constant, NodeDoesNotExist if it is not in the node table.
+    private NodeId constantId(NodeTable rowNodeTable) {
+        if ( nodeTable != rowNodeTable ) {
+            nodeTable = rowNodeTable;
+            constantId = rowNodeTable.getNodeIdForNode(constant);
+        }
+        return constantId;
+    }
+}
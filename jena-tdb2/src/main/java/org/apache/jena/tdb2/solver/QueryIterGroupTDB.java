@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.*;
+
+import org.apache.jena.atlas.iterator.IteratorDelayedInitialization;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.iterator.QueryIterGroup;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.Accumulator;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * GROUP BY variables over rows of a TDB2 database: the rows are grouped by the NodeIds
+ * of the variables, not by their terms, and the group keys of the results are rows of
+ * NodeIds, still not decoded. Aggregates are calculated as {@link QueryIterGroup} does.
+ * <p>
+ * On the first row that is not a row of NodeIds, the keys so far are decoded and the
+ * rest of the input is grouped by terms.
+ * <p>
+ * There must be at least one group variable and no group expressions.
+ */
+class QueryIterGroupTDB extends QueryIterPlainWrapper {
+    private final QueryIterator embeddedIterator;
+
+    QueryIterGroupTDB(QueryIterator qIter, List<Var> groupVars, List<ExprAggregator> aggregators, ExecutionContext execCxt) {
+        super(calc(qIter, groupVars, aggregators, execCxt), execCxt);
+        this.embeddedIterator = qIter;
+    }
+
+    @Override
+    public void requestCancel() {
+        this.embeddedIterator.cancel();
+        super.requestCancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        this.embeddedIterator.close();
+        super.closeIterator();
+    }
+
+    private static Iterator<Binding> calc(QueryIterator iter, List<Var> groupVars, List<ExprAggregator> aggregators,
+                                          ExecutionContext execCxt) {
+        return new IteratorDelayedInitialization<Binding>() {
+            @Override
+            protected Iterator<Binding> initializeIterator() {
+                return group(iter, groupVars, aggregators, execCxt);
+            }
+        };
+    }
+
+    private static Iterator<Binding> group(QueryIterator iter, List<Var> groupVars, List<ExprAggregator> aggregators,
+                                           ExecutionContext execCxt) {
+        NodeTable nodeTable = null;
+        Map<NodeIdKey, List<Accumulator>> idGroups = new LinkedHashMap<>();
+        // Once a row without NodeIds has been seen.
+        Map<Binding, List<Accumulator>> groups = null;
+
+        while ( iter.hasNext() ) {
+            Binding b = iter.nextBinding();
+            List<Accumulator> accumulators;
+            if ( groups == null ) {
+                if ( nodeTable == null && b instanceof BindingTDB bindingTDB )
+                    nodeTable = bindingTDB.getNodeTable();
+                NodeIdKey key = NodeIdKey.create(b, groupVars, nodeTable);
+                if ( key != null ) {
+                    accumulators = idGroups.get(key);
+                    if ( accumulators == null ) {
+                        accumulators = accumulators(aggregators);
+                        idGroups.put(key, accumulators);
+                    }
+                    accumulate(accumulators, b, execCxt);
+                    continue;
+                }
+                // Switch to terms.
+                groups = new LinkedHashMap<>();
+                if ( ! idGroups.isEmpty() ) {
+                    Iterator<Binding> keys = NodeIdKey.decode(idGroups.keySet(), groupVars, nodeTable).iterator();
+                    for ( List<Accumulator> x : idGroups.values() )
+                        groups.put(keys.next(), x);
+                }
+                idGroups = null;
+            }
+            Binding key = key(b, groupVars);
+            accumulators = groups.get(key);
+            if ( accumulators == null ) {
+                accumulators = accumulators(aggregators);
+                groups.put(key, accumulators);
+            }
+            accumulate(accumulators, b, execCxt);
+        }
+
+        List<Binding> results = new ArrayList<>();
+        if ( groups == null ) {
+            for ( Map.Entry<NodeIdKey, List<Accumulator>> e : idGroups.entrySet() ) {
+                Binding values = values(aggregators, e.getValue(), Binding.builder());
+                results.add(e.getKey().binding(groupVars, values, nodeTable));
+            }
+        } else {
+            for ( Map.Entry<Binding, List<Accumulator>> e : groups.entrySet() )
+                results.add(values(aggregators, e.getValue(), Binding.builder(e.getKey())));
+        }
+        return results.iterator();
+    }
+
+    private static Binding key(Binding binding, List<Var> groupVars) {
+        BindingBuilder builder = Binding.builder();
+        for ( Var var : groupVars ) {
+            Node node = binding.get(var);
+            if ( node != null )
+                builder.add(var, node);
+        }
+        return builder.build();
+    }
+
+    private static List<Accumulator> accumulators(List<ExprAggregator> aggregators) {
+        List<Accumulator> accumulators = new ArrayList<>(aggregators.size());
+        for ( ExprAggregator agg : aggregators )
+            accumulators.add(agg.getAggregator().createAccumulator());
+        return accumulators;
+    }
+
+    private static void accumulate(List<Accumulator> accumulators, Binding binding, ExecutionContext execCxt) {
+        for ( Accumulator acc : accumulators )
+            acc.accumulate(binding, execCxt);
+    }
+
+    private static Binding values(List<ExprAggregator> aggregators, List<Accumulator> accumulators, BindingBuilder builder) {
+        for ( int i = 0 ; i < aggregators.size() ; i++ ) {
+            NodeValue value = accumulators.get(i).getValue();
+            if ( value == null )
+                continue;
+            builder.add(aggregators.get(i).getVar(), value.asNode());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.*;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIter2;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Hash join of rows of a TDB2 database that compares and merges NodeIds, not terms.
+ * <p>
+ * The right side is read into a table indexed by the NodeId of a variable bound by both
+ * sides. Each row of the left side is matched against the rows of the right side with the
+ * same NodeId, and the results are rows of NodeIds, their terms still not decoded.
+ * <p>
+ * Rows that are not rows of NodeIds, such as those of a VALUES block, are matched and
+ * merged by their terms.
+ */
+class QueryIterJoinTDB extends QueryIter2 {
+    private final Var keyVar;
+    private NodeTable nodeTable = null;
+
+    private boolean started = false;
+    private final List<Binding> rightRows = new ArrayList<>();
+    private final Map<NodeId, List<Binding>> rightById = new HashMap<>();
+    // Right rows that bind the key variable but not by NodeId.
+    private final List<Binding> rightNoId = new ArrayList<>();
+    // Right rows that do not bind the key variable.
+    private final List<Binding> rightNoKey = new ArrayList<>();
+    // Built when a left row binds the key variable but not by NodeId.
+    private Map<Node, List<Binding>> rightByNode = null;
+
+    private Binding leftRow = null;
+    private Iterator<Binding> candidates = null;
+    private Binding slot = null;
+
+    /**
+     * @param keyVar  A variable bound by every row of both sides, or by most of them.
+     */
+    QueryIterJoinTDB(Var keyVar, QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
+        super(left, right, execCxt);
+        this.keyVar = keyVar;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        if ( slot != null )
+            return true;
+        if ( ! started ) {
+            started = true;
+            buildTable();
+        }
+        for (;;) {
+            if ( candidates != null ) {
+                while ( candidates.hasNext() ) {
+                    Binding x = merge(leftRow, candidates.next());
+                    if ( x != null ) {
+                        slot = x;
+                        return true;
+                    }
+                }
+                candidates = null;
+            }
+            if ( rightRows.isEmpty() || ! getLeft().hasNext() )
+                return false;
+            leftRow = getLeft().next();
+            candidates = candidates(leftRow);
+        }
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        Binding b = slot;
+        slot = null;
+        return b;
+    }
+
+    private void buildTable() {
+        QueryIterator right = getRight();
+        while ( right.hasNext() ) {
+            Binding row = right.next();
+            if ( nodeTable == null && row instanceof BindingTDB bindingTDB )
+                nodeTable = bindingTDB.getNodeTable();
+            rightRows.add(row);
+            if ( ! row.contains(keyVar) ) {
+                rightNoKey.add(row);
+                continue;
+            }
+            NodeId id = NodeIdKey.nodeId(row, keyVar, nodeTable);
+            if ( id == null )
+                rightNoId.add(row);
+            else
+                rightById.computeIfAbsent(id, k->new ArrayList<>()).add(row);
+        }
+    }
+
+    // The right rows that may be compatible with a left row.
+    private Iterator<Binding> candidates(Binding row) {
+        if ( ! row.contains(keyVar) )
+            return rightRows.iterator();
+        NodeId id = NodeIdKey.nodeId(row, keyVar, nodeTable);
+        if ( id != null ) {
+            List<Binding> x = rightById.getOrDefault(id, List.of());
+            return Iter.concat(Iter.concat(x.iterator(), rightNoId.iterator()), rightNoKey.iterator());
+        }
+        List<Binding> x = rightByNode().getOrDefault(row.get(keyVar), List.of());
+        return Iter.concat(x.iterator(), rightNoKey.iterator());
+    }
+
+    private Map<Node, List<Binding>> rightByNode() {
+        if ( rightByNode == null ) {
+            rightByNode = new HashMap<>();
+            for ( Binding row : rightRows ) {
+                Node n = row.get(keyVar);
+                if ( n != null )
+                    rightByNode.computeIfAbsent(n, k->new ArrayList<>()).add(row);
+            }
+        }
+        return rightByNode;
+    }
+
+    /** The merge of two rows, or null if they are not compatible. */
+    private Binding merge(Binding left, Binding right) {
+        if ( ! isIdRow(right) || ! ( left instanceof BindingTDB leftTDB ) || leftTDB.getNodeTable() != nodeTable )
+            return mergeTerms(left, right);
+        BindingNodeId rightIds = ((BindingTDB)right).getBindingId();
+        BindingNodeId ids = new BindingNodeId(leftTDB.getBindingId());
+        for ( Var v : rightIds ) {
+            NodeId idRight = rightIds.get(v);
+            if ( NodeId.isDoesNotExist(idRight) )
+                return mergeTerms(left, right);
+            NodeId idLeft = leftTDB.getNodeId(v);
+            if ( idLeft != null ) {
+                if ( NodeId.isDoesNotExist(idLeft) )
+                    return mergeTerms(left, right);
+                if ( ! idLeft.equals(idRight) )
+                    return null;
+                continue;
+            }
+            if ( left.contains(v) ) {
+                // Bound by the left row, not by NodeId.
+                if ( ! left.get(v).equals(right.get(v)) )
+                    return null;
+                continue;
+            }
+            ids.put(v, idRight);
+        }
+        return new BindingTDB(ids, nodeTable);
+    }
+
+    // Whether all the variables of a row are bound by NodeIds of the node table.
+    private boolean isIdRow(Binding row) {
+        if ( ! ( row instanceof BindingTDB rowTDB ) || rowTDB.getNodeTable() != nodeTable )
+            return false;
+        Binding parent = rowTDB.getBindingId().getParentBinding();
+        return parent == null || parent.isEmpty();
+    }
+
+    private static Binding mergeTerms(Binding left, Binding right) {
+        if ( ! Algebra.compatible(left, right) )
+            return null;
+        return Algebra.merge(left, right);
+    }
+
+    @Override
+    protected void requestSubCancel() {}
+
+    @Override
+    protected void closeSubIterator() {
+        rightRows.clear();
+        rightById.clear();
+        rightNoId.clear();
+        rightNoKey.clear();
+        rightByNode = null;
+        candidates = null;
+        slot = null;
+    }
+}
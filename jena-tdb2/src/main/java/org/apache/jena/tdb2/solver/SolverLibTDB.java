@@ -25,6 +25,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.atlas.lib.tuple.TupleFactory;
 import org.apache.jena.dboe.trans.bplustree.BPlusTree;
@@ -59,10 +60,68 @@ public class SolverLibTDB
     { return Iter.map(iterBindings, convFromBinding(nodeTable)); }
 
     /** Convert from Iterator<BindingNodeId> to Iterator<Binding>, conversion "on demand"
-     * (in convToBinding(BindingNodeId, NodeTable)
+     * for each variable, in batches of rows (see {@link BindingTDBBatch}).
      */
     static Iterator<Binding> convertToNodes(Iterator<BindingNodeId> iterBindingIds, NodeTable nodeTable)
-    { return Iter.map(iterBindingIds, bindingNodeIds -> convToBinding(bindingNodeIds, nodeTable)); }
+    { return new IteratorBindingTDB(iterBindingIds, nodeTable); }
+
+    /**
+     * Rows read ahead, in batches, for {@link BindingTDB}s to look up the nodes of all the
+     * rows of a batch in one call of the node table. The batches start small, so that a
+     * query with a LIMIT does not read much more than it needs, and grow to
+     * {@link BindingTDBBatch#MaxBatchSize}.
+     */
+    private static class IteratorBindingTDB extends IteratorSlotted<Binding> {
+        private final Iterator<BindingNodeId> input;
+        private final NodeTable nodeTable;
+        private List<BindingNodeId> rows = List.of();
+        private BindingTDBBatch batch = null;
+        private int idx = 0;
+        private int batchSize = BindingTDBBatch.MinBatchSize;
+
+        IteratorBindingTDB(Iterator<BindingNodeId> input, NodeTable nodeTable) {
+            this.input = input;
+            this.nodeTable = nodeTable;
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return idx < rows.size() || input.hasNext();
+        }
+
+        @Override
+        protected Binding moveToNext() {
+            if ( idx >= rows.size() ) {
+                releaseBatch();
+                rows = new ArrayList<>(batchSize);
+                while ( rows.size() < batchSize && input.hasNext() )
+                    rows.add(input.next());
+                batch = new BindingTDBBatch(rows, nodeTable);
+                idx = 0;
+                batchSize = Math.min(2*batchSize, BindingTDBBatch.MaxBatchSize);
+                if ( rows.isEmpty() )
+                    return null;
+            }
+            Binding b = new BindingTDB(rows.get(idx), nodeTable, batch, idx);
+            idx++;
+            return b;
+        }
+
+        // Rows handed out earlier and still held elsewhere go back to looking up
+        // their nodes one at a time.
+        private void releaseBatch() {
+            if ( batch != null )
+                batch.release();
+            batch = null;
+        }
+
+        @Override
+        protected void closeIterator() {
+            releaseBatch();
+            rows = List.of();
+            Iter.close(input);
+        }
+    }
 
     static Binding convToBinding(BindingNodeId bindingNodeIds, NodeTable nodeTable) {
         if ( true )
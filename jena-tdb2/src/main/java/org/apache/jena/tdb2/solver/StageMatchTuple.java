@@ -18,6 +18,7 @@
 
 package org.apache.jena.tdb2.solver;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Function;
@@ -44,19 +45,24 @@ class StageMatchTuple {
      */
     static Iterator<BindingNodeId> access(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input, Tuple<Node> patternTuple,
                                           Predicate<Tuple<NodeId>> filter, boolean anyGraph, ExecutionContext execCxt) {
+        // The terms of the pattern, looked up once for all input rows.
+        NodeId[] constants = constants(nodeTupleTable.getNodeTable(), patternTuple);
+        if ( constants == null )
+            // A term not in the database: no matches for any input.
+            return Iter.nullIterator();
         return Iter.flatMap(input, bnid -> {
-            return StageMatchTuple.access(nodeTupleTable, bnid, patternTuple, filter, anyGraph, execCxt);
+            return StageMatchTuple.access(nodeTupleTable, bnid, patternTuple, constants, filter, anyGraph, execCxt);
         });
     }
 
-    private static Iterator<BindingNodeId> access(NodeTupleTable nodeTupleTable, BindingNodeId input, Tuple<Node> patternTuple,
-                                                  Predicate<Tuple<NodeId>> filter, boolean anyGraph, ExecutionContext execCxt) {
+    static Iterator<BindingNodeId> access(NodeTupleTable nodeTupleTable, BindingNodeId input, Tuple<Node> patternTuple, NodeId[] constants,
+                                          Predicate<Tuple<NodeId>> filter, boolean anyGraph, ExecutionContext execCxt) {
         // ---- Convert to NodeIds
         NodeId ids[] = new NodeId[patternTuple.len()];
         // Variables for this tuple after substitution
         final Var[] vars = new Var[patternTuple.len()];
 
-        boolean b = prepare(nodeTupleTable.getNodeTable(), patternTuple, input, ids, vars);
+        boolean b = prepare(patternTuple, constants, input, ids, vars);
         if ( !b )
             // Short cut - known unknown NodeId
             return Iter.nullIterator();
@@ -99,7 +105,7 @@ class StageMatchTuple {
         return Iter.iter(iterMatches).map(binder).removeNulls();
     }
 
-    private static BindingNodeId tupleToBinding(BindingNodeId input, Tuple<NodeId> tuple, Var[] var) {
+    static BindingNodeId tupleToBinding(BindingNodeId input, Tuple<NodeId> tuple, Var[] var) {
         // Reuseable BindingNodeId builder?
         BindingNodeId output = new BindingNodeId(input);
         for ( int i = 0 ; i < var.length ; i++ ) {
@@ -114,20 +120,44 @@ class StageMatchTuple {
         return output;
     }
 
+    /**
+     * The NodeIds of the terms of a pattern, null for variables, in one call of the
+     * node table. Return null if a term is not in the node table: the pattern can not match.
+     */
+    static NodeId[] constants(NodeTable nodeTable, Tuple<Node> patternTuple) {
+        NodeId[] ids = new NodeId[patternTuple.len()];
+        List<Node> nodes = new ArrayList<>(patternTuple.len());
+        for ( Node n : patternTuple ) {
+            if ( ! Var.isVar(n) )
+                nodes.add(n);
+        }
+        if ( nodes.isEmpty() )
+            return ids;
+        Iterator<NodeId> x = nodeTable.bulkNodeToNodeId(nodes, false).iterator();
+        for ( int i = 0 ; i < patternTuple.len() ; i++ ) {
+            if ( Var.isVar(patternTuple.get(i)) )
+                continue;
+            ids[i] = x.next();
+            if ( NodeId.isDoesNotExist(ids[i]) )
+                return null;
+        }
+        return ids;
+    }
+
     /**
      * Prepare a pattern (tuple of nodes), and an existing binding of NodeId, into
      * NodeIds and Variables. A variable in the pattern is replaced by its binding or
      * null in the NodeIds. A variable that is not bound by the binding is placed in
      * the var array. Return false if preparation detects the pattern can not match.
      */
-    private static boolean prepare(NodeTable nodeTable, Tuple<Node> patternTuple, BindingNodeId input, NodeId ids[], Var[] var) {
+    static boolean prepare(Tuple<Node> patternTuple, NodeId[] constants, BindingNodeId input, NodeId ids[], Var[] var) {
         // Process the Node to NodeId conversion ourselves because
         // we wish to abort if an unknown node is seen.
         for ( int i = 0 ; i < patternTuple.len() ; i++ ) {
             Node n = patternTuple.get(i);
             // Substitution and turning into NodeIds
             // Variables unsubstituted are null NodeIds
-            NodeId nId = idFor(nodeTable, input, n);
+            NodeId nId = ( constants[i] != null ) ? constants[i] : idFor(input, n);
             if ( NodeId.isDoesNotExist(nId) )
                 return false;
             ids[i] = nId;
@@ -165,15 +195,10 @@ class StageMatchTuple {
         return null;
     }
 
-    /** Return null for variables, and for nodes, the node id or NodeDoesNotExist */
-    private static NodeId idFor(NodeTable nodeTable, BindingNodeId input, Node node) {
-        if ( Var.isVar(node) ) {
-            NodeId n = input.get((Var.alloc(node)));
-            // Bound to NodeId or null.
-            return n;
-        }
-        // May return NodeId.NodeDoesNotExist which must not be null.
-        return nodeTable.getNodeIdForNode(node);
+    /** Return the NodeId a variable is bound to, or null. */
+    private static NodeId idFor(BindingNodeId input, Node node) {
+        // Bound to NodeId or null.
+        return input.get(Var.alloc(node));
     }
 
     private static Function<Tuple<NodeId>, Tuple<NodeId>> quadsToAnyTriples = item -> {
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.atlas.iterator.PeekIterator;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.lib.tuple.TupleFactory;
+import org.apache.jena.atlas.lib.tuple.TupleMap;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+
+/**
+ * Merge join of two patterns that can both be read in the order of a variable they share.
+ * <p>
+ * A pattern is read in the order of a variable from an index whose leading slots are the
+ * terms of the pattern and whose next slot is the variable. With the triple indexes SPO,
+ * POS and OSP, {@code (?s :p :o)} is in the order of {@code ?s} by POS and
+ * {@code (?x :p ?o)} is in the order of {@code ?o}, so {@code (?s :p :o1) (?s :q :o2)}
+ * and {@code (?x :p ?o) (?y :q ?o)} are merge joins of two range scans.
+ * <p>
+ * A scan behind the other steps forward over a few tuples then seeks, in the index, to the
+ * value of the other ({@link TupleIndex#findFrom}), so a pattern with few matches does not
+ * read all of the matches of the other.
+ * <p>
+ * For an input row for which there are no such indexes, the patterns are matched one
+ * after the other by {@link StageMatchTuple}.
+ */
+class StageMergeJoin {
+    /** Number of tuples a scan steps over before it seeks. */
+    static final int SeekAfter = 8;
+
+    static Iterator<BindingNodeId> access(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input,
+                                          Tuple<Node> pattern1, Tuple<Node> pattern2,
+                                          Predicate<Tuple<NodeId>> filter, ExecutionContext execCxt) {
+        NodeId[] constants1 = StageMatchTuple.constants(nodeTupleTable.getNodeTable(), pattern1);
+        NodeId[] constants2 = StageMatchTuple.constants(nodeTupleTable.getNodeTable(), pattern2);
+        if ( constants1 == null || constants2 == null )
+            // A term not in the database: no matches for any input.
+            return Iter.nullIterator();
+        return Iter.flatMap(input, bnid -> {
+            Iterator<BindingNodeId> iter = mergeJoin(nodeTupleTable, bnid, pattern1, constants1, pattern2, constants2, filter);
+            if ( iter != null )
+                return iter;
+            Iterator<BindingNodeId> iter1 = StageMatchTuple.access(nodeTupleTable, bnid, pattern1, constants1, filter, false, execCxt);
+            return Iter.flatMap(iter1, b -> StageMatchTuple.access(nodeTupleTable, b, pattern2, constants2, filter, false, execCxt));
+        });
+    }
+
+    /** The merge join for an input row, or null if the patterns can not be read in the order of a shared variable. */
+    private static Iterator<BindingNodeId> mergeJoin(NodeTupleTable nodeTupleTable, BindingNodeId input,
+                                                     Tuple<Node> pattern1, NodeId[] constants1,
+                                                     Tuple<Node> pattern2, NodeId[] constants2,
+                                                     Predicate<Tuple<NodeId>> filter) {
+        int len = pattern1.len();
+        NodeId[] ids1 = new NodeId[len];
+        Var[] vars1 = new Var[len];
+        NodeId[] ids2 = new NodeId[len];
+        Var[] vars2 = new Var[len];
+        if ( ! StageMatchTuple.prepare(pattern1, constants1, input, ids1, vars1) ||
+             ! StageMatchTuple.prepare(pattern2, constants2, input, ids2, vars2) )
+            return Iter.nullIterator();
+
+        TupleIndex[] indexes = nodeTupleTable.getTupleTable().getIndexes();
+        for ( TupleIndex index1 : indexes ) {
+            int slot1 = orderSlot(index1, ids1, vars1);
+            if ( slot1 < 0 )
+                continue;
+            for ( TupleIndex index2 : indexes ) {
+                int slot2 = orderSlot(index2, ids2, vars2);
+                if ( slot2 < 0 || ! vars1[slot1].equals(vars2[slot2]) )
+                    continue;
+                Scan scan1 = Scan.open(index1, TupleFactory.create(ids1), slot1, filter);
+                if ( scan1 == null )
+                    continue;
+                Scan scan2 = Scan.open(index2, TupleFactory.create(ids2), slot2, filter);
+                if ( scan2 == null ) {
+                    scan1.close();
+                    continue;
+                }
+                return new MergeJoin(input, scan1, vars1, scan2, vars2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The slot, in natural order, of the variable the index reads the pattern in the order
+     * of, or -1 if the terms of the pattern are not the leading slots of the index.
+     */
+    private static int orderSlot(TupleIndex index, NodeId[] ids, Var[] vars) {
+        TupleMap tupleMap = index.getMapping();
+        if ( tupleMap == null )
+            return -1;
+        int numFixed = 0;
+        for ( NodeId id : ids ) {
+            if ( id != null )
+                numFixed++;
+        }
+        if ( numFixed == ids.length )
+            return -1;
+        for ( int i = 0 ; i < numFixed ; i++ ) {
+            if ( ids[tupleMap.mapIdx(i)] == null )
+                return -1;
+        }
+        int slot = tupleMap.mapIdx(numFixed);
+        return ( vars[slot] == null ) ? -1 : slot;
+    }
+
+    /** A range scan of an index, in the order of the value of one slot. */
+    private static class Scan {
+        private final TupleIndex index;
+        private final Tuple<NodeId> pattern;
+        private final int slot;
+        private final Predicate<Tuple<NodeId>> filter;
+        private Iterator<Tuple<NodeId>> base;
+        private PeekIterator<Tuple<NodeId>> iter;
+
+        static Scan open(TupleIndex index, Tuple<NodeId> pattern, int slot, Predicate<Tuple<NodeId>> filter) {
+            Scan scan = new Scan(index, pattern, slot, filter);
+            return scan.seek(null) ? scan : null;
+        }
+
+        private Scan(TupleIndex index, Tuple<NodeId> pattern, int slot, Predicate<Tuple<NodeId>> filter) {
+            this.index = index;
+            this.pattern = pattern;
+            this.slot = slot;
+            this.filter = filter;
+        }
+
+        private boolean seek(NodeId from) {
+            Iterator<Tuple<NodeId>> x = index.findFrom(pattern, from);
+            if ( x == null )
+                return false;
+            close();
+            base = x;
+            if ( filter != null )
+                x = Iter.filter(x, filter);
+            iter = PeekIterator.create(x);
+            return true;
+        }
+
+        /** The value of the next tuple, or null at the end. */
+        NodeId key() {
+            return iter.hasNext() ? iter.peek().get(slot) : null;
+        }
+
+        /** Move to the first tuple with a value of the target or later. */
+        void advanceTo(NodeId target) {
+            for ( int i = 0 ; i < SeekAfter ; i++ ) {
+                NodeId k = key();
+                if ( k == null || NodeIdFactory.compareIndexOrder(k, target) >= 0 )
+                    return;
+                iter.next();
+            }
+            NodeId k = key();
+            if ( k != null && NodeIdFactory.compareIndexOrder(k, target) < 0 )
+                seek(target);
+        }
+
+        /** The tuples with the value, which is the value of the next tuple. */
+        List<Tuple<NodeId>> group(NodeId value) {
+            List<Tuple<NodeId>> x = new ArrayList<>();
+            while ( iter.hasNext() && iter.peek().get(slot).equals(value) )
+                x.add(iter.next());
+            return x;
+        }
+
+        void close() {
+            if ( base != null )
+                Iter.close(base);
+            base = null;
+        }
+    }
+
+    private static class MergeJoin extends IteratorSlotted<BindingNodeId> {
+        private final BindingNodeId input;
+        private final Scan scan1;
+        private final Var[] vars1;
+        private final Scan scan2;
+        private final Var[] vars2;
+        private final Deque<BindingNodeId> pending = new ArrayDeque<>();
+
+        MergeJoin(BindingNodeId input, Scan scan1, Var[] vars1, Scan scan2, Var[] vars2) {
+            this.input = input;
+            this.scan1 = scan1;
+            this.vars1 = vars1;
+            this.scan2 = scan2;
+            this.vars2 = vars2;
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return true;
+        }
+
+        @Override
+        protected BindingNodeId moveToNext() {
+            while ( pending.isEmpty() ) {
+                if ( ! nextGroup() )
+                    return null;
+            }
+            return pending.poll();
+        }
+
+        // Join the tuples of the next value the scans share.
+        private boolean nextGroup() {
+            for (;;) {
+                NodeId key1 = scan1.key();
+                NodeId key2 = scan2.key();
+                if ( key1 == null || key2 == null )
+                    return false;
+                int x = NodeIdFactory.compareIndexOrder(key1, key2);
+                if ( x < 0 ) {
+                    scan1.advanceTo(key2);
+                    continue;
+                }
+                if ( x > 0 ) {
+                    scan2.advanceTo(key1);
+                    continue;
+                }
+                List<Tuple<NodeId>> tuples1 = scan1.group(key1);
+                List<Tuple<NodeId>> tuples2 = scan2.group(key2);
+                for ( Tuple<NodeId> t1 : tuples1 ) {
+                    BindingNodeId b1 = StageMatchTuple.tupleToBinding(input, t1, vars1);
+                    if ( b1 == null )
+                        continue;
+                    for ( Tuple<NodeId> t2 : tuples2 ) {
+                        BindingNodeId b2 = extend(b1, t2, vars2);
+                        if ( b2 != null )
+                            pending.add(b2);
+                    }
+                }
+                if ( ! pending.isEmpty() )
+                    return true;
+            }
+        }
+
+        // As StageMatchTuple.tupleToBinding, for variables the row may already bind.
+        private static BindingNodeId extend(BindingNodeId row, Tuple<NodeId> tuple, Var[] vars) {
+            BindingNodeId output = new BindingNodeId(row);
+            for ( int i = 0 ; i < vars.length ; i++ ) {
+                Var v = vars[i];
+                if ( v == null )
+                    continue;
+                NodeId id = tuple.get(i);
+                NodeId current = output.get(v);
+                if ( current == null )
+                    output.put(v, id);
+                else if ( ! current.equals(id) )
+                    return null;
+            }
+            return output;
+        }
+
+        @Override
+        protected void closeIterator() {
+            scan1.close();
+            scan2.close();
+        }
+    }
+}
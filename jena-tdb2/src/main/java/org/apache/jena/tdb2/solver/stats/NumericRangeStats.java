@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver.stats;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.engine.join.AttributeStatistics;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.StorageTDB;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+
+/**
+ * Ranges of the numeric objects of predicates, over the triples and quads of a dataset,
+ * for normalising and planning similarity joins.
+ * <p>
+ * The range and the count of a predicate are computed together, in one pass over the
+ * predicate index, on first use. Inline numbers (integers, decimals, doubles, floats)
+ * are decoded from their NodeId without accessing the node table. The results are kept
+ * for the data version they were computed at.
+ * <p>
+ * When the statistics are maintained ({@link ARQ#simJoinUseStatistics} is true in the
+ * system context when the database is built), {@link StorageTDB} reports the quads
+ * added and deleted through it, and the statistics are a listener of the transaction
+ * coordinator. When a write transaction commits, its additions widen the kept ranges,
+ * which move to the new data version. Predicates with deletions are computed again on
+ * next use, as are all predicates after a write transaction that made no changes
+ * through {@link StorageTDB} (a bulk load writes to the indexes directly). In a write
+ * transaction, the ranges include its own changes.
+ * <p>
+ * Otherwise, the ranges are computed again for each new data version, and in each
+ * write transaction.
+ */
+public class NumericRangeStats implements AttributeStatistics, TransactionListener {
+
+    private static final long UNKNOWN = -1;
+
+    private final TransactionalSystem txnSystem;
+    private final StorageTDB storage;
+    private final boolean maintained;
+    private final Map<Node, Entry> cache = new ConcurrentHashMap<>();
+    // The data version after the last commit, if known.
+    private volatile long latest = UNKNOWN;
+    // The changes of the write transaction, if it has made any.
+    private volatile TxnChanges changes = null;
+
+    private record Entry(long version, long count, long numbers, double min, double max) {
+        PairOfSameType<Number> range() {
+            return numbers == 0 ? null : new PairOfSameType<>(min, max);
+        }
+
+        Entry plus(Scan added, long newVersion) {
+            if ( added == null )
+                return new Entry(newVersion, count, numbers, min, max);
+            return new Entry(newVersion, count + added.count, numbers + added.numbers,
+                             Math.min(min, added.min), Math.max(max, added.max));
+        }
+    }
+
+    /** The changes of one write transaction. */
+    private static class TxnChanges {
+        final Transaction txn;
+        // Quads added, not already present.
+        final Map<Node, Scan> added = new HashMap<>();
+        // Predicates with deletions.
+        final Set<Node> invalid = new HashSet<>();
+        boolean invalidAll = false;
+        // Computed in the transaction, including its changes so far.
+        final Map<Node, Entry> computed = new HashMap<>();
+
+        TxnChanges(Transaction txn) {
+            this.txn = txn;
+        }
+    }
+
+    /**
+     * Statistics of the storage. If {@code maintained}, the statistics are to be
+     * registered as a listener of the transaction coordinator, and to be told the
+     * changes by the storage.
+     */
+    public NumericRangeStats(TransactionalSystem txnSystem, StorageTDB storage, boolean maintained) {
+        this.txnSystem = txnSystem;
+        this.storage = storage;
+        this.maintained = maintained;
+    }
+
+    /** Whether the statistics follow the changes made through the storage. */
+    public boolean isMaintained() {
+        return maintained;
+    }
+
+    @Override
+    public PairOfSameType<Number> range(Node predicate) {
+        return entry(predicate).range();
+    }
+
+    @Override
+    public long count(Node predicate) {
+        return entry(predicate).count();
+    }
+
+    private Entry entry(Node predicate) {
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null )
+            return compute(predicate, UNKNOWN);
+        if ( txn.isWriteTxn() )
+            return maintained ? entryWrite(txn, predicate) : compute(predicate, UNKNOWN);
+        long version = txn.getDataVersion();
+        Entry entry = cache.get(predicate);
+        if ( entry != null && entry.version() == version )
+            return entry;
+        entry = compute(predicate, version);
+        keep(predicate, entry);
+        return entry;
+    }
+
+    // The committed data with the changes of the write transaction.
+    private Entry entryWrite(Transaction txn, Node predicate) {
+        long version = committedVersion(txn);
+        TxnChanges c = changes(txn, false);
+        if ( c != null ) {
+            Entry entry = c.computed.get(predicate);
+            if ( entry != null )
+                return entry;
+        }
+        boolean valid = ( c == null ) || ( !c.invalidAll && !c.invalid.contains(predicate) );
+        Entry base = cache.get(predicate);
+        if ( valid && base != null && base.version() == version )
+            return ( c == null ) ? base : base.plus(c.added.get(predicate), version);
+        Entry entry = compute(predicate, version);
+        if ( c == null ) {
+            // No changes yet: the committed data.
+            if ( version != UNKNOWN )
+                keep(predicate, entry);
+        } else
+            c.computed.put(predicate, entry);
+        return entry;
+    }
+
+    private void keep(Node predicate, Entry entry) {
+        cache.merge(predicate, entry, (e1, e2) -> e1.version() >= e2.version() ? e1 : e2);
+    }
+
+    // The data version of the committed data seen by a write transaction.
+    private long committedVersion(Transaction txn) {
+        // A "read committed" transaction promoted to a writer sees the data of commits
+        // made after it started.
+        if ( txn.getTxnType() == TxnType.READ_COMMITTED_PROMOTE )
+            return latest;
+        return txn.getDataVersion();
+    }
+
+    private TxnChanges changes(Transaction txn, boolean create) {
+        TxnChanges c = changes;
+        if ( c != null && c.txn == txn )
+            return c;
+        if ( !create )
+            return null;
+        c = new TxnChanges(txn);
+        changes = c;
+        return c;
+    }
+
+    private TxnChanges changes() {
+        Transaction txn = txnSystem.getThreadTransaction();
+        return txn == null ? null : changes(txn, true);
+    }
+
+    /** A quad with the predicate and object, not already present, has been added. */
+    public void added(Node predicate, Node object) {
+        TxnChanges c = changes();
+        if ( c == null )
+            return;
+        c.added.computeIfAbsent(predicate, p -> new Scan(null)).add(object);
+        Entry entry = c.computed.get(predicate);
+        if ( entry != null ) {
+            Scan one = new Scan(null);
+            one.add(object);
+            c.computed.put(predicate, entry.plus(one, entry.version()));
+        }
+    }
+
+    /** Quads with the predicate, or any predicate if null, are being deleted. */
+    public void deleted(Node predicate) {
+        TxnChanges c = changes();
+        if ( c == null )
+            return;
+        if ( predicate == null || !predicate.isConcrete() ) {
+            c.invalidAll = true;
+            c.computed.clear();
+            return;
+        }
+        c.invalid.add(predicate);
+        c.computed.remove(predicate);
+    }
+
+    // Called before the writer lock is released, after the data version has changed.
+    @Override
+    public void notifyCommitFinish(Transaction transaction) {
+        if ( !transaction.isWriteTxn() )
+            return;
+        TxnChanges c = changes(transaction, false);
+        changes = null;
+        long before = committedVersion(transaction);
+        long after = newVersion();
+        latest = after;
+        if ( c == null || after == UNKNOWN ) {
+            // No changes seen (the indexes may have been written directly),
+            // or the new version is not known.
+            cache.clear();
+            return;
+        }
+        if ( c.invalidAll || before == UNKNOWN )
+            cache.clear();
+        else {
+            // The ranges of the data before the commit, widened by the additions.
+            cache.replaceAll((p, e) -> e.version() == before && !c.invalid.contains(p) ? e.plus(c.added.get(p), after) : e);
+            c.invalid.forEach(cache::remove);
+        }
+        c.computed.forEach((p, e) -> cache.put(p, new Entry(after, e.count(), e.numbers(), e.min(), e.max())));
+    }
+
+    // The data version seen by transactions starting now. No other writer can commit
+    // until the committing writer releases the writer lock.
+    private long newVersion() {
+        Transaction txn = txnSystem.getTxnMgr().begin(TxnType.READ, false);
+        if ( txn == null )
+            return UNKNOWN;
+        try {
+            return txn.getDataVersion();
+        } finally {
+            txn.end();
+        }
+    }
+
+    @Override
+    public void notifyAbortStart(Transaction transaction) {
+        if ( changes(transaction, false) != null )
+            changes = null;
+    }
+
+    @Override
+    public void notifyTxnFinish(Transaction transaction) {
+        if ( changes(transaction, false) != null )
+            changes = null;
+    }
+
+    private Entry compute(Node predicate, long version) {
+        NodeTupleTable triples = storage.getTripleTable().getNodeTupleTable();
+        NodeTupleTable quads = storage.getQuadTable().getNodeTupleTable();
+        NodeTable nodeTable = triples.getNodeTable();
+        NodeId pId = nodeTable.getNodeIdForNode(predicate);
+        if ( NodeId.isDoesNotExist(pId) )
+            return new Entry(version, 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        Scan scan = new Scan(nodeTable);
+        scan.add(triples.find(null, pId, null), 2);
+        scan.add(quads.find(null, null, pId, null), 3);
+        return new Entry(version, scan.count, scan.numbers, scan.min, scan.max);
+    }
+
+    private static class Scan {
+        final NodeTable nodeTable;
+        long count = 0;
+        long numbers = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        Scan(NodeTable nodeTable) {
+            this.nodeTable = nodeTable;
+        }
+
+        void add(Iterator<Tuple<NodeId>> iter, int objectSlot) {
+            while ( iter.hasNext() ) {
+                NodeId o = iter.next().get(objectSlot);
+                add(NodeId.isInline(o) ? NodeId.extract(o) : nodeTable.getNodeForNodeId(o));
+            }
+        }
+
+        void add(Node n) {
+            count++;
+            if ( n == null || !n.isLiteral() )
+                return;
+            Object value;
+            try {
+                value = n.getLiteralValue();
+            } catch (RuntimeException ex) {
+                // Ill-formed literal.
+                return;
+            }
+            if ( !(value instanceof Number) )
+                return;
+            double d = ((Number)value).doubleValue();
+            if ( Double.isNaN(d) )
+                return;
+            numbers++;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+        }
+    }
+}
@@ -27,19 +27,22 @@ import org.apache.jena.dboe.base.file.Location;
 import org.apache.jena.dboe.storage.StoragePrefixes;
 import org.apache.jena.dboe.storage.system.DatasetGraphStorage;
 import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+import org.apache.jena.dboe.transaction.txn.Transaction;
 import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DataVersion;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.solver.stats.NumericRangeStats;
 import org.apache.jena.tdb2.lib.NodeLib;
 import org.apache.jena.tdb2.params.StoreParams;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
 
 final
-public class DatasetGraphTDB extends DatasetGraphStorage
+public class DatasetGraphTDB extends DatasetGraphStorage implements DataVersion
 {
     private final StorageTDB storageTDB;
     private final Location location;
@@ -47,6 +50,7 @@ public class DatasetGraphTDB extends DatasetGraphStorage
     private final StoreParams storeParams;
     private final ReorderTransformation reorderTransformation;
     private boolean isClosed = false;
+    private volatile NumericRangeStats numericRangeStats = null;
 
     public DatasetGraphTDB(Location location, StoreParams params, ReorderTransformation reorderTransformation,
                            StorageTDB storage, StoragePrefixes prefixes, TransactionalSystem txnSystem) {
@@ -82,10 +86,41 @@ public class DatasetGraphTDB extends DatasetGraphStorage
         return storageTDB.getTripleTable();
     }
 
+    public StorageTDB getStorageTDB() {
+        checkNotClosed();
+        return storageTDB;
+    }
+
     public TransactionalSystem getTxnSystem() {
         return txnSystem;
     }
 
+    /** The data version at the start of the current transaction, if it is a read transaction. */
+    @Override
+    public long getDataVersion() {
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null || txn.isWriteTxn() )
+            return UNKNOWN;
+        return txn.getDataVersion();
+    }
+
+    /**
+     * Ranges of the numeric objects of predicates, for similarity joins: maintained
+     * across commits if set up when the database was built, else computed for each
+     * data version.
+     */
+    public NumericRangeStats getNumericRangeStats() {
+        if ( storageTDB.getNumericRangeStats() != null )
+            return storageTDB.getNumericRangeStats();
+        if ( numericRangeStats == null ) {
+            synchronized(this) {
+                if ( numericRangeStats == null )
+                    numericRangeStats = new NumericRangeStats(txnSystem, storageTDB, false);
+            }
+        }
+        return numericRangeStats;
+    }
+
     public StoreParams getStoreParams() {
         return storeParams;
     }
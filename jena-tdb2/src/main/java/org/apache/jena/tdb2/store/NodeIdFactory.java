@@ -159,6 +159,14 @@ public class NodeIdFactory
         }
     }
 
+    /**
+     * Compare NodeIds in the order of their encodings, which is the order of NodeIds in
+     * the records of an index.
+     */
+    public static int compareIndexOrder(NodeId nodeId1, NodeId nodeId2) {
+        return Long.compareUnsigned(encode(nodeId1), encode(nodeId2));
+    }
+
     /** Relative {@code set} */
     public static void set(NodeId nodeId, ByteBuffer b) {
         long v2 = encode(nodeId);
@@ -32,6 +32,7 @@ import org.apache.jena.dboe.transaction.txn.TransactionException;
 import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdfpatch.RDFChanges;
 import org.apache.jena.riot.system.PrefixEntry;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 
@@ -40,6 +41,8 @@ public class StoragePrefixesTDB implements StoragePrefixes {
     static final RecordFactory factory = new RecordFactory(3*NodeId.SIZE, 0);
     private TransactionalSystem txnSystem;
     private NodeTupleTable prefixTable;
+    // Changes are sent here as well, when set (online compaction).
+    private volatile RDFChanges changeMonitor = null;
 
     public StoragePrefixesTDB(TransactionalSystem txnSystem, NodeTupleTable prefixTable) {
         this.txnSystem = txnSystem;
@@ -50,6 +53,14 @@ public class StoragePrefixesTDB implements StoragePrefixes {
         return prefixTable;
     }
 
+    /**
+     * Send the changes made through this storage to {@code changes} as well, or stop if null.
+     * See {@link StorageTDB#setChangeMonitor}.
+     */
+    public void setChangeMonitor(RDFChanges changes) {
+        this.changeMonitor = changes;
+    }
+
     @Override
     public String get(Node graphNode, String prefix) {
         requireTxn();
@@ -94,6 +105,9 @@ public class StoragePrefixesTDB implements StoragePrefixes {
         Node u = NodeFactory.createURI(iriStr);
         // Delete any existing old mapping of prefix.
         remove_ext(graphNode, p, Node.ANY);
+        RDFChanges changes = changeMonitor;
+        if ( changes != null )
+            changes.addPrefix(graphNode, prefix, iriStr);
         prefixTable.addRow(graphNode,p,u);
     }
 
@@ -119,8 +133,12 @@ public class StoragePrefixesTDB implements StoragePrefixes {
         g = canonicalGraphName(g);
         Iterator<Tuple<Node>> iter = prefixTable.find(g, p, u);
         List<Tuple<Node>> list = Iter.toList(iter);    // Materialize.
-        for ( Tuple<Node> tuple : list )
+        RDFChanges changes = changeMonitor;
+        for ( Tuple<Node> tuple : list ) {
+            if ( changes != null )
+                changes.deletePrefix(tuple.get(0), tuple.get(1).getLiteralLexicalForm());
             prefixTable.deleteRow(tuple.get(0), tuple.get(1), tuple.get(2));
+        }
     }
 
     @Override
@@ -29,7 +29,11 @@ import org.apache.jena.dboe.transaction.txn.TransactionException;
 import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.rdfpatch.RDFChanges;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.solver.stats.NumericRangeStats;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 
 /** {@link StorageRDF} for TDB2 */
 public class StorageTDB implements StorageRDF {
@@ -45,6 +49,10 @@ public class StorageTDB implements StorageRDF {
     // Normally, "false". "QuadAction.NO_*" are not used.
     private final boolean               checkForChange = false;
     private boolean                     closed         = false;
+    // Changes are sent here as well, when set (online compaction).
+    private volatile RDFChanges         changeMonitor  = null;
+    // Kept up to date with the changes made through this storage.
+    private NumericRangeStats           rangeStats     = null;
 
     public StorageTDB(TransactionalSystem txnSystem, TripleTable tripleTable, QuadTable quadTable) {
         this.txnSystem = txnSystem;
@@ -64,16 +72,70 @@ public class StorageTDB implements StorageRDF {
 
     private void checkActive() {}
 
-    private final void notifyAdd(Node g, Node s, Node p, Node o) { }
+    /**
+     * Send the changes made through this storage to {@code changes} as well, or stop if null.
+     * The changes are sent before they are made, on the thread of the write transaction.
+     * Bulk loaders that write to the tuple tables directly are not seen.
+     */
+    public void setChangeMonitor(RDFChanges changes) {
+        this.changeMonitor = changes;
+    }
+
+    /**
+     * Report the changes made through this storage to the numeric range statistics,
+     * when they are maintained.
+     */
+    public void setNumericRangeStats(NumericRangeStats rangeStats) {
+        this.rangeStats = rangeStats;
+    }
+
+    public NumericRangeStats getNumericRangeStats() {
+        return rangeStats;
+    }
+
+    // After a quad, not already present, has been added.
+    private final void statsAdd(Node p, Node o) {
+        NumericRangeStats stats = rangeStats;
+        if ( stats != null )
+            stats.added(p, o);
+    }
 
-    private final void notifyDelete(Node g, Node s, Node p, Node o) { }
+    private final void statsDelete(Node p) {
+        NumericRangeStats stats = rangeStats;
+        if ( stats != null )
+            stats.deleted(p);
+    }
+
+    private final void notifyAdd(Node g, Node s, Node p, Node o) {
+        RDFChanges changes = changeMonitor;
+        if ( changes != null )
+            changes.add(g, s, p, o);
+    }
+
+    private final void notifyDelete(Node g, Node s, Node p, Node o) {
+        RDFChanges changes = changeMonitor;
+        if ( changes != null )
+            changes.delete(g, s, p, o);
+    }
+
+    private final void notifyDelete(NodeTupleTable table, Tuple<NodeId> tuple) {
+        if ( changeMonitor == null )
+            return;
+        NodeTable nodeTable = table.getNodeTable();
+        if ( tuple.len() == 3 )
+            notifyDelete(null, nodeTable.getNodeForNodeId(tuple.get(0)), nodeTable.getNodeForNodeId(tuple.get(1)), nodeTable.getNodeForNodeId(tuple.get(2)));
+        else
+            notifyDelete(nodeTable.getNodeForNodeId(tuple.get(0)), nodeTable.getNodeForNodeId(tuple.get(1)),
+                         nodeTable.getNodeForNodeId(tuple.get(2)), nodeTable.getNodeForNodeId(tuple.get(3)));
+    }
 
     @Override
     public void add(Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
         notifyAdd(null, s, p, o);
-        getTripleTable().add(s, p, o);
+        if ( getTripleTable().add(s, p, o) )
+            statsAdd(p, o);
     }
 
     @Override
@@ -81,7 +143,8 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyAdd(g, s, p, o);
-        getQuadTable().add(g, s, p, o);
+        if ( getQuadTable().add(g, s, p, o) )
+            statsAdd(p, o);
     }
 
     @Override
@@ -89,6 +152,7 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyDelete(null, s, p, o);
+        statsDelete(p);
         getTripleTable().delete(s, p, o);
     }
 
@@ -97,6 +161,7 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyDelete(g, s, p, o);
+        statsDelete(p);
         getQuadTable().delete(g, s, p, o);
     }
 
@@ -104,16 +169,20 @@ public class StorageTDB implements StorageRDF {
     public void removeAll(Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
-        removeWorker(() -> tripleTable.getNodeTupleTable().findAsNodeIds(s,p,o),
-                     x  -> tripleTable.getNodeTupleTable().getTupleTable().delete(x) );
+        NodeTupleTable table = tripleTable.getNodeTupleTable();
+        statsDelete(p);
+        removeWorker(() -> table.findAsNodeIds(s,p,o),
+                     x  -> { notifyDelete(table, x); table.getTupleTable().delete(x); } );
     }
 
     @Override
     public void removeAll(Node g, Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
-        removeWorker(() -> quadTable.getNodeTupleTable().findAsNodeIds(g,s,p,o),
-                     x  -> quadTable.getNodeTupleTable().getTupleTable().delete(x) );
+        NodeTupleTable table = quadTable.getNodeTupleTable();
+        statsDelete(p);
+        removeWorker(() -> table.findAsNodeIds(g,s,p,o),
+                     x  -> { notifyDelete(table, x); table.getTupleTable().delete(x); } );
     }
 
     private static final int DeleteBufferSize = 1000;
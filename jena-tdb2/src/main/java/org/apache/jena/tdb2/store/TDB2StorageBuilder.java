@@ -38,11 +38,13 @@ import org.apache.jena.dboe.trans.bplustree.BPlusTreeFactory;
 import org.apache.jena.dboe.trans.data.TransBinaryDataFile;
 import org.apache.jena.dboe.transaction.txn.*;
 import org.apache.jena.dboe.transaction.txn.journal.Journal;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.params.StoreParams;
 import org.apache.jena.tdb2.solver.OpExecutorTDB2;
+import org.apache.jena.tdb2.solver.stats.NumericRangeStats;
 import org.apache.jena.tdb2.store.nodetable.NodeTable;
 import org.apache.jena.tdb2.store.nodetable.NodeTableCache;
 import org.apache.jena.tdb2.store.nodetable.NodeTableInline;
@@ -100,6 +102,12 @@ public class TDB2StorageBuilder {
         // Finalize.
         builder.components.forEach(txnCoord::add);
         builder.listeners.forEach(txnCoord::addListener);
+        if ( ARQ.getContext().isTrue(ARQ.simJoinUseStatistics) ) {
+            // Similarity join statistics, maintained across commits.
+            NumericRangeStats rangeStats = new NumericRangeStats(txnSystem, storage, true);
+            storage.setNumericRangeStats(rangeStats);
+            txnCoord.addListener(rangeStats);
+        }
         // Freezes the TransactionCoordinator components
         txnCoord.start();
         DatasetGraphTDB dsg = new DatasetGraphTDB(location, params, reorderTransform,
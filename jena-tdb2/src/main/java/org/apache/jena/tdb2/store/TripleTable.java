@@ -39,14 +39,14 @@ public class TripleTable extends TableBase {
         super(3, indexes, nodeTable);
     }
 
-    /** Add triple */
-    public void add(Triple triple) {
-        add(triple.getSubject(), triple.getPredicate(), triple.getObject());
+    /** Add triple - return true if it was added, false if it already existed */
+    public boolean add(Triple triple) {
+        return add(triple.getSubject(), triple.getPredicate(), triple.getObject());
     }
 
-    /** Add triple */
-    public void add(Node s, Node p, Node o) {
-        table.addRow(s, p, o);
+    /** Add triple - return true if it was added, false if it already existed */
+    public boolean add(Node s, Node p, Node o) {
+        return table.addRow(s, p, o);
     }
 
     /** Delete a triple */
@@ -55,7 +55,11 @@ public interface NodeTable extends Sync, Closeable
      */
     public List<NodeId> bulkNodeToNodeId(List<Node> nodes, boolean withAllocation);
 
-    /** Bulk mapping from {@code NodeId} to {@code Node} */
+    /** Bulk mapping from {@code NodeId} to {@code Node}.
+     * The returned list aligns with the input list, with null for a NodeId not found.
+     * This is cheaper than one call per NodeId: on-disk tables read
+     * the terms once each, in the order of the file.
+     */
     public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds);
 
     /** Bulk lookup
@@ -165,28 +165,62 @@ public class NodeTableCache implements NodeTable, TransactionListener {
     }
 
     @Override
-    public List<NodeId> bulkNodeToNodeId(List<Node> required, boolean withAllocation) {
-        synchronized(lock) {
-            List<Node> nodes = new ArrayList<>();
-            for ( Node n : required ) {
-                //
-                if ( getNodeIdForNodeCache(n) == null )
-                    nodes.add(n);
-            }
-            // Check bulk access.
-            List<NodeId> x = baseTable.bulkNodeToNodeId(nodes, true);
-            for ( int i = 0; i < nodes.size() ; i++ ) {
-                Node n = nodes.get(i);
-                NodeId nid = x.get(i);
-                cacheUpdate(n ,nid);
+    public List<NodeId> bulkNodeToNodeId(List<Node> nodes, boolean withAllocation) {
+        List<NodeId> nodeIds = new ArrayList<>(nodes.size());
+        // Positions not in the cache.
+        List<Integer> misses = new ArrayList<>();
+        for ( int i = 0 ; i < nodes.size() ; i++ ) {
+            Node node = nodes.get(i);
+            NodeId nodeId = ( node == Node.ANY ) ? NodeId.NodeIdAny : cacheLookup(node);
+            if ( nodeId == null && ! withAllocation && notPresent(node) )
+                nodeId = NodeId.NodeDoesNotExist;
+            if ( nodeId == null )
+                misses.add(i);
+            nodeIds.add(nodeId);
+        }
+        if ( misses.isEmpty() )
+            return nodeIds;
+        synchronized (lock) {
+            List<Node> required = new ArrayList<>(misses.size());
+            for ( int i : misses )
+                required.add(nodes.get(i));
+            List<NodeId> x = baseTable.bulkNodeToNodeId(required, withAllocation);
+            for ( int j = 0 ; j < misses.size() ; j++ ) {
+                cacheUpdate(required.get(j), x.get(j));
+                nodeIds.set(misses.get(j), x.get(j));
             }
-            return x;
         }
+        return nodeIds;
     }
 
     @Override
     public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds) {
-        return NodeTableOps.bulkNodeIdToNodeImpl(this, nodeIds);
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        // Positions not in the cache.
+        List<Integer> misses = new ArrayList<>();
+        for ( int i = 0 ; i < nodeIds.size() ; i++ ) {
+            NodeId id = nodeIds.get(i);
+            Node n = null;
+            if ( ! NodeId.isDoesNotExist(id) && ! NodeId.isAny(id) ) {
+                n = cacheLookup(id);
+                if ( n == null )
+                    misses.add(i);
+            }
+            nodes.add(n);
+        }
+        if ( misses.isEmpty() )
+            return nodes;
+        synchronized (lock) {
+            List<NodeId> required = new ArrayList<>(misses.size());
+            for ( int i : misses )
+                required.add(nodeIds.get(i));
+            List<Node> x = baseTable.bulkNodeIdToNode(required);
+            for ( int j = 0 ; j < misses.size() ; j++ ) {
+                cacheUpdate(x.get(j), required.get(j));
+                nodes.set(misses.get(j), x.get(j));
+            }
+        }
+        return nodes;
     }
 
     // ---- The worker functions
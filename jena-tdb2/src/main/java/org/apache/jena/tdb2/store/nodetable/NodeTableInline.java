@@ -18,6 +18,10 @@
 
 package org.apache.jena.tdb2.store.nodetable;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import org.apache.jena.graph.Node;
 import org.apache.jena.tdb2.store.NodeId;
 
@@ -65,6 +69,49 @@ public class NodeTableInline extends NodeTableWrapper
         return super.getNodeForNodeId(id);
     }
 
+    @Override
+    public List<NodeId> bulkNodeToNodeId(List<Node> nodes, boolean withAllocation)
+    {
+        // Inline, or from the wrapped table in one call.
+        List<NodeId> nodeIds = new ArrayList<>(nodes.size());
+        List<Node> others = new ArrayList<>();
+        for ( Node node : nodes ) {
+            NodeId nid = NodeId.inline(node);
+            nodeIds.add(nid);
+            if ( nid == null )
+                others.add(node);
+        }
+        if ( others.isEmpty() )
+            return nodeIds;
+        Iterator<NodeId> iter = super.bulkNodeToNodeId(others, withAllocation).iterator();
+        for ( int i = 0 ; i < nodeIds.size() ; i++ ) {
+            if ( nodeIds.get(i) == null )
+                nodeIds.set(i, iter.next());
+        }
+        return nodeIds;
+    }
+
+    @Override
+    public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds)
+    {
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        List<NodeId> others = new ArrayList<>();
+        for ( NodeId id : nodeIds ) {
+            Node n = NodeId.isAny(id) ? null : NodeId.extract(id);
+            nodes.add(n);
+            if ( n == null )
+                others.add(id);
+        }
+        if ( others.isEmpty() )
+            return nodes;
+        Iterator<Node> iter = super.bulkNodeIdToNode(others).iterator();
+        for ( int i = 0 ; i < nodes.size() ; i++ ) {
+            if ( nodes.get(i) == null )
+                nodes.set(i, iter.next());
+        }
+        return nodes;
+    }
+
     @Override
     public String toString() { return "Inline("+nodeTable.toString()+")"; }
 }
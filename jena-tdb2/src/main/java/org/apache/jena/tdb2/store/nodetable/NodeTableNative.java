@@ -18,8 +18,7 @@
 
 package org.apache.jena.tdb2.store.nodetable;
 
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.function.Function;
 
 import org.apache.jena.atlas.iterator.Iter;
@@ -74,12 +73,36 @@ public abstract class NodeTableNative implements NodeTable
 
     @Override
     public List<NodeId> bulkNodeToNodeId(List<Node> nodes, boolean withAllocation) {
-        return NodeTableOps.bulkNodeToNodeIdImpl(this, nodes, withAllocation);
+        // One pass of the index under the lock, each node once.
+        Map<Node, NodeId> found = new HashMap<>();
+        List<NodeId> nodeIds = new ArrayList<>(nodes.size());
+        synchronized (this) {
+            for ( Node node : nodes )
+                nodeIds.add(found.computeIfAbsent(node, n->_idForNode(n, withAllocation)));
+        }
+        return nodeIds;
     }
 
     @Override
     public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds) {
-        return NodeTableOps.bulkNodeIdToNodeImpl(this, nodeIds);
+        // Read each term once, in the order of the file.
+        Map<NodeId, Node> found = new HashMap<>();
+        List<NodeId> ids = new ArrayList<>();
+        for ( NodeId id : nodeIds ) {
+            if ( NodeId.isDoesNotExist(id) || NodeId.isAny(id) || found.containsKey(id) )
+                continue;
+            found.put(id, null);
+            ids.add(id);
+        }
+        ids.sort(Comparator.comparingLong(NodeId::getPtrLocation));
+        synchronized (this) {
+            for ( NodeId id : ids )
+                found.put(id, readNodeFromTable(id));
+        }
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        for ( NodeId id : nodeIds )
+            nodes.add(NodeId.isAny(id) ? null : found.get(id));
+        return nodes;
     }
 
     // ---- The worker functions
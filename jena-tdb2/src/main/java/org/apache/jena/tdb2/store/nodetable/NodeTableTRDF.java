@@ -92,6 +92,39 @@ public class NodeTableTRDF extends NodeTableNative {
         }
     }
 
+    /** Read the stored form of a term, without decoding it to a {@link Node}. */
+    public RDF_Term readTerm(NodeId id) {
+        synchronized(this) {
+            try {
+                transport.readPosition(id.getPtrLocation());
+                RDF_Term term = new RDF_Term();
+                term.read(protocol);
+                return term;
+            }
+            catch (TException ex) {
+                throw new TDBException("NodeTableTRDF/Read", ex);
+            }
+        }
+    }
+
+    /**
+     * Append the stored form of a term to the data file, and return its NodeId.
+     * The node to NodeId index is not updated: this is for copying node tables.
+     */
+    public NodeId writeTerm(RDF_Term term) {
+        synchronized(this) {
+            try {
+                NodeId nid = NodeIdFactory.createPtr(diskFile.length());
+                term.write(protocol);
+                return nid;
+            }
+            catch(TransactionException ex) { throw ex; }
+            catch (Exception ex) {
+                throw new TDBException("NodeTableThrift/Write", ex);
+            }
+        }
+    }
+
     @Override
     protected void syncSub() {
         try { transport.flush(); }
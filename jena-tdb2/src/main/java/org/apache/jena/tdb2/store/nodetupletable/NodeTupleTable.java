@@ -30,7 +30,8 @@ import org.apache.jena.tdb2.store.tupletable.TupleTable;
 
 public interface NodeTupleTable extends Sync, Closeable
 {
-    public void addRow(Node... nodes);
+    /** Add a row - return true if it was added, false if it already existed */
+    public boolean addRow(Node... nodes);
 
     public void deleteRow(Node... nodes);
 
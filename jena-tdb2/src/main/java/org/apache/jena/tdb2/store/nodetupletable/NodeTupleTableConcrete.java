@@ -67,7 +67,7 @@ public class NodeTupleTableConcrete implements NodeTupleTable
     private void finishRead()   { }
 
     @Override
-    public void addRow(Node... nodes)
+    public boolean addRow(Node... nodes)
     {
         try  {
             startWrite();
@@ -76,7 +76,7 @@ public class NodeTupleTableConcrete implements NodeTupleTable
                 n[i] = nodeTable.getAllocateNodeId(nodes[i]);
 
             Tuple<NodeId> t = TupleFactory.create(n);
-            tupleTable.add(t);
+            return tupleTable.add(t);
         } finally
         {
             finishWrite();
@@ -43,10 +43,10 @@ public class NodeTupleTableView extends NodeTupleTableWrapper
     }
 
     @Override
-    public void addRow(Node... nodes)
+    public boolean addRow(Node... nodes)
     {
         nodes = push(Node.class, prefix, nodes);
-        super.addRow(nodes);
+        return super.addRow(nodes);
     }
 
     @Override
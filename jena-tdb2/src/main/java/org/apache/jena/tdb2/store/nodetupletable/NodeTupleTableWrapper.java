@@ -41,8 +41,8 @@ public class NodeTupleTableWrapper implements NodeTupleTable
     }
 
     @Override
-    public void addRow(Node... nodes)
-    { nodeTupleTable.addRow(nodes); }
+    public boolean addRow(Node... nodes)
+    { return nodeTupleTable.addRow(nodes); }
 
     @Override
     public void deleteRow(Node... nodes)
@@ -29,8 +29,8 @@ import org.apache.jena.tdb2.store.NodeId;
 
 public interface TupleIndex extends Sync, Closeable
 {
-    /** Insert a tuple */
-    public void add(Tuple<NodeId> tuple);
+    /** Insert a tuple - return true if it was added, false if it already existed */
+    public boolean add(Tuple<NodeId> tuple);
 
     /** Delete a tuple */
     public void delete(Tuple<NodeId> tuple);
@@ -55,6 +55,20 @@ public interface TupleIndex extends Sync, Closeable
      */
     public Iterator<Tuple<NodeId>> find(Tuple<NodeId> pattern);
 
+    /**
+     * Find the tuples matching a pattern, in index order, starting from the first tuple
+     * with a value of the first unfixed slot (in index order) of {@code from} or later.
+     * {@code from} null means from the first match. The fixed slots of the pattern must
+     * be the leading slots of the index and there must be an unfixed slot; return null
+     * if they are not, or if the index can not start part way through the matches.
+     * <p>
+     * Tuples come in the order of
+     * {@link org.apache.jena.tdb2.store.NodeIdFactory#compareIndexOrder} of the first unfixed slot.
+     */
+    public default Iterator<Tuple<NodeId>> findFrom(Tuple<NodeId> pattern, NodeId from) {
+        return null;
+    }
+
     /** return an iterator of everything */
     public Iterator<Tuple<NodeId>> all();
 
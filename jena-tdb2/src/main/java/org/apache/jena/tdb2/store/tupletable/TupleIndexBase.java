@@ -47,7 +47,7 @@ public abstract class TupleIndexBase implements TupleIndex
     }
 
     /** Add tuple worker: Tuple passed in unmapped (untouched) order */
-    protected abstract void performAdd(Tuple<NodeId> tuple);
+    protected abstract boolean performAdd(Tuple<NodeId> tuple);
 
     /** Delete tuple worker: Tuple passed in unmapped (untouched) order */
     protected abstract void performDelete(Tuple<NodeId> tuple);
@@ -57,13 +57,13 @@ public abstract class TupleIndexBase implements TupleIndex
 
     /** Insert a tuple */
     @Override
-    public final void add(Tuple<NodeId> tuple)
+    public final boolean add(Tuple<NodeId> tuple)
     {
         if ( Check ) {
             if ( tupleLength != tuple.len() )
                 throw new TDBException(String.format("Mismatch: tuple length %d / index for length %d", tuple.len(), tupleLength));
         }
-        performAdd(tuple);
+        return performAdd(tuple);
     }
     /** Delete a tuple */
     @Override
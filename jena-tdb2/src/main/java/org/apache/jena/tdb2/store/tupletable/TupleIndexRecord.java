@@ -87,9 +87,9 @@ public class TupleIndexRecord extends TupleIndexBase
 
     /** Insert a tuple */
     @Override
-    protected void performAdd(Tuple<NodeId> tuple) {
+    protected boolean performAdd(Tuple<NodeId> tuple) {
         Record r = TupleLib.record(factory, tuple, tupleMap);
-        index.insert(r);
+        return index.insert(r);
     }
 
     /** Delete a tuple */
@@ -241,6 +241,37 @@ public class TupleIndexRecord extends TupleIndexBase
         return tuples;
     }
 
+    @Override
+    public Iterator<Tuple<NodeId>> findFrom(Tuple<NodeId> patternNaturalOrder, NodeId from) {
+        Tuple<NodeId> pattern = tupleMap.map(patternNaturalOrder);
+        // Leading fixed slots.
+        int numLeading = 0;
+        while ( numLeading < pattern.len() && ! NodeId.isAny(pattern.get(numLeading)) )
+            numLeading++;
+        if ( numLeading == pattern.len() )
+            return null;
+        for ( int i = numLeading+1 ; i < pattern.len() ; i++ ) {
+            if ( ! NodeId.isAny(pattern.get(i)) )
+                return null;
+        }
+        if ( numLeading == 0 && from == null )
+            return index.iterator(null, null, recordMapper);
+
+        Record minRec = factory.createKeyOnly();
+        Record maxRec = null;
+        for ( int i = 0 ; i < numLeading ; i++ )
+            NodeIdFactory.set(pattern.get(i), minRec.getKey(), i*SizeOfNodeId);
+        if ( numLeading > 0 ) {
+            // Leading NodeIds, +1, as findWorker.
+            maxRec = factory.createKeyOnly();
+            System.arraycopy(minRec.getKey(), 0, maxRec.getKey(), 0, numLeading*SizeOfNodeId);
+            NodeIdFactory.setNext(pattern.get(numLeading-1), maxRec.getKey(), (numLeading-1)*SizeOfNodeId);
+        }
+        if ( from != null )
+            NodeIdFactory.set(from, minRec.getKey(), numLeading*SizeOfNodeId);
+        return index.iterator(minRec, maxRec, recordMapper);
+    }
+
     @Override
     public Iterator<Tuple<NodeId>> all()
     {
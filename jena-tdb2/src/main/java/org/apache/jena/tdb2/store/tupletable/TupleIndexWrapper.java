@@ -37,8 +37,8 @@ public class TupleIndexWrapper implements TupleIndex
     }
 
     @Override
-    public void add(Tuple<NodeId> tuple) {
-        index.add(tuple);
+    public boolean add(Tuple<NodeId> tuple) {
+        return index.add(tuple);
     }
 
     @Override
@@ -61,6 +61,11 @@ public class TupleIndexWrapper implements TupleIndex
         return index.find(pattern);
     }
 
+    @Override
+    public Iterator<Tuple<NodeId>> findFrom(Tuple<NodeId> pattern, NodeId from) {
+        return index.findFrom(pattern, from);
+    }
+
     @Override
     public Iterator<Tuple<NodeId>> all() {
         return index.all();
@@ -84,17 +84,20 @@ public class TupleTable implements Sync, Closeable
         return indexes[0];
     }
 
-    /** Insert a tuple */
-    public void add(Tuple<NodeId> t) {
+    /** Insert a tuple - return true if it was added, false if it already existed */
+    public boolean add(Tuple<NodeId> t) {
         // A "contains test" could be used to avoid needing to hit all
         // the indexes when the triple is already present.
         if ( tupleLen != t.len() )
             throw new TDBException(format("Mismatch: inserting tuple of length %d into a table of tuples of length %d", t.len(), tupleLen));
+        boolean added = false;
         for ( int i = 0; i < indexes.length ; i++ ) {
             if ( indexes[i] == null ) continue;
-            indexes[i].add(t);
+            // The indexes hold the same tuples.
+            added |= indexes[i].add(t);
             syncNeeded = true;
         }
+        return added;
     }
 
     /** Insert tuples */
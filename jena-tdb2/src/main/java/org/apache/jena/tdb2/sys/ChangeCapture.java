@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.sys;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.io.IOX;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.rdfpatch.changes.RDFChangesBase;
+import org.apache.jena.rdfpatch.changes.RDFChangesCollector;
+import org.apache.jena.rdfpatch.text.RDFChangesWriterText;
+import org.apache.jena.rdfpatch.text.RDFPatchReaderText;
+
+/**
+ * The changes committed to a database while it is being compacted online.
+ * <p>
+ * The changes of each write transaction are collected as they are made, and written
+ * to a file, in RDF Patch text format, when the transaction commits, so in commit
+ * order. The changes of aborted transactions are dropped.
+ * <p>
+ * Each {@link #drain} starts a new file and returns the one written since the
+ * last call, so a long copy does not hold its changes in memory.
+ */
+class ChangeCapture extends RDFChangesBase implements TransactionListener {
+    private final TransactionalSystem txnSystem;
+    private final Path directory;
+    private final Map<Transaction, RDFChangesCollector> active = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    // The file of the transactions committed since the last drain.
+    private int fileCounter = 0;
+    private Path file;
+    private RDFChangesWriterText writer;
+    private int count;
+
+    /** Changes written to files in the directory. */
+    ChangeCapture(TransactionalSystem txnSystem, Path directory) {
+        this.txnSystem = txnSystem;
+        this.directory = directory;
+        startFile();
+    }
+
+    /** The changes of a number of committed transactions, in a file. */
+    record Changes(Path file, int count) {
+        /** Send the changes to an {@link RDFChanges}, then delete the file. */
+        void apply(RDFChanges changes) {
+            try ( InputStream input = IO.openFileBuffered(file.toString()) ) {
+                new RDFPatchReaderText(input).apply(changes);
+            } catch (IOException ex) {
+                throw IOX.exception(ex);
+            } finally {
+                delete();
+            }
+        }
+
+        void delete() {
+            try { Files.deleteIfExists(file); } catch (IOException ex) { throw IOX.exception(ex); }
+        }
+    }
+
+    /** The changes of the transactions committed since the last call. */
+    synchronized Changes drain() {
+        writer.finish();
+        writer.close();
+        Changes x = new Changes(file, count);
+        if ( ! closed )
+            startFile();
+        return x;
+    }
+
+    private void startFile() {
+        file = directory.resolve(String.format("compact-changes-%04d.rdfp", ++fileCounter));
+        OutputStream output;
+        try {
+            output = new BufferedOutputStream(Files.newOutputStream(file));
+        } catch (IOException ex) {
+            throw IOX.exception(ex);
+        }
+        writer = RDFPatchOps.textWriter(output);
+        writer.start();
+        count = 0;
+    }
+
+    /**
+     * Stop capturing. The coordinator may still call this listener.
+     * The changes since the last {@link #drain} are returned by the next call of it.
+     */
+    void close() {
+        closed = true;
+        active.clear();
+    }
+
+    /** Stop capturing and delete the file of changes not drained. */
+    synchronized void abandon() {
+        close();
+        try { writer.close(); } catch (Throwable th) { /* Continue. */ }
+        try { Files.deleteIfExists(file); } catch (IOException ex) { /* Continue. */ }
+    }
+
+    private RDFChangesCollector current() {
+        if ( closed )
+            return null;
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null )
+            return null;
+        return active.computeIfAbsent(txn, t->new RDFChangesCollector());
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        RDFChangesCollector c = current();
+        if ( c != null )
+            c.add(g, s, p, o);
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        RDFChangesCollector c = current();
+        if ( c != null )
+            c.delete(g, s, p, o);
+    }
+
+    @Override
+    public void addPrefix(Node gn, String prefix, String uriStr) {
+        RDFChangesCollector c = current();
+        if ( c != null )
+            c.addPrefix(gn, prefix, uriStr);
+    }
+
+    @Override
+    public void deletePrefix(Node gn, String prefix) {
+        RDFChangesCollector c = current();
+        if ( c != null )
+            c.deletePrefix(gn, prefix);
+    }
+
+    // Called before the writer lock is released, so in commit order.
+    @Override
+    public void notifyCommitFinish(Transaction transaction) {
+        RDFChangesCollector c = active.remove(transaction);
+        if ( c == null || closed )
+            return;
+        synchronized(this) {
+            c.getRDFPatch().apply(writer);
+            writer.finish();
+            count++;
+        }
+    }
+
+    @Override
+    public void notifyAbortStart(Transaction transaction) {
+        active.remove(transaction);
+    }
+
+    @Override
+    public void notifyTxnFinish(Transaction transaction) {
+        active.remove(transaction);
+    }
+}
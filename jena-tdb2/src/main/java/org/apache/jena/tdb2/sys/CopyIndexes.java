@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.sys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import org.apache.jena.atlas.AtlasException;
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.SerializationFactory;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.atlas.iterator.PeekIterator;
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.atlas.lib.Sink;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.dboe.base.record.RecordFactory;
+import org.apache.jena.dboe.index.Index;
+import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+import org.apache.jena.dboe.trans.bplustree.rewriter.BPlusTreeRewriter;
+import org.apache.jena.riot.thrift.wire.RDF_Term;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.StoragePrefixesTDB;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetable.NodeTableTRDF;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexWrapper;
+import org.apache.jena.tdb2.store.tupletable.TupleTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copy a TDB2 database into a new, empty, database with the same storage parameters,
+ * without decoding the RDF terms.
+ * <p>
+ * Only the live entries of a node table are copied: the terms used by the tuples of the
+ * tables that share it (triples and quads, or prefixes). Terms of deleted quads are
+ * reclaimed, as with {@link CopyDSG}. The NodeIds of the live terms are found from the
+ * tuple indexes, in the order of their positions in the node table, and each term is
+ * copied, in its stored form, to the end of the new node table. A NodeId is a position
+ * in the node table, so the new NodeIds are in the same order as the old ones.
+ * <p>
+ * Each B+Tree, node table indexes and tuple indexes, is then read in key order, the
+ * NodeIds remapped, and written with {@link BPlusTreeRewriter} as packed blocks, without
+ * the splits and copy-on-write blocks of inserting record by record. This is a
+ * sequential rewrite: remapping keeps the key order.
+ * <p>
+ * The map from old to new NodeIds is kept in memory, 16 bytes for each live term.
+ * <p>
+ * The destination must be expelled from the {@link StoreConnection} cache and reopened
+ * after the copy: its in-memory B+Tree objects are not updated by the rewrite.
+ */
+public class CopyIndexes {
+    private static Logger LOG = LoggerFactory.getLogger(CopyIndexes.class);
+
+    private static final int SizeOfNodeId = SystemTDB.SizeOfNodeId;
+
+    /**
+     * Number of node table positions of a table read as a whole, in {@link #allSlots},
+     * held in memory before they are sorted to disk.
+     */
+    static long SlotsInMemory = 1_000_000;
+
+    public static void copy(DatasetGraphTDB dsgSrc, DatasetGraphTDB dsgDst) {
+        Txn.executeRead(dsgSrc, ()->{
+            Txn.executeWrite(dsgDst, () -> {
+                // Triples and quads share a node table.
+                NodeTable nodesSrc = dsgSrc.getTripleTable().getNodeTupleTable().getNodeTable();
+                NodeTable nodesDst = dsgDst.getTripleTable().getNodeTupleTable().getNodeTable();
+                TupleTable triplesSrc = dsgSrc.getTripleTable().getNodeTupleTable().getTupleTable();
+                TupleTable quadsSrc = dsgSrc.getQuadTable().getNodeTupleTable().getTupleTable();
+                PositionMap map = copyNodeTable(nodesSrc, nodesDst, triplesSrc, quadsSrc);
+                copyTupleTable(triplesSrc, dsgDst.getTripleTable().getNodeTupleTable().getTupleTable(), map);
+                copyTupleTable(quadsSrc, dsgDst.getQuadTable().getNodeTupleTable().getTupleTable(), map);
+
+                StoragePrefixesTDB prefixesSrc = (StoragePrefixesTDB)dsgSrc.getStoragePrefixes();
+                StoragePrefixesTDB prefixesDst = (StoragePrefixesTDB)dsgDst.getStoragePrefixes();
+                TupleTable prefixTableSrc = prefixesSrc.getNodeTupleTable().getTupleTable();
+                PositionMap prefixMap = copyNodeTable(prefixesSrc.getNodeTupleTable().getNodeTable(),
+                                                      prefixesDst.getNodeTupleTable().getNodeTable(), prefixTableSrc);
+                copyTupleTable(prefixTableSrc, prefixesDst.getNodeTupleTable().getTupleTable(), prefixMap);
+            });
+        });
+    }
+
+    /**
+     * Copy the terms of a node table used by the tuple tables, then rebuild the node to
+     * NodeId index for them from the source index.
+     */
+    private static PositionMap copyNodeTable(NodeTable nodeTableSrc, NodeTable nodeTableDst, TupleTable... tables) {
+        NodeTableTRDF src = baseNodeTable(nodeTableSrc);
+        NodeTableTRDF dst = baseNodeTable(nodeTableDst);
+        if ( ! dst.getData().isEmpty() )
+            throw new TDBException("Copy: node table not empty");
+        PositionMap map = new PositionMap();
+        forEachLive(tables, posn->{
+            RDF_Term term = src.readTerm(NodeIdFactory.createPtr(posn));
+            NodeId id = dst.writeTerm(term);
+            map.add(posn, id.getPtrLocation());
+        });
+        dst.getData().sync();
+        long count = rewrite(src.getIndex(), dst.getIndex(), record->{
+            long posn = map.get(Bytes.getLong(record.getValue(), 0));
+            if ( posn < 0 )
+                // Not used.
+                return null;
+            byte[] value = new byte[SizeOfNodeId];
+            Bytes.setLong(posn, value, 0);
+            return dst.getIndex().getRecordFactory().create(record.getKey(), value);
+        });
+        if ( count != map.size() )
+            throw new TDBException("Copy: "+map.size()+" terms used but "+count+" in the node table index");
+        LOG.debug("Node table: {} of {} bytes, {} terms", dst.getData().length(), src.getData().length(), count);
+        return map;
+    }
+
+    private static void copyTupleTable(TupleTable tableSrc, TupleTable tableDst, PositionMap map) {
+        TupleIndex[] indexesSrc = tableSrc.getIndexes();
+        TupleIndex[] indexesDst = tableDst.getIndexes();
+        if ( indexesSrc.length != indexesDst.length )
+            throw new TDBException("Copy: different indexes: "+indexesSrc.length+" / "+indexesDst.length);
+        for ( int i = 0 ; i < indexesSrc.length ; i++ ) {
+            TupleIndexRecord src = baseTupleIndex(indexesSrc[i]);
+            TupleIndexRecord dst = baseTupleIndex(indexesDst[i]);
+            if ( ! src.getName().equals(dst.getName()) )
+                throw new TDBException("Copy: different indexes: "+src.getName()+" / "+dst.getName());
+            RecordFactory recordFactory = dst.getRangeIndex().getRecordFactory();
+            long count = rewrite(src.getRangeIndex(), dst.getRangeIndex(), record->{
+                byte[] key = record.getKey().clone();
+                for ( int j = 0 ; j < key.length ; j += SizeOfNodeId ) {
+                    long x = Bytes.getLong(key, j);
+                    if ( ! isPtr(x) )
+                        continue;
+                    long posn = map.get(x);
+                    if ( posn < 0 )
+                        throw new TDBException("Copy: index "+src.getName()+": NodeId not copied: "+x);
+                    Bytes.setLong(posn, key, j);
+                }
+                return recordFactory.create(key);
+            });
+            LOG.debug("Index {}: {} records", src.getName(), count);
+        }
+    }
+
+    /**
+     * Write the records of one B+Tree, in order, as the packed blocks of another, empty,
+     * one. The function may change the records, without changing their order, or drop
+     * them by returning null.
+     */
+    private static long rewrite(Index indexSrc, Index indexDst, Function<Record, Record> function) {
+        BPlusTree src = bplusTree(indexSrc);
+        BPlusTree dst = bplusTree(indexDst);
+        RecordFactory recordFactory = dst.getRecordFactory();
+        if ( src.getRecordFactory().keyLength() != recordFactory.keyLength()
+             || src.getRecordFactory().valueLength() != recordFactory.valueLength() )
+            throw new TDBException("Copy: different record formats: "+src.getRecordFactory()+" / "+recordFactory);
+        if ( ! dst.isEmpty() )
+            throw new TDBException("Copy: index not empty");
+        Iterator<Record> iter = src.iterator();
+        try {
+            long[] count = { 0 };
+            Iterator<Record> iter2 = Iter.removeNulls(Iter.map(iter, function));
+            iter2 = Iter.map(iter2, r->{ count[0]++; return r; });
+            BPlusTreeRewriter.packIntoBPlusTree(iter2, dst.getParams(), recordFactory,
+                                                dst.getStateManager().getBufferChannel(),
+                                                dst.getNodeManager().getBlockMgr(),
+                                                dst.getRecordsMgr().getBlockMgr());
+            return count[0];
+        } finally {
+            Iter.close(iter);
+        }
+    }
+
+    /**
+     * Call the action with the node table position of each term used by the tuple tables,
+     * once, in increasing order.
+     * <p>
+     * The leading slot of a tuple index is in order, so merging the leading slots of all
+     * the indexes gives the terms in order. A table with a slot that does not lead any of
+     * its indexes (prefixes) is read as a whole and sorted, spilling to disk when large.
+     */
+    private static void forEachLive(TupleTable[] tables, LongConsumer action) {
+        List<Iterator<Long>> streams = new ArrayList<>();
+        try {
+            for ( TupleTable table : tables ) {
+                boolean[] leading = new boolean[table.getTupleLen()];
+                for ( TupleIndex index : table.getIndexes() ) {
+                    TupleIndexRecord idx = baseTupleIndex(index);
+                    leading[idx.getMapping().mapIdx(0)] = true;
+                    Iterator<Long> iter = Iter.map(idx.getRangeIndex().iterator(), r->Bytes.getLong(r.getKey(), 0));
+                    streams.add(Iter.distinctAdjacent(Iter.filter(iter, CopyIndexes::isPtr)));
+                }
+                for ( boolean b : leading ) {
+                    if ( ! b ) {
+                        streams.add(allSlots(baseTupleIndex(table.getIndexes()[0])));
+                        break;
+                    }
+                }
+            }
+            PriorityQueue<PeekIterator<Long>> queue = new PriorityQueue<>((x1, x2)->Long.compare(x1.peek(), x2.peek()));
+            for ( Iterator<Long> iter : streams ) {
+                if ( iter.hasNext() )
+                    queue.add(PeekIterator.create(iter));
+            }
+            long last = -1;
+            while ( ! queue.isEmpty() ) {
+                PeekIterator<Long> iter = queue.poll();
+                long x = iter.next();
+                if ( x != last )
+                    action.accept(x);
+                last = x;
+                if ( iter.hasNext() )
+                    queue.add(iter);
+            }
+        } finally {
+            streams.forEach(Iter::close);
+        }
+    }
+
+    // All the node table positions in an index, in increasing order, once each.
+    // Closing the iterator deletes the bag's spill files.
+    private static Iterator<Long> allSlots(TupleIndexRecord index) {
+        DataBag<Long> positions = BagFactory.newSortedBag(ThresholdPolicyFactory.count(SlotsInMemory),
+                                                          longSerializationFactory, Long::compare);
+        Iterator<Record> iter = index.getRangeIndex().iterator();
+        try {
+            while ( iter.hasNext() ) {
+                byte[] key = iter.next().getKey();
+                for ( int j = 0 ; j < key.length ; j += SizeOfNodeId ) {
+                    long x = Bytes.getLong(key, j);
+                    if ( isPtr(x) )
+                        positions.add(x);
+                }
+            }
+        } catch (RuntimeException ex) {
+            positions.close();
+            throw ex;
+        } finally {
+            Iter.close(iter);
+        }
+        return Iter.onClose(Iter.distinctAdjacent(positions.iterator()), positions::close);
+    }
+
+    // Spill files of node table positions: a sequence of longs.
+    private static final SerializationFactory<Long> longSerializationFactory = new SerializationFactory<>() {
+        @Override
+        public Sink<Long> createSerializer(OutputStream out) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            return new Sink<>() {
+                @Override
+                public void send(Long item) {
+                    try { data.writeLong(item); } catch (IOException ex) { IO.exception(ex); }
+                }
+                @Override
+                public void flush() {
+                    IO.flush(data);
+                }
+                @Override
+                public void close() {
+                    IO.close(data);
+                }
+            };
+        }
+
+        @Override
+        public Iterator<Long> createDeserializer(InputStream in) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            return new IteratorSlotted<>() {
+                @Override
+                protected Long moveToNext() {
+                    try {
+                        return data.readLong();
+                    } catch (EOFException ex) {
+                        return null;
+                    } catch (IOException ex) {
+                        throw new AtlasException(ex);
+                    }
+                }
+                @Override
+                protected boolean hasMore() {
+                    return true;
+                }
+                @Override
+                protected void closeIterator() {
+                    IO.close(data);
+                }
+            };
+        }
+    };
+
+    // Whether an encoded NodeId is a position in the node table, not an inline value.
+    private static boolean isPtr(long x) {
+        return x >= 0;
+    }
+
+    /** Map of node table positions, added in increasing order, to their positions in the copy. */
+    private static class PositionMap {
+        private long[] from = new long[1024];
+        private long[] to = new long[1024];
+        private int size = 0;
+
+        void add(long x, long y) {
+            if ( size == from.length ) {
+                if ( size > Integer.MAX_VALUE/2 )
+                    throw new TDBException("Copy: too many terms: "+size);
+                from = Arrays.copyOf(from, size*2);
+                to = Arrays.copyOf(to, size*2);
+            }
+            from[size] = x;
+            to[size] = y;
+            size++;
+        }
+
+        /** The position in the copy, or -1 if the term was not copied. */
+        long get(long x) {
+            int i = Arrays.binarySearch(from, 0, size, x);
+            return ( i < 0 ) ? -1 : to[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static NodeTableTRDF baseNodeTable(NodeTable nodeTable) {
+        NodeTable nt = nodeTable.baseNodeTable();
+        if ( ! ( nt instanceof NodeTableTRDF ) )
+            throw new TDBException("Copy: not a TDB2 node table: "+nt.getClass().getSimpleName());
+        return (NodeTableTRDF)nt;
+    }
+
+    private static TupleIndexRecord baseTupleIndex(TupleIndex index) {
+        TupleIndex idx = index;
+        while ( idx instanceof TupleIndexWrapper )
+            idx = ((TupleIndexWrapper)idx).wrapped();
+        if ( ! ( idx instanceof TupleIndexRecord ) )
+            throw new TDBException("Copy: not a B+Tree index: "+index.getName());
+        return (TupleIndexRecord)idx;
+    }
+
+    private static BPlusTree bplusTree(Index index) {
+        if ( ! ( index instanceof BPlusTree ) )
+            throw new TDBException("Copy: not a B+Tree: "+index.getClass().getSimpleName());
+        return (BPlusTree)index;
+    }
+}
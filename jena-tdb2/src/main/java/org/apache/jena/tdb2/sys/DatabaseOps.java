@@ -42,7 +42,10 @@ import org.apache.jena.dboe.base.file.Location;
 import org.apache.jena.dboe.sys.IO_DB;
 import org.apache.jena.dboe.sys.Names;
 import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.graph.Node;
 import org.apache.jena.query.ARQ;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.changes.RDFChangesApply;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.sparql.core.DatasetGraph;
@@ -57,6 +60,8 @@ import org.apache.jena.tdb2.params.StoreParamsCodec;
 import org.apache.jena.tdb2.params.StoreParamsFactory;
 import org.apache.jena.tdb2.store.DatasetGraphSwitchable;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.StoragePrefixesTDB;
+import org.apache.jena.tdb2.store.StorageTDB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -309,6 +314,25 @@ public class DatabaseOps {
     }
 
     public static void compact(DatasetGraphSwitchable container, boolean shouldDeleteOld) {
+        compact(container, shouldDeleteOld, false);
+    }
+
+    /**
+     * Compact, allowing write transactions while the database is copied.
+     * <p>
+     * The changes of the write transactions committed during the copy are recorded
+     * and then applied to the new database, while writers continue. Writers are held up
+     * only for the last of these changes and the switch to the new database.
+     * <p>
+     * Changes made by bulk loaders that write to the indexes directly are not recorded:
+     * do not load this way during an online compaction.
+     * On MS Windows, this is {@link #compact(DatasetGraphSwitchable, boolean)}.
+     */
+    public static void compactOnline(DatasetGraphSwitchable container, boolean shouldDeleteOld) {
+        compact(container, shouldDeleteOld, true);
+    }
+
+    private static void compact(DatasetGraphSwitchable container, boolean shouldDeleteOld, boolean online) {
         if ( Sys.isWindows) {
             // Windows does not support Files.move when the directory contains memory mapped files.
             // https://github.com/apache/jena/issues/2315
@@ -356,7 +380,10 @@ public class DatabaseOps {
             Location loc2tmp = Location.create(tmpDir);
 
             try {
-                compaction(container, loc1, loc2tmp, db2);
+                if ( online )
+                    compactionOnline(container, loc1, loc2tmp, db2);
+                else
+                    compaction(container, loc1, loc2tmp, db2);
                 // Container now using the new location.
             } catch (RuntimeIOException ex) {
                 // Clear up - disk problems.
@@ -387,24 +414,7 @@ public class DatabaseOps {
 
     /** Copy the latest version from one location to another. */
     private static void compaction(DatasetGraphSwitchable container, Location loc1, Location loc2tmp, Path path2final) {
-        if ( loc1.isMem() || loc2tmp.isMem() )
-            throw new TDBException("Compact involves a memory location: "+loc1+" : "+loc2tmp);
-
-        StoreConnection srcConn = StoreConnection.connectExisting(loc1);
-
-        if ( srcConn == null )
-            throw new TDBException("No database at location : "+loc1);
-        if ( ! ( container.get() instanceof DatasetGraphTDB ) )
-            throw new TDBException("Not a TDB2 database in DatasetGraphSwitchable");
-
-        DatasetGraphTDB dsgCurrent = (DatasetGraphTDB)container.get();
-        if ( ! dsgCurrent.getLocation().equals(loc1) )
-            throw new TDBException("Inconsistent locations for base : "+dsgCurrent.getLocation()+" , "+dsgCurrent.getLocation());
-
-        DatasetGraphTDB dsgBase = srcConn.getDatasetGraphTDB();
-        if ( dsgBase != dsgCurrent )
-            throw new TDBException("Inconsistent datasets : "+dsgCurrent.getLocation()+" , "+dsgBase.getLocation());
-
+        DatasetGraphTDB dsgBase = sourceDatabase(container, loc1, loc2tmp);
         TransactionCoordinator txnMgr1 = dsgBase.getTxnSystem().getTxnMgr();
 
         // -- Stop updates.
@@ -419,53 +429,11 @@ public class DatabaseOps {
         container.execReadOnlyDatabase(()->{
             // No active writers or promote transactions on the current database.
             // These are held up on a lock in the switchable container.
-
-            // -- Copy the current state to the new area.
-            copyConfigFiles(loc1, loc2tmp);
-
-            // -- Copy to temporary area so that if the copy is interrupted
-            // (e.g. the server exits mid-copy) the restart does choose the
-            // directory as the data storage.
-
-            DatasetGraphTDB dsgTmpCompact = StoreConnection.connectCreate(loc2tmp).getDatasetGraphTDB();
-            CopyDSG.copy(dsgBase, dsgTmpCompact);
-            StoreConnection.internalExpel(loc2tmp, true);
-            // Now on-disk in tmp location.
-
-            moveDirectory(loc2tmp, path2final);
-            Location loc2final = Location.create(path2final);   // Location must exist.
-
-            // Next generation storage datasetGraph.
-            DatasetGraphTDB dsgCompact = StoreConnection.connectCreate(loc2final).getDatasetGraphTDB();
-
-            // -- Switch
-            // Update TransactionCoordinator and switch over.
-            TransactionCoordinator txnMgr2 = dsgCompact.getTxnSystem().getTxnMgr();
-            txnMgr2.execExclusive(()->{
-                // No active transactions in either database.
-                txnMgr2.takeOverFrom(txnMgr1);
-
-                // Copy over external transaction components.
-                txnMgr2.modifyConfigDirect(()-> {
-                    txnMgr1.listExternals().forEach(txnMgr2::addExternal);
-                    // External listeners?
-                    // (the NodeTableCache listener is not external)
-                });
-
-                // No transactions on new database 2 (not exposed yet).
-                // No writers or promote transactions on database 1.
-                // Maybe old readers on database 1.
-                // -- Switch.
-                if ( ! container.change(dsgCurrent, dsgCompact) ) {
-                    Log.warn(DatabaseOps.class, "Inconsistent: old datasetgraph not as expected");
-                    container.set(dsgCompact);
-                }
-                // The compacted database is now active
-            });
+            DatasetGraphTDB dsgCompact = copyDatabase(dsgBase, loc1, loc2tmp, path2final);
+            switchDatabase(container, dsgBase, dsgCompact);
             // New database running.
             // New transactions go to this database.
             // Old readers continue on db1.
-
         });
 
         // This switches off the source database.
@@ -477,6 +445,172 @@ public class DatabaseOps {
         StoreConnection.release(dsgBase.getLocation());
     }
 
+    // Rounds of applying changes while writers continue, before holding writers up.
+    private static final int catchUpRounds  = 5;
+    // Number of patches that is left to apply with writers held up.
+    private static final int catchUpTail    = 10;
+
+    /**
+     * Copy the latest version from one location to another, while writers continue
+     * on the current database, then apply the changes they made to the copy.
+     */
+    private static void compactionOnline(DatasetGraphSwitchable container, Location loc1, Location loc2tmp, Path path2final) {
+        DatasetGraphTDB dsgBase = sourceDatabase(container, loc1, loc2tmp);
+        TransactionCoordinator txnMgr1 = dsgBase.getTxnSystem().getTxnMgr();
+        StorageTDB storage = dsgBase.getStorageTDB();
+        StoragePrefixesTDB prefixes = (StoragePrefixesTDB)dsgBase.getStoragePrefixes();
+
+        // -- Record changes.
+        // Exclusive mode waits for the active transactions to finish, so every write
+        // transaction that commits after this is recorded from its start.
+        // The changes are kept in files in the directory of the current database.
+        ChangeCapture capture = new ChangeCapture(dsgBase.getTxnSystem(), IO_DB.asPath(loc1));
+        txnMgr1.modifyConfig(()->{
+            txnMgr1.addListener(capture);
+            storage.setChangeMonitor(capture);
+            prefixes.setChangeMonitor(capture);
+        });
+        Runnable stopCapture = ()->{
+            storage.setChangeMonitor(null);
+            prefixes.setChangeMonitor(null);
+            capture.close();
+        };
+        Runnable abandonCapture = ()->{
+            storage.setChangeMonitor(null);
+            prefixes.setChangeMonitor(null);
+            capture.abandon();
+        };
+
+        try {
+            // -- Copy, with writers running.
+            // The copy is a read transaction: it sees the database at its start, and
+            // every later commit is in the changes. Applying a change again is harmless.
+            DatasetGraphTDB dsgCompact = copyDatabase(dsgBase, loc1, loc2tmp, path2final);
+
+            // -- Catch up, with writers running.
+            for ( int i = 0 ; i < catchUpRounds ; i++ ) {
+                int n = applyChanges(capture.drain(), dsgCompact);
+                LOG.debug("Compact: applied {} transactions", n);
+                if ( n <= catchUpTail )
+                    break;
+            }
+
+            // -- Catch up the rest and switch, with writers held up.
+            container.execReadOnlyDatabase(()->{
+                // No active writers or promote transactions on the current database.
+                stopCapture.run();
+                applyChanges(capture.drain(), dsgCompact);
+                switchDatabase(container, dsgBase, dsgCompact);
+            });
+        } catch (Throwable th) {
+            abandonCapture.run();
+            try { txnMgr1.modifyConfig(()->txnMgr1.removeListener(capture)); } catch (Throwable th2) { /* Continue with original error. */ }
+            throw th;
+        }
+
+        // The listener is left on the old database which is no longer in use.
+        txnMgr1.startExclusiveMode();
+        StoreConnection.release(dsgBase.getLocation());
+    }
+
+    /**
+     * Apply the changes, as one write transaction, returning the number of transactions
+     * they come from. The file of the changes is deleted.
+     */
+    private static int applyChanges(ChangeCapture.Changes changes, DatasetGraphTDB dsg) {
+        if ( changes.count() == 0 ) {
+            changes.delete();
+            return 0;
+        }
+        StoragePrefixesTDB prefixes = (StoragePrefixesTDB)dsg.getStoragePrefixes();
+        // Prefixes are recorded with the graph name of the prefixes storage.
+        RDFChanges apply = new RDFChangesApply(dsg) {
+            @Override
+            public void addPrefix(Node gn, String prefix, String uriStr) {
+                prefixes.add(gn, prefix, uriStr);
+            }
+
+            @Override
+            public void deletePrefix(Node gn, String prefix) {
+                prefixes.delete(gn, prefix);
+            }
+        };
+        Txn.executeWrite(dsg, ()->changes.apply(apply));
+        return changes.count();
+    }
+
+    /** Check the container and the source location; return the source database. */
+    private static DatasetGraphTDB sourceDatabase(DatasetGraphSwitchable container, Location loc1, Location loc2tmp) {
+        if ( loc1.isMem() || loc2tmp.isMem() )
+            throw new TDBException("Compact involves a memory location: "+loc1+" : "+loc2tmp);
+
+        StoreConnection srcConn = StoreConnection.connectExisting(loc1);
+
+        if ( srcConn == null )
+            throw new TDBException("No database at location : "+loc1);
+        if ( ! ( container.get() instanceof DatasetGraphTDB ) )
+            throw new TDBException("Not a TDB2 database in DatasetGraphSwitchable");
+
+        DatasetGraphTDB dsgCurrent = (DatasetGraphTDB)container.get();
+        if ( ! dsgCurrent.getLocation().equals(loc1) )
+            throw new TDBException("Inconsistent locations for base : "+dsgCurrent.getLocation()+" , "+dsgCurrent.getLocation());
+
+        DatasetGraphTDB dsgBase = srcConn.getDatasetGraphTDB();
+        if ( dsgBase != dsgCurrent )
+            throw new TDBException("Inconsistent datasets : "+dsgCurrent.getLocation()+" , "+dsgBase.getLocation());
+        return dsgBase;
+    }
+
+    /** Copy the database to the temporary area, move it into place and connect to it. */
+    private static DatasetGraphTDB copyDatabase(DatasetGraphTDB dsgBase, Location loc1, Location loc2tmp, Path path2final) {
+        // -- Copy the current state to the new area.
+        copyConfigFiles(loc1, loc2tmp);
+
+        // -- Copy to temporary area so that if the copy is interrupted
+        // (e.g. the server exits mid-copy) the restart does choose the
+        // directory as the data storage.
+
+        DatasetGraphTDB dsgTmpCompact = StoreConnection.connectCreate(loc2tmp).getDatasetGraphTDB();
+        CopyIndexes.copy(dsgBase, dsgTmpCompact);
+        StoreConnection.internalExpel(loc2tmp, true);
+        // Now on-disk in tmp location.
+
+        moveDirectory(loc2tmp, path2final);
+        Location loc2final = Location.create(path2final);   // Location must exist.
+
+        // Next generation storage datasetGraph.
+        return StoreConnection.connectCreate(loc2final).getDatasetGraphTDB();
+    }
+
+    /** Switch the container to the compacted database. Call with writers held up. */
+    private static void switchDatabase(DatasetGraphSwitchable container, DatasetGraphTDB dsgCurrent, DatasetGraphTDB dsgCompact) {
+        TransactionCoordinator txnMgr1 = dsgCurrent.getTxnSystem().getTxnMgr();
+        // -- Switch
+        // Update TransactionCoordinator and switch over.
+        TransactionCoordinator txnMgr2 = dsgCompact.getTxnSystem().getTxnMgr();
+        txnMgr2.execExclusive(()->{
+            // No active transactions in either database.
+            txnMgr2.takeOverFrom(txnMgr1);
+
+            // Copy over external transaction components.
+            txnMgr2.modifyConfigDirect(()-> {
+                txnMgr1.listExternals().forEach(txnMgr2::addExternal);
+                // External listeners?
+                // (the NodeTableCache listener is not external)
+            });
+
+            // No transactions on new database 2 (not exposed yet).
+            // No writers or promote transactions on database 1.
+            // Maybe old readers on database 1.
+            // -- Switch.
+            if ( ! container.change(dsgCurrent, dsgCompact) ) {
+                Log.warn(DatabaseOps.class, "Inconsistent: old datasetgraph not as expected");
+                container.set(dsgCompact);
+            }
+            // The compacted database is now active
+        });
+    }
+
     private static void moveDirectory(Location locTmp, Path pathDst) {
         Path pathSrc = IO_DB.asPath(locTmp);
         try {
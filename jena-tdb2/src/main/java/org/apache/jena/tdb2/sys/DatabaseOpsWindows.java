@@ -177,8 +177,11 @@ class DatabaseOpsWindows {
 
             // -- Copy the current state to the new area.
             copyConfigFiles(loc1, loc2);
+            DatasetGraphTDB dsgTmpCompact = StoreConnection.connectCreate(loc2).getDatasetGraphTDB();
+            CopyIndexes.copy(dsgBase, dsgTmpCompact);
+            // Reopen: the copy bypasses the in-memory index structures.
+            StoreConnection.internalExpel(loc2, true);
             DatasetGraphTDB dsgCompact = StoreConnection.connectCreate(loc2).getDatasetGraphTDB();
-            CopyDSG.copy(dsgBase, dsgCompact);
 
             if ( false ) {
                 // DEVELOMENT. FAke a long copy time in state copy.
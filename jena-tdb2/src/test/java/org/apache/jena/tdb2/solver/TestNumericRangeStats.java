@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.atlas.lib.PairOfSameType;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.Syntax;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.join.Distances;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.solver.stats.NumericRangeStats;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.Test;
+
+public class TestNumericRangeStats {
+    static Node p = NodeFactory.createURI("http://example/p");
+    static Node q = NodeFactory.createURI("http://example/q");
+
+    private static DatasetGraph create() {
+        return create(false);
+    }
+
+    // With statistics maintained across commits, if enabled when the database is built.
+    private static DatasetGraph create(boolean maintained) {
+        DatasetGraph dsg;
+        ARQ.getContext().set(ARQ.simJoinUseStatistics, maintained);
+        try {
+            dsg = TL.createTestDatasetGraphMem();
+        } finally {
+            ARQ.getContext().unset(ARQ.simJoinUseStatistics);
+        }
+        assertEquals(maintained, TDBInternal.getDatasetGraphTDB(dsg).getNumericRangeStats().isMaintained());
+        Txn.executeWrite(dsg, () -> {
+            dsg.add(SSE.parseQuad("(_ <http://example/s1> <http://example/p> 3)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s2> <http://example/p> -1.5)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s3> <http://example/p> 'x')"));
+            dsg.add(SSE.parseQuad("(<http://example/g> <http://example/s4> <http://example/p> 12345678901234567890)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s1> <http://example/q> <http://example/o>)"));
+        });
+        return dsg;
+    }
+
+    @Test
+    public void range_01() {
+        DatasetGraph dsg = create();
+        NumericRangeStats stats = TDBInternal.getDatasetGraphTDB(dsg).getNumericRangeStats();
+        Txn.executeRead(dsg, () -> {
+            // Triples and quads; the big integer is not inline.
+            PairOfSameType<Number> range = stats.range(p);
+            assertEquals(-1.5, range.getLeft().doubleValue(), 0);
+            assertEquals(12345678901234567890.0, range.getRight().doubleValue(), 1);
+            assertEquals(4, stats.count(p));
+        });
+    }
+
+    @Test
+    public void range_02() {
+        DatasetGraph dsg = create();
+        NumericRangeStats stats = TDBInternal.getDatasetGraphTDB(dsg).getNumericRangeStats();
+        Txn.executeRead(dsg, () -> {
+            // No numbers.
+            assertNull(stats.range(q));
+            assertEquals(1, stats.count(q));
+            // No such predicate.
+            assertNull(stats.range(NodeFactory.createURI("http://example/r")));
+            assertEquals(0, stats.count(NodeFactory.createURI("http://example/r")));
+        });
+    }
+
+    @Test
+    public void range_03() {
+        // Recomputed for a new version of the data.
+        DatasetGraph dsg = create();
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(-1.5, dsgtdb.getNumericRangeStats().range(p).getLeft().doubleValue(), 0));
+        Txn.executeWrite(dsg, () -> dsg.add(SSE.parseQuad("(_ <http://example/s5> <http://example/p> -10)")));
+        Txn.executeRead(dsg, () -> {
+            assertEquals(-10, dsgtdb.getNumericRangeStats().range(p).getLeft().doubleValue(), 0);
+            assertEquals(5, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    private static double min(DatasetGraphTDB dsg, Node predicate) {
+        return dsg.getNumericRangeStats().range(predicate).getLeft().doubleValue();
+    }
+
+    @Test
+    public void range_04() {
+        // Widened by the additions of a commit; a quad already present is not counted again.
+        DatasetGraph dsg = create(true);
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(4, dsgtdb.getNumericRangeStats().count(p)));
+        Txn.executeWrite(dsg, () -> {
+            dsg.add(SSE.parseQuad("(_ <http://example/s5> <http://example/p> -10)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s1> <http://example/p> 3)"));
+        });
+        Txn.executeRead(dsg, () -> {
+            assertEquals(-10, min(dsgtdb, p), 0);
+            assertEquals(5, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    @Test
+    public void range_05() {
+        // Computed again after a deletion.
+        DatasetGraph dsg = create(true);
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(-1.5, min(dsgtdb, p), 0));
+        Txn.executeWrite(dsg, () -> dsg.delete(SSE.parseQuad("(_ <http://example/s2> <http://example/p> -1.5)")));
+        Txn.executeRead(dsg, () -> {
+            assertEquals(3, min(dsgtdb, p), 0);
+            assertEquals(3, dsgtdb.getNumericRangeStats().count(p));
+        });
+        Txn.executeWrite(dsg, () -> dsg.deleteAny(Node.ANY, Node.ANY, p, Node.ANY));
+        Txn.executeRead(dsg, () -> {
+            assertNull(dsgtdb.getNumericRangeStats().range(p));
+            assertEquals(0, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    @Test
+    public void range_06() {
+        // A write transaction sees its own changes; an abort leaves the committed ranges.
+        DatasetGraph dsg = create(true);
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(-1.5, min(dsgtdb, p), 0));
+        dsg.begin(ReadWrite.WRITE);
+        try {
+            assertEquals(-1.5, min(dsgtdb, p), 0);
+            dsg.add(SSE.parseQuad("(_ <http://example/s5> <http://example/p> -20)"));
+            assertEquals(-20, min(dsgtdb, p), 0);
+            assertEquals(5, dsgtdb.getNumericRangeStats().count(p));
+            dsg.delete(SSE.parseQuad("(_ <http://example/s5> <http://example/p> -20)"));
+            assertEquals(-1.5, min(dsgtdb, p), 0);
+            dsg.add(SSE.parseQuad("(_ <http://example/s6> <http://example/p> -30)"));
+            assertEquals(-30, min(dsgtdb, p), 0);
+        } finally {
+            dsg.abort();
+            dsg.end();
+        }
+        Txn.executeRead(dsg, () -> {
+            assertEquals(-1.5, min(dsgtdb, p), 0);
+            assertEquals(4, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    @Test
+    public void range_07() {
+        // Written to the tuple table directly, as a bulk loader does: computed again.
+        DatasetGraph dsg = create(true);
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(-1.5, min(dsgtdb, p), 0));
+        Txn.executeWrite(dsg, () -> dsgtdb.getTripleTable().getNodeTupleTable()
+                         .addRow(NodeFactory.createURI("http://example/s7"), p, SSE.parseNode("-40")));
+        Txn.executeRead(dsg, () -> {
+            assertEquals(-40, min(dsgtdb, p), 0);
+            assertEquals(5, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    @Test
+    public void range_08() {
+        // Not maintained: computed again for a new version, and in a write transaction.
+        DatasetGraph dsg = create(false);
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Txn.executeRead(dsg, () -> assertEquals(-1.5, min(dsgtdb, p), 0));
+        Txn.executeWrite(dsg, () -> {
+            dsg.add(SSE.parseQuad("(_ <http://example/s5> <http://example/p> -20)"));
+            assertEquals(-20, min(dsgtdb, p), 0);
+        });
+        Txn.executeRead(dsg, () -> {
+            assertEquals(-20, min(dsgtdb, p), 0);
+            assertEquals(5, dsgtdb.getNumericRangeStats().count(p));
+        });
+    }
+
+    private static List<String> simjoin(DatasetGraph dsg, String pattern, boolean useStatistics) {
+        String qs = String.join("\n"
+            , "PREFIX : <http://example/>"
+            , "PREFIX sim: <" + Distances.NS + ">"
+            , "SELECT ?a ?b ?d {"
+            , "  ?a " + pattern + " :x ?x1 ."
+            , "  SIMILARITY JOIN ON (?x1) (?x2) TOP 2 DISTANCE sim:manhattan AS ?d"
+            , "  { ?b " + pattern + " :x ?x2 . }"
+            , "}");
+        Query query = QueryFactory.create(qs, Syntax.syntaxSPARQL_11_sim);
+        List<String> results = new ArrayList<>();
+        Txn.executeRead(dsg, () -> {
+            QueryExec.dataset(dsg).query(query).set(ARQ.simJoinUseStatistics, useStatistics).select()
+                .forEachRemaining(b -> results.add(b.get("a") + " " + b.get("b") + " " + b.get("d").getLiteralLexicalForm()));
+        });
+        Collections.sort(results);
+        return results;
+    }
+
+    private static DatasetGraph points() {
+        DatasetGraph dsg = TL.createTestDatasetGraphMem();
+        Txn.executeWrite(dsg, () -> {
+            for ( int i = 0 ; i < 20 ; i++ ) {
+                dsg.add(SSE.parseQuad("(_ <http://example/s" + i + "> <http://example/x> " + (i * i % 17) + ")"));
+                if ( i % 2 == 0 )
+                    dsg.add(SSE.parseQuad("(_ <http://example/s" + i + "> <http://example/tag> 'even')"));
+            }
+            // Outside the range of the tagged subjects.
+            dsg.add(SSE.parseQuad("(_ <http://example/s20> <http://example/x> 100)"));
+        });
+        return dsg;
+    }
+
+    @Test
+    public void simjoin_statistics_01() {
+        // The join inputs are the whole predicate: same ranges.
+        DatasetGraph dsg = points();
+        List<String> expected = simjoin(dsg, "", false);
+        assertEquals(42, expected.size());
+        assertEquals(expected, simjoin(dsg, "", true));
+    }
+
+    @Test
+    public void simjoin_statistics_02() {
+        // Normalised by the range of :x over the dataset, not over the tagged subjects.
+        DatasetGraph dsg = points();
+        List<String> expected = simjoin(dsg, ":tag 'even' ;", false);
+        List<String> actual = simjoin(dsg, ":tag 'even' ;", true);
+        assertEquals(20, actual.size());
+        assertNotEquals(expected, actual);
+    }
+}
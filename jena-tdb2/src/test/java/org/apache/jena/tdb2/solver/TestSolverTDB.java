@@ -18,14 +18,19 @@
 
 package org.apache.jena.tdb2.solver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.riot.RDFDataMgr;
@@ -34,15 +39,20 @@ import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.apache.jena.sparql.algebra.Algebra;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.exec.RowSet;
 import org.apache.jena.sparql.exec.RowSetOps;
 import org.apache.jena.sparql.exec.RowSetRewindable;
 import org.apache.jena.sparql.resultset.ResultSetCompare;
 import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.ConfigTest;
+import org.apache.jena.tdb2.DatabaseMgr;
 import org.apache.jena.tdb2.junit.TL;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -127,6 +137,193 @@ public class TestSolverTDB {
         rs1.materialize();
     }
 
+    @Test
+    public void solve_batch_01() {
+        // More rows than a batch of BindingTDB: same results as the in-memory dataset.
+        DatasetGraph dsgTDB = DatabaseMgr.createDatasetGraph();
+        DatasetGraph dsgMem = DatasetGraphFactory.createTxnMem();
+        Node p = NodeFactory.createURI("http://example/p");
+        Node q = NodeFactory.createURI("http://example/q");
+        for ( DatasetGraph dsg : List.of(dsgTDB, dsgMem) ) {
+            Txn.executeWrite(dsg, ()->{
+                for ( int i = 0 ; i < 3000 ; i++ ) {
+                    Node s = NodeFactory.createURI("http://example/s" + i);
+                    dsg.getDefaultGraph().add(s, p, NodeFactory.createLiteralString("o" + (i % 500)));
+                    if ( i % 2 == 0 )
+                        dsg.getDefaultGraph().add(s, q, NodeFactory.createLiteralDT(Integer.toString(i), XSDDatatype.XSDinteger));
+                }
+            });
+        }
+        String x = "(bgp (?s <http://example/p> ?o) (?s <http://example/q> ?n))";
+        assertEquals(rows(dsgMem, x), rows(dsgTDB, x));
+        // Project one variable.
+        String y = "(project (?o) (bgp (?s <http://example/p> ?o)))";
+        assertEquals(rows(dsgMem, y), rows(dsgTDB, y));
+        // A constant not in the data.
+        String z = "(bgp (?s <http://example/p> 'absent'))";
+        assertEquals(0, rows(dsgTDB, z).size());
+    }
+
+    @Test
+    public void solve_batch_02() {
+        // Rows kept after the iterator has moved past their batch, and after it has
+        // finished: the batches have been released and the nodes are looked up one at a time.
+        DatasetGraph dsgTDB = DatabaseMgr.createDatasetGraph();
+        DatasetGraph dsgMem = DatasetGraphFactory.createTxnMem();
+        Node p = NodeFactory.createURI("http://example/p");
+        for ( DatasetGraph dsg : List.of(dsgTDB, dsgMem) ) {
+            Txn.executeWrite(dsg, ()->{
+                for ( int i = 0 ; i < 3000 ; i++ )
+                    dsg.getDefaultGraph().add(NodeFactory.createURI("http://example/s" + i), p, NodeFactory.createLiteralString("o" + i));
+            });
+        }
+        String x = "(bgp (?s <http://example/p> ?o))";
+        Op op = SSE.parseOp(x);
+        Map<Binding, Integer> rows = Txn.calculateRead(dsgTDB, ()->{
+            List<Binding> kept = new ArrayList<>();
+            Algebra.exec(op, dsgTDB).forEachRemaining(kept::add);
+            Map<Binding, Integer> r = new HashMap<>();
+            kept.forEach(b->r.merge(BindingFactory.copy(b), 1, Integer::sum));
+            return r;
+        });
+        assertEquals(rows(dsgMem, x), rows);
+    }
+
+    // Rows of NodeIds through projection, DISTINCT, GROUP BY, filters and joins:
+    // same results as the in-memory dataset.
+    private static DatasetGraph[] idsData() {
+        DatasetGraph dsgTDB = DatabaseMgr.createDatasetGraph();
+        DatasetGraph dsgMem = DatasetGraphFactory.createTxnMem();
+        Node p = NodeFactory.createURI("http://example/p");
+        Node q = NodeFactory.createURI("http://example/q");
+        Node r = NodeFactory.createURI("http://example/r");
+        Node r2 = NodeFactory.createURI("http://example/r2");
+        for ( DatasetGraph dsg : List.of(dsgTDB, dsgMem) ) {
+            Txn.executeWrite(dsg, ()->{
+                Graph g = dsg.getDefaultGraph();
+                for ( int i = 0 ; i < 3000 ; i++ ) {
+                    Node s = NodeFactory.createURI("http://example/s" + i);
+                    g.add(s, p, NodeFactory.createLiteralString("o" + (i % 500)));
+                    if ( i % 2 == 0 )
+                        g.add(s, q, NodeFactory.createLiteralDT(Integer.toString(i % 100), XSDDatatype.XSDinteger));
+                    if ( i % 3 == 0 ) {
+                        g.add(s, r, NodeFactory.createURI("http://example/c" + (i % 10)));
+                        g.add(s, r2, NodeFactory.createURI("http://example/c" + (i % 7)));
+                    }
+                }
+            });
+        }
+        return new DatasetGraph[] {dsgTDB, dsgMem};
+    }
+
+    private static void sameRows(DatasetGraph[] dsgs, String pattern) {
+        Map<Binding, Integer> rows = rows(dsgs[0], pattern);
+        assertEquals(pattern, rows(dsgs[1], pattern), rows);
+    }
+
+    @Test
+    public void solve_ids_distinct() {
+        DatasetGraph[] dsgs = idsData();
+        String x = "(distinct (project (?o) (bgp (?s <http://example/p> ?o))))";
+        sameRows(dsgs, x);
+        assertEquals(500, rows(dsgs[0], x).size());
+        // Rows are not decoded.
+        Txn.executeRead(dsgs[0], ()->{
+            QueryIterator qIter = Algebra.exec(SSE.parseOp(x), dsgs[0]);
+            assertTrue(qIter.next() instanceof BindingTDB);
+            qIter.close();
+        });
+        // Unbound variables.
+        sameRows(dsgs, "(distinct (project (?o ?n) (leftjoin (bgp (?s <http://example/p> ?o)) (bgp (?s <http://example/q> ?n)))))");
+        // Rows of terms after rows of NodeIds.
+        sameRows(dsgs, "(distinct (union (project (?o) (bgp (?s <http://example/p> ?o))) (table (vars ?o) (row [?o 'o1']) (row [?o 'new']))))");
+    }
+
+    @Test
+    public void solve_ids_group() {
+        DatasetGraph[] dsgs = idsData();
+        sameRows(dsgs, "(group (?o) ((?.0 (count))) (bgp (?s <http://example/p> ?o)))");
+        sameRows(dsgs, "(group (?o ?n) () (leftjoin (bgp (?s <http://example/p> ?o)) (bgp (?s <http://example/q> ?n))))");
+        sameRows(dsgs, "(group (?n) ((?.0 (sum ?n)) (?.1 (count distinct ?o))) (bgp (?s <http://example/p> ?o) (?s <http://example/q> ?n)))");
+        // Rows of terms after rows of NodeIds.
+        sameRows(dsgs, "(group (?o) ((?.0 (count))) (union (bgp (?s <http://example/p> ?o)) (table (vars ?o) (row [?o 'o1']) (row [?o 'new']))))");
+    }
+
+    @Test
+    public void solve_ids_filter() {
+        DatasetGraph[] dsgs = idsData();
+        sameRows(dsgs, "(filter (= ?c <http://example/c3>) (bgp (?s <http://example/r> ?c)))");
+        sameRows(dsgs, "(filter (sameTerm <http://example/c3> ?c) (bgp (?s <http://example/r> ?c)))");
+        sameRows(dsgs, "(filter (sameTerm ?c ?d) (bgp (?s <http://example/r> ?c) (?s <http://example/r2> ?d)))");
+        assertEquals(0, rows(dsgs[0], "(filter (= ?c <http://example/absent>) (bgp (?s <http://example/r> ?c)))").size());
+        // Unbound variable.
+        sameRows(dsgs, "(filter (= ?n <http://example/c3>) (leftjoin (bgp (?s <http://example/r> ?c)) (bgp (?s <http://example/q> ?n))))");
+        // Rows of terms.
+        sameRows(dsgs, "(filter (= ?c <http://example/c3>) (table (vars ?c) (row [?c <http://example/c3>]) (row [?c <http://example/c4>])))");
+    }
+
+    @Test
+    public void solve_ids_join() {
+        DatasetGraph[] dsgs = idsData();
+        sameRows(dsgs, "(join (bgp (?s <http://example/p> ?o)) (bgp (?s <http://example/r> ?c)))");
+        sameRows(dsgs, "(join (bgp (?s <http://example/r> ?c)) (bgp (?t <http://example/r2> ?c) (?t <http://example/q> ?n)))");
+        // Key variable not always bound.
+        sameRows(dsgs, "(join (leftjoin (bgp (?s <http://example/p> ?o)) (bgp (?s <http://example/q> ?n))) (bgp (?t <http://example/q> ?n)))");
+        // Rows of terms on either side.
+        String table = "(table (vars ?c) (row [?c <http://example/c3>]) (row [?c <http://example/absent>]) (row))";
+        sameRows(dsgs, "(join " + table + " (bgp (?s <http://example/r> ?c)))");
+        sameRows(dsgs, "(join (bgp (?s <http://example/r> ?c)) " + table + ")");
+    }
+
+    @Test
+    public void solve_merge_join() {
+        DatasetGraph[] dsgs = idsData();
+        Node g = NodeFactory.createURI("http://example/g");
+        Node v1 = NodeFactory.createURI("http://example/v1");
+        Node v2 = NodeFactory.createURI("http://example/v2");
+        Node r = NodeFactory.createURI("http://example/r");
+        for ( DatasetGraph dsg : dsgs ) {
+            Txn.executeWrite(dsg, ()->{
+                for ( int i = 0 ; i < 500 ; i++ ) {
+                    Node s = NodeFactory.createURI("http://example/s" + i);
+                    // Inline values, negative and positive, in canonical form.
+                    dsg.getDefaultGraph().add(s, v1, NodeFactory.createLiteralDT((i % 40 - 20) + ".0e0", XSDDatatype.XSDdouble));
+                    dsg.getDefaultGraph().add(s, v2, NodeFactory.createLiteralDT((i % 30 - 10) + ".0e0", XSDDatatype.XSDdouble));
+                    dsg.add(g, s, r, NodeFactory.createURI("http://example/c" + (i % 10)));
+                    dsg.add(g, s, v1, NodeFactory.createURI("http://example/c" + (i % 4)));
+                }
+            });
+        }
+        // Star on the subject: POS and POS.
+        sameRows(dsgs, "(bgp (?s <http://example/r> <http://example/c3>) (?s <http://example/r2> <http://example/c2>))");
+        // Join on the object: POS and POS.
+        sameRows(dsgs, "(bgp (?x <http://example/q> ?n) (?y <http://example/q> ?n))");
+        sameRows(dsgs, "(bgp (?x <http://example/v1> ?n) (?y <http://example/v2> ?n))");
+        // One side with few matches, the other all triples (SPO).
+        sameRows(dsgs, "(bgp (?s <http://example/r> <http://example/c3>) (?s ?p ?o))");
+        // More patterns after the merge join.
+        sameRows(dsgs, "(bgp (?s <http://example/r> <http://example/c3>) (?s <http://example/r2> ?d) (?s <http://example/p> ?o))");
+        // Not in the order of a shared variable.
+        sameRows(dsgs, "(bgp (?s <http://example/r> <http://example/c3>) (?s <http://example/p> ?o))");
+        // Input rows.
+        sameRows(dsgs, "(sequence (table (vars ?c) (row [?c <http://example/c3>]) (row [?c <http://example/c5>]) (row))"
+                     + " (bgp (?x <http://example/r> ?c) (?x <http://example/r2> <http://example/c1>)))");
+        // Quads: GPOS and GPOS.
+        sameRows(dsgs, "(quadpattern (quad <http://example/g> ?s <http://example/r> <http://example/c3>)"
+                     + " (quad <http://example/g> ?s <http://example/v1> <http://example/c1>))");
+    }
+
+    private static Map<Binding, Integer> rows(DatasetGraph dsg, String pattern) {
+        Op op = SSE.parseOp(pattern);
+        return Txn.calculateRead(dsg, ()->{
+            Map<Binding, Integer> rows = new HashMap<>();
+            QueryIterator qIter = Algebra.exec(op, dsg);
+            // Plain bindings, compared by value.
+            qIter.forEachRemaining(b->rows.merge(BindingFactory.copy(b), 1, Integer::sum));
+            return rows;
+        });
+    }
+
     // ------
 
     private static void equals(RowSet rs1, RowSet rs2) {
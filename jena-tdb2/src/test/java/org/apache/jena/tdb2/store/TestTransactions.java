@@ -19,6 +19,7 @@
 package org.apache.jena.tdb2.store;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import java.io.StringReader;
 import java.util.Iterator;
@@ -33,6 +34,8 @@ import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DataVersion;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.TDB2Factory;
@@ -114,6 +117,21 @@ public class TestTransactions
         });
     }
 
+    // Data version seen by transactions.
+    @Test public void trans_data_version() {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        assertEquals(DataVersion.UNKNOWN, DataVersion.dataVersion(dsg));
+        long v1 = Txn.calculateRead(dsg, ()->DataVersion.dataVersion(dsg));
+        assertNotEquals(DataVersion.UNKNOWN, v1);
+        assertEquals(v1, (long)Txn.calculateRead(dsg, ()->DataVersion.dataVersion(dsg)));
+        Txn.executeWrite(dsg, ()->{
+            RDFDataMgr.read(dsg, new StringReader(data2), null, Lang.TURTLE);
+            assertEquals(DataVersion.UNKNOWN, DataVersion.dataVersion(dsg));
+        });
+        long v2 = Txn.calculateRead(dsg, ()->DataVersion.dataVersion(dsg));
+        assertNotEquals(v1, v2);
+    }
+
     // Iterators and trasnaxction scope.
 
     private void load(String data) {
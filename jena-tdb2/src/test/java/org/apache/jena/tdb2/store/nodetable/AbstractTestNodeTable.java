@@ -22,7 +22,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.util.NodeFactoryExtra;
 import org.apache.jena.tdb2.store.NodeId;
 import org.junit.Test;
@@ -64,4 +68,44 @@ public abstract class AbstractTestNodeTable
     @Test public void nodetable_05()    { testNode("'x'@en"); }
     @Test public void nodetable_06()    { testNode("'x'^^<http://example/dt>"); }
     @Test public void nodetable_07()    { testNode("'نواف'"); }
+    @Test public void nodetable_08()    {
+        testNode("'[0.5, -1.0]'^^<http://sj.dcc.uchile.cl/sim#vector>");
+        testNode("'[0.5,-1]'^^<http://sj.dcc.uchile.cl/sim#vector>");
+        ARQ.getContext().set(ARQ.binaryVectorTerms, true);
+        try {
+            testNode("'[0.5, -1.0]'^^<http://sj.dcc.uchile.cl/sim#vector>");
+            testNode("'[0.5,-1]'^^<http://sj.dcc.uchile.cl/sim#vector>");
+            testNode("'[ 1, 2e3 ]'^^<http://sj.dcc.uchile.cl/sim#vector>");
+        } finally {
+            ARQ.getContext().unset(ARQ.binaryVectorTerms);
+        }
+    }
+
+    @Test public void nodetable_bulk_01() {
+        NodeTable nt = createEmptyNodeTable();
+        // Repeats, an inline term and terms written in a different order to the lookup.
+        List<Node> nodes = nodes("<http://example/x>", "1", "'x'@en", "<http://example/x>", "_:b", "'x'");
+        writeNode(nt, "'x'");
+        writeNode(nt, "_:b");
+        List<NodeId> ids = nt.bulkNodeToNodeId(nodes, true);
+        assertEquals(nodes.size(), ids.size());
+        for ( int i = 0 ; i < nodes.size() ; i++ )
+            assertEquals(nt.getNodeIdForNode(nodes.get(i)), ids.get(i));
+        assertEquals(nodes, nt.bulkNodeIdToNode(ids));
+    }
+
+    @Test public void nodetable_bulk_02() {
+        NodeTable nt = createEmptyNodeTable();
+        writeNode(nt, "<http://example/x>");
+        List<NodeId> ids = nt.bulkNodeToNodeId(nodes("<http://example/x>", "<http://example/y>"), false);
+        assertEquals(nt.getNodeIdForNode(NodeFactoryExtra.parseNode("<http://example/x>")), ids.get(0));
+        assertEquals(NodeId.NodeDoesNotExist, ids.get(1));
+
+        List<Node> nodes = nt.bulkNodeIdToNode(Arrays.asList(NodeId.NodeDoesNotExist, ids.get(0), null));
+        assertEquals(Arrays.asList(null, NodeFactoryExtra.parseNode("<http://example/x>"), null), nodes);
+    }
+
+    private static List<Node> nodes(String...strings) {
+        return Arrays.stream(strings).map(NodeFactoryExtra::parseNode).toList();
+    }
 }
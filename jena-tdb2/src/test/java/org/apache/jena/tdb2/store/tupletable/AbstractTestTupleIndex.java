@@ -22,12 +22,14 @@ import static org.apache.jena.atlas.lib.tuple.TupleFactory.tuple;
 import static org.apache.jena.tdb2.store.tupletable.NData.*;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.jena.atlas.iterator.Iter;
 import static org.junit.Assert.*;
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
 import org.junit.Test;
 
 /** Test TupleIndexes (general) */
@@ -261,4 +263,39 @@ public abstract class AbstractTestTupleIndex
    }
 
 
+    @Test public void TupleIndexFindFrom_1()
+    {
+        // In the order of S.
+        TupleIndex index = create("POS");
+        add(index, n3, n2, n1);
+        add(index, n1, n2, n1);
+        add(index, n6, n2, n1);
+        add(index, n4, n2, n1);
+        add(index, n2, n2, n1);
+        add(index, n2, n3, n1);
+
+        Tuple<NodeId> pattern = tuple(null, n2, n1);
+        List<NodeId> x = Iter.toList(Iter.map(index.findFrom(pattern, null), t->t.get(0)));
+        assertEquals(5, x.size());
+        for ( int i = 1 ; i < x.size() ; i++ )
+            assertTrue(NodeIdFactory.compareIndexOrder(x.get(i-1), x.get(i)) < 0);
+
+        List<NodeId> y = Iter.toList(Iter.map(index.findFrom(pattern, x.get(2)), t->t.get(0)));
+        assertEquals(x.subList(2, 5), y);
+    }
+
+    @Test public void TupleIndexFindFrom_2()
+    {
+        TupleIndex index = create("SPO");
+        add(index, n1, n2, n3);
+        add(index, n2, n2, n3);
+        // No fixed slots.
+        assertEquals(2, Iter.count(index.findFrom(tuple(null, null, null), null)));
+        assertEquals(1, Iter.count(index.findFrom(tuple(null, null, null), n2)));
+        // Fixed slots not leading in the index.
+        assertNull(index.findFrom(tuple(null, n2, n3), null));
+        // No slot to order by.
+        assertNull(index.findFrom(tuple(n1, n2, n3), null));
+    }
+
 }
@@ -24,15 +24,22 @@ import static org.junit.Assume.assumeFalse;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.FileOps;
 import org.apache.jena.base.Sys;
 import org.apache.jena.dboe.base.file.Location;
 import org.apache.jena.dboe.sys.IO_DB;
 import org.apache.jena.dboe.transaction.txn.*;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
@@ -43,6 +50,7 @@ import org.apache.jena.tdb2.DatabaseMgr;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.store.DatasetGraphSwitchable;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -225,6 +233,137 @@ public class TestDatabaseCompact
         Txn.executeRead(dsgOld,  ()->assertNull(dsgOld.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex")));
     }
 
+    @Test public void compact_indexes_4() {
+        // Enough data for several levels of B+Tree, with deletes leaving unused terms.
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+        Txn.executeWrite(dsg, ()-> {
+            for ( int i = 0 ; i < 5000 ; i++ ) {
+                Quad quad = SSE.parseQuad("(<g"+(i%3)+"> <s"+i+"> <p"+(i%7)+"> \"o"+i+"\")");
+                dsg.add(quad);
+                if ( i % 5 == 0 )
+                    dsg.delete(quad);
+            }
+            dsg.add(quad1);
+            dsg.add(quad2);
+            dsg.getDefaultGraph().add(triple3);
+            dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("ex", "http://example/");
+        });
+        List<Quad> before = Txn.calculateRead(dsg, ()->Iter.toList(dsg.find()));
+        // Other indexes.
+        Node p3 = NodeFactory.createURI("p3");
+        Node o11 = NodeFactory.createLiteralString("o11");
+        long countP = Txn.calculateRead(dsg, ()->Iter.count(dsg.find(Node.ANY, Node.ANY, p3, Node.ANY)));
+        long countO = Txn.calculateRead(dsg, ()->Iter.count(dsg.find(Node.ANY, Node.ANY, Node.ANY, o11)));
+        assertTrue(countP > 0 && countO == 1);
+        // Only used by deleted quads.
+        Node o10 = NodeFactory.createLiteralString("o10");
+        NodeId nodeId = Txn.calculateRead(dsg, ()->TDBInternal.getNodeId(dsg, o10));
+        assertFalse(NodeId.isDoesNotExist(nodeId));
+
+        DatabaseMgr.compact(dsg, false);
+
+        Txn.executeRead(dsg, ()-> {
+            // Same quads, in the same order: NodeIds are remapped in order.
+            assertEquals(before, Iter.toList(dsg.find()));
+            // Unused terms are not copied.
+            assertTrue(NodeId.isDoesNotExist(TDBInternal.getNodeId(dsg, o10)));
+            assertFalse(NodeId.isDoesNotExist(TDBInternal.getNodeId(dsg, triple3.getPredicate())));
+            assertEquals(countP, Iter.count(dsg.find(Node.ANY, Node.ANY, p3, Node.ANY)));
+            assertEquals(countO, Iter.count(dsg.find(Node.ANY, Node.ANY, Node.ANY, o11)));
+            assertEquals("http://example/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex"));
+        });
+
+        // The compacted database can be updated, and compacted again.
+        Quad quad3 = SSE.parseQuad("(<g9> <s9> <p9> \"new\")");
+        Txn.executeWrite(dsg, ()->dsg.add(quad3));
+        DatabaseMgr.compact(dsg, false);
+        Txn.executeRead(dsg, ()-> {
+            assertTrue(dsg.contains(quad3));
+            assertEquals(before.size()+1, Iter.count(dsg.find()));
+        });
+    }
+
+    @Test public void compact_prefixes_spill_6() {
+        // More prefix terms than held in memory: the positions of the prefix table are sorted on disk.
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+        Txn.executeWrite(dsg, ()-> {
+            dsg.add(quad1);
+            for ( int i = 0 ; i < 500 ; i++ )
+                dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("ex"+i, "http://example/"+i+"/");
+        });
+        long slotsInMemory = CopyIndexes.SlotsInMemory;
+        try {
+            CopyIndexes.SlotsInMemory = 10;
+            DatabaseMgr.compact(dsg, false);
+        } finally {
+            CopyIndexes.SlotsInMemory = slotsInMemory;
+        }
+        Txn.executeRead(dsg, ()-> {
+            assertTrue(dsg.contains(quad1));
+            assertEquals(500, dsg.getDefaultGraph().getPrefixMapping().numPrefixes());
+            for ( int i = 0 ; i < 500 ; i++ )
+                assertEquals("http://example/"+i+"/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex"+i));
+        });
+    }
+
+    @Test public void compact_online_5() throws InterruptedException, IOException {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+        Txn.executeWrite(dsg, ()-> {
+            for ( int i = 0 ; i < 5000 ; i++ )
+                dsg.add(SSE.parseQuad("(<g"+(i%3)+"> <s"+i+"> <p"+(i%7)+"> \"o"+i+"\")"));
+            dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("ex", "http://example/");
+        });
+        long count = Txn.calculateRead(dsg, ()->Iter.count(dsg.find()));
+        DatasetGraph dsg1 = ((DatasetGraphSwitchable)dsg).get();
+
+        // Writer during the compaction: adds, deletes of one quad and of a pattern, prefix changes.
+        Node gw = NodeFactory.createURI("gw");
+        Node pw = NodeFactory.createURI("pw");
+        Set<Quad> expected = new HashSet<>();
+        String[] lastPrefix = { null };
+        AtomicBoolean done = new AtomicBoolean(false);
+        Thread writer = new Thread(()->{
+            for ( int i = 0 ; ! done.get() || i < 10 ; i++ ) {
+                int n = i;
+                Quad quad = Quad.create(gw, NodeFactory.createURI("s"+n), pw, NodeFactory.createLiteralString("w"+n));
+                Txn.executeWrite(dsg, ()->{
+                    dsg.add(quad);
+                    if ( n % 3 == 0 )
+                        dsg.delete(quad);
+                    if ( n % 5 == 4 )
+                        dsg.deleteAny(gw, NodeFactory.createURI("s"+(n-1)), Node.ANY, Node.ANY);
+                    dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("w", "http://example/"+n);
+                });
+                expected.add(quad);
+                if ( n % 3 == 0 )
+                    expected.remove(quad);
+                if ( n % 5 == 4 )
+                    expected.removeIf(q->q.getSubject().getURI().equals("s"+(n-1)));
+                lastPrefix[0] = "http://example/"+n;
+            }
+        });
+        writer.start();
+        try {
+            DatabaseMgr.compactOnline(dsg, false);
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+
+        assertNotEquals(dsg1, ((DatasetGraphSwitchable)dsg).get());
+        Txn.executeRead(dsg, ()-> {
+            assertEquals(expected, Iter.toSet(dsg.find(gw, Node.ANY, Node.ANY, Node.ANY)));
+            assertEquals(count+expected.size(), Iter.count(dsg.find()));
+            assertEquals("http://example/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex"));
+            assertEquals(lastPrefix[0], dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("w"));
+        });
+        // The files of changes made during the copy have gone.
+        Path dir1 = IO_DB.asPath(((DatasetGraphTDB)dsg1).getLocation());
+        try ( var files = Files.list(dir1) ) {
+            assertTrue(files.noneMatch(f->f.getFileName().toString().startsWith("compact-changes")));
+        }
+    }
+
     @Test public void compact_delete() {
         assumeFalse(Sys.isWindows);
         DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);